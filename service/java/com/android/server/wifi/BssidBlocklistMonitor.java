@@ -22,12 +22,13 @@ import android.annotation.Nullable;
 import android.content.Context;
 import android.net.wifi.ScanResult;
 import android.net.wifi.WifiManager;
-import android.util.ArrayMap;
 import android.util.ArraySet;
 import android.util.LocalLog;
 import android.util.Log;
 
 import com.android.internal.annotations.VisibleForTesting;
+import com.android.server.wifi.util.BssidUtil;
+import com.android.server.wifi.util.LongHashMap;
 import com.android.wifi.resources.R;
 
 import java.io.FileDescriptor;
@@ -40,7 +41,6 @@ import java.util.Calendar;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
@@ -136,8 +136,8 @@ public class BssidBlocklistMonitor {
     private final WifiScoreCard mWifiScoreCard;
     private final ScoringParams mScoringParams;
 
-    // Map of bssid to BssidStatus
-    private Map<String, BssidStatus> mBssidStatusMap = new ArrayMap<>();
+    // Map of packed bssid to BssidStatus
+    private LongHashMap<BssidStatus> mBssidStatusMap = new LongHashMap<>();
 
     // Keeps history of 30 blocked BSSIDs that were most recently removed.
     private BssidStatusHistoryLogger mBssidStatusHistoryLogger = new BssidStatusHistoryLogger(30);
@@ -186,7 +186,9 @@ public class BssidBlocklistMonitor {
     public void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
         pw.println("Dump of BssidBlocklistMonitor");
         pw.println("BssidBlocklistMonitor - Bssid blocklist begin ----");
-        mBssidStatusMap.values().stream().forEach(entry -> pw.println(entry));
+        for (int i = 0; i < mBssidStatusMap.size(); i++) {
+            pw.println(mBssidStatusMap.valueAt(i));
+        }
         pw.println("BssidBlocklistMonitor - Bssid blocklist end ----");
         mBssidStatusHistoryLogger.dump(pw);
     }
@@ -216,14 +218,15 @@ public class BssidBlocklistMonitor {
      */
     private @NonNull BssidStatus getOrCreateBssidStatus(@NonNull String bssid,
             @NonNull String ssid) {
-        BssidStatus status = mBssidStatusMap.get(bssid);
+        long key = BssidUtil.parse(bssid);
+        BssidStatus status = mBssidStatusMap.get(key);
         if (status == null || !ssid.equals(status.ssid)) {
             if (status != null) {
                 localLog("getOrCreateBssidStatus: BSSID=" + bssid + ", SSID changed from "
                         + status.ssid + " to " + ssid);
             }
             status = new BssidStatus(bssid, ssid);
-            mBssidStatusMap.put(bssid, status);
+            mBssidStatusMap.put(key, status);
         }
         return status;
     }
@@ -232,6 +235,7 @@ public class BssidBlocklistMonitor {
             @FailureReason int reasonCode) {
         if (bssid == null || ssid == null || WifiManager.UNKNOWN_SSID.equals(ssid)
                 || bssid.equals(ClientModeImpl.SUPPLICANT_BSSID_ANY)
+                || BssidUtil.parse(bssid) == BssidUtil.INVALID
                 || reasonCode < 0 || reasonCode >= NUMBER_REASON_CODES) {
             Log.e(TAG, "Invalid input: BSSID=" + bssid + ", SSID=" + ssid
                     + ", reasonCode=" + reasonCode);
@@ -397,7 +401,7 @@ public class BssidBlocklistMonitor {
                     REASON_FRAMEWORK_DISCONNECT_CONNECTED_SCORE);
         }
 
-        BssidStatus status = mBssidStatusMap.get(bssid);
+        BssidStatus status = mBssidStatusMap.get(BssidUtil.parse(bssid));
         if (status == null) {
             return;
         }
@@ -419,7 +423,7 @@ public class BssidBlocklistMonitor {
      */
     public void handleNetworkValidationSuccess(@NonNull String bssid, @NonNull String ssid) {
         mWifiScoreCard.resetBssidBlocklistStreak(ssid, bssid, REASON_NETWORK_VALIDATION_FAILURE);
-        BssidStatus status = mBssidStatusMap.get(bssid);
+        BssidStatus status = mBssidStatusMap.get(BssidUtil.parse(bssid));
         if (status == null) {
             return;
         }
@@ -431,7 +435,7 @@ public class BssidBlocklistMonitor {
          **/
         if (status.isInBlocklist) {
             mBssidStatusHistoryLogger.add(status, "Network validation success");
-            mBssidStatusMap.remove(bssid);
+            mBssidStatusMap.remove(BssidUtil.parse(bssid));
         }
     }
 
@@ -440,7 +444,7 @@ public class BssidBlocklistMonitor {
      */
     public void handleDhcpProvisioningSuccess(@NonNull String bssid, @NonNull String ssid) {
         mWifiScoreCard.resetBssidBlocklistStreak(ssid, bssid, REASON_DHCP_FAILURE);
-        BssidStatus status = mBssidStatusMap.get(bssid);
+        BssidStatus status = mBssidStatusMap.get(BssidUtil.parse(bssid));
         if (status == null) {
             return;
         }
@@ -463,8 +467,7 @@ public class BssidBlocklistMonitor {
      */
     public void clearBssidBlocklistForSsid(@NonNull String ssid) {
         int prevSize = mBssidStatusMap.size();
-        mBssidStatusMap.entrySet().removeIf(e -> {
-            BssidStatus status = e.getValue();
+        mBssidStatusMap.removeIf(status -> {
             if (status.ssid == null) {
                 return false;
             }
@@ -487,8 +490,8 @@ public class BssidBlocklistMonitor {
     public void clearBssidBlocklist() {
         if (mBssidStatusMap.size() > 0) {
             int prevSize = mBssidStatusMap.size();
-            for (BssidStatus status : mBssidStatusMap.values()) {
-                mBssidStatusHistoryLogger.add(status, "clearBssidBlocklist");
+            for (int i = 0; i < prevSize; i++) {
+                mBssidStatusHistoryLogger.add(mBssidStatusMap.valueAt(i), "clearBssidBlocklist");
             }
             mBssidStatusMap.clear();
             localLog(TAG + " clearBssidBlocklist: num BSSIDs cleared="
@@ -509,9 +512,14 @@ public class BssidBlocklistMonitor {
         if (ssid == null) {
             return 0;
         }
-        return (int) mBssidStatusMap.values().stream()
-                .filter(entry -> entry.isInBlocklist && ssid.equals(entry.ssid))
-                .count();
+        int count = 0;
+        for (int i = 0; i < mBssidStatusMap.size(); i++) {
+            BssidStatus entry = mBssidStatusMap.valueAt(i);
+            if (entry.isInBlocklist && ssid.equals(entry.ssid)) {
+                count++;
+            }
+        }
+        return count;
     }
 
     /**
@@ -548,10 +556,14 @@ public class BssidBlocklistMonitor {
         if (ssid == null) {
             return Collections.emptySet();
         }
-        return mBssidStatusMap.values().stream()
-                .filter(entry -> entry.isInBlocklist && ssid.equals(entry.ssid))
-                .map(entry -> entry.blockReason)
-                .collect(Collectors.toSet());
+        Set<Integer> reasons = new ArraySet<>();
+        for (int i = 0; i < mBssidStatusMap.size(); i++) {
+            BssidStatus entry = mBssidStatusMap.valueAt(i);
+            if (entry.isInBlocklist && ssid.equals(entry.ssid)) {
+                reasons.add(entry.blockReason);
+            }
+        }
+        return reasons;
     }
 
     /**
@@ -567,7 +579,8 @@ public class BssidBlocklistMonitor {
             if (scanResult == null) {
                 continue;
             }
-            BssidStatus status = mBssidStatusMap.get(scanResult.BSSID);
+            long key = BssidUtil.parse(scanResult.BSSID);
+            BssidStatus status = mBssidStatusMap.get(key);
             if (status == null || !status.isInBlocklist
                     || !LOW_RSSI_SENSITIVE_FAILURES.contains(status.blockReason)) {
                 continue;
@@ -576,7 +589,7 @@ public class BssidBlocklistMonitor {
             if (status.lastRssi < sufficientRssi && scanResult.level >= sufficientRssi
                     && scanResult.level - status.lastRssi >= MIN_RSSI_DIFF_TO_UNBLOCK_BSSID) {
                 mBssidStatusHistoryLogger.add(status, "rssi significantly improved");
-                mBssidStatusMap.remove(status.bssid);
+                mBssidStatusMap.remove(key);
             }
         }
     }
@@ -588,8 +601,7 @@ public class BssidBlocklistMonitor {
     private Stream<BssidStatus> updateAndGetBssidBlocklistInternal() {
         Stream.Builder<BssidStatus> builder = Stream.builder();
         long curTime = mClock.getWallClockMillis();
-        mBssidStatusMap.entrySet().removeIf(e -> {
-            BssidStatus status = e.getValue();
+        mBssidStatusMap.removeIf(status -> {
             if (status.isInBlocklist) {
                 if (status.blocklistEndTimeMs < curTime) {
                     mBssidStatusHistoryLogger.add(status, "updateAndGetBssidBlocklistInternal");
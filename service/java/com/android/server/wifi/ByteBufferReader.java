@@ -48,19 +48,19 @@ public class ByteBufferReader {
             throw new IllegalArgumentException("Invalid size " + size);
         }
 
-        // Read the necessary bytes.
-        byte[] octets = new byte[size];
-        payload.get(octets);
+        if (payload.remaining() < size) {
+            throw new BufferUnderflowException();
+        }
 
-        // Format the value based on byte order.
+        // Format the value based on byte order, reading the bytes in place.
         long value = 0;
         if (byteOrder == ByteOrder.LITTLE_ENDIAN) {
-            for (int n = octets.length - 1; n >= 0; n--) {
-                value = (value << Byte.SIZE) | (octets[n] & 0xFF);
+            for (int n = 0; n < size; n++) {
+                value |= (payload.get() & 0xFFL) << (n * Byte.SIZE);
             }
         } else {
-            for (byte octet : octets) {
-                value = (value << Byte.SIZE) | (octet & 0xFF);
+            for (int n = 0; n < size; n++) {
+                value = (value << Byte.SIZE) | (payload.get() & 0xFF);
             }
         }
         return value;
@@ -77,9 +77,22 @@ public class ByteBufferReader {
      * @throws NegativeArraySizeException
      */
     public static String readString(ByteBuffer payload, int length, Charset charset) {
-        byte[] octets = new byte[length];
-        payload.get(octets);
-        return new String(octets, charset);
+        if (length < 0) {
+            throw new NegativeArraySizeException(Integer.toString(length));
+        }
+        if (payload.remaining() < length) {
+            throw new BufferUnderflowException();
+        }
+        if (!payload.hasArray()) {
+            byte[] octets = new byte[length];
+            payload.get(octets);
+            return new String(octets, charset);
+        }
+        // Decode the string straight from the backing array.
+        String value = new String(payload.array(), payload.arrayOffset() + payload.position(),
+                length, charset);
+        payload.position(payload.position() + length);
+        return value;
     }
 
     /**
@@ -95,4 +108,24 @@ public class ByteBufferReader {
         int length = payload.get() & 0xFF;
         return readString(payload, length, charset);
     }
+
+    /**
+     * Read a sub-buffer from a buffer, without copying the content. The sub-buffer shares its
+     * content with the buffer, from the current position of the buffer to |length| bytes
+     * beyond, and the position of the buffer is moved past the sub-buffer.
+     *
+     * @param payload The buffer to read from
+     * @param length Number of bytes to read from the buffer
+     * @return {@link ByteBuffer}
+     * @throws BufferUnderflowException
+     */
+    public static ByteBuffer readSubBuffer(ByteBuffer payload, int length) {
+        if (length < 0 || payload.remaining() < length) {
+            throw new BufferUnderflowException();
+        }
+        ByteBuffer subBuffer = payload.slice();
+        subBuffer.limit(length);
+        payload.position(payload.position() + length);
+        return subBuffer;
+    }
 }
@@ -1279,6 +1279,10 @@ public class ClientModeImpl extends StateMachine {
     private int mRxTimeLastReport = 0;
 
     private WifiLinkLayerStats mLastLinkLayerStats;
+    // The RSSI poll reads the link layer stats into these two objects in turn, so that the
+    // stats of the previous poll (mLastLinkLayerStats) stay intact without allocating.
+    private final WifiLinkLayerStats[] mPollLinkLayerStats =
+            {new WifiLinkLayerStats(), new WifiLinkLayerStats()};
     private long mLastLinkLayerStatsUpdate = 0;
 
     String reportOnTime() {
@@ -1302,6 +1306,13 @@ public class ClientModeImpl extends StateMachine {
     }
 
     WifiLinkLayerStats getWifiLinkLayerStats() {
+        return getWifiLinkLayerStats(null);
+    }
+
+    /**
+     * Fetches the link layer stats, refilling the given object if it is not null.
+     */
+    private WifiLinkLayerStats getWifiLinkLayerStats(@Nullable WifiLinkLayerStats reuse) {
         if (mInterfaceName == null) {
             loge("getWifiLinkLayerStats called without an interface");
             return null;
@@ -1309,7 +1320,8 @@ public class ClientModeImpl extends StateMachine {
         WifiLinkLayerStats stats = null;
         mLastLinkLayerStatsUpdate = mClock.getWallClockMillis();
         if (mWifiLinkLayerStatsSupported > 0) {
-            stats = mWifiNative.getWifiLinkLayerStats(mInterfaceName);
+            stats = reuse == null ? mWifiNative.getWifiLinkLayerStats(mInterfaceName)
+                    : mWifiNative.getWifiLinkLayerStats(mInterfaceName, reuse);
             if (stats == null) {
                 mWifiLinkLayerStatsSupported -= 1;
             } else {
@@ -5078,7 +5090,9 @@ public class ClientModeImpl extends StateMachine {
          * Fetches link stats and updates Wifi Score Report.
          */
         private WifiLinkLayerStats updateLinkLayerStatsRssiAndScoreReportInternal() {
-            WifiLinkLayerStats stats = getWifiLinkLayerStats();
+            WifiLinkLayerStats stats = getWifiLinkLayerStats(
+                    mLastLinkLayerStats == mPollLinkLayerStats[0]
+                            ? mPollLinkLayerStats[1] : mPollLinkLayerStats[0]);
             // Get Info and continue polling
             fetchRssiLinkSpeedAndFrequencyNative();
             // Send the update score to network agent.
@@ -32,6 +32,7 @@ public class ConfigurationMap {
     private final Map<Integer, WifiConfiguration> mPerID = new HashMap<>();
 
     private final Map<Integer, WifiConfiguration> mPerIDForCurrentUser = new HashMap<>();
+    private final Map<String, WifiConfiguration> mPerConfigKeyForCurrentUser = new HashMap<>();
     private final Map<ScanResultMatchInfo, WifiConfiguration>
             mScanResultMatchInfoMapForCurrentUser = new HashMap<>();
 
@@ -47,6 +48,7 @@ public class ConfigurationMap {
     public void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
         pw.println("mPerId=" + mPerID);
         pw.println("mPerIDForCurrentUser=" + mPerIDForCurrentUser);
+        pw.println("mPerConfigKeyForCurrentUser=" + mPerConfigKeyForCurrentUser.keySet());
         pw.println("mScanResultMatchInfoMapForCurrentUser="
                 + mScanResultMatchInfoMapForCurrentUser);
         pw.println("mCurrentUserId=" + mCurrentUserId);
@@ -55,11 +57,15 @@ public class ConfigurationMap {
     // RW methods:
     public WifiConfiguration put(WifiConfiguration config) {
         final WifiConfiguration current = mPerID.put(config.networkId, config);
+        if (current != null) {
+            removeFromCurrentUserIndices(current);
+        }
         final UserHandle currentUser = UserHandle.of(mCurrentUserId);
         final UserHandle creatorUser = UserHandle.getUserHandleForUid(config.creatorUid);
         if (config.shared || currentUser.equals(creatorUser)
                 || mUserManager.isSameProfileGroup(currentUser, creatorUser)) {
             mPerIDForCurrentUser.put(config.networkId, config);
+            mPerConfigKeyForCurrentUser.put(config.getKey(), config);
             // TODO (b/142035508): Add a more generic fix. This cache should only hold saved
             // networks.
             if (!config.fromWifiNetworkSpecifier) {
@@ -75,26 +81,55 @@ public class ConfigurationMap {
         if (config == null) {
             return null;
         }
-
-        mPerIDForCurrentUser.remove(netID);
-
-        Iterator<Map.Entry<ScanResultMatchInfo, WifiConfiguration>> scanResultMatchInfoEntries =
-                mScanResultMatchInfoMapForCurrentUser.entrySet().iterator();
-        while (scanResultMatchInfoEntries.hasNext()) {
-            if (scanResultMatchInfoEntries.next().getValue().networkId == netID) {
-                scanResultMatchInfoEntries.remove();
-                break;
-            }
-        }
+        removeFromCurrentUserIndices(config);
         return config;
     }
 
     public void clear() {
         mPerID.clear();
         mPerIDForCurrentUser.clear();
+        mPerConfigKeyForCurrentUser.clear();
         mScanResultMatchInfoMapForCurrentUser.clear();
     }
 
+    /**
+     * Removes the entries of the provided network from the current user indices. The entries are
+     * looked up with the keys of the network, and only searched for if the network was modified
+     * in place since it was added.
+     */
+    private void removeFromCurrentUserIndices(WifiConfiguration config) {
+        if (mPerIDForCurrentUser.remove(config.networkId) == null) {
+            return;
+        }
+        removeFromIndex(mPerConfigKeyForCurrentUser, config.getKey(), config);
+        if (config.fromWifiNetworkSpecifier) {
+            return;
+        }
+        ScanResultMatchInfo matchInfo = null;
+        try {
+            matchInfo = ScanResultMatchInfo.fromWifiConfiguration(config);
+        } catch (IllegalArgumentException e) {
+            // Security params were modified in place, fall back to a search below.
+        }
+        removeFromIndex(mScanResultMatchInfoMapForCurrentUser, matchInfo, config);
+    }
+
+    private static <K> void removeFromIndex(
+            Map<K, WifiConfiguration> index, K key, WifiConfiguration config) {
+        WifiConfiguration indexedConfig = key == null ? null : index.get(key);
+        if (indexedConfig != null && indexedConfig.networkId == config.networkId) {
+            index.remove(key);
+            return;
+        }
+        Iterator<Map.Entry<K, WifiConfiguration>> entries = index.entrySet().iterator();
+        while (entries.hasNext()) {
+            if (entries.next().getValue().networkId == config.networkId) {
+                entries.remove();
+                break;
+            }
+        }
+    }
+
     /**
      * Sets the new foreground user ID.
      *
@@ -125,12 +160,7 @@ public class ConfigurationMap {
         if (key == null) {
             return null;
         }
-        for (WifiConfiguration config : mPerIDForCurrentUser.values()) {
-            if (config.getKey().equals(key)) {
-                return config;
-            }
-        }
-        return null;
+        return mPerConfigKeyForCurrentUser.get(key);
     }
 
     /**
@@ -0,0 +1,520 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.util.ArrayMap;
+import android.util.ArraySet;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.Preconditions;
+import com.android.server.wifi.WifiScoreCard.BlobListener;
+import com.android.server.wifi.util.FileUtils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Connects WifiScoreCard to a local file, for devices not using IpMemoryStore.
+ *
+ * Writes are buffered and appended to the file in a single segment once the wifi thread is done
+ * with the current batch (e.g. a {@link WifiScoreCard#doWrites()}). The file is append only, and
+ * an in-memory index keeps the location of the latest value of each key & name. The file is
+ * rewritten with only the live values once most of it is stale.
+ *
+ * Each record of the file is made of its payload length & CRC followed by the payload, so that a
+ * torn append is detected and discarded when the file is loaded.
+ */
+final class FileMemoryStore implements WifiScoreCard.MemoryStore {
+    private static final String TAG = "WifiFileMemoryStore";
+
+    /** Name of the store file in the wifi shared directory. */
+    public static final String STORE_FILE_NAME = "WifiMemoryStore.bin";
+
+    private static final int FILE_MODE = 0600;
+    private static final int MAGIC = 0x574d5331; // "WMS1"
+    private static final int HEADER_SIZE = 4;
+    // Payload length & CRC.
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int RECORD_BLOB = 1;
+    private static final int RECORD_CLUSTER = 2;
+    private static final int RECORD_REMOVE_CLUSTER = 3;
+    /**
+     * The file is compacted once it is larger than this and more than half of it is stale.
+     */
+    @VisibleForTesting
+    static final int COMPACTION_MIN_SIZE_BYTES = 64 * 1024;
+
+    /** Location of a value in the file, or the value itself until it is appended. */
+    private static class BlobLocation {
+        public final long offset;
+        public final int length;
+        public final int recordSize;
+        @Nullable public byte[] pendingValue;
+
+        BlobLocation(long offset, int length, int recordSize, @Nullable byte[] pendingValue) {
+            this.offset = offset;
+            this.length = length;
+            this.recordSize = recordSize;
+            this.pendingValue = pendingValue;
+        }
+    }
+
+    @NonNull private final File mFile;
+    @NonNull private final WifiThreadRunner mWifiThreadRunner;
+    @NonNull private final WifiScoreCard mWifiScoreCard;
+    @NonNull private final WifiHealthMonitor mWifiHealthMonitor;
+
+    // Keyed by key, then by name.
+    private final Map<String, ArrayMap<String, BlobLocation>> mIndex = new HashMap<>();
+    private final Map<String, String> mClusterForKey = new HashMap<>();
+    private final Map<String, Set<String>> mKeysForCluster = new HashMap<>();
+    private final ByteArrayOutputStream mPendingRecords = new ByteArrayOutputStream();
+    private final List<BlobLocation> mPendingLocations = new ArrayList<>();
+    private long mFileLength = 0;
+    private boolean mFlushScheduled = false;
+    private boolean mStarted = false;
+    private boolean mBroken = false;
+    private int mNumAppends = 0;
+
+    FileMemoryStore(@NonNull File file, @NonNull WifiThreadRunner wifiThreadRunner,
+            @NonNull WifiScoreCard wifiScoreCard, @NonNull WifiHealthMonitor wifiHealthMonitor) {
+        mFile = Preconditions.checkNotNull(file);
+        mWifiThreadRunner = Preconditions.checkNotNull(wifiThreadRunner);
+        mWifiScoreCard = Preconditions.checkNotNull(wifiScoreCard);
+        mWifiHealthMonitor = Preconditions.checkNotNull(wifiHealthMonitor);
+    }
+
+    private void handleException(Exception e) {
+        Log.wtf(TAG, "Exception using " + mFile + " - disabling WifiScoreReport persistence", e);
+        mBroken = true;
+    }
+
+    @Override
+    public void read(String key, String name, BlobListener blobListener) {
+        BlobLocation location = mBroken ? null : getLocation(key, name);
+        if (location == null) {
+            blobListener.onBlobRetrieved(null);
+            return;
+        }
+        if (location.pendingValue != null) {
+            blobListener.onBlobRetrieved(location.pendingValue);
+            return;
+        }
+        byte[] value = null;
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "r")) {
+            value = readBlob(file, location);
+        } catch (IOException e) {
+            handleException(e);
+        }
+        blobListener.onBlobRetrieved(value);
+    }
+
+    @Override
+    public void readAll(String name, Map<String, BlobListener> blobListeners) {
+        Map<String, byte[]> values = mBroken ? null : readValues(blobListeners.keySet(), name);
+        if (values == null) values = new ArrayMap<>();
+        for (Map.Entry<String, BlobListener> entry : blobListeners.entrySet()) {
+            entry.getValue().onBlobRetrieved(values.get(entry.getKey()));
+        }
+    }
+
+    /**
+     * Reads the values of the given keys which have one, in file order.
+     *
+     * @return the values keyed by key, or null if the file could not be read.
+     */
+    private @Nullable Map<String, byte[]> readValues(Collection<String> keys, String name) {
+        Map<String, byte[]> values = new ArrayMap<>();
+        List<BlobLocation> locationsToRead = new ArrayList<>();
+        List<String> keysToRead = new ArrayList<>();
+        for (String key : keys) {
+            BlobLocation location = getLocation(key, name);
+            if (location == null) continue;
+            if (location.pendingValue != null) {
+                values.put(key, location.pendingValue);
+            } else {
+                keysToRead.add(key);
+                locationsToRead.add(location);
+            }
+        }
+        if (keysToRead.isEmpty()) return values;
+        // Read in file order to keep the reads sequential.
+        Integer[] order = new Integer[keysToRead.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) ->
+                Long.compare(locationsToRead.get(a).offset, locationsToRead.get(b).offset));
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "r")) {
+            for (int i : order) {
+                values.put(keysToRead.get(i), readBlob(file, locationsToRead.get(i)));
+            }
+        } catch (IOException e) {
+            handleException(e);
+            return null;
+        }
+        return values;
+    }
+
+    @Override
+    public void write(String key, String name, byte[] value) {
+        if (mBroken) return;
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(payload);
+        int valueOffset;
+        try {
+            out.writeByte(RECORD_BLOB);
+            out.writeUTF(key);
+            out.writeUTF(name);
+            valueOffset = out.size();
+            out.write(value);
+        } catch (IOException e) {
+            handleException(e);
+            return;
+        }
+        // The header is written along with the first records.
+        long offset = Math.max(mFileLength, HEADER_SIZE) + mPendingRecords.size()
+                + RECORD_HEADER_SIZE + valueOffset;
+        BlobLocation location = new BlobLocation(offset, value.length,
+                RECORD_HEADER_SIZE + payload.size(), value);
+        mIndex.computeIfAbsent(key, k -> new ArrayMap<>()).put(name, location);
+        mPendingLocations.add(location);
+        appendPendingRecord(payload.toByteArray());
+    }
+
+    @Override
+    public void setCluster(String key, String cluster) {
+        if (mBroken) return;
+        if (cluster.equals(mClusterForKey.get(key))) return;
+        applySetCluster(key, cluster);
+        appendPendingRecord(encodeStrings(RECORD_CLUSTER, key, cluster));
+    }
+
+    @Override
+    public void removeCluster(String cluster) {
+        if (mBroken) return;
+        applyRemoveCluster(cluster);
+        appendPendingRecord(encodeStrings(RECORD_REMOVE_CLUSTER, cluster));
+    }
+
+    /**
+     * Appends the buffered records to the file.
+     */
+    public void flush() {
+        mFlushScheduled = false;
+        if (mBroken || mPendingRecords.size() == 0) return;
+        try (FileOutputStream out = new FileOutputStream(mFile, true)) {
+            FileUtils.chmod(mFile.getAbsolutePath(), FILE_MODE);
+            if (mFileLength == 0) {
+                new DataOutputStream(out).writeInt(MAGIC);
+                mFileLength = HEADER_SIZE;
+            }
+            mPendingRecords.writeTo(out);
+            out.getFD().sync();
+        } catch (IOException e) {
+            handleException(e);
+            return;
+        }
+        mNumAppends++;
+        mFileLength += mPendingRecords.size();
+        mPendingRecords.reset();
+        for (BlobLocation location : mPendingLocations) {
+            location.pendingValue = null;
+        }
+        mPendingLocations.clear();
+        if (mFileLength > COMPACTION_MIN_SIZE_BYTES && mFileLength > 2 * getLiveBytes()) {
+            compact();
+        }
+    }
+
+    /**
+     * Starts using the store file.
+     */
+    public void start() {
+        if (mStarted) {
+            Log.w(TAG, "Already started");
+            return;
+        }
+        load();
+        mStarted = true;
+        mWifiScoreCard.installMemoryStore(this);
+        mWifiHealthMonitor.installMemoryStoreSetUpDetectionAlarm(this);
+    }
+
+    /**
+     * Stops using the store file after performing any outstanding writes.
+     */
+    public void stop() {
+        if (!mStarted) return;
+        mWifiScoreCard.doWrites();
+        mWifiHealthMonitor.doWrites();
+        flush();
+        mStarted = false;
+    }
+
+    @VisibleForTesting
+    int getNumAppends() {
+        return mNumAppends;
+    }
+
+    @VisibleForTesting
+    long getFileLength() {
+        return mFileLength;
+    }
+
+    private @Nullable BlobLocation getLocation(String key, String name) {
+        ArrayMap<String, BlobLocation> locations = mIndex.get(key);
+        return locations == null ? null : locations.get(name);
+    }
+
+    private void appendPendingRecord(byte[] payload) {
+        writeRecord(mPendingRecords, payload);
+        if (!mFlushScheduled) {
+            mFlushScheduled = true;
+            mWifiThreadRunner.post(this::flush);
+        }
+    }
+
+    private void applySetCluster(String key, String cluster) {
+        String oldCluster = mClusterForKey.put(key, cluster);
+        if (oldCluster != null) {
+            Set<String> keys = mKeysForCluster.get(oldCluster);
+            keys.remove(key);
+            if (keys.isEmpty()) mKeysForCluster.remove(oldCluster);
+        }
+        mKeysForCluster.computeIfAbsent(cluster, c -> new ArraySet<>()).add(key);
+    }
+
+    private void applyRemoveCluster(String cluster) {
+        Set<String> keys = mKeysForCluster.remove(cluster);
+        if (keys == null) return;
+        for (String key : keys) {
+            mIndex.remove(key);
+            mClusterForKey.remove(key);
+        }
+    }
+
+    private long getLiveBytes() {
+        long liveBytes = HEADER_SIZE;
+        for (ArrayMap<String, BlobLocation> locations : mIndex.values()) {
+            for (int i = 0; i < locations.size(); i++) {
+                liveBytes += locations.valueAt(i).recordSize;
+            }
+        }
+        for (Map.Entry<String, String> entry : mClusterForKey.entrySet()) {
+            liveBytes += RECORD_HEADER_SIZE
+                    + encodeStrings(RECORD_CLUSTER, entry.getKey(), entry.getValue()).length;
+        }
+        return liveBytes;
+    }
+
+    /**
+     * Rewrites the file with only the live records, and updates the index to match.
+     */
+    private void compact() {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        Map<String, ArrayMap<String, BlobLocation>> newIndex = new HashMap<>();
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "r")) {
+            new DataOutputStream(data).writeInt(MAGIC);
+            for (Map.Entry<String, String> entry : mClusterForKey.entrySet()) {
+                writeRecord(data, encodeStrings(RECORD_CLUSTER, entry.getKey(), entry.getValue()));
+            }
+            for (Map.Entry<String, ArrayMap<String, BlobLocation>> entry : mIndex.entrySet()) {
+                ArrayMap<String, BlobLocation> locations = entry.getValue();
+                ArrayMap<String, BlobLocation> newLocations = new ArrayMap<>(locations.size());
+                for (int i = 0; i < locations.size(); i++) {
+                    BlobLocation location = locations.valueAt(i);
+                    byte[] blobRecord = readRecord(file, location);
+                    int valueOffset = location.recordSize - location.length;
+                    newLocations.put(locations.keyAt(i), new BlobLocation(
+                            data.size() + valueOffset, location.length, location.recordSize,
+                            null));
+                    data.write(blobRecord);
+                }
+                newIndex.put(entry.getKey(), newLocations);
+            }
+        } catch (IOException e) {
+            handleException(e);
+            return;
+        }
+        AtomicFile atomicFile = new AtomicFile(mFile);
+        FileOutputStream out = null;
+        try {
+            out = atomicFile.startWrite();
+            FileUtils.chmod(mFile.getAbsolutePath(), FILE_MODE);
+            data.writeTo(out);
+            atomicFile.finishWrite(out);
+        } catch (IOException e) {
+            if (out != null) {
+                atomicFile.failWrite(out);
+            }
+            handleException(e);
+            return;
+        }
+        Log.i(TAG, "Compacted " + mFile + " from " + mFileLength + " to " + data.size()
+                + " bytes");
+        mIndex.clear();
+        mIndex.putAll(newIndex);
+        mFileLength = data.size();
+    }
+
+    /**
+     * Builds the index from the file, discarding a torn or corrupted tail.
+     */
+    private void load() {
+        mIndex.clear();
+        mClusterForKey.clear();
+        mKeysForCluster.clear();
+        mFileLength = 0;
+        long validLength = 0;
+        long fileLength = mFile.length();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(mFile)))) {
+            if (in.readInt() != MAGIC) {
+                Log.e(TAG, "Unknown format of " + mFile + ", discarding it");
+            } else {
+                validLength = HEADER_SIZE;
+                CRC32 crc = new CRC32();
+                while (true) {
+                    int payloadLength = in.readInt();
+                    int expectedCrc = in.readInt();
+                    // Don't trust a corrupted length for the allocation below.
+                    if (payloadLength <= 0
+                            || payloadLength > fileLength - validLength - RECORD_HEADER_SIZE) {
+                        break;
+                    }
+                    byte[] payload = new byte[payloadLength];
+                    in.readFully(payload);
+                    crc.reset();
+                    crc.update(payload);
+                    if ((int) crc.getValue() != expectedCrc) break;
+                    replayRecord(payload, validLength + RECORD_HEADER_SIZE);
+                    validLength += RECORD_HEADER_SIZE + payloadLength;
+                }
+            }
+        } catch (FileNotFoundException e) {
+            return;
+        } catch (EOFException e) {
+            // Torn tail, handled below.
+        } catch (IOException e) {
+            handleException(e);
+            return;
+        }
+        if (validLength < fileLength) {
+            Log.w(TAG, "Discarding " + (fileLength - validLength) + " bytes at the end of "
+                    + mFile);
+            try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+                file.setLength(validLength);
+            } catch (IOException e) {
+                handleException(e);
+                return;
+            }
+        }
+        mFileLength = validLength;
+    }
+
+    private void replayRecord(byte[] payload, long payloadOffset) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        int type = in.readByte();
+        switch (type) {
+            case RECORD_BLOB:
+                String key = in.readUTF();
+                String name = in.readUTF();
+                int valueOffset = payload.length - in.available();
+                mIndex.computeIfAbsent(key, k -> new ArrayMap<>()).put(name,
+                        new BlobLocation(payloadOffset + valueOffset,
+                                payload.length - valueOffset,
+                                RECORD_HEADER_SIZE + payload.length, null));
+                break;
+            case RECORD_CLUSTER:
+                applySetCluster(in.readUTF(), in.readUTF());
+                break;
+            case RECORD_REMOVE_CLUSTER:
+                applyRemoveCluster(in.readUTF());
+                break;
+            default:
+                throw new IOException("Unknown record type " + type);
+        }
+    }
+
+    private static byte[] readBlob(RandomAccessFile file, BlobLocation location)
+            throws IOException {
+        byte[] value = new byte[location.length];
+        file.seek(location.offset);
+        file.readFully(value);
+        return value;
+    }
+
+    private static byte[] readRecord(RandomAccessFile file, BlobLocation location)
+            throws IOException {
+        byte[] record = new byte[location.recordSize];
+        file.seek(location.offset + location.length - location.recordSize);
+        file.readFully(record);
+        return record;
+    }
+
+    private static byte[] encodeStrings(int type, String... strings) {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(payload);
+        try {
+            out.writeByte(type);
+            for (String string : strings) {
+                out.writeUTF(string);
+            }
+        } catch (IOException e) {
+            // Not expected when writing to memory.
+            throw new IllegalStateException(e);
+        }
+        return payload.toByteArray();
+    }
+
+    private static void writeRecord(ByteArrayOutputStream out, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        DataOutputStream recordOut = new DataOutputStream(out);
+        try {
+            recordOut.writeInt(payload.length);
+            recordOut.writeInt((int) crc.getValue());
+            recordOut.write(payload);
+        } catch (IOException e) {
+            // Not expected when writing to memory.
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -64,7 +64,10 @@ final class MemoryStoreImpl implements WifiScoreCard.MemoryStore {
 
     @Override
     public void read(final String key, final String name, final BlobListener blobListener) {
-        if (mBroken) return;
+        if (mBroken) {
+            blobListener.onBlobRetrieved(null);
+            return;
+        }
         try {
             mIpMemoryStore.retrieveBlob(
                     key,
@@ -73,6 +76,7 @@ final class MemoryStoreImpl implements WifiScoreCard.MemoryStore {
                     new CatchAFallingBlob(key, blobListener));
         } catch (RuntimeException e) {
             handleException(e);
+            blobListener.onBlobRetrieved(null);
         }
     }
 
@@ -80,7 +84,8 @@ final class MemoryStoreImpl implements WifiScoreCard.MemoryStore {
      * Listens for a reply to a read request.
      *
      * Note that onBlobRetrieved() is called on a binder thread, so the
-     * provided blobListener must be prepared to deal with this.
+     * provided blobListener must be prepared to deal with this. The
+     * blobListener is always called, with null if the read failed.
      *
      */
     private static class CatchAFallingBlob
@@ -107,6 +112,7 @@ final class MemoryStoreImpl implements WifiScoreCard.MemoryStore {
                 mBlobListener.onBlobRetrieved(data.data);
             } else {
                 if (DBG) Log.e(TAG, "android.net.ipmemorystore.Status " + status);
+                mBlobListener.onBlobRetrieved(null);
             }
         }
     }
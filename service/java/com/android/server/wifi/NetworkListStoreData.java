@@ -25,9 +25,11 @@ import android.net.wifi.WifiConfiguration;
 import android.net.wifi.WifiConfiguration.NetworkSelectionStatus;
 import android.net.wifi.WifiEnterpriseConfig;
 import android.os.Process;
+import android.text.TextUtils;
 import android.util.Log;
 import android.util.Pair;
 
+import com.android.server.wifi.util.EncryptedData;
 import com.android.server.wifi.util.WifiConfigStoreEncryptionUtil;
 import com.android.server.wifi.util.XmlUtil;
 import com.android.server.wifi.util.XmlUtil.IpConfigurationXmlUtil;
@@ -43,7 +45,9 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This class performs serialization and parsing of XML data block that contain the list of WiFi
@@ -67,10 +71,68 @@ public abstract class NetworkListStoreData implements WifiConfigStore.StoreData
      */
     private List<WifiConfiguration> mConfigurations;
 
+    /**
+     * Whether the decryption of enterprise passwords is deferred until they are needed.
+     */
+    private boolean mDeferPasswordDecryption = false;
+
+    /**
+     * Enterprise passwords which have not been decrypted yet, keyed by the
+     * {@link WifiEnterpriseConfig} instance they belong to.
+     */
+    private final Map<WifiEnterpriseConfig, EncryptedData> mEncryptedPasswords =
+            new IdentityHashMap<>();
+
+    /**
+     * Encryption util of the store file the encrypted passwords were read from.
+     */
+    private WifiConfigStoreEncryptionUtil mEncryptionUtil;
+
     NetworkListStoreData(Context context) {
         mContext = context;
     }
 
+    /**
+     * Enable/disable deferring the decryption of enterprise passwords read from the store until
+     * they are needed, see {@link #decryptPassword(WifiConfiguration)}. Each decryption needs a
+     * round trip to keystore, while most saved networks are never connected to after boot.
+     *
+     * @param defer true to defer decryption, false to decrypt when parsing.
+     */
+    public void setDeferPasswordDecryption(boolean defer) {
+        mDeferPasswordDecryption = defer;
+    }
+
+    /**
+     * Check if the enterprise password of the provided network has not been decrypted yet.
+     *
+     * @param config internal network configuration returned by {@link #getConfigurations()}.
+     * @return true if the network has a password which is still encrypted, false otherwise.
+     */
+    public boolean hasEncryptedPassword(WifiConfiguration config) {
+        return config.enterpriseConfig != null
+                && mEncryptedPasswords.containsKey(config.enterpriseConfig);
+    }
+
+    /**
+     * Decrypt the enterprise password of the provided network, if its decryption was deferred.
+     * This must be invoked before the password is read or the network is copied.
+     *
+     * @param config internal network configuration returned by {@link #getConfigurations()}.
+     */
+    public void decryptPassword(WifiConfiguration config) {
+        if (config.enterpriseConfig == null) return;
+        EncryptedData encryptedPassword = mEncryptedPasswords.remove(config.enterpriseConfig);
+        if (encryptedPassword == null) return;
+        byte[] passwordBytes = mEncryptionUtil.decrypt(encryptedPassword);
+        if (passwordBytes == null) {
+            Log.wtf(TAG, "Decryption of password failed");
+            return;
+        }
+        config.enterpriseConfig.setFieldValue(
+                WifiEnterpriseConfig.PASSWORD_KEY, new String(passwordBytes));
+    }
+
     @Override
     public void serializeData(XmlSerializer out,
             @Nullable WifiConfigStoreEncryptionUtil encryptionUtil)
@@ -87,12 +149,14 @@ public abstract class NetworkListStoreData implements WifiConfigStore.StoreData
         if (in == null) {
             return;
         }
+        mEncryptionUtil = encryptionUtil;
         mConfigurations = parseNetworkList(in, outerTagDepth, version, encryptionUtil);
     }
 
     @Override
     public void resetData() {
         mConfigurations = null;
+        mEncryptedPasswords.clear();
     }
 
     @Override
@@ -108,6 +172,18 @@ public abstract class NetworkListStoreData implements WifiConfigStore.StoreData
 
     public void setConfigurations(List<WifiConfiguration> configs) {
         mConfigurations = configs;
+        if (mEncryptedPasswords.isEmpty()) return;
+        // Drop the encrypted passwords of networks which were removed.
+        Map<WifiEnterpriseConfig, EncryptedData> encryptedPasswords = new IdentityHashMap<>();
+        for (WifiConfiguration config : configs) {
+            if (config.enterpriseConfig == null) continue;
+            EncryptedData encryptedPassword = mEncryptedPasswords.get(config.enterpriseConfig);
+            if (encryptedPassword != null) {
+                encryptedPasswords.put(config.enterpriseConfig, encryptedPassword);
+            }
+        }
+        mEncryptedPasswords.clear();
+        mEncryptedPasswords.putAll(encryptedPasswords);
     }
 
     /**
@@ -178,7 +254,16 @@ public abstract class NetworkListStoreData implements WifiConfigStore.StoreData
                 && config.enterpriseConfig.getEapMethod() != WifiEnterpriseConfig.Eap.NONE) {
             XmlUtil.writeNextSectionStart(
                     out, XML_TAG_SECTION_HEADER_WIFI_ENTERPRISE_CONFIGURATION);
-            WifiEnterpriseConfigXmlUtil.writeToXml(out, config.enterpriseConfig, encryptionUtil);
+            // Write back a password which was never decrypted as is, unless it has been replaced.
+            EncryptedData encryptedPassword = null;
+            if (TextUtils.isEmpty(config.enterpriseConfig.getFieldValue(
+                    WifiEnterpriseConfig.PASSWORD_KEY))) {
+                encryptedPassword = mEncryptedPasswords.get(config.enterpriseConfig);
+            } else {
+                mEncryptedPasswords.remove(config.enterpriseConfig);
+            }
+            WifiEnterpriseConfigXmlUtil.writeToXml(
+                    out, config.enterpriseConfig, encryptionUtil, encryptedPassword);
             XmlUtil.writeNextSectionEnd(out, XML_TAG_SECTION_HEADER_WIFI_ENTERPRISE_CONFIGURATION);
         }
 
@@ -236,6 +321,8 @@ public abstract class NetworkListStoreData implements WifiConfigStore.StoreData
         NetworkSelectionStatus status = null;
         IpConfiguration ipConfiguration = null;
         WifiEnterpriseConfig enterpriseConfig = null;
+        EncryptedData[] encryptedPassword =
+                mDeferPasswordDecryption && encryptionUtil != null ? new EncryptedData[1] : null;
 
         String[] headerName = new String[1];
         while (XmlUtil.gotoNextSectionOrEnd(in, headerName, outerTagDepth)) {
@@ -271,7 +358,7 @@ public abstract class NetworkListStoreData implements WifiConfigStore.StoreData
                     enterpriseConfig =
                             WifiEnterpriseConfigXmlUtil.parseFromXml(in, outerTagDepth + 1,
                             version >= ENCRYPT_CREDENTIALS_CONFIG_STORE_DATA_VERSION,
-                            encryptionUtil);
+                            encryptionUtil, encryptedPassword);
                     break;
                 default:
                     Log.w(TAG, "Ignoring unknown tag under " + XML_TAG_SECTION_HEADER_NETWORK
@@ -322,6 +409,9 @@ public abstract class NetworkListStoreData implements WifiConfigStore.StoreData
         configuration.setIpConfiguration(ipConfiguration);
         if (enterpriseConfig != null) {
             configuration.enterpriseConfig = enterpriseConfig;
+            if (encryptedPassword != null && encryptedPassword[0] != null) {
+                mEncryptedPasswords.put(enterpriseConfig, encryptedPassword[0]);
+            }
         }
         return configuration;
     }
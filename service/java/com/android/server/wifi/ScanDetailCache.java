@@ -19,17 +19,21 @@ package com.android.server.wifi;
 import android.annotation.NonNull;
 import android.net.wifi.ScanResult;
 import android.net.wifi.WifiConfiguration;
+import android.util.Log;
 
 import com.android.server.wifi.hotspot2.NetworkDetail;
+import com.android.server.wifi.util.BssidUtil;
+import com.android.server.wifi.util.LongHashMap;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
 
 /**
  * Maps BSSIDs to their individual ScanDetails for a given WifiConfiguration.
+ *
+ * Entries are kept in an intrusive doubly linked list ordered by the time they were last seen
+ * (oldest first), and indexed by the BSSID packed into a 48-bit long. This makes put, get and
+ * eviction of the oldest entries O(1) and allows iteration in recency order without sorting.
  */
 public class ScanDetailCache {
 
@@ -39,14 +43,30 @@ public class ScanDetailCache {
     private final WifiConfiguration mConfig;
     private final int mMaxSize;
     private final int mTrimSize;
-    private final HashMap<String, ScanDetail> mMap;
+    private final LongHashMap<Entry> mMap;
+    // Sentinel of the circular list. |mHead.next| is the oldest entry, |mHead.prev| the newest.
+    private final Entry mHead;
+
+    /**
+     * Node of the time ordered list of scan details.
+     */
+    private static final class Entry {
+        final long key;
+        ScanDetail scanDetail;
+        Entry prev;
+        Entry next;
+
+        Entry(long key, ScanDetail scanDetail) {
+            this.key = key;
+            this.scanDetail = scanDetail;
+        }
+    }
 
     /**
      * Scan Detail cache associated with each configured network.
      *
      * The cache size is trimmed down to |trimSize| once it crosses the provided |maxSize|.
-     * Since this operation is relatively expensive, ensure that |maxSize| and |trimSize| are not
-     * too close to each other. |trimSize| should always be <= |maxSize|.
+     * |trimSize| should always be <= |maxSize|.
      *
      * @param config   WifiConfiguration object corresponding to the network.
      * @param maxSize  Max size desired for the cache.
@@ -56,16 +76,35 @@ public class ScanDetailCache {
         mConfig = config;
         mMaxSize = maxSize;
         mTrimSize = trimSize;
-        mMap = new HashMap(16, 0.75f);
+        mMap = new LongHashMap<>();
+        mHead = new Entry(BssidUtil.INVALID, null);
+        mHead.prev = mHead;
+        mHead.next = mHead;
     }
 
+    /**
+     * Add or replace the ScanDetail for its BSSID. This must also be invoked after the last seen
+     * time of a cached ScanDetail is updated, to keep the cache ordered.
+     */
     void put(ScanDetail scanDetail) {
-        // First check if we have reached |maxSize|. if yes, trim it down to |trimSize|.
-        if (mMap.size() >= mMaxSize) {
-            trim();
+        long key = BssidUtil.parse(scanDetail.getBSSIDString());
+        if (key == BssidUtil.INVALID) {
+            Log.w(TAG, "Ignoring scan detail with invalid BSSID: " + scanDetail.getBSSIDString());
+            return;
         }
-
-        mMap.put(scanDetail.getBSSIDString(), scanDetail);
+        Entry entry = mMap.get(key);
+        if (entry == null) {
+            // First check if we have reached |maxSize|. if yes, trim it down to |trimSize|.
+            if (mMap.size() >= mMaxSize) {
+                trim();
+            }
+            entry = new Entry(key, scanDetail);
+            mMap.put(key, entry);
+        } else {
+            unlink(entry);
+            entry.scanDetail = scanDetail;
+        }
+        insertBySeen(entry);
     }
 
     /**
@@ -86,11 +125,19 @@ public class ScanDetailCache {
      * @return {@code null} if no match ScanDetail is found.
      */
     public ScanDetail getScanDetail(@NonNull String bssid) {
-        return mMap.get(bssid);
+        long key = BssidUtil.parse(bssid);
+        if (key == BssidUtil.INVALID) return null;
+        Entry entry = mMap.get(key);
+        return entry == null ? null : entry.scanDetail;
     }
 
     void remove(@NonNull String bssid) {
-        mMap.remove(bssid);
+        long key = BssidUtil.parse(bssid);
+        if (key == BssidUtil.INVALID) return;
+        Entry entry = mMap.remove(key);
+        if (entry != null) {
+            unlink(entry);
+        }
     }
 
     int size() {
@@ -101,72 +148,62 @@ public class ScanDetailCache {
         return size() == 0;
     }
 
+    /**
+     * Returns the BSSIDs in the cache, most recently seen first.
+     */
     Collection<String> keySet() {
-        return mMap.keySet();
+        ArrayList<String> list = new ArrayList<>(mMap.size());
+        for (Entry e = mHead.prev; e != mHead; e = e.prev) {
+            list.add(e.scanDetail.getBSSIDString());
+        }
+        return list;
     }
 
+    /**
+     * Returns the ScanDetails in the cache, most recently seen first.
+     */
     Collection<ScanDetail> values() {
-        return mMap.values();
+        ArrayList<ScanDetail> list = new ArrayList<>(mMap.size());
+        for (Entry e = mHead.prev; e != mHead; e = e.prev) {
+            list.add(e.scanDetail);
+        }
+        return list;
     }
 
     /**
-     * Method to reduce the cache to |mTrimSize| size by removing the oldest entries.
-     * TODO: Investigate if this method can be further optimized.
+     * Insert the entry into the list keeping it ordered by last seen time. Scan details are
+     * normally added in the order they are seen, so this walks at most a few entries back from
+     * the newest end.
      */
-    private void trim() {
-        int currentSize = mMap.size();
-        if (currentSize < mTrimSize) {
-            return; // Nothing to trim
-        }
-        ArrayList<ScanDetail> list = new ArrayList<ScanDetail>(mMap.values());
-        if (list.size() != 0) {
-            // Sort by descending timestamp
-            Collections.sort(list, new Comparator() {
-                public int compare(Object o1, Object o2) {
-                    ScanDetail a = (ScanDetail) o1;
-                    ScanDetail b = (ScanDetail) o2;
-                    if (a.getSeen() > b.getSeen()) {
-                        return 1;
-                    }
-                    if (a.getSeen() < b.getSeen()) {
-                        return -1;
-                    }
-                    return a.getBSSIDString().compareTo(b.getBSSIDString());
-                }
-            });
-        }
-        for (int i = 0; i < currentSize - mTrimSize; i++) {
-            // Remove oldest results from scan cache
-            ScanDetail result = list.get(i);
-            mMap.remove(result.getBSSIDString());
+    private void insertBySeen(Entry entry) {
+        long seen = entry.scanDetail.getSeen();
+        Entry after = mHead.prev;
+        while (after != mHead && after.scanDetail.getSeen() > seen) {
+            after = after.prev;
         }
+        entry.prev = after;
+        entry.next = after.next;
+        after.next.prev = entry;
+        after.next = entry;
     }
 
-    /* @hide */
-    private ArrayList<ScanDetail> sort() {
-        ArrayList<ScanDetail> list = new ArrayList<ScanDetail>(mMap.values());
-        if (list.size() != 0) {
-            Collections.sort(list, new Comparator() {
-                public int compare(Object o1, Object o2) {
-                    ScanResult a = ((ScanDetail) o1).getScanResult();
-                    ScanResult b = ((ScanDetail) o2).getScanResult();
-                    if (a.seen > b.seen) {
-                        return -1;
-                    }
-                    if (a.seen < b.seen) {
-                        return 1;
-                    }
-                    if (a.level > b.level) {
-                        return -1;
-                    }
-                    if (a.level < b.level) {
-                        return 1;
-                    }
-                    return a.BSSID.compareTo(b.BSSID);
-                }
-            });
+    private static void unlink(Entry entry) {
+        entry.prev.next = entry.next;
+        entry.next.prev = entry.prev;
+        entry.prev = null;
+        entry.next = null;
+    }
+
+    /**
+     * Method to reduce the cache to |mTrimSize| size by removing the oldest entries.
+     */
+    private void trim() {
+        while (mMap.size() > mTrimSize && mHead.next != mHead) {
+            // Remove oldest results from scan cache
+            Entry oldest = mHead.next;
+            unlink(oldest);
+            mMap.remove(oldest.key);
         }
-        return list;
     }
 
     @Override
@@ -174,7 +211,7 @@ public class ScanDetailCache {
         StringBuilder sbuf = new StringBuilder();
         sbuf.append("Scan Cache:  ").append('\n');
 
-        ArrayList<ScanDetail> list = sort();
+        Collection<ScanDetail> list = values();
         long now_ms = System.currentTimeMillis();
         if (list.size() > 0) {
             for (ScanDetail scanDetail : list) {
@@ -27,6 +27,7 @@ import android.net.wifi.WifiInfo;
 import android.net.wifi.nl80211.DeviceWiphyCapabilities;
 import android.util.Log;
 
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.wifi.resources.R;
 
 /**
@@ -36,6 +37,7 @@ import com.android.wifi.resources.R;
 public class ThroughputPredictor {
     private static final String TAG = "WifiThroughputPredictor";
     private boolean mVerboseLoggingEnabled = false;
+    private boolean mLookupTablesEnabled = true;
 
     // Default value of channel utilization at 2G when channel utilization is not available from
     // BssLoad IE or from link layer stats
@@ -100,6 +102,37 @@ public class ThroughputPredictor {
     private static final int MAX_NUM_SPATIAL_STREAM_11N = 4;
     private static final int MAX_NUM_SPATIAL_STREAM_LEGACY = 1;
 
+    // Indices of the wifi standards in the per-standard tables below
+    private static final int STANDARD_INDEX_LEGACY = 0;
+    private static final int STANDARD_INDEX_11N = 1;
+    private static final int STANDARD_INDEX_11AC = 2;
+    private static final int STANDARD_INDEX_11AX = 3;
+    // 20MHz, 40MHz, 80MHz and 160MHz
+    private static final int NUM_CHANNEL_WIDTH_FACTORS = 4;
+    // Number of data tones per OFDM symbol, indexed by standard and channel width factor
+    private static final int[][] NUM_TONE_PER_SYM = {
+            {NUM_TONE_PER_SYM_LEGACY, NUM_TONE_PER_SYM_LEGACY, NUM_TONE_PER_SYM_LEGACY,
+                    NUM_TONE_PER_SYM_LEGACY},
+            {NUM_TONE_PER_SYM_11N_20MHZ, NUM_TONE_PER_SYM_11N_40MHZ, NUM_TONE_PER_SYM_11N_40MHZ,
+                    NUM_TONE_PER_SYM_11N_40MHZ},
+            {NUM_TONE_PER_SYM_11AC_20MHZ, NUM_TONE_PER_SYM_11AC_40MHZ,
+                    NUM_TONE_PER_SYM_11AC_80MHZ, NUM_TONE_PER_SYM_11AC_160MHZ},
+            {NUM_TONE_PER_SYM_11AX_20MHZ, NUM_TONE_PER_SYM_11AX_40MHZ,
+                    NUM_TONE_PER_SYM_11AX_80MHZ, NUM_TONE_PER_SYM_11AX_160MHZ}};
+    private static final int[] SYM_DURATION_NS = {SYM_DURATION_LEGACY_NS, SYM_DURATION_11N_NS,
+            SYM_DURATION_11AC_NS, SYM_DURATION_11AX_NS};
+    private static final int[] MAX_BITS_PER_TONE = {MAX_BITS_PER_TONE_LEGACY,
+            MAX_BITS_PER_TONE_11N, MAX_BITS_PER_TONE_11AC, MAX_BITS_PER_TONE_11AX};
+
+    // SNR range of the PHY rate table. Outside of it the bits per tone no longer change.
+    private static final int PHY_RATE_TABLE_SNR_DB_MIN = SNR_DB_TO_BIT_PER_TONE_LUT_MIN;
+    private static final int PHY_RATE_TABLE_SNR_DB_MAX =
+            MAX_BITS_PER_TONE_11AX / SNR_DB_TO_BIT_PER_TONE_HIGH_SNR_SCALE + 1;
+    // PHY rate in Mbps, indexed by standard, channel width factor, Nss - 1 and SNR
+    private static final int[][][][] PHY_RATE_MBPS_TABLE = buildPhyRateTable();
+    // Air time fraction, indexed by channel width factor and channel utilization
+    private static final int[][] AIR_TIME_FRACTION_TABLE = buildAirTimeFractionTable();
+
     private final Context mContext;
 
     ThroughputPredictor(Context context) {
@@ -266,9 +299,7 @@ public class ThroughputPredictor {
 
         // channel bandwidth in MHz = 20MHz * (2 ^ channelWidthFactor);
         int channelWidthFactor;
-        int numTonePerSym;
-        int symDurationNs;
-        int maxBitsPerTone;
+        int standardIndex;
         if (maxNumSpatialStream < 1) {
             Log.e(TAG, "maxNumSpatialStream < 1 due to wrong implementation. Overridden to 1");
             maxNumSpatialStream = 1;
@@ -276,69 +307,35 @@ public class ThroughputPredictor {
         if (wifiStandard == ScanResult.WIFI_STANDARD_UNKNOWN) {
             return WifiInfo.LINK_SPEED_UNKNOWN;
         } else if (wifiStandard == ScanResult.WIFI_STANDARD_LEGACY) {
-            numTonePerSym = NUM_TONE_PER_SYM_LEGACY;
+            standardIndex = STANDARD_INDEX_LEGACY;
             channelWidthFactor = 0;
             maxNumSpatialStream = MAX_NUM_SPATIAL_STREAM_LEGACY;
-            maxBitsPerTone = MAX_BITS_PER_TONE_LEGACY;
-            symDurationNs = SYM_DURATION_LEGACY_NS;
         } else if (wifiStandard == ScanResult.WIFI_STANDARD_11N) {
-            if (channelWidth == ScanResult.CHANNEL_WIDTH_20MHZ) {
-                numTonePerSym = NUM_TONE_PER_SYM_11N_20MHZ;
-                channelWidthFactor = 0;
-            } else {
-                numTonePerSym = NUM_TONE_PER_SYM_11N_40MHZ;
-                channelWidthFactor = 1;
-            }
+            standardIndex = STANDARD_INDEX_11N;
+            channelWidthFactor = (channelWidth == ScanResult.CHANNEL_WIDTH_20MHZ) ? 0 : 1;
             maxNumSpatialStream = Math.min(maxNumSpatialStream, MAX_NUM_SPATIAL_STREAM_11N);
-            maxBitsPerTone = MAX_BITS_PER_TONE_11N;
-            symDurationNs = SYM_DURATION_11N_NS;
         } else if (wifiStandard == ScanResult.WIFI_STANDARD_11AC) {
-            if (channelWidth == ScanResult.CHANNEL_WIDTH_20MHZ) {
-                numTonePerSym = NUM_TONE_PER_SYM_11AC_20MHZ;
-                channelWidthFactor = 0;
-            } else if (channelWidth == ScanResult.CHANNEL_WIDTH_40MHZ) {
-                numTonePerSym = NUM_TONE_PER_SYM_11AC_40MHZ;
-                channelWidthFactor = 1;
-            } else if (channelWidth == ScanResult.CHANNEL_WIDTH_80MHZ) {
-                numTonePerSym = NUM_TONE_PER_SYM_11AC_80MHZ;
-                channelWidthFactor = 2;
-            } else {
-                numTonePerSym = NUM_TONE_PER_SYM_11AC_160MHZ;
-                channelWidthFactor = 3;
-            }
+            standardIndex = STANDARD_INDEX_11AC;
+            channelWidthFactor = getChannelWidthFactor(channelWidth);
             maxNumSpatialStream = Math.min(maxNumSpatialStream, MAX_NUM_SPATIAL_STREAM_11AC);
-            maxBitsPerTone = MAX_BITS_PER_TONE_11AC;
-            symDurationNs = SYM_DURATION_11AC_NS;
         } else { // ScanResult.WIFI_STANDARD_11AX
-            if (channelWidth == ScanResult.CHANNEL_WIDTH_20MHZ) {
-                numTonePerSym = NUM_TONE_PER_SYM_11AX_20MHZ;
-                channelWidthFactor = 0;
-            } else if (channelWidth == ScanResult.CHANNEL_WIDTH_40MHZ) {
-                numTonePerSym = NUM_TONE_PER_SYM_11AX_40MHZ;
-                channelWidthFactor = 1;
-            } else if (channelWidth == ScanResult.CHANNEL_WIDTH_80MHZ) {
-                numTonePerSym = NUM_TONE_PER_SYM_11AX_80MHZ;
-                channelWidthFactor = 2;
-            } else {
-                numTonePerSym = NUM_TONE_PER_SYM_11AX_160MHZ;
-                channelWidthFactor = 3;
-            }
+            standardIndex = STANDARD_INDEX_11AX;
+            channelWidthFactor = getChannelWidthFactor(channelWidth);
             maxNumSpatialStream = Math.min(maxNumSpatialStream, MAX_NUM_SPATIAL_STREAM_11AX);
-            maxBitsPerTone = MAX_BITS_PER_TONE_11AX;
-            symDurationNs = SYM_DURATION_11AX_NS;
         }
-        // noiseFloorDbBoost = 10 * log10 * (2 ^ channelWidthFactor)
-        int noiseFloorDbBoost = TWO_IN_DB * channelWidthFactor;
-        int noiseFloorDbm = NOISE_FLOOR_20MHZ_DBM + noiseFloorDbBoost + SNR_MARGIN_DB;
-        int snrDb  = rssiDbm - noiseFloorDbm;
-
-        int bitPerTone = calculateBitPerTone(snrDb);
-        bitPerTone = Math.min(bitPerTone, maxBitsPerTone);
-
-        long bitPerToneTotal = bitPerTone * maxNumSpatialStream;
-        long numBitPerSym = bitPerToneTotal * numTonePerSym;
-        int phyRateMbps =  (int) ((numBitPerSym * MICRO_TO_NANO_RATIO)
-                / (symDurationNs * BIT_PER_TONE_SCALE));
+        int snrDb = rssiDbm - getNoiseFloorDbm(channelWidthFactor);
+
+        int phyRateMbps;
+        if (mLookupTablesEnabled) {
+            int snrIndex = Math.min(Math.max(snrDb, PHY_RATE_TABLE_SNR_DB_MIN),
+                    PHY_RATE_TABLE_SNR_DB_MAX) - PHY_RATE_TABLE_SNR_DB_MIN;
+            phyRateMbps = PHY_RATE_MBPS_TABLE[standardIndex][channelWidthFactor]
+                    [maxNumSpatialStream - 1][snrIndex];
+        } else {
+            phyRateMbps = calculatePhyRateMbps(NUM_TONE_PER_SYM[standardIndex][channelWidthFactor],
+                    SYM_DURATION_NS[standardIndex], MAX_BITS_PER_TONE[standardIndex],
+                    maxNumSpatialStream, snrDb);
+        }
 
         int airTimeFraction = calculateAirTimeFraction(channelUtilization, channelWidthFactor);
 
@@ -350,9 +347,7 @@ public class ThroughputPredictor {
                     .append(" RSSI: ").append(rssiDbm)
                     .append(" Nss: ").append(maxNumSpatialStream)
                     .append(" Mode: ").append(wifiStandard)
-                    .append(" symDur: ").append(symDurationNs)
                     .append(" snrDb ").append(snrDb)
-                    .append(" bitPerTone: ").append(bitPerTone)
                     .append(" rate: ").append(phyRateMbps)
                     .append(" throughput: ").append(throughputMbps)
                     .toString());
@@ -360,6 +355,78 @@ public class ThroughputPredictor {
         return throughputMbps;
     }
 
+    private static int getChannelWidthFactor(int channelWidth) {
+        if (channelWidth == ScanResult.CHANNEL_WIDTH_20MHZ) {
+            return 0;
+        } else if (channelWidth == ScanResult.CHANNEL_WIDTH_40MHZ) {
+            return 1;
+        } else if (channelWidth == ScanResult.CHANNEL_WIDTH_80MHZ) {
+            return 2;
+        } else {
+            return 3;
+        }
+    }
+
+    private static int getNoiseFloorDbm(int channelWidthFactor) {
+        // noiseFloorDbBoost = 10 * log10 * (2 ^ channelWidthFactor)
+        int noiseFloorDbBoost = TWO_IN_DB * channelWidthFactor;
+        return NOISE_FLOOR_20MHZ_DBM + noiseFloorDbBoost + SNR_MARGIN_DB;
+    }
+
+    private static int calculatePhyRateMbps(int numTonePerSym, int symDurationNs,
+            int maxBitsPerTone, int maxNumSpatialStream, int snrDb) {
+        int bitPerTone = Math.min(calculateBitPerTone(snrDb), maxBitsPerTone);
+        long bitPerToneTotal = bitPerTone * maxNumSpatialStream;
+        long numBitPerSym = bitPerToneTotal * numTonePerSym;
+        return (int) ((numBitPerSym * MICRO_TO_NANO_RATIO)
+                / (symDurationNs * BIT_PER_TONE_SCALE));
+    }
+
+    // Precompute the PHY rate of every (standard, channel width, Nss, SNR) combination.
+    // Below PHY_RATE_TABLE_SNR_DB_MIN the bits per tone are 0, and above
+    // PHY_RATE_TABLE_SNR_DB_MAX they are capped for every standard, so clamping the SNR to
+    // this range gives the same result as the calculation.
+    private static int[][][][] buildPhyRateTable() {
+        int[][][][] table = new int[NUM_TONE_PER_SYM.length][NUM_CHANNEL_WIDTH_FACTORS]
+                [MAX_NUM_SPATIAL_STREAM_11AX]
+                [PHY_RATE_TABLE_SNR_DB_MAX - PHY_RATE_TABLE_SNR_DB_MIN + 1];
+        for (int standard = 0; standard < table.length; standard++) {
+            for (int widthFactor = 0; widthFactor < NUM_CHANNEL_WIDTH_FACTORS; widthFactor++) {
+                for (int nss = 1; nss <= MAX_NUM_SPATIAL_STREAM_11AX; nss++) {
+                    int[] row = table[standard][widthFactor][nss - 1];
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] = calculatePhyRateMbps(NUM_TONE_PER_SYM[standard][widthFactor],
+                                SYM_DURATION_NS[standard], MAX_BITS_PER_TONE[standard], nss,
+                                i + PHY_RATE_TABLE_SNR_DB_MIN);
+                    }
+                }
+            }
+        }
+        return table;
+    }
+
+    // Precompute the air time fraction of every (channel width, channel utilization) pair.
+    private static int[][] buildAirTimeFractionTable() {
+        int[][] table = new int[NUM_CHANNEL_WIDTH_FACTORS]
+                [MAX_CHANNEL_UTILIZATION - MIN_CHANNEL_UTILIZATION + 1];
+        for (int widthFactor = 0; widthFactor < NUM_CHANNEL_WIDTH_FACTORS; widthFactor++) {
+            for (int i = 0; i < table[widthFactor].length; i++) {
+                table[widthFactor][i] = calculateAirTimeFractionInternal(
+                        i + MIN_CHANNEL_UTILIZATION, widthFactor);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Enable/Disable the precomputed lookup tables. When disabled, the throughput is
+     * calculated from scratch for every prediction, to check the tables against.
+     */
+    @VisibleForTesting
+    void setLookupTablesEnabled(boolean enabled) {
+        mLookupTablesEnabled = enabled;
+    }
+
     // Calculate the number of bits per tone based on the input of SNR in dB
     // The output is scaled up by BIT_PER_TONE_SCALE for integer representation
     private static int calculateBitPerTone(int snrDb) {
@@ -418,6 +485,21 @@ public class ThroughputPredictor {
     // MAX_CHANNEL_UTILIZATION for integer representation. It is calculated as
     // (1 - channelUtilization / MAX_CHANNEL_UTILIZATION) * MAX_CHANNEL_UTILIZATION
     private int calculateAirTimeFraction(int channelUtilization, int channelWidthFactor) {
+        // The callers predicting the throughput of a connection may pass an invalid
+        // utilization, which is out of the range of the table.
+        int airTimeFraction = mLookupTablesEnabled && isValidUtilizationRatio(channelUtilization)
+                ? AIR_TIME_FRACTION_TABLE[channelWidthFactor]
+                        [channelUtilization - MIN_CHANNEL_UTILIZATION]
+                : calculateAirTimeFractionInternal(channelUtilization, channelWidthFactor);
+        if (mVerboseLoggingEnabled) {
+            Log.d(TAG, " airTime20: " + (MAX_CHANNEL_UTILIZATION - channelUtilization)
+                    + " airTime: " + airTimeFraction);
+        }
+        return airTimeFraction;
+    }
+
+    private static int calculateAirTimeFractionInternal(int channelUtilization,
+            int channelWidthFactor) {
         int airTimeFraction20MHz = MAX_CHANNEL_UTILIZATION - channelUtilization;
         int airTimeFraction = airTimeFraction20MHz;
         // For the cases of 40MHz or above, need to take
@@ -427,9 +509,6 @@ public class ThroughputPredictor {
             airTimeFraction *= airTimeFraction;
             airTimeFraction /= MAX_CHANNEL_UTILIZATION;
         }
-        if (mVerboseLoggingEnabled) {
-            Log.d(TAG, " airTime20: " + airTimeFraction20MHz + " airTime: " + airTimeFraction);
-        }
         return airTimeFraction;
     }
 }
@@ -342,6 +342,175 @@ public class WifiCandidates {
         }
     }
 
+    /**
+     * Scorecard events whose statistics are captured by {@link #getCandidatesSnapshot()}.
+     *
+     * Scorers evaluated on a snapshot only see the statistics of these events.
+     */
+    private static final WifiScoreCardProto.Event[] SNAPSHOT_EVENTS = {
+            WifiScoreCardProto.Event.SIGNAL_POLL,
+    };
+
+    /**
+     * An immutable copy of a candidate, safe to read from any thread.
+     *
+     * The scorecard statistics are captured when the snapshot is taken, because the scorecard
+     * may only be accessed from the wifi thread.
+     */
+    private static class SnapshotCandidate implements Candidate {
+        private final Key mKey;
+        private final @WifiNetworkSelector.NetworkNominator.NominatorId int mNominatorId;
+        private final int mScanRssi;
+        private final int mFrequency;
+        private final double mLastSelectionWeight;
+        private final boolean mIsCurrentNetwork;
+        private final boolean mIsCurrentBssid;
+        private final boolean mIsMetered;
+        private final boolean mHasNoInternetAccess;
+        private final boolean mIsNoInternetAccessExpected;
+        private final boolean mIsOpenNetwork;
+        private final boolean mPasspoint;
+        private final boolean mEphemeral;
+        private final boolean mTrusted;
+        private final boolean mCarrierOrPrivileged;
+        private final int mPredictedThroughputMbps;
+        private final int mEstimatedPercentInternetAvailability;
+        private final WifiScoreCardProto.Signal[] mEventStatistics;
+        private final String mDescription;
+
+        SnapshotCandidate(Candidate candidate) {
+            mKey = candidate.getKey();
+            mNominatorId = candidate.getNominatorId();
+            mScanRssi = candidate.getScanRssi();
+            mFrequency = candidate.getFrequency();
+            mLastSelectionWeight = candidate.getLastSelectionWeight();
+            mIsCurrentNetwork = candidate.isCurrentNetwork();
+            mIsCurrentBssid = candidate.isCurrentBssid();
+            mIsMetered = candidate.isMetered();
+            mHasNoInternetAccess = candidate.hasNoInternetAccess();
+            mIsNoInternetAccessExpected = candidate.isNoInternetAccessExpected();
+            mIsOpenNetwork = candidate.isOpenNetwork();
+            mPasspoint = candidate.isPasspoint();
+            mEphemeral = candidate.isEphemeral();
+            mTrusted = candidate.isTrusted();
+            mCarrierOrPrivileged = candidate.isCarrierOrPrivileged();
+            mPredictedThroughputMbps = candidate.getPredictedThroughputMbps();
+            mEstimatedPercentInternetAvailability =
+                    candidate.getEstimatedPercentInternetAvailability();
+            mEventStatistics = new WifiScoreCardProto.Signal[SNAPSHOT_EVENTS.length];
+            for (int i = 0; i < SNAPSHOT_EVENTS.length; i++) {
+                mEventStatistics[i] = candidate.getEventStatistics(SNAPSHOT_EVENTS[i]);
+            }
+            mDescription = candidate.toString();
+        }
+
+        @Override
+        public Key getKey() {
+            return mKey;
+        }
+
+        @Override
+        public int getNetworkConfigId() {
+            return mKey.networkId;
+        }
+
+        @Override
+        public boolean isOpenNetwork() {
+            return mIsOpenNetwork;
+        }
+
+        @Override
+        public boolean isPasspoint() {
+            return mPasspoint;
+        }
+
+        @Override
+        public boolean isEphemeral() {
+            return mEphemeral;
+        }
+
+        @Override
+        public boolean isTrusted() {
+            return mTrusted;
+        }
+
+        @Override
+        public boolean isCarrierOrPrivileged() {
+            return mCarrierOrPrivileged;
+        }
+
+        @Override
+        public boolean isMetered() {
+            return mIsMetered;
+        }
+
+        @Override
+        public boolean hasNoInternetAccess() {
+            return mHasNoInternetAccess;
+        }
+
+        @Override
+        public boolean isNoInternetAccessExpected() {
+            return mIsNoInternetAccessExpected;
+        }
+
+        @Override
+        public @WifiNetworkSelector.NetworkNominator.NominatorId int getNominatorId() {
+            return mNominatorId;
+        }
+
+        @Override
+        public double getLastSelectionWeight() {
+            return mLastSelectionWeight;
+        }
+
+        @Override
+        public boolean isCurrentNetwork() {
+            return mIsCurrentNetwork;
+        }
+
+        @Override
+        public boolean isCurrentBssid() {
+            return mIsCurrentBssid;
+        }
+
+        @Override
+        public int getScanRssi() {
+            return mScanRssi;
+        }
+
+        @Override
+        public int getFrequency() {
+            return mFrequency;
+        }
+
+        @Override
+        public int getPredictedThroughputMbps() {
+            return mPredictedThroughputMbps;
+        }
+
+        @Override
+        public int getEstimatedPercentInternetAvailability() {
+            return mEstimatedPercentInternetAvailability;
+        }
+
+        /**
+         * Returns the statistics captured when the snapshot was taken
+         */
+        @Override
+        public WifiScoreCardProto.Signal getEventStatistics(WifiScoreCardProto.Event event) {
+            for (int i = 0; i < SNAPSHOT_EVENTS.length; i++) {
+                if (SNAPSHOT_EVENTS[i] == event) return mEventStatistics[i];
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return mDescription;
+        }
+    }
+
     /**
      * Represents a scoring function
      */
@@ -558,6 +727,21 @@ public class WifiCandidates {
         return mCandidates.size();
     }
 
+    /**
+     * Returns the number of candidates whose scorecard entry is still being read from the
+     * memory store, so that they are scored without their history.
+     */
+    public int getNumCandidatesWithPendingScoreCardRead() {
+        int count = 0;
+        for (Candidate candidate : mCandidates.values()) {
+            if (candidate instanceof CandidateImpl
+                    && ((CandidateImpl) candidate).mPerBssid.isReadPending()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
     /**
      * Returns the candidates, grouped by network.
      */
@@ -582,6 +766,17 @@ public class WifiCandidates {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Returns an immutable copy of the Candidates, which may be scored off the wifi thread.
+     */
+    public List<Candidate> getCandidatesSnapshot() {
+        List<Candidate> snapshot = new ArrayList<>(mCandidates.size());
+        for (Candidate candidate : mCandidates.values()) {
+            snapshot.add(new SnapshotCandidate(candidate));
+        }
+        return snapshot;
+    }
+
     /**
      * Make a choice from among the candidates, using the provided scorer.
      *
@@ -32,7 +32,6 @@ import com.android.server.wifi.util.InformationElementUtil.BssLoad;
 import com.android.wifi.resources.R;
 
 import java.util.ArrayDeque;
-import java.util.Iterator;
 
 /**
  * This class collects channel stats over a Wifi Interface
@@ -72,7 +71,12 @@ public class WifiChannelUtilization {
     // where MIN_CHANNEL_UTILIZATION corresponds to ratio 0%
     // and MAX_CHANNEL_UTILIZATION corresponds to ratio 100%
     private SparseIntArray mChannelUtilizationMap = new SparseIntArray();
-    private ArrayDeque<SparseArray<ChannelStats>> mChannelStatsMapCache = new ArrayDeque<>();
+    // Each entry holds a copy of the channel stats of one reading. The entries are recycled
+    // when the cache rotates, since the caller may reuse the stats objects it passes in.
+    private ArrayDeque<WifiLinkLayerStats> mChannelStatsMapCache = new ArrayDeque<>();
+    // References returned when no suitable channel stats are found in the cache
+    private final ChannelStats mZeroChannelStats = new ChannelStats();
+    private final ChannelStats mCurrRadioOnTimeChannelStats = new ChannelStats();
     private long mLastChannelStatsMapTimeStamp;
     private int mLastChannelStatsMapMobilityState;
 
@@ -95,16 +99,17 @@ public class WifiChannelUtilization {
      */
     public void init(WifiLinkLayerStats wifiLinkLayerStats) {
         mChannelUtilizationMap.clear();
-        mChannelStatsMapCache.clear();
         mDeviceMobilityState = DEVICE_MOBILITY_STATE_UNKNOWN;
         mLastChannelStatsMapMobilityState = DEVICE_MOBILITY_STATE_UNKNOWN;
-        for (int i = 0; i < (CHANNEL_STATS_CACHE_SIZE - 1); ++i) {
-            mChannelStatsMapCache.addFirst(new SparseArray<>());
+        while (mChannelStatsMapCache.size() < CHANNEL_STATS_CACHE_SIZE) {
+            mChannelStatsMapCache.addFirst(new WifiLinkLayerStats());
+        }
+        for (WifiLinkLayerStats cachedStats : mChannelStatsMapCache) {
+            cachedStats.clearChannelStats();
         }
         if (wifiLinkLayerStats != null) {
-            mChannelStatsMapCache.addFirst(wifiLinkLayerStats.channelStatsMap);
-        } else {
-            mChannelStatsMapCache.addFirst(new SparseArray<>());
+            mChannelStatsMapCache.peekFirst().copyChannelStatsFrom(
+                    wifiLinkLayerStats.channelStatsMap);
         }
         mLastChannelStatsMapTimeStamp = mClock.getElapsedSinceBootMillis();
         if (sVerboseLoggingEnabled) {
@@ -235,17 +240,16 @@ public class WifiChannelUtilization {
      */
     private ChannelStats findChanStatsReference(int freq, int radioOnTimeMs) {
         // A dummy channelStats with the latest radioOnTimeMs.
-        ChannelStats channelStatsCurrRadioOnTime = new ChannelStats();
+        ChannelStats channelStatsCurrRadioOnTime = mCurrRadioOnTimeChannelStats;
         channelStatsCurrRadioOnTime.radioOnTimeMs = radioOnTimeMs;
-        Iterator iterator = mChannelStatsMapCache.iterator();
-        while (iterator.hasNext()) {
-            SparseArray<ChannelStats> channelStatsMap = (SparseArray<ChannelStats>) iterator.next();
+        for (WifiLinkLayerStats cachedStats : mChannelStatsMapCache) {
+            SparseArray<ChannelStats> channelStatsMap = cachedStats.channelStatsMap;
             // If the freq can't be found in current channelStatsMap, stop search because it won't
             // appear in older ones either due to the fact that channelStatsMap are accumulated
             // in HW and thus a recent reading should have channels no less than old readings.
             // Return a dummy channelStats with zero radioOnTimeMs
-            if (channelStatsMap == null || channelStatsMap.get(freq) == null) {
-                return new ChannelStats();
+            if (channelStatsMap.get(freq) == null) {
+                return mZeroChannelStats;
             }
             ChannelStats channelStats = channelStatsMap.get(freq);
             int radioOnTimeDiff = radioOnTimeMs - channelStats.radioOnTimeMs;
@@ -276,16 +280,21 @@ public class WifiChannelUtilization {
         boolean isLongTimeSinceLastUpdate =
                 (currTimeStamp - mLastChannelStatsMapTimeStamp) >= mCacheUpdateIntervalMinMs;
         if ((isLongTimeSinceLastUpdate && !remainStationary) || isChannelStatsMapCacheEmpty(freq)) {
-            mChannelStatsMapCache.addFirst(channelStatsMap);
-            mChannelStatsMapCache.removeLast();
+            WifiLinkLayerStats oldest = mChannelStatsMapCache.pollLast();
+            if (oldest != null) {
+                oldest.copyChannelStatsFrom(channelStatsMap);
+                mChannelStatsMapCache.addFirst(oldest);
+            }
             mLastChannelStatsMapTimeStamp = currTimeStamp;
             mLastChannelStatsMapMobilityState = mDeviceMobilityState;
         }
     }
 
     private boolean isChannelStatsMapCacheEmpty(int freq) {
-        SparseArray<ChannelStats> channelStatsMap = mChannelStatsMapCache.peekFirst();
-        if (channelStatsMap == null || channelStatsMap.size() == 0) return true;
+        WifiLinkLayerStats cachedStats = mChannelStatsMapCache.peekFirst();
+        if (cachedStats == null) return true;
+        SparseArray<ChannelStats> channelStatsMap = cachedStats.channelStatsMap;
+        if (channelStatsMap.size() == 0) return true;
         if (freq != UNKNOWN_FREQ && channelStatsMap.get(freq) == null) return true;
         return false;
     }
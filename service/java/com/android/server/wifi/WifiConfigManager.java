@@ -627,9 +627,16 @@ public class WifiConfigManager {
      */
     private WifiConfiguration createExternalWifiConfiguration(
             WifiConfiguration configuration, boolean maskPasswords, int targetUid) {
+        if (!maskPasswords) {
+            decryptPasswordIfNeeded(configuration);
+        }
         WifiConfiguration network = new WifiConfiguration(configuration);
         if (maskPasswords) {
             maskPasswordsInWifiConfiguration(network);
+            // The password is still encrypted, but it needs to be masked all the same.
+            if (hasEncryptedPassword(configuration)) {
+                network.enterpriseConfig.setPassword(PASSWORD_MASK);
+            }
         }
         if (targetUid != Process.WIFI_UID && targetUid != Process.SYSTEM_UID
                 && targetUid != configuration.creatorUid) {
@@ -641,6 +648,25 @@ public class WifiConfigManager {
         return network;
     }
 
+    /**
+     * Helper method to decrypt the enterprise password of the provided internal
+     * WifiConfiguration object, if its decryption was deferred when loading it from the store.
+     * This needs to be invoked before the object is copied or its password is read.
+     */
+    private void decryptPasswordIfNeeded(WifiConfiguration internalConfig) {
+        mNetworkListSharedStoreData.decryptPassword(internalConfig);
+        mNetworkListUserStoreData.decryptPassword(internalConfig);
+    }
+
+    /**
+     * Helper method to check if the enterprise password of the provided internal
+     * WifiConfiguration object has not been decrypted yet.
+     */
+    private boolean hasEncryptedPassword(WifiConfiguration internalConfig) {
+        return mNetworkListSharedStoreData.hasEncryptedPassword(internalConfig)
+                || mNetworkListUserStoreData.hasEncryptedPassword(internalConfig);
+    }
+
     /**
      * Returns whether MAC randomization is supported on this device.
      * @param config
@@ -685,6 +711,21 @@ public class WifiConfigManager {
         return getConfiguredNetworks(false, true, Process.WIFI_UID);
     }
 
+    /**
+     * Retrieves a read-only view of all the configured networks, without copying them.
+     *
+     * NOTE: This is only meant for internal callers which go through all the networks on every
+     * scan (e.g network selection). The returned objects are the internal ones, so they must
+     * never be modified, held on to or sent out of the wifi stack. Their passwords are not
+     * masked. Use {@link #getConfiguredNetworks()} for anything else.
+     *
+     * @return List of internal WifiConfiguration objects representing the networks.
+     */
+    public List<WifiConfiguration> getConfiguredNetworksView() {
+        // Snapshot the references, so that networks can be added/removed while iterating.
+        return Collections.unmodifiableList(new ArrayList<>(getInternalConfiguredNetworks()));
+    }
+
     /**
      * Retrieves the list of all configured networks with the passwords in plaintext.
      *
@@ -776,6 +817,7 @@ public class WifiConfigManager {
         if (config == null) {
             return null;
         }
+        decryptPasswordIfNeeded(config);
         return new WifiConfiguration(config);
     }
 
@@ -1133,6 +1175,7 @@ public class WifiConfigManager {
     private WifiConfiguration updateExistingInternalWifiConfigurationFromExternal(
             WifiConfiguration internalConfig, WifiConfiguration externalConfig, int uid,
             @Nullable String packageName) {
+        decryptPasswordIfNeeded(internalConfig);
         WifiConfiguration newInternalConfig = new WifiConfiguration(internalConfig);
 
         // Copy over all the public elements from the provided configuration.
@@ -2422,6 +2465,8 @@ public class WifiConfigManager {
                     result.level = (int) ((double) result.level * (1 - alpha)
                                         + (double) previousRssi * alpha);
                 }
+                // Move the entry to the most recently seen end of the cache.
+                scanDetailCache.put(scanDetail);
                 if (mVerboseLoggingEnabled) {
                     Log.v(TAG, "Updating scan detail cache freq=" + result.frequency
                             + " BSSID=" + result.BSSID
@@ -2490,8 +2535,10 @@ public class WifiConfigManager {
             // once both WifiConfiguration have been tried and thus once both default gateways
             // are known we will revisit the choice of linking them.
             if (scanDetailCache1 != null && scanDetailCache2 != null) {
+                // keySet() builds a new list, so only build the inner one once.
+                Collection<String> bssids2 = scanDetailCache2.keySet();
                 for (String abssid : scanDetailCache1.keySet()) {
-                    for (String bbssid : scanDetailCache2.keySet()) {
+                    for (String bbssid : bssids2) {
                         if (abssid.regionMatches(
                                 true, 0, bbssid, 0, LINK_CONFIGURATION_BSSID_MATCH_LENGTH)) {
                             // If first 16 ASCII characters of BSSID matches,
@@ -3132,6 +3179,7 @@ public class WifiConfigManager {
                     .doesUidBelongToCurrentUser(config.creatorUid)) {
                 legacyPasspointNetId.add(config.networkId);
                 // Migrate the legacy Passpoint configuration and add it to PasspointManager.
+                decryptPasswordIfNeeded(config);
                 if (!PasspointManager.addLegacyPasspointConfig(config)) {
                     Log.e(TAG, "Failed to migrate legacy Passpoint config: " + config.FQDN);
                 }
@@ -34,6 +34,8 @@ import android.util.Xml;
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.util.FastXmlSerializer;
 import com.android.internal.util.Preconditions;
+import com.android.server.wifi.util.BinaryXmlPullParser;
+import com.android.server.wifi.util.BinaryXmlSerializer;
 import com.android.server.wifi.util.EncryptedData;
 import com.android.server.wifi.util.Environment;
 import com.android.server.wifi.util.FileUtils;
@@ -206,6 +208,11 @@ public class WifiConfigStore {
      * Verbose logging flag.
      */
     private boolean mVerboseLoggingEnabled = false;
+    /**
+     * Flag to indicate if the store files should be written using the compact binary encoding.
+     * Reads always accept both encodings.
+     */
+    private boolean mBinaryFormatEnabled = false;
     /**
      * Flag to indicate if there is a buffered write pending.
      */
@@ -268,6 +275,17 @@ public class WifiConfigStore {
         mUserStores = userStores;
     }
 
+    /**
+     * Enable/disable writing the store files using the compact binary encoding instead of XML.
+     * Existing files in the other encoding are still read and will be converted on the next write.
+     * Note: {@link WifiBackupRestore} always uses XML, regardless of this setting.
+     *
+     * @param enabled true to write binary store files, false to write XML.
+     */
+    public void setBinaryFormatEnabled(boolean enabled) {
+        mBinaryFormatEnabled = enabled;
+    }
+
     /**
      * Register a {@link StoreData} to read/write data from/to a store. A {@link StoreData} is
      * responsible for a block of data in the store file, and provides serialization/deserialization
@@ -453,7 +471,8 @@ public class WifiConfigStore {
             throws XmlPullParserException, IOException {
         List<StoreData> storeDataList = retrieveStoreDataListForStoreFile(storeFile);
 
-        final XmlSerializer out = new FastXmlSerializer();
+        final XmlSerializer out = mBinaryFormatEnabled
+                ? new BinaryXmlSerializer() : new FastXmlSerializer();
         final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
         out.setOutput(outputStream, StandardCharsets.UTF_8.name());
 
@@ -738,7 +757,9 @@ public class WifiConfigStore {
                     storeFile.getEncryptionUtil());
             return;
         }
-        final XmlPullParser in = Xml.newPullParser();
+        // Detect the encoding from the data itself, so that switching formats is transparent.
+        final XmlPullParser in = BinaryXmlPullParser.isBinaryXml(dataBytes)
+                ? new BinaryXmlPullParser() : Xml.newPullParser();
         final ByteArrayInputStream inputStream = new ByteArrayInputStream(dataBytes);
         in.setInput(inputStream, StandardCharsets.UTF_8.name());
 
@@ -811,6 +832,7 @@ public class WifiConfigStore {
      */
     public void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
         pw.println("Dump of WifiConfigStore");
+        pw.println("WifiConfigStore - Binary format enabled: " + mBinaryFormatEnabled);
         pw.println("WifiConfigStore - Store File Begin ----");
         Stream.of(mSharedStores, mUserStores)
                 .flatMap(List::stream)
@@ -132,6 +132,7 @@ public class WifiConnectivityManager {
     private static final String TAG = "WifiConnectivityManager";
     private static final String ALL_SINGLE_SCAN_LISTENER = "AllSingleScanListener";
     private static final String PNO_SCAN_LISTENER = "PnoScanListener";
+    private static final String SCORECARD_PREFETCH_LISTENER = "ScoreCardPrefetchListener";
 
     private final Context mContext;
     private final ClientModeImpl mStateMachine;
@@ -177,12 +178,17 @@ public class WifiConnectivityManager {
     private boolean mDelayedPartialScanTimerSet = false;
     private boolean mWatchdogScanTimerSet = false;
 
+    // Candidates of the latest network selection if it picked no network while scorecard entries
+    // were still being loaded, re-scored once they are loaded.
+    private List<WifiCandidates.Candidate> mCandidatesPendingScoreCardPrefetch = null;
+
     // Used for Initial Scan metrics
     private boolean mFailedInitialPartialScan = false;
     private int mInitialPartialScanChannelCount;
 
     // Device configs
     private boolean mWaitForFullBandScanResults = false;
+    private final int mPartialScanChannelPredictionConfidencePercent;
 
     // Scanning Schedules
     // Default schedule used in case of invalid configuration
@@ -299,6 +305,7 @@ public class WifiConnectivityManager {
      */
     private boolean handleScanResults(List<ScanDetail> scanDetails, String listenerName,
             boolean isFullScan) {
+        mCandidatesPendingScoreCardPrefetch = null;
         mWifiChannelUtilization.refreshChannelStatsAndChannelUtilization(
                 mStateMachine.getWifiLinkLayerStats(), WifiChannelUtilization.UNKNOWN_FREQ);
 
@@ -340,6 +347,9 @@ public class WifiConnectivityManager {
             connectToNetwork(candidate);
             return true;
         } else {
+            if (mNetworkSelector.isScoreCardPrefetchPending()) {
+                mCandidatesPendingScoreCardPrefetch = candidates;
+            }
             if (mWifiState == WIFI_STATE_DISCONNECTED) {
                 mOpenNetworkNotifier.handleScanResults(
                         mNetworkSelector.getFilteredScanDetailsForOpenUnsavedNetworks());
@@ -784,6 +794,8 @@ public class WifiConnectivityManager {
         mClock = clock;
         mScoringParams = scoringParams;
         mConnectionAttemptTimeStamps = new LinkedList<>();
+        mPartialScanChannelPredictionConfidencePercent = Math.min(context.getResources().getInteger(
+                R.integer.config_wifiPartialScanChannelPredictionConfidencePercent), 100);
 
         // Listen to WifiConfigManager network update events
         mConfigManager.addOnNetworkUpdateListener(new OnNetworkUpdateListener());
@@ -793,9 +805,34 @@ public class WifiConnectivityManager {
         mBssidBlocklistMonitor = mWifiInjector.getBssidBlocklistMonitor();
         mWifiChannelUtilization = mWifiInjector.getWifiChannelUtilizationScan();
         mNetworkSelector.setWifiChannelUtilization(mWifiChannelUtilization);
+        mNetworkSelector.setScoreCardPrefetchListener(
+                () -> mEventHandler.post(this::handleScoreCardPrefetchCompleted));
         mWifiScoreCard = scoreCard;
     }
 
+    /**
+     * Re-scores the candidates of the latest network selection once the scorecard entries which
+     * were still being loaded during it are loaded. This is only done if that selection picked no
+     * network and no connection attempt is in progress, so that it cannot start a second one.
+     * The scan results and the selection are not counted again in the metrics.
+     */
+    private void handleScoreCardPrefetchCompleted() {
+        List<WifiCandidates.Candidate> candidates = mCandidatesPendingScoreCardPrefetch;
+        mCandidatesPendingScoreCardPrefetch = null;
+        if (candidates == null || !mWifiEnabled || !mAutoJoinEnabled) return;
+        if (mStateMachine.isSupplicantTransientState()) {
+            localLog(SCORECARD_PREFETCH_LISTENER
+                    + ": No re-evaluation because a connection attempt is in progress");
+            return;
+        }
+        localLog(SCORECARD_PREFETCH_LISTENER + ": re-evaluating the latest candidates");
+        WifiConfiguration candidate = mNetworkSelector.selectNetwork(candidates, false);
+        if (candidate != null) {
+            localLog(SCORECARD_PREFETCH_LISTENER + ":  WNS candidate-" + candidate.SSID);
+            connectToNetwork(candidate);
+        }
+    }
+
     /** Initialize single scanning schedules, and validate them */
     private int[] initializeScanningSchedule(int state) {
         int[] scheduleSec;
@@ -1009,7 +1046,32 @@ public class WifiConnectivityManager {
     private boolean addChannelFromWifiScoreCard(@NonNull Set<Integer> channelSet,
             @NonNull WifiConfiguration config, int maxCount, long ageInMillis) {
         WifiScoreCard.PerNetwork network = mWifiScoreCard.lookupNetwork(config.SSID);
-        for (Integer channel : network.getFrequencies(ageInMillis)) {
+        return addChannels(channelSet, config, maxCount, network.getFrequencies(ageInMillis));
+    }
+
+    /**
+     * Add the channels predicted from the connection history of the network into the channel set
+     * with a size limit, falling back to the recently seen channels of the network when there is
+     * not enough history or predictions are disabled.
+     * @see #addChannelFromWifiScoreCard(Set, WifiConfiguration, int, long)
+     */
+    private boolean addPredictedChannelFromWifiScoreCard(@NonNull Set<Integer> channelSet,
+            @NonNull WifiConfiguration config, int maxCount, long ageInMillis) {
+        if (mPartialScanChannelPredictionConfidencePercent > 0) {
+            WifiScoreCard.PerNetwork network = mWifiScoreCard.lookupNetwork(config.SSID);
+            List<Integer> channels = network.getPredictedFrequencies(
+                    mPartialScanChannelPredictionConfidencePercent / 100.0,
+                    mClock.getWallClockMillis());
+            if (channels != null) {
+                return addChannels(channelSet, config, maxCount, channels);
+            }
+        }
+        return addChannelFromWifiScoreCard(channelSet, config, maxCount, ageInMillis);
+    }
+
+    private boolean addChannels(@NonNull Set<Integer> channelSet,
+            @NonNull WifiConfiguration config, int maxCount, @NonNull List<Integer> channels) {
+        for (Integer channel : channels) {
             if (maxCount > 0 && channelSet.size() >= maxCount) {
                 localLog("addChannelFromWifiScoreCard: size limit reached for network:"
                         + config.SSID);
@@ -1037,8 +1099,8 @@ public class WifiConnectivityManager {
             channelSet.add(mWifiInfo.getFrequency());
         }
         // Then get channels for the network.
-        addChannelFromWifiScoreCard(channelSet, config, maxNumActiveChannelsForPartialScans,
-                CHANNEL_LIST_AGE_MS);
+        addPredictedChannelFromWifiScoreCard(channelSet, config,
+                maxNumActiveChannelsForPartialScans, CHANNEL_LIST_AGE_MS);
         return channelSet;
     }
 
@@ -1058,7 +1120,8 @@ public class WifiConnectivityManager {
         Set<Integer> channelSet = new HashSet<>();
 
         for (WifiConfiguration config : networks) {
-            if (!addChannelFromWifiScoreCard(channelSet, config, maxCount, ageInMillis)) {
+            if (!addPredictedChannelFromWifiScoreCard(channelSet, config, maxCount,
+                    ageInMillis)) {
                 return channelSet;
             }
         }
@@ -1703,6 +1766,7 @@ public class WifiConnectivityManager {
         }
 
         mWifiState = state;
+        mCandidatesPendingScoreCardPrefetch = null;
 
         // Reset BSSID of last connection attempt and kick off
         // the watchdog timer if entering disconnected state.
@@ -1894,6 +1958,7 @@ public class WifiConnectivityManager {
         mRunning = true;
         mLatestCandidates = null;
         mLatestCandidatesTimestampMs = 0;
+        mCandidatesPendingScoreCardPrefetch = null;
     }
 
     /**
@@ -1910,6 +1975,7 @@ public class WifiConnectivityManager {
         mWaitForFullBandScanResults = false;
         mLatestCandidates = null;
         mLatestCandidatesTimestampMs = 0;
+        mCandidatesPendingScoreCardPrefetch = null;
         mScanRestartCount = 0;
     }
 
@@ -17,6 +17,7 @@
 package com.android.server.wifi;
 
 import android.annotation.NonNull;
+import android.annotation.Nullable;
 import android.app.ActivityManager;
 import android.app.AlarmManager;
 import android.app.AppOpsManager;
@@ -53,12 +54,15 @@ import com.android.server.wifi.p2p.WifiP2pMetrics;
 import com.android.server.wifi.p2p.WifiP2pMonitor;
 import com.android.server.wifi.p2p.WifiP2pNative;
 import com.android.server.wifi.rtt.RttMetrics;
+import com.android.server.wifi.util.Environment;
 import com.android.server.wifi.util.LruConnectionTracker;
 import com.android.server.wifi.util.NetdWrapper;
 import com.android.server.wifi.util.SettingsMigrationDataHolder;
 import com.android.server.wifi.util.WifiPermissionsUtil;
 import com.android.server.wifi.util.WifiPermissionsWrapper;
+import com.android.wifi.resources.R;
 
+import java.io.File;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchProviderException;
@@ -91,6 +95,7 @@ public class WifiInjector {
     private final HandlerThread mWifiHandlerThread;
     private final HandlerThread mWifiP2pServiceHandlerThread;
     private final HandlerThread mPasspointProvisionerHandlerThread;
+    private final HandlerThread mNetworkSelectionExperimentHandlerThread;
     private final WifiTrafficPoller mWifiTrafficPoller;
     private final WifiCountryCode mCountryCode;
     private final BackupManagerProxy mBackupManagerProxy = new BackupManagerProxy();
@@ -145,6 +150,8 @@ public class WifiInjector {
     private final BaseWifiDiagnostics mWifiDiagnostics;
     private final WifiDataStall mWifiDataStall;
     private final WifiScoreCard mWifiScoreCard;
+    // Only created when the scorecard is persisted to a local file instead of IpMemoryStore.
+    @Nullable private final FileMemoryStore mFileMemoryStore;
     private final WifiNetworkSuggestionsManager mWifiNetworkSuggestionsManager;
     private final DppMetrics mDppMetrics;
     private final DppManager mDppManager;
@@ -215,6 +222,9 @@ public class WifiInjector {
         mPasspointProvisionerHandlerThread =
                 new HandlerThread("PasspointProvisionerHandlerThread");
         mPasspointProvisionerHandlerThread.start();
+        mNetworkSelectionExperimentHandlerThread = new HandlerThread(
+                "NetworkSelectionExperimentHandlerThread", Process.THREAD_PRIORITY_BACKGROUND);
+        mNetworkSelectionExperimentHandlerThread.start();
         WifiAwareMetrics awareMetrics = new WifiAwareMetrics(mClock);
         RttMetrics rttMetrics = new RttMetrics(mClock);
         mWifiP2pMetrics = new WifiP2pMetrics(mClock);
@@ -258,6 +268,8 @@ public class WifiInjector {
         // New config store
         mWifiConfigStore = new WifiConfigStore(mContext, wifiHandler, mClock, mWifiMetrics,
                 WifiConfigStore.createSharedFiles(mFrameworkFacade.isNiapModeOn(mContext)));
+        mWifiConfigStore.setBinaryFormatEnabled(mContext.getResources().getBoolean(
+                R.bool.config_wifiConfigStoreBinaryFormatEnabled));
         SubscriptionManager subscriptionManager =
                 mContext.getSystemService(SubscriptionManager.class);
         mWifiCarrierInfoManager = new WifiCarrierInfoManager(makeTelephonyManager(),
@@ -269,12 +281,19 @@ public class WifiInjector {
         mLruConnectionTracker = new LruConnectionTracker(MAX_RECENTLY_CONNECTED_NETWORK,
                 mContext);
         // Config Manager
+        boolean deferPasswordDecryption = mContext.getResources().getBoolean(
+                R.bool.config_wifiDeferEnterprisePasswordDecryption);
+        NetworkListSharedStoreData networkListSharedStoreData =
+                new NetworkListSharedStoreData(mContext);
+        networkListSharedStoreData.setDeferPasswordDecryption(deferPasswordDecryption);
+        NetworkListUserStoreData networkListUserStoreData = new NetworkListUserStoreData(mContext);
+        networkListUserStoreData.setDeferPasswordDecryption(deferPasswordDecryption);
         mWifiConfigManager = new WifiConfigManager(mContext, mClock,
                 mUserManager, mWifiCarrierInfoManager,
                 mWifiKeyStore, mWifiConfigStore, mWifiPermissionsUtil,
                 mWifiPermissionsWrapper, this,
-                new NetworkListSharedStoreData(mContext),
-                new NetworkListUserStoreData(mContext),
+                networkListSharedStoreData,
+                networkListUserStoreData,
                 new RandomizedMacStoreData(), mFrameworkFacade, wifiHandler, mDeviceConfigFacade,
                 mWifiScoreCard, mLruConnectionTracker);
         mSettingsConfigStore = new WifiSettingsConfigStore(context, wifiHandler,
@@ -290,6 +309,8 @@ public class WifiInjector {
         mWifiNetworkSelector = new WifiNetworkSelector(mContext, mWifiScoreCard, mScoringParams,
                 mWifiConfigManager, mClock, mConnectivityLocalLog, mWifiMetrics, mWifiNative,
                 mThroughputPredictor);
+        mWifiNetworkSelector.setExperimentHandler(
+                new Handler(mNetworkSelectionExperimentHandlerThread.getLooper()));
         CompatibilityScorer compatibilityScorer = new CompatibilityScorer(mScoringParams);
         mWifiNetworkSelector.registerCandidateScorer(compatibilityScorer);
         ScoreCardBasedScorer scoreCardBasedScorer = new ScoreCardBasedScorer(mScoringParams);
@@ -343,6 +364,14 @@ public class WifiInjector {
         mWifiHealthMonitor = new WifiHealthMonitor(mContext, this, mClock, mWifiConfigManager,
                 mWifiScoreCard, wifiHandler, mWifiNative, l2KeySeed, mDeviceConfigFacade);
         mWifiMetrics.setWifiHealthMonitor(mWifiHealthMonitor);
+        if (mContext.getResources().getBoolean(
+                R.bool.config_wifiScoreCardFileMemoryStoreEnabled)) {
+            mFileMemoryStore = new FileMemoryStore(
+                    new File(Environment.getWifiSharedDirectory(), FileMemoryStore.STORE_FILE_NAME),
+                    mWifiThreadRunner, mWifiScoreCard, mWifiHealthMonitor);
+        } else {
+            mFileMemoryStore = null;
+        }
         mClientModeImpl = new ClientModeImpl(mContext, mFrameworkFacade,
                 wifiLooper, mUserManager,
                 this, mBackupManagerProxy, mCountryCode, mWifiNative,
@@ -832,6 +861,15 @@ public class WifiInjector {
         return mWifiHealthMonitor;
     }
 
+    /**
+     * Returns the store persisting the scorecard to a local file, or null if IpMemoryStore is
+     * used instead.
+     */
+    @Nullable
+    public FileMemoryStore getFileMemoryStore() {
+        return mFileMemoryStore;
+    }
+
     public ThroughputPredictor getThroughputPredictor() {
         return mThroughputPredictor;
     }
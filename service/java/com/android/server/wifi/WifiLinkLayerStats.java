@@ -18,6 +18,7 @@ package com.android.server.wifi;
 
 import android.util.SparseArray;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 
 /**
@@ -145,6 +146,157 @@ public class WifiLinkLayerStats {
      */
     public long timeStampInMs;
 
+    // Storage kept across clear() so that refilling this object does not allocate
+    private final ArrayList<ChannelStats> mChannelStatsPool = new ArrayList<>();
+    private int mNumChannelStatsInUse = 0;
+    private int[] mSpareTxTimePerLevel;
+
+    /**
+     * Reset all the statistics to their initial values, keeping the allocated storage so that
+     * this object can be refilled in place by the next poll.
+     */
+    public void clear() {
+        version = null;
+        beacon_rx = 0;
+        rssi_mgmt = 0;
+        rxmpdu_be = 0;
+        txmpdu_be = 0;
+        lostmpdu_be = 0;
+        retries_be = 0;
+        rxmpdu_bk = 0;
+        txmpdu_bk = 0;
+        lostmpdu_bk = 0;
+        retries_bk = 0;
+        rxmpdu_vi = 0;
+        txmpdu_vi = 0;
+        lostmpdu_vi = 0;
+        retries_vi = 0;
+        rxmpdu_vo = 0;
+        txmpdu_vo = 0;
+        lostmpdu_vo = 0;
+        retries_vo = 0;
+        on_time = 0;
+        tx_time = 0;
+        if (tx_time_per_level != null) {
+            mSpareTxTimePerLevel = tx_time_per_level;
+            tx_time_per_level = null;
+        }
+        rx_time = 0;
+        on_time_scan = 0;
+        on_time_nan_scan = -1;
+        on_time_background_scan = -1;
+        on_time_roam_scan = -1;
+        on_time_pno_scan = -1;
+        on_time_hs20_scan = -1;
+        clearChannelStats();
+        timeStampInMs = 0;
+    }
+
+    /**
+     * Sets tx_time_per_level to an array of the given length, reusing the previous one if
+     * possible. The contents of the array are not defined.
+     */
+    public int[] obtainTxTimePerLevel(int length) {
+        if (tx_time_per_level != null && tx_time_per_level.length == length) {
+            return tx_time_per_level;
+        }
+        if (mSpareTxTimePerLevel != null && mSpareTxTimePerLevel.length == length) {
+            tx_time_per_level = mSpareTxTimePerLevel;
+        } else {
+            tx_time_per_level = new int[length];
+        }
+        mSpareTxTimePerLevel = null;
+        return tx_time_per_level;
+    }
+
+    /**
+     * Removes all the channel stats.
+     */
+    public void clearChannelStats() {
+        channelStatsMap.clear();
+        mNumChannelStatsInUse = 0;
+    }
+
+    /**
+     * Adds (or replaces) the channel stats of a frequency, reusing a pooled entry if possible.
+     */
+    public ChannelStats addChannelStats(int frequency, int radioOnTimeMs, int ccaBusyTimeMs) {
+        ChannelStats channelStats;
+        if (mNumChannelStatsInUse < mChannelStatsPool.size()) {
+            channelStats = mChannelStatsPool.get(mNumChannelStatsInUse);
+        } else {
+            channelStats = new ChannelStats();
+            mChannelStatsPool.add(channelStats);
+        }
+        mNumChannelStatsInUse++;
+        channelStats.frequency = frequency;
+        channelStats.radioOnTimeMs = radioOnTimeMs;
+        channelStats.ccaBusyTimeMs = ccaBusyTimeMs;
+        channelStatsMap.put(frequency, channelStats);
+        return channelStats;
+    }
+
+    /**
+     * Replaces the channel stats with a copy of the given ones.
+     */
+    public void copyChannelStatsFrom(SparseArray<ChannelStats> source) {
+        if (source == channelStatsMap) return;
+        clearChannelStats();
+        for (int i = 0; i < source.size(); i++) {
+            ChannelStats channelStats = source.valueAt(i);
+            ChannelStats copy = addChannelStats(source.keyAt(i), channelStats.radioOnTimeMs,
+                    channelStats.ccaBusyTimeMs);
+            copy.frequency = channelStats.frequency;
+        }
+    }
+
+    /**
+     * Makes this object a copy of the given stats, without sharing any mutable state with it.
+     */
+    public void copyFrom(WifiLinkLayerStats source) {
+        if (source == this) return;
+        version = source.version;
+        beacon_rx = source.beacon_rx;
+        rssi_mgmt = source.rssi_mgmt;
+        rxmpdu_be = source.rxmpdu_be;
+        txmpdu_be = source.txmpdu_be;
+        lostmpdu_be = source.lostmpdu_be;
+        retries_be = source.retries_be;
+        rxmpdu_bk = source.rxmpdu_bk;
+        txmpdu_bk = source.txmpdu_bk;
+        lostmpdu_bk = source.lostmpdu_bk;
+        retries_bk = source.retries_bk;
+        rxmpdu_vi = source.rxmpdu_vi;
+        txmpdu_vi = source.txmpdu_vi;
+        lostmpdu_vi = source.lostmpdu_vi;
+        retries_vi = source.retries_vi;
+        rxmpdu_vo = source.rxmpdu_vo;
+        txmpdu_vo = source.txmpdu_vo;
+        lostmpdu_vo = source.lostmpdu_vo;
+        retries_vo = source.retries_vo;
+        on_time = source.on_time;
+        tx_time = source.tx_time;
+        if (source.tx_time_per_level == null) {
+            if (tx_time_per_level != null) {
+                mSpareTxTimePerLevel = tx_time_per_level;
+                tx_time_per_level = null;
+            }
+        } else {
+            System.arraycopy(source.tx_time_per_level, 0,
+                    obtainTxTimePerLevel(source.tx_time_per_level.length), 0,
+                    source.tx_time_per_level.length);
+        }
+        rx_time = source.rx_time;
+        on_time_scan = source.on_time_scan;
+        on_time_nan_scan = source.on_time_nan_scan;
+        on_time_background_scan = source.on_time_background_scan;
+        on_time_roam_scan = source.on_time_roam_scan;
+        on_time_pno_scan = source.on_time_pno_scan;
+        on_time_hs20_scan = source.on_time_hs20_scan;
+        copyChannelStatsFrom(source.channelStatsMap);
+        timeStampInMs = source.timeStampInMs;
+    }
+
     @Override
     public String toString() {
         StringBuilder sbuf = new StringBuilder();
@@ -215,7 +215,9 @@ public class WifiMetrics {
     private Context mContext;
     private FrameworkFacade mFacade;
     private WifiDataStall mWifiDataStall;
-    private WifiLinkLayerStats mLastLinkLayerStats;
+    // Copy of the previous link layer stats, since the caller may reuse the object it passed.
+    private final WifiLinkLayerStats mLastLinkLayerStats = new WifiLinkLayerStats();
+    private boolean mHasLastLinkLayerStats = false;
     private WifiHealthMonitor mWifiHealthMonitor;
     private WifiScoreCard mWifiScoreCard;
     private String mLastBssid;
@@ -1425,14 +1427,15 @@ public class WifiMetrics {
         if (newStats == null) {
             return;
         }
-        if (mLastLinkLayerStats == null) {
-            mLastLinkLayerStats = newStats;
+        if (!mHasLastLinkLayerStats) {
+            mLastLinkLayerStats.copyFrom(newStats);
+            mHasLastLinkLayerStats = true;
             return;
         }
         if (!newLinkLayerStatsIsValid(mLastLinkLayerStats, newStats)) {
             // This could mean the radio chip is reset or the data is incorrectly reported.
             // Don't increment any counts and discard the possibly corrupt |newStats| completely.
-            mLastLinkLayerStats = null;
+            mHasLastLinkLayerStats = false;
             return;
         }
         mWifiLinkLayerUsageStats.loggingDurationMs +=
@@ -1452,7 +1455,7 @@ public class WifiMetrics {
                 (newStats.on_time_pno_scan - mLastLinkLayerStats.on_time_pno_scan);
         mWifiLinkLayerUsageStats.radioHs20ScanTimeMs +=
                 (newStats.on_time_hs20_scan - mLastLinkLayerStats.on_time_hs20_scan);
-        mLastLinkLayerStats = newStats;
+        mLastLinkLayerStats.copyFrom(newStats);
     }
 
     private boolean newLinkLayerStatsIsValid(WifiLinkLayerStats oldStats,
@@ -1916,6 +1919,25 @@ public class WifiMetrics {
         incrementWifiSystemScanStateCount(mWifiState, mScreenOn);
     }
 
+    /**
+     * Increment the count of oneshot scans started by the scanner. Concurrent oneshot scan
+     * requests are merged into a single scan.
+     */
+    public void incrementOneshotScanStartedCount() {
+        synchronized (mLock) {
+            mWifiLogProto.numOneshotScansStarted++;
+        }
+    }
+
+    /**
+     * Get the count of oneshot scans started by the scanner.
+     */
+    public int getOneshotScanStartedCount() {
+        synchronized (mLock) {
+            return mWifiLogProto.numOneshotScansStarted;
+        }
+    }
+
     /**
      * Increment the count of oneshot scans that include DFS channels.
      */
@@ -3266,6 +3288,8 @@ public class WifiMetrics {
                         + mWifiLogProto.numOneshotScans);
                 pw.println("mWifiLogProto.numOneshotHasDfsChannelScans="
                         + mWifiLogProto.numOneshotHasDfsChannelScans);
+                pw.println("mWifiLogProto.numOneshotScansStarted="
+                        + mWifiLogProto.numOneshotScansStarted);
                 pw.println("mWifiLogProto.numBackgroundScans="
                         + mWifiLogProto.numBackgroundScans);
                 pw.println("mWifiLogProto.numExternalAppOneshotScanRequests="
@@ -3440,6 +3464,10 @@ public class WifiMetrics {
                         + mWifiLogProto.num6GNetworkScanResults);
                 pw.println("mWifiLogProto.numBssidFilteredDueToMboAssocDisallowInd="
                         + mWifiLogProto.numBssidFilteredDueToMboAssocDisallowInd);
+                pw.println("mWifiLogProto.numNetworkSelectionCandidates="
+                        + mWifiLogProto.numNetworkSelectionCandidates);
+                pw.println("mWifiLogProto.numNetworkSelectionCandidatesWithPendingScoreCardRead="
+                        + mWifiLogProto.numNetworkSelectionCandidatesWithPendingScoreCardRead);
                 pw.println("mWifiLogProto.numConnectToNetworkSupportingMbo="
                         + mWifiLogProto.numConnectToNetworkSupportingMbo);
                 pw.println("mWifiLogProto.numConnectToNetworkSupportingOce="
@@ -6615,6 +6643,21 @@ public class WifiMetrics {
         }
     }
 
+    /**
+     * Add the candidates evaluated by a network selection.
+     * @param numCandidates number of candidates.
+     * @param numWithPendingScoreCardRead number of candidates whose score card entry was still
+     *        being read from the memory store.
+     */
+    public void addNetworkSelectionCandidates(int numCandidates,
+            int numWithPendingScoreCardRead) {
+        synchronized (mLock) {
+            mWifiLogProto.numNetworkSelectionCandidates += numCandidates;
+            mWifiLogProto.numNetworkSelectionCandidatesWithPendingScoreCardRead +=
+                    numWithPendingScoreCardRead;
+        }
+    }
+
     /**
      * Increment number of times force scan is triggered due to a
      * BSS transition management request frame from AP.
@@ -16,13 +16,13 @@
 
 package com.android.server.wifi;
 
+import android.annotation.Nullable;
 import android.net.wifi.SupplicantState;
 import android.net.wifi.WifiEnterpriseConfig;
 import android.net.wifi.WifiManager;
 import android.net.wifi.WifiSsid;
 import android.os.Handler;
 import android.os.Message;
-import android.util.ArraySet;
 import android.util.Log;
 import android.util.SparseArray;
 
@@ -34,9 +34,9 @@ import com.android.server.wifi.hotspot2.AnqpEvent;
 import com.android.server.wifi.hotspot2.IconEvent;
 import com.android.server.wifi.hotspot2.WnmData;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * Listen for events from the wpa_supplicant & wificond and broadcast them on
@@ -124,19 +124,30 @@ public class WifiMonitor {
         }
     }
 
-    private final Map<String, SparseArray<Set<Handler>>> mHandlerMap = new HashMap<>();
+    /*
+     * The handlers registered for each event of each interface. The maps and arrays are never
+     * modified once published: registration changes, which are rare, copy what they change
+     * under the WifiMonitor lock and publish the copy. The broadcast methods, which are called
+     * on the HIDL binder threads for every supplicant event, thus read a consistent table
+     * without ever waiting for the lock.
+     */
+    private volatile Map<String, SparseArray<Handler[]>> mHandlerMap = new HashMap<>();
+
+    /**
+     * Register the given |handler| for the event |what| of the interface |iface|.
+     */
     public synchronized void registerHandler(String iface, int what, Handler handler) {
-        SparseArray<Set<Handler>> ifaceHandlers = mHandlerMap.get(iface);
-        if (ifaceHandlers == null) {
-            ifaceHandlers = new SparseArray<>();
-            mHandlerMap.put(iface, ifaceHandlers);
-        }
-        Set<Handler> ifaceWhatHandlers = ifaceHandlers.get(what);
+        Handler[] ifaceWhatHandlers = getHandlers(iface, what);
         if (ifaceWhatHandlers == null) {
-            ifaceWhatHandlers = new ArraySet<>();
-            ifaceHandlers.put(what, ifaceWhatHandlers);
+            putHandlers(iface, what, new Handler[] {handler});
+            return;
+        }
+        if (indexOf(ifaceWhatHandlers, handler) >= 0) {
+            return;
         }
-        ifaceWhatHandlers.add(handler);
+        Handler[] newHandlers = Arrays.copyOf(ifaceWhatHandlers, ifaceWhatHandlers.length + 1);
+        newHandlers[ifaceWhatHandlers.length] = handler;
+        putHandlers(iface, what, newHandlers);
     }
 
     /**
@@ -146,18 +157,58 @@ public class WifiMonitor {
      * @param handler
      */
     public synchronized void deregisterHandler(String iface, int what, Handler handler) {
-        SparseArray<Set<Handler>> ifaceHandlers = mHandlerMap.get(iface);
-        if (ifaceHandlers == null) {
+        Handler[] ifaceWhatHandlers = getHandlers(iface, what);
+        if (ifaceWhatHandlers == null) {
             return;
         }
-        Set<Handler> ifaceWhatHandlers = ifaceHandlers.get(what);
-        if (ifaceWhatHandlers == null) {
+        int index = indexOf(ifaceWhatHandlers, handler);
+        if (index < 0) {
+            return;
+        }
+        if (ifaceWhatHandlers.length == 1) {
+            putHandlers(iface, what, null);
             return;
         }
-        ifaceWhatHandlers.remove(handler);
+        Handler[] newHandlers = new Handler[ifaceWhatHandlers.length - 1];
+        System.arraycopy(ifaceWhatHandlers, 0, newHandlers, 0, index);
+        System.arraycopy(ifaceWhatHandlers, index + 1, newHandlers, index,
+                newHandlers.length - index);
+        putHandlers(iface, what, newHandlers);
+    }
+
+    private @Nullable Handler[] getHandlers(String iface, int what) {
+        SparseArray<Handler[]> ifaceHandlers = mHandlerMap.get(iface);
+        return ifaceHandlers == null ? null : ifaceHandlers.get(what);
+    }
+
+    private static int indexOf(Handler[] handlers, Handler handler) {
+        for (int i = 0; i < handlers.length; i++) {
+            if (handlers[i] == handler) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Publishes a copy of the handler table with the handlers of the event |what| of |iface|
+     * replaced, or removed if |handlers| is null. The table of an interface is kept even when
+     * empty, so that its events are not sent to the other interfaces.
+     * Must be called with the WifiMonitor lock held.
+     */
+    private void putHandlers(String iface, int what, @Nullable Handler[] handlers) {
+        SparseArray<Handler[]> ifaceHandlers = mHandlerMap.get(iface);
+        ifaceHandlers = ifaceHandlers == null ? new SparseArray<>() : ifaceHandlers.clone();
+        if (handlers == null) {
+            ifaceHandlers.remove(what);
+        } else {
+            ifaceHandlers.put(what, handlers);
+        }
+        Map<String, SparseArray<Handler[]>> handlerMap = new HashMap<>(mHandlerMap);
+        handlerMap.put(iface, ifaceHandlers);
+        mHandlerMap = handlerMap;
     }
 
-    private final Map<String, Boolean> mMonitoringMap = new HashMap<>();
+    // Copied on write like mHandlerMap, since it is also read on every broadcast.
+    private volatile Map<String, Boolean> mMonitoringMap = new HashMap<>();
     private boolean isMonitoring(String iface) {
         Boolean val = mMonitoringMap.get(iface);
         if (val == null) {
@@ -174,8 +225,10 @@ public class WifiMonitor {
      * @param enabled true to enable, false to disable.
      */
     @VisibleForTesting
-    public void setMonitoring(String iface, boolean enabled) {
-        mMonitoringMap.put(iface, enabled);
+    public synchronized void setMonitoring(String iface, boolean enabled) {
+        Map<String, Boolean> monitoringMap = new HashMap<>(mMonitoringMap);
+        monitoringMap.put(iface, enabled);
+        mMonitoringMap = monitoringMap;
     }
 
     private void setMonitoringNone() {
@@ -221,7 +274,7 @@ public class WifiMonitor {
     /**
      * Similar functions to Handler#sendMessage that send the message to the registered handler
      * for the given interface and message what.
-     * All of these should be called with the WifiMonitor class lock
+     * These do not need the WifiMonitor class lock, they read the published handler table.
      */
     private void sendMessage(String iface, int what) {
         sendMessage(iface, Message.obtain(null, what));
@@ -244,17 +297,11 @@ public class WifiMonitor {
     }
 
     private void sendMessage(String iface, Message message) {
-        SparseArray<Set<Handler>> ifaceHandlers = mHandlerMap.get(iface);
+        Map<String, SparseArray<Handler[]>> handlerMap = mHandlerMap;
+        SparseArray<Handler[]> ifaceHandlers = handlerMap.get(iface);
         if (iface != null && ifaceHandlers != null) {
             if (isMonitoring(iface)) {
-                Set<Handler> ifaceWhatHandlers = ifaceHandlers.get(message.what);
-                if (ifaceWhatHandlers != null) {
-                    for (Handler handler : ifaceWhatHandlers) {
-                        if (handler != null) {
-                            sendMessage(handler, Message.obtain(message));
-                        }
-                    }
-                }
+                sendMessage(ifaceHandlers.get(message.what), message);
             } else {
                 if (mVerboseLoggingEnabled) {
                     Log.d(TAG, "Dropping event because (" + iface + ") is stopped");
@@ -264,14 +311,9 @@ public class WifiMonitor {
             if (mVerboseLoggingEnabled) {
                 Log.d(TAG, "Sending to all monitors because there's no matching iface");
             }
-            for (Map.Entry<String, SparseArray<Set<Handler>>> entry : mHandlerMap.entrySet()) {
+            for (Map.Entry<String, SparseArray<Handler[]>> entry : handlerMap.entrySet()) {
                 if (isMonitoring(entry.getKey())) {
-                    Set<Handler> ifaceWhatHandlers = entry.getValue().get(message.what);
-                    for (Handler handler : ifaceWhatHandlers) {
-                        if (handler != null) {
-                            sendMessage(handler, Message.obtain(message));
-                        }
-                    }
+                    sendMessage(entry.getValue().get(message.what), message);
                 }
             }
         }
@@ -279,6 +321,17 @@ public class WifiMonitor {
         message.recycle();
     }
 
+    private void sendMessage(@Nullable Handler[] handlers, Message message) {
+        if (handlers == null) {
+            return;
+        }
+        for (Handler handler : handlers) {
+            if (handler != null) {
+                sendMessage(handler, Message.obtain(message));
+            }
+        }
+    }
+
     private void sendMessage(Handler handler, Message message) {
         message.setTarget(handler);
         message.sendToTarget();
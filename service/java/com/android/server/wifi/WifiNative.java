@@ -20,6 +20,7 @@ import static android.net.wifi.WifiManager.WIFI_FEATURE_OWE;
 
 import android.annotation.IntDef;
 import android.annotation.NonNull;
+import android.annotation.Nullable;
 import android.net.MacAddress;
 import android.net.TrafficStats;
 import android.net.apf.ApfCapabilities;
@@ -2865,6 +2866,16 @@ public class WifiNative {
         return mWifiVendorHal.getWifiLinkLayerStats(ifaceName);
     }
 
+    /**
+     * Gets the latest link layer stats, refilling the given object if it is not null
+     * @param ifaceName Name of the interface.
+     * @param reuse stats object to overwrite, or null to allocate a new one
+     */
+    public WifiLinkLayerStats getWifiLinkLayerStats(@NonNull String ifaceName,
+            @Nullable WifiLinkLayerStats reuse) {
+        return mWifiVendorHal.getWifiLinkLayerStats(ifaceName, reuse);
+    }
+
     /**
      * Returns whether STA/AP concurrency is supported or not.
      */
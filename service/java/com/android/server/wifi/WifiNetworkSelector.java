@@ -27,6 +27,7 @@ import android.net.wifi.ScanResult;
 import android.net.wifi.SupplicantState;
 import android.net.wifi.WifiConfiguration;
 import android.net.wifi.WifiInfo;
+import android.os.Handler;
 import android.telephony.TelephonyManager;
 import android.text.TextUtils;
 import android.util.ArrayMap;
@@ -108,6 +109,11 @@ public class WifiNetworkSelector {
     private ThroughputPredictor mThroughputPredictor;
     private boolean mIsBluetoothConnected = false;
     private WifiChannelUtilization mWifiChannelUtilization;
+    // Handler for evaluating the non-active CandidateScorers, or null to evaluate them inline.
+    private Handler mExperimentHandler;
+    // Called once the scorecard entries still loading during a selection are loaded.
+    private Runnable mScoreCardPrefetchListener;
+    private boolean mScoreCardPrefetchPending = false;
 
     /**
      * Interface for WiFi Network Nominator
@@ -603,7 +609,8 @@ public class WifiNetworkSelector {
      * c) Log any disabled networks.
      */
     private void updateConfiguredNetworks() {
-        List<WifiConfiguration> configuredNetworks = mWifiConfigManager.getConfiguredNetworks();
+        List<WifiConfiguration> configuredNetworks =
+                mWifiConfigManager.getConfiguredNetworksView();
         if (configuredNetworks.size() == 0) {
             localLog("No configured networks.");
             return;
@@ -756,6 +763,7 @@ public class WifiNetworkSelector {
             boolean connected, boolean disconnected, boolean untrustedNetworkAllowed) {
         mFilteredNetworks.clear();
         mConnectableNetworks.clear();
+        mScoreCardPrefetchPending = false;
         if (scanDetails.size() == 0) {
             localLog("Empty connectivity scan result");
             return null;
@@ -791,6 +799,19 @@ public class WifiNetworkSelector {
             return null;
         }
 
+        // Load the scorecard entries of the BSSIDs not seen yet in one go. This does not wait
+        // for the reads: the candidates are scored with what is loaded, and the listener is told
+        // when the rest is loaded so that the selection can be re-evaluated.
+        if (mContext.getResources().getBoolean(R.bool.config_wifiScoreCardPrefetchEnabled)) {
+            WifiScoreCard.Prefetch prefetch =
+                    mWifiScoreCard.prefetch(mFilteredNetworks, mScoreCardPrefetchListener);
+            if (prefetch.getPendingReadCount() > 0) {
+                localLog("Scoring with " + prefetch.getPendingReadCount()
+                        + " scorecard reads pending");
+                mScoreCardPrefetchPending = true;
+            }
+        }
+
         WifiCandidates wifiCandidates = new WifiCandidates(mWifiScoreCard, mContext);
         if (currentNetwork != null) {
             wifiCandidates.setCurrent(currentNetwork.networkId, currentBssid);
@@ -845,6 +866,8 @@ public class WifiNetworkSelector {
             localLog("Connectable: " + mConnectableNetworks.size()
                     + " Candidates: " + wifiCandidates.size());
         }
+        mWifiMetrics.addNetworkSelectionCandidates(wifiCandidates.size(),
+                wifiCandidates.getNumCandidatesWithPendingScoreCardRead());
         return wifiCandidates.getCandidates();
     }
 
@@ -856,6 +879,19 @@ public class WifiNetworkSelector {
      */
     @NonNull
     public WifiConfiguration selectNetwork(List<WifiCandidates.Candidate> candidates) {
+        return selectNetwork(candidates, true);
+    }
+
+    /**
+     * Same as {@link #selectNetwork(List)}, but lets the caller skip the experiment scorers.
+     * @param candidates - Candidates to perferm network selection on.
+     * @param runExperimentScorers - false when re-scoring candidates whose selection was already
+     *        recorded in the metrics, so that it is not recorded twice.
+     * @return WifiConfiguration - the selected network, or null.
+     */
+    @NonNull
+    public WifiConfiguration selectNetwork(List<WifiCandidates.Candidate> candidates,
+            boolean runExperimentScorers) {
         if (candidates == null || candidates.size() == 0) {
             return null;
         }
@@ -882,48 +918,40 @@ public class WifiNetworkSelector {
             }
         }
 
-        ArrayMap<Integer, Integer> experimentNetworkSelections = new ArrayMap<>(); // for metrics
-
+        // Only the active scorer decides the connection; the others are evaluated for metrics.
         int selectedNetworkId = WifiConfiguration.INVALID_NETWORK_ID;
-
-        // Run all the CandidateScorers
         boolean legacyOverrideWanted = true;
+        List<WifiCandidates.CandidateScorer> experimentScorers =
+                new ArrayList<>(mCandidateScorers.size());
         for (WifiCandidates.CandidateScorer candidateScorer : mCandidateScorers.values()) {
-            WifiCandidates.ScoredCandidate choice;
-            try {
-                choice = wifiCandidates.choose(candidateScorer);
-            } catch (RuntimeException e) {
-                Log.wtf(TAG, "Exception running a CandidateScorer", e);
+            if (candidateScorer != activeScorer) {
+                if (runExperimentScorers) experimentScorers.add(candidateScorer);
                 continue;
             }
-            int networkId = choice.candidateKey == null
+            WifiCandidates.ScoredCandidate choice = runCandidateScorer(wifiCandidates,
+                    candidateScorer, " chooses ");
+            if (choice == null) continue;
+            legacyOverrideWanted = choice.userConnectChoiceOverride;
+            selectedNetworkId = choice.candidateKey == null
                     ? WifiConfiguration.INVALID_NETWORK_ID
                     : choice.candidateKey.networkId;
-            String chooses = " would choose ";
-            if (candidateScorer == activeScorer) {
-                chooses = " chooses ";
-                legacyOverrideWanted = choice.userConnectChoiceOverride;
-                selectedNetworkId = networkId;
-                updateChosenPasspointNetwork(choice);
-            }
-            String id = candidateScorer.getIdentifier();
-            int expid = experimentIdFromIdentifier(id);
-            localLog(id + chooses + networkId
-                    + " score " + choice.value + "+/-" + choice.err
-                    + " expid " + expid);
-            experimentNetworkSelections.put(expid, networkId);
+            updateChosenPasspointNetwork(choice);
         }
 
         // Update metrics about differences in the selections made by various methods
-        final int activeExperimentId = experimentIdFromIdentifier(activeScorer.getIdentifier());
-        for (Map.Entry<Integer, Integer> entry :
-                experimentNetworkSelections.entrySet()) {
-            int experimentId = entry.getKey();
-            if (experimentId == activeExperimentId) continue;
-            int thisSelectedNetworkId = entry.getValue();
-            mWifiMetrics.logNetworkSelectionDecision(experimentId, activeExperimentId,
-                    selectedNetworkId == thisSelectedNetworkId,
-                    groupedCandidates.size());
+        if (!experimentScorers.isEmpty()) {
+            final int activeExperimentId = experimentIdFromIdentifier(activeScorer.getIdentifier());
+            final int activeNetworkId = selectedNetworkId;
+            final int numNetworkChoices = groupedCandidates.size();
+            if (mExperimentHandler == null) {
+                runExperimentScorers(wifiCandidates, experimentScorers, activeExperimentId,
+                        activeNetworkId, numNetworkChoices);
+            } else {
+                final WifiCandidates snapshot = new WifiCandidates(mWifiScoreCard, mContext,
+                        wifiCandidates.getCandidatesSnapshot());
+                mExperimentHandler.post(() -> runExperimentScorers(snapshot, experimentScorers,
+                        activeExperimentId, activeNetworkId, numNetworkChoices));
+            }
         }
 
         // Get a fresh copy of WifiConfiguration reflecting any scan result updates
@@ -938,6 +966,57 @@ public class WifiNetworkSelector {
         return selectedNetwork;
     }
 
+    /**
+     * Runs a single CandidateScorer and logs its choice.
+     *
+     * @return the scored candidate, or null if the scorer failed.
+     */
+    private WifiCandidates.ScoredCandidate runCandidateScorer(WifiCandidates wifiCandidates,
+            WifiCandidates.CandidateScorer candidateScorer, String chooses) {
+        WifiCandidates.ScoredCandidate choice;
+        try {
+            choice = wifiCandidates.choose(candidateScorer);
+        } catch (RuntimeException e) {
+            Log.wtf(TAG, "Exception running a CandidateScorer", e);
+            return null;
+        }
+        int networkId = choice.candidateKey == null
+                ? WifiConfiguration.INVALID_NETWORK_ID
+                : choice.candidateKey.networkId;
+        String id = candidateScorer.getIdentifier();
+        localLog(id + chooses + networkId
+                + " score " + choice.value + "+/-" + choice.err
+                + " expid " + experimentIdFromIdentifier(id));
+        return choice;
+    }
+
+    /**
+     * Runs the non-active CandidateScorers and records whether they agree with the active one.
+     *
+     * This may run on the experiment handler, in which case the candidates must be a snapshot.
+     */
+    private void runExperimentScorers(WifiCandidates wifiCandidates,
+            List<WifiCandidates.CandidateScorer> experimentScorers, int activeExperimentId,
+            int activeNetworkId, int numNetworkChoices) {
+        ArrayMap<Integer, Integer> experimentNetworkSelections = new ArrayMap<>();
+        for (WifiCandidates.CandidateScorer candidateScorer : experimentScorers) {
+            WifiCandidates.ScoredCandidate choice = runCandidateScorer(wifiCandidates,
+                    candidateScorer, " would choose ");
+            if (choice == null) continue;
+            int networkId = choice.candidateKey == null
+                    ? WifiConfiguration.INVALID_NETWORK_ID
+                    : choice.candidateKey.networkId;
+            experimentNetworkSelections.put(
+                    experimentIdFromIdentifier(candidateScorer.getIdentifier()), networkId);
+        }
+        for (Map.Entry<Integer, Integer> entry : experimentNetworkSelections.entrySet()) {
+            int experimentId = entry.getKey();
+            if (experimentId == activeExperimentId) continue;
+            mWifiMetrics.logNetworkSelectionDecision(experimentId, activeExperimentId,
+                    activeNetworkId == entry.getValue(), numNetworkChoices);
+        }
+    }
+
     /**
      * Returns the ScanDetail given the candidate key, using the saved list of connectible networks.
      */
@@ -1044,6 +1123,15 @@ public class WifiNetworkSelector {
                 mIsBluetoothConnected);
     }
 
+    /**
+     * Set the handler on which the non-active CandidateScorers are evaluated, so that the
+     * network selection only waits for the active scorer. If null, all the scorers are run
+     * inline on the calling thread.
+     */
+    public void setExperimentHandler(@Nullable Handler handler) {
+        mExperimentHandler = handler;
+    }
+
     /**
      * Register a network nominator
      *
@@ -1104,6 +1192,22 @@ public class WifiNetworkSelector {
     private static final int ID_PREFIX = 42;
     private static final int MIN_SCORER_EXP_ID = ID_PREFIX * ID_SUFFIX_MOD;
 
+    /**
+     * Set the listener called when the scorecard entries which were still being loaded during
+     * the last network selection are loaded. It may be called on any thread.
+     */
+    public void setScoreCardPrefetchListener(@Nullable Runnable listener) {
+        mScoreCardPrefetchListener = listener;
+    }
+
+    /**
+     * Whether the last network selection scored candidates while their scorecard entries were
+     * still being loaded, in which case the prefetch listener is called once they are loaded.
+     */
+    public boolean isScoreCardPrefetchPending() {
+        return mScoreCardPrefetchPending;
+    }
+
     /**
      * Set Wifi channel utilization calculated from link layer stats
      */
@@ -36,7 +36,6 @@ import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.content.res.Resources;
 import android.graphics.drawable.Icon;
-import android.net.MacAddress;
 import android.net.NetworkScoreManager;
 import android.net.wifi.ISuggestionConnectionStatusListener;
 import android.net.wifi.ScanResult;
@@ -58,7 +57,9 @@ import android.view.WindowManager;
 
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.messages.nano.SystemMessageProto.SystemMessage;
+import com.android.server.wifi.util.BssidUtil;
 import com.android.server.wifi.util.ExternalCallbackTracker;
+import com.android.server.wifi.util.LongHashMap;
 import com.android.server.wifi.util.LruConnectionTracker;
 import com.android.server.wifi.util.WifiPermissionsUtil;
 import com.android.wifi.resources.R;
@@ -351,8 +352,8 @@ public class WifiNetworkSuggestionsManager {
      * <li>Adding/Removing to this set for scan result lookup is expensive. But, we expect scan
      * result lookup to happen much more often than apps modifying network suggestions.</li>
      */
-    private final Map<Pair<ScanResultMatchInfo, MacAddress>, Set<ExtendedWifiNetworkSuggestion>>
-            mActiveScanResultMatchInfoWithBssid = new HashMap<>();
+    private final LongHashMap<Map<ScanResultMatchInfo, Set<ExtendedWifiNetworkSuggestion>>>
+            mActiveScanResultMatchInfoWithBssid = new LongHashMap<>();
     /**
      * List of {@link WifiNetworkSuggestion} matching the current connected network.
      */
@@ -640,16 +641,17 @@ public class WifiNetworkSuggestionsManager {
                         extNetworkSuggestion.wns.wifiConfiguration);
         Set<ExtendedWifiNetworkSuggestion> extNetworkSuggestionsForScanResultMatchInfo;
         if (!TextUtils.isEmpty(extNetworkSuggestion.wns.wifiConfiguration.BSSID)) {
-            Pair<ScanResultMatchInfo, MacAddress> lookupPair =
-                    Pair.create(scanResultMatchInfo,
-                            MacAddress.fromString(
-                                    extNetworkSuggestion.wns.wifiConfiguration.BSSID));
-            extNetworkSuggestionsForScanResultMatchInfo =
-                    mActiveScanResultMatchInfoWithBssid.get(lookupPair);
+            long bssid = BssidUtil.parse(extNetworkSuggestion.wns.wifiConfiguration.BSSID);
+            Map<ScanResultMatchInfo, Set<ExtendedWifiNetworkSuggestion>> matchInfoMap =
+                    mActiveScanResultMatchInfoWithBssid.get(bssid);
+            if (matchInfoMap == null) {
+                matchInfoMap = new HashMap<>();
+                mActiveScanResultMatchInfoWithBssid.put(bssid, matchInfoMap);
+            }
+            extNetworkSuggestionsForScanResultMatchInfo = matchInfoMap.get(scanResultMatchInfo);
             if (extNetworkSuggestionsForScanResultMatchInfo == null) {
                 extNetworkSuggestionsForScanResultMatchInfo = new HashSet<>();
-                mActiveScanResultMatchInfoWithBssid.put(
-                        lookupPair, extNetworkSuggestionsForScanResultMatchInfo);
+                matchInfoMap.put(scanResultMatchInfo, extNetworkSuggestionsForScanResultMatchInfo);
             }
         } else {
             extNetworkSuggestionsForScanResultMatchInfo =
@@ -671,12 +673,11 @@ public class WifiNetworkSuggestionsManager {
                         extNetworkSuggestion.wns.wifiConfiguration);
         Set<ExtendedWifiNetworkSuggestion> extNetworkSuggestionsForScanResultMatchInfo;
         if (!TextUtils.isEmpty(extNetworkSuggestion.wns.wifiConfiguration.BSSID)) {
-            Pair<ScanResultMatchInfo, MacAddress> lookupPair =
-                    Pair.create(scanResultMatchInfo,
-                            MacAddress.fromString(
-                                    extNetworkSuggestion.wns.wifiConfiguration.BSSID));
+            long bssid = BssidUtil.parse(extNetworkSuggestion.wns.wifiConfiguration.BSSID);
+            Map<ScanResultMatchInfo, Set<ExtendedWifiNetworkSuggestion>> matchInfoMap =
+                    mActiveScanResultMatchInfoWithBssid.get(bssid);
             extNetworkSuggestionsForScanResultMatchInfo =
-                    mActiveScanResultMatchInfoWithBssid.get(lookupPair);
+                    matchInfoMap == null ? null : matchInfoMap.get(scanResultMatchInfo);
             // This should never happen because we should have done necessary error checks in
             // the parent method.
             if (extNetworkSuggestionsForScanResultMatchInfo == null) {
@@ -686,7 +687,10 @@ public class WifiNetworkSuggestionsManager {
             extNetworkSuggestionsForScanResultMatchInfo.remove(extNetworkSuggestion);
             // Remove the set from map if empty.
             if (extNetworkSuggestionsForScanResultMatchInfo.isEmpty()) {
-                mActiveScanResultMatchInfoWithBssid.remove(lookupPair);
+                matchInfoMap.remove(scanResultMatchInfo);
+                if (matchInfoMap.isEmpty()) {
+                    mActiveScanResultMatchInfoWithBssid.remove(bssid);
+                }
                 if (!mActiveScanResultMatchInfoWithNoBssid.containsKey(scanResultMatchInfo)) {
                     removeNetworkFromScoreCard(extNetworkSuggestion.wns.wifiConfiguration);
                     mLruConnectionTracker.removeNetwork(
@@ -1448,12 +1452,13 @@ public class WifiNetworkSuggestionsManager {
 
     private @Nullable Set<ExtendedWifiNetworkSuggestion>
             getNetworkSuggestionsForScanResultMatchInfo(
-            @NonNull ScanResultMatchInfo scanResultMatchInfo, @Nullable MacAddress bssid) {
+            @NonNull ScanResultMatchInfo scanResultMatchInfo, long bssid) {
         Set<ExtendedWifiNetworkSuggestion> extNetworkSuggestions = new HashSet<>();
-        if (bssid != null) {
+        if (bssid != BssidUtil.INVALID) {
+            Map<ScanResultMatchInfo, Set<ExtendedWifiNetworkSuggestion>> matchInfoMap =
+                    mActiveScanResultMatchInfoWithBssid.get(bssid);
             Set<ExtendedWifiNetworkSuggestion> matchingExtNetworkSuggestionsWithBssid =
-                    mActiveScanResultMatchInfoWithBssid.get(
-                            Pair.create(scanResultMatchInfo, bssid));
+                    matchInfoMap == null ? null : matchInfoMap.get(scanResultMatchInfo);
             if (matchingExtNetworkSuggestionsWithBssid != null) {
                 extNetworkSuggestions.addAll(matchingExtNetworkSuggestionsWithBssid);
             }
@@ -1526,7 +1531,7 @@ public class WifiNetworkSuggestionsManager {
             ScanResultMatchInfo scanResultMatchInfo =
                     ScanResultMatchInfo.fromScanResult(scanResult);
             extNetworkSuggestions = getNetworkSuggestionsForScanResultMatchInfo(
-                    scanResultMatchInfo,  MacAddress.fromString(scanResult.BSSID));
+                    scanResultMatchInfo, BssidUtil.parse(scanResult.BSSID));
         } catch (IllegalArgumentException e) {
             Log.e(TAG, "Failed to lookup network from scan result match info map", e);
         }
@@ -1572,7 +1577,7 @@ public class WifiNetworkSuggestionsManager {
                 ScanResultMatchInfo scanResultMatchInfo =
                         ScanResultMatchInfo.fromWifiConfiguration(wifiConfiguration);
                 extNetworkSuggestions = getNetworkSuggestionsForScanResultMatchInfo(
-                        scanResultMatchInfo, bssid == null ? null : MacAddress.fromString(bssid));
+                        scanResultMatchInfo, BssidUtil.parse(bssid));
             } catch (IllegalArgumentException e) {
                 Log.e(TAG, "Failed to lookup network from scan result match info map", e);
             }
@@ -1614,7 +1619,7 @@ public class WifiNetworkSuggestionsManager {
             }
             Set<ExtendedWifiNetworkSuggestion> extNetworkSuggestions =
                     getNetworkSuggestionsForScanResultMatchInfo(
-                            scanResultMatchInfo,  MacAddress.fromString(scanResult.BSSID));
+                            scanResultMatchInfo, BssidUtil.parse(scanResult.BSSID));
             if (extNetworkSuggestions == null || extNetworkSuggestions.isEmpty()) {
                 continue;
             }
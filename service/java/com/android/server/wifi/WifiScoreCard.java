@@ -34,12 +34,15 @@ import android.annotation.IntDef;
 import android.annotation.NonNull;
 import android.annotation.Nullable;
 import android.net.MacAddress;
+import android.net.wifi.ScanResult;
 import android.net.wifi.SupplicantState;
 import android.net.wifi.WifiManager;
 import android.util.ArrayMap;
 import android.util.Base64;
 import android.util.Log;
 import android.util.Pair;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
 import android.util.SparseLongArray;
 
 import com.android.internal.annotations.VisibleForTesting;
@@ -48,6 +51,7 @@ import com.android.server.wifi.BssidBlocklistMonitor.FailureReason;
 import com.android.server.wifi.WifiHealthMonitor.FailureStats;
 import com.android.server.wifi.proto.WifiScoreCardProto;
 import com.android.server.wifi.proto.WifiScoreCardProto.AccessPoint;
+import com.android.server.wifi.proto.WifiScoreCardProto.ConnectionFrequency;
 import com.android.server.wifi.proto.WifiScoreCardProto.ConnectionStats;
 import com.android.server.wifi.proto.WifiScoreCardProto.Event;
 import com.android.server.wifi.proto.WifiScoreCardProto.HistogramBucket;
@@ -57,9 +61,13 @@ import com.android.server.wifi.proto.WifiScoreCardProto.NetworkStats;
 import com.android.server.wifi.proto.WifiScoreCardProto.SecurityType;
 import com.android.server.wifi.proto.WifiScoreCardProto.Signal;
 import com.android.server.wifi.proto.WifiScoreCardProto.UnivariateStatistic;
+import com.android.server.wifi.util.BssidUtil;
+import com.android.server.wifi.util.CompactIntHistogram;
 import com.android.server.wifi.util.IntHistogram;
+import com.android.server.wifi.util.LongHashMap;
 import com.android.server.wifi.util.LruList;
 import com.android.server.wifi.util.NativeUtil;
+import com.android.server.wifi.util.ScanResultUtil;
 
 import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
@@ -70,10 +78,11 @@ import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import javax.annotation.concurrent.NotThreadSafe;
@@ -97,6 +106,7 @@ public class WifiScoreCard {
     boolean mPersistentHistograms = true;
 
     private static final int TARGET_IN_MEMORY_ENTRIES = 50;
+    private static final long DEFAULT_MAC_ADDRESS_KEY = BssidUtil.parse(DEFAULT_MAC_ADDRESS);
     private static final int UNKNOWN_REASON = -1;
 
     public static final String PER_BSSID_DATA_NAME = "scorecard.proto";
@@ -108,21 +118,27 @@ public class WifiScoreCard {
 
     private static final int MAX_FREQUENCIES_PER_SSID = 10;
 
+    // The day is split in this many parts for the connection frequency histograms.
+    @VisibleForTesting
+    static final int NUM_TIME_OF_DAY_BUCKETS = 4;
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+    // Connections made in the same part of the day weigh this much more in channel predictions.
+    private static final int SAME_TIME_OF_DAY_WEIGHT = 3;
+    // Counts of a time of day bucket are halved when one of them goes above this value.
+    private static final int MAX_CONNECTION_FREQUENCY_COUNT = 64;
+    @VisibleForTesting
+    static final int MIN_CONNECTIONS_FOR_CHANNEL_PREDICTION = 5;
+
     private final Clock mClock;
     private final String mL2KeySeed;
     private MemoryStore mMemoryStore;
     private final DeviceConfigFacade mDeviceConfigFacade;
 
+    // The RSSI histograms have one bucket per dBm in [RSSI_HISTOGRAM_MIN, RSSI_HISTOGRAM_MAX).
     @VisibleForTesting
-    static final int[] RSSI_BUCKETS = intsInRange(-100, -20);
-
-    private static int[] intsInRange(int min, int max) {
-        int[] a = new int[max - min + 1];
-        for (int i = 0; i < a.length; i++) {
-            a[i] = min + i;
-        }
-        return a;
-    }
+    static final int RSSI_HISTOGRAM_MIN = -100;
+    @VisibleForTesting
+    static final int RSSI_HISTOGRAM_MAX = -20;
 
     /** Our view of the memory store */
     public interface MemoryStore {
@@ -134,6 +150,15 @@ public class WifiScoreCard {
         void setCluster(String key, String cluster);
         /** Requests removal of all entries matching the cluster */
         void removeCluster(String cluster);
+        /**
+         * Requests a read of several keys, with an asynchronous reply for each of them. Stores
+         * able to batch reads should override this.
+         */
+        default void readAll(String name, Map<String, BlobListener> blobListeners) {
+            for (Map.Entry<String, BlobListener> entry : blobListeners.entrySet()) {
+                read(entry.getKey(), name, entry.getValue());
+            }
+        }
     }
     /** Asynchronous response to a read request */
     public interface BlobListener {
@@ -260,6 +285,16 @@ public class WifiScoreCard {
         return groupHintFromLong(groupIdHash);
     }
 
+    /**
+     * Computes the part of the day, in local time, of a wall clock time.
+     */
+    @VisibleForTesting
+    static int getTimeOfDayBucket(long wallClockMillis) {
+        long localMillis = wallClockMillis + TimeZone.getDefault().getOffset(wallClockMillis);
+        long millisOfDay = Math.floorMod(localMillis, MILLIS_PER_DAY);
+        return (int) (millisOfDay * NUM_TIME_OF_DAY_BUCKETS / MILLIS_PER_DAY);
+    }
+
     /**
      * Handle network disconnection or shutdown event
      */
@@ -361,6 +396,8 @@ public class WifiScoreCard {
      */
     public void noteIpConfiguration(@NonNull ExtendedWifiInfo wifiInfo) {
         updatePerBssid(Event.IP_CONFIGURATION_SUCCESS, wifiInfo);
+        lookupNetwork(wifiInfo.getSSID()).addConnectionFrequency(wifiInfo.getFrequency(),
+                mClock.getWallClockMillis());
         mAttemptingSwitch = false;
         doWrites();
     }
@@ -573,9 +610,8 @@ public class WifiScoreCard {
      * Clear the blocklist streak count for all APs that belong to this SSID.
      */
     public void resetBssidBlocklistStreakForSsid(@NonNull String ssid) {
-        Iterator<Map.Entry<MacAddress, PerBssid>> it = mApForBssid.entrySet().iterator();
-        while (it.hasNext()) {
-            PerBssid perBssid = it.next().getValue();
+        for (int i = 0; i < mApForBssid.size(); i++) {
+            PerBssid perBssid = mApForBssid.valueAt(i);
             if (!ssid.equals(perBssid.ssid)) {
                 continue;
             }
@@ -686,8 +722,8 @@ public class WifiScoreCard {
         private SecurityType mSecurityType = null;
         private int mNetworkAgentId = Integer.MIN_VALUE;
         private int mNetworkConfigId = Integer.MIN_VALUE;
-        private final Map<Pair<Event, Integer>, PerSignal>
-                mSignalForEventAndFrequency = new ArrayMap<>();
+        // Keyed by signalKey(event, frequency)
+        private final SparseArray<PerSignal> mSignalForEventAndFrequency = new SparseArray<>();
         PerBssid(String ssid, MacAddress bssid) {
             super(computeHashLong(ssid, bssid, mL2KeySeed));
             this.ssid = ssid;
@@ -716,7 +752,7 @@ public class WifiScoreCard {
         }
         PerSignal lookupSignal(Event event, int frequency) {
             finishPendingRead();
-            Pair<Event, Integer> key = new Pair<>(event, frequency);
+            int key = signalKey(event, frequency);
             PerSignal ans = mSignalForEventAndFrequency.get(key);
             if (ans == null) {
                 ans = new PerSignal(event, frequency);
@@ -754,8 +790,8 @@ public class WifiScoreCard {
             if (mSecurityType != null) {
                 builder.setSecurityType(mSecurityType);
             }
-            for (PerSignal sig: mSignalForEventAndFrequency.values()) {
-                builder.addEventStats(sig.toSignal());
+            for (int i = 0; i < mSignalForEventAndFrequency.size(); i++) {
+                builder.addEventStats(mSignalForEventAndFrequency.valueAt(i).toSignal());
             }
             return builder.build();
         }
@@ -776,11 +812,12 @@ public class WifiScoreCard {
                 }
             }
             for (Signal signal: ap.getEventStatsList()) {
-                Pair<Event, Integer> key = new Pair<>(signal.getEvent(), signal.getFrequency());
+                int key = signalKey(signal.getEvent(), signal.getFrequency());
                 PerSignal perSignal = mSignalForEventAndFrequency.get(key);
                 if (perSignal == null) {
                     mSignalForEventAndFrequency.put(key,
-                            new PerSignal(key.first, key.second).merge(signal));
+                            new PerSignal(signal.getEvent(), signal.getFrequency())
+                                    .merge(signal));
                     // No need to set changed for this, since we are in sync with what's stored
                 } else {
                     perSignal.merge(signal);
@@ -822,7 +859,8 @@ public class WifiScoreCard {
             int trials = 2;
             int successes = 1;
             // Aggregate over all of the frequencies
-            for (PerSignal s : mSignalForEventAndFrequency.values()) {
+            for (int i = 0; i < mSignalForEventAndFrequency.size(); i++) {
+                PerSignal s = mSignalForEventAndFrequency.valueAt(i);
                 switch (s.event) {
                     case IP_CONFIGURATION_SUCCESS:
                         if (s.elapsedMs != null) {
@@ -861,6 +899,10 @@ public class WifiScoreCard {
         private LruList<Integer> mFrequencyList;
         // In memory keep frequency with timestamp last time available, the elapsed time since boot.
         private SparseLongArray mFreqTimestamp;
+        // Number of successful connections per frequency, for each part of the day.
+        private final SparseIntArray[] mConnectionFrequencyCounts =
+                new SparseIntArray[NUM_TIME_OF_DAY_BUCKETS];
+        private int mLastConnectedFrequency = 0;
 
         PerNetwork(String ssid) {
             super(computeHashLong(ssid, MacAddress.fromString(DEFAULT_MAC_ADDRESS), mL2KeySeed));
@@ -872,6 +914,9 @@ public class WifiScoreCard {
             mStatsPrevBuild = new NetworkConnectionStats();
             mFrequencyList = new LruList<>(MAX_FREQUENCIES_PER_SSID);
             mFreqTimestamp = new SparseLongArray();
+            for (int i = 0; i < NUM_TIME_OF_DAY_BUCKETS; i++) {
+                mConnectionFrequencyCounts[i] = new SparseIntArray();
+            }
         }
 
         void updateEventStats(Event event, int rssi, int txSpeed, int failureReason) {
@@ -1027,6 +1072,82 @@ public class WifiScoreCard {
             mFreqTimestamp.put(frequency, mClock.getElapsedSinceBootMillis());
         }
 
+        /**
+         * Record a successful connection to this network on the given frequency.
+         * @param frequency Frequency of the connected BSSID.
+         * @param wallClockMillis Wall clock time of the connection.
+         */
+        void addConnectionFrequency(int frequency, long wallClockMillis) {
+            if (frequency <= 0) return;
+            finishPendingRead();
+            SparseIntArray counts =
+                    mConnectionFrequencyCounts[getTimeOfDayBucket(wallClockMillis)];
+            int count = counts.get(frequency) + 1;
+            counts.put(frequency, count);
+            if (count > MAX_CONNECTION_FREQUENCY_COUNT) {
+                // Age the history so that predictions follow changes of the network.
+                for (int i = counts.size() - 1; i >= 0; i--) {
+                    if (counts.valueAt(i) > 1) {
+                        counts.setValueAt(i, counts.valueAt(i) / 2);
+                    } else {
+                        counts.removeAt(i);
+                    }
+                }
+            }
+            mLastConnectedFrequency = frequency;
+            changed = true;
+        }
+
+        /**
+         * Predict the smallest set of frequencies which contained the connected BSSID for at
+         * least the given fraction of the past connections to this network. Connections made at
+         * the same time of day weigh more, and the frequency of the last connection always
+         * comes first.
+         * @param confidence Fraction of the weighted past connections to cover, in (0, 1].
+         * @param wallClockMillis Current wall clock time.
+         * @return the frequencies, most likely first, or null if there are too few past
+         * connections to make a prediction.
+         */
+        @Nullable List<Integer> getPredictedFrequencies(double confidence,
+                long wallClockMillis) {
+            finishPendingRead();
+            int currentBucket = getTimeOfDayBucket(wallClockMillis);
+            SparseIntArray weights = new SparseIntArray();
+            int numConnections = 0;
+            long totalWeight = 0;
+            for (int i = 0; i < NUM_TIME_OF_DAY_BUCKETS; i++) {
+                SparseIntArray counts = mConnectionFrequencyCounts[i];
+                int weight = (i == currentBucket) ? SAME_TIME_OF_DAY_WEIGHT : 1;
+                for (int j = 0; j < counts.size(); j++) {
+                    int frequency = counts.keyAt(j);
+                    weights.put(frequency, weights.get(frequency) + weight * counts.valueAt(j));
+                    numConnections += counts.valueAt(j);
+                    totalWeight += weight * counts.valueAt(j);
+                }
+            }
+            if (numConnections < MIN_CONNECTIONS_FOR_CHANNEL_PREDICTION) return null;
+
+            List<Integer> frequencies = new ArrayList<>(weights.size());
+            for (int i = 0; i < weights.size(); i++) {
+                if (weights.keyAt(i) != mLastConnectedFrequency) {
+                    frequencies.add(weights.keyAt(i));
+                }
+            }
+            frequencies.sort((a, b) -> Integer.compare(weights.get(b), weights.get(a)));
+            List<Integer> results = new ArrayList<>();
+            long coveredWeight = 0;
+            if (weights.get(mLastConnectedFrequency) > 0) {
+                results.add(mLastConnectedFrequency);
+                coveredWeight += weights.get(mLastConnectedFrequency);
+            }
+            for (Integer frequency : frequencies) {
+                if (coveredWeight >= confidence * totalWeight) break;
+                results.add(frequency);
+                coveredWeight += weights.get(frequency);
+            }
+            return results;
+        }
+
         /**
         /* Detect a significant failure stats change with historical data
         /* or high failure stats without historical data.
@@ -1213,6 +1334,18 @@ public class WifiScoreCard {
             if (mFrequencyList.size() > 0) {
                 builder.addAllFrequencies(mFrequencyList.getEntries());
             }
+            for (int i = 0; i < NUM_TIME_OF_DAY_BUCKETS; i++) {
+                SparseIntArray counts = mConnectionFrequencyCounts[i];
+                for (int j = 0; j < counts.size(); j++) {
+                    builder.addConnectionFrequencies(ConnectionFrequency.newBuilder()
+                            .setFrequency(counts.keyAt(j))
+                            .setTimeOfDayBucket(i)
+                            .setCount(counts.valueAt(j)));
+                }
+            }
+            if (mLastConnectedFrequency > 0) {
+                builder.setLastConnectedFrequency(mLastConnectedFrequency);
+            }
             return builder.build();
         }
 
@@ -1272,6 +1405,16 @@ public class WifiScoreCard {
                     mFrequencyList.add(mergedFrequencyList.get(i));
                 }
             }
+            for (ConnectionFrequency connectionFrequency : ns.getConnectionFrequenciesList()) {
+                int bucket = connectionFrequency.getTimeOfDayBucket();
+                if (bucket < 0 || bucket >= NUM_TIME_OF_DAY_BUCKETS) continue;
+                SparseIntArray counts = mConnectionFrequencyCounts[bucket];
+                int frequency = connectionFrequency.getFrequency();
+                counts.put(frequency, counts.get(frequency) + connectionFrequency.getCount());
+            }
+            if (mLastConnectedFrequency == 0 && ns.hasLastConnectedFrequency()) {
+                mLastConnectedFrequency = ns.getLastConnectedFrequency();
+            }
             return this;
         }
 
@@ -1457,6 +1600,8 @@ public class WifiScoreCard {
         private final long mHash;
         private static final String TAG = "WifiMemoryStoreAccessBase";
         private final AtomicReference<byte[]> mPendingReadFromStore = new AtomicReference<>();
+        // Set while a read from the memory store is in flight.
+        private volatile boolean mReadPending = false;
         MemoryStoreAccessBase(long hash) {
             mHash = hash;
             mL2Key = l2KeyFromLong();
@@ -1474,6 +1619,7 @@ public class WifiScoreCard {
          * @param serialized is the readback value
          */
         void readBackListener(byte[] serialized) {
+            mReadPending = false;
             if (serialized == null) return;
             byte[] old = mPendingReadFromStore.getAndSet(serialized);
             if (old != null) {
@@ -1493,6 +1639,17 @@ public class WifiScoreCard {
             return mPendingReadFromStore.getAndSet(null);
         }
 
+        void setReadPending() {
+            mReadPending = true;
+        }
+
+        /**
+         * Whether the stored data was requested but has not arrived yet.
+         */
+        boolean isReadPending() {
+            return mReadPending;
+        }
+
         int idFromLong() {
             return (int) mHash & 0x7fffffff;
         }
@@ -1507,32 +1664,23 @@ public class WifiScoreCard {
     // for instance when we are not associated.
     private final PerBssid mDummyPerBssid;
 
-    private final Map<MacAddress, PerBssid> mApForBssid = new ArrayMap<>();
+    // Keyed by the packed BSSID, see BssidUtil
+    private final LongHashMap<PerBssid> mApForBssid = new LongHashMap<>();
     private int mApForBssidTargetSize = TARGET_IN_MEMORY_ENTRIES;
     private int mApForBssidReferenced = 0;
 
     // TODO should be private, but WifiCandidates needs it
     @NonNull PerBssid lookupBssid(String ssid, String bssid) {
-        MacAddress mac;
         if (ssid == null || WifiManager.UNKNOWN_SSID.equals(ssid) || bssid == null) {
             return mDummyPerBssid;
         }
-        try {
-            mac = MacAddress.fromString(bssid);
-        } catch (IllegalArgumentException e) {
+        long key = BssidUtil.parse(bssid);
+        if (key == BssidUtil.INVALID || key == DEFAULT_MAC_ADDRESS_KEY) {
             return mDummyPerBssid;
         }
-        if (mac.equals(mDummyPerBssid.bssid)) {
-            return mDummyPerBssid;
-        }
-        PerBssid ans = mApForBssid.get(mac);
+        PerBssid ans = mApForBssid.get(key);
         if (ans == null || !ans.ssid.equals(ssid)) {
-            ans = new PerBssid(ssid, mac);
-            PerBssid old = mApForBssid.put(mac, ans);
-            if (old != null) {
-                Log.i(TAG, "Discarding stats for score card (ssid changed) ID: " + old.id);
-                if (old.referenced) mApForBssidReferenced--;
-            }
+            ans = putNewBssid(key, ssid, bssid);
             requestReadBssid(ans);
         }
         if (!ans.referenced) {
@@ -1543,15 +1691,27 @@ public class WifiScoreCard {
         return ans;
     }
 
+    private PerBssid putNewBssid(long key, String ssid, String bssid) {
+        PerBssid perBssid = new PerBssid(ssid, MacAddress.fromString(bssid));
+        PerBssid old = mApForBssid.put(key, perBssid);
+        if (old != null) {
+            Log.i(TAG, "Discarding stats for score card (ssid changed) ID: " + old.id);
+            if (old.referenced) mApForBssidReferenced--;
+        }
+        return perBssid;
+    }
+
     private void requestReadBssid(final PerBssid perBssid) {
         if (mMemoryStore != null) {
+            perBssid.setReadPending();
             mMemoryStore.read(perBssid.getL2Key(), PER_BSSID_DATA_NAME,
                     (value) -> perBssid.readBackListener(value));
         }
     }
 
     private void requestReadForAllChanged() {
-        for (PerBssid perBssid : mApForBssid.values()) {
+        for (int i = 0; i < mApForBssid.size(); i++) {
+            PerBssid perBssid = mApForBssid.valueAt(i);
             if (perBssid.changed) {
                 requestReadBssid(perBssid);
             }
@@ -1585,18 +1745,99 @@ public class WifiScoreCard {
             return;
         }
         mApForNetwork.remove(ssid);
-        mApForBssid.entrySet().removeIf(entry -> ssid.equals(entry.getValue().ssid));
+        mApForBssid.removeIf(perBssid -> ssid.equals(perBssid.ssid));
         if (mMemoryStore == null) return;
         mMemoryStore.removeCluster(groupHintFromSsid(ssid));
     }
 
     void requestReadNetwork(final PerNetwork perNetwork) {
         if (mMemoryStore != null) {
+            perNetwork.setReadPending();
             mMemoryStore.read(perNetwork.getL2Key(), PER_NETWORK_DATA_NAME,
                     (value) -> perNetwork.readBackListener(value));
         }
     }
 
+    /**
+     * Tracks the completion of the reads issued by {@link #prefetch(List, Runnable)}.
+     */
+    public static final class Prefetch {
+        // Holds one extra count until all the reads are issued, so that the reads completing
+        // synchronously do not notify the listener.
+        private final AtomicInteger mPendingReads;
+        @Nullable private final Runnable mOnCompleteListener;
+
+        Prefetch(int numReads, @Nullable Runnable onCompleteListener) {
+            mPendingReads = new AtomicInteger(numReads + 1);
+            mOnCompleteListener = onCompleteListener;
+        }
+
+        void onReadDone() {
+            if (mPendingReads.decrementAndGet() == 0 && mOnCompleteListener != null) {
+                mOnCompleteListener.run();
+            }
+        }
+
+        void onReadsIssued() {
+            mPendingReads.decrementAndGet();
+        }
+
+        /**
+         * Returns the number of reads which have not completed yet.
+         */
+        public int getPendingReadCount() {
+            return mPendingReads.get();
+        }
+    }
+
+    /**
+     * Creates the entries for the BSSIDs of the scan results which are not in memory yet, and
+     * loads their stored data with one batched read. The entries are not marked as referenced,
+     * so the ones which don't end up being used are evicted as usual.
+     *
+     * This does not wait for the reads. If some of them are still pending when this returns,
+     * the listener is called once they all complete, possibly on another thread.
+     *
+     * @param scanDetails the scan results, typically those considered by network selection.
+     * @param onCompleteListener called once the reads pending on return have completed.
+     * @return a handle to check for the reads still pending.
+     */
+    public @NonNull Prefetch prefetch(@NonNull List<ScanDetail> scanDetails,
+            @Nullable Runnable onCompleteListener) {
+        List<PerBssid> bssidsToRead = new ArrayList<>();
+        for (ScanDetail scanDetail : scanDetails) {
+            ScanResult scanResult = scanDetail.getScanResult();
+            if (scanResult == null || scanResult.SSID == null || scanResult.BSSID == null) {
+                continue;
+            }
+            String ssid = ScanResultUtil.createQuotedSSID(scanResult.SSID);
+            if (WifiManager.UNKNOWN_SSID.equals(ssid)) continue;
+            long key = BssidUtil.parse(scanResult.BSSID);
+            if (key == BssidUtil.INVALID || key == DEFAULT_MAC_ADDRESS_KEY) continue;
+            PerBssid perBssid = mApForBssid.get(key);
+            if (perBssid == null || !perBssid.ssid.equals(ssid)) {
+                bssidsToRead.add(putNewBssid(key, ssid, scanResult.BSSID));
+            }
+        }
+        if (mMemoryStore == null) bssidsToRead.clear();
+
+        final Prefetch prefetch = new Prefetch(bssidsToRead.size(), onCompleteListener);
+        if (!bssidsToRead.isEmpty()) {
+            Map<String, BlobListener> reads = new ArrayMap<>(bssidsToRead.size());
+            for (PerBssid perBssid : bssidsToRead) {
+                perBssid.setReadPending();
+                reads.put(perBssid.getL2Key(), (value) -> {
+                    perBssid.readBackListener(value);
+                    prefetch.onReadDone();
+                });
+            }
+            logd("Prefetching " + reads.size() + " BSSIDs");
+            mMemoryStore.readAll(PER_BSSID_DATA_NAME, reads);
+        }
+        prefetch.onReadsIssued();
+        return prefetch;
+    }
+
     /**
      * Issues write requests for all changed entries.
      *
@@ -1614,7 +1855,8 @@ public class WifiScoreCard {
         if (mMemoryStore == null) return 0;
         int count = 0;
         int bytes = 0;
-        for (PerBssid perBssid : mApForBssid.values()) {
+        for (int i = 0; i < mApForBssid.size(); i++) {
+            PerBssid perBssid = mApForBssid.valueAt(i);
             if (perBssid.changed) {
                 perBssid.finishPendingRead();
                 byte[] serialized = perBssid.toAccessPoint(/* No BSSID */ true).toByteArray();
@@ -1667,13 +1909,12 @@ public class WifiScoreCard {
         if (mApForBssidReferenced >= mApForBssidTargetSize) {
             doWritesBssid(); // Do not want to evict changed items
             // Evict the unreferenced ones, and clear all the referenced bits for the next round.
-            Iterator<Map.Entry<MacAddress, PerBssid>> it = mApForBssid.entrySet().iterator();
-            while (it.hasNext()) {
-                PerBssid perBssid = it.next().getValue();
+            for (int i = mApForBssid.size() - 1; i >= 0; i--) {
+                PerBssid perBssid = mApForBssid.valueAt(i);
                 if (perBssid.referenced) {
                     perBssid.referenced = false;
                 } else {
-                    it.remove();
+                    mApForBssid.removeAt(i);
                     if (mVerboseLoggingEnabled) Log.v(TAG, "Evict " + perBssid.id);
                 }
             }
@@ -1736,7 +1977,7 @@ public class WifiScoreCard {
 
     @VisibleForTesting
     PerBssid fetchByBssid(MacAddress mac) {
-        return mApForBssid.get(mac);
+        return mApForBssid.get(BssidUtil.fromMacAddress(mac));
     }
 
     @VisibleForTesting
@@ -1755,6 +1996,14 @@ public class WifiScoreCard {
         return new PerNetwork(ssid).mergeNetworkStatsFromMemory(ns);
     }
 
+    /**
+     * Packs an event and a frequency into the key of {@link PerBssid}'s signal statistics.
+     * Frequencies are far below 2^20 MHz, so distinct pairs get distinct keys.
+     */
+    private static int signalKey(Event event, int frequency) {
+        return (event.getNumber() << 20) | (frequency & 0xfffff);
+    }
+
     final class PerSignal {
         public final Event event;
         public final int frequency;
@@ -1768,7 +2017,7 @@ public class WifiScoreCard {
                 case SIGNAL_POLL:
                 case IP_CONFIGURATION_SUCCESS:
                 case IP_REACHABILITY_LOST:
-                    this.rssi = new PerUnivariateStatistic(RSSI_BUCKETS);
+                    this.rssi = new PerUnivariateStatistic(RSSI_HISTOGRAM_MIN, RSSI_HISTOGRAM_MAX);
                     break;
                 default:
                     this.rssi = new PerUnivariateStatistic();
@@ -1817,27 +2066,47 @@ public class WifiScoreCard {
         }
     }
 
+    // Sums which overflow stick to the largest (or smallest) long instead of wrapping around
+    private static long saturatedAdd(long a, long b) {
+        long sum = a + b;
+        if (((a ^ sum) & (b ^ sum)) < 0) {
+            return a < 0 ? Long.MIN_VALUE : Long.MAX_VALUE;
+        }
+        return sum;
+    }
+
+    // Squares of values above ~3 * 10^9 (over a month in milliseconds) do not fit in a long
+    private static long saturatedSquare(long value) {
+        return (value > 3037000499L || value < -3037000499L) ? Long.MAX_VALUE : value * value;
+    }
+
+    /**
+     * Statistics of an integer valued quantity (dBm, Mbps or milliseconds).
+     *
+     * The short-term statistics are kept as integers, which are exact where the doubles of
+     * the proto are, and the histogram only stores its non-empty buckets.
+     */
     final class PerUnivariateStatistic {
         public long count = 0;
-        public double sum = 0.0;
-        public double sumOfSquares = 0.0;
-        public double minValue = Double.POSITIVE_INFINITY;
-        public double maxValue = Double.NEGATIVE_INFINITY;
+        public long sum = 0;
+        public long sumOfSquares = 0;
+        public long minValue = Long.MAX_VALUE;
+        public long maxValue = Long.MIN_VALUE;
         public double historicalMean = 0.0;
         public double historicalVariance = Double.POSITIVE_INFINITY;
-        public IntHistogram intHistogram = null;
+        public CompactIntHistogram intHistogram = null;
         PerUnivariateStatistic() {}
-        PerUnivariateStatistic(int[] bucketBoundaries) {
-            intHistogram = new IntHistogram(bucketBoundaries);
+        PerUnivariateStatistic(int histogramMin, int histogramMax) {
+            intHistogram = new CompactIntHistogram(histogramMin, histogramMax);
         }
-        void update(double value) {
+        void update(long value) {
             count++;
-            sum += value;
-            sumOfSquares += value * value;
+            sum = saturatedAdd(sum, value);
+            sumOfSquares = saturatedAdd(sumOfSquares, saturatedSquare(value));
             minValue = Math.min(minValue, value);
             maxValue = Math.max(maxValue, value);
             if (intHistogram != null) {
-                intHistogram.add(Math.round((float) value), 1);
+                intHistogram.increment((int) value);
             }
         }
         void age() {
@@ -1846,14 +2115,15 @@ public class WifiScoreCard {
         void merge(UnivariateStatistic stats) {
             if (stats.hasCount()) {
                 count += stats.getCount();
-                sum += stats.getSum();
-                sumOfSquares += stats.getSumOfSquares();
+                // What we store is integral, so rounding only matters for corrupted data
+                sum = saturatedAdd(sum, Math.round(stats.getSum()));
+                sumOfSquares = saturatedAdd(sumOfSquares, Math.round(stats.getSumOfSquares()));
             }
             if (stats.hasMinValue()) {
-                minValue = Math.min(minValue, stats.getMinValue());
+                minValue = Math.min(minValue, Math.round(stats.getMinValue()));
             }
             if (stats.hasMaxValue()) {
-                maxValue = Math.max(maxValue, stats.getMaxValue());
+                maxValue = Math.max(maxValue, Math.round(stats.getMaxValue()));
             }
             if (stats.hasHistoricalVariance()) {
                 if (historicalVariance < Double.POSITIVE_INFINITY) {
@@ -1920,7 +2190,8 @@ public class WifiScoreCard {
     public byte[] getNetworkListByteArray(boolean obfuscate) {
         // These are really grouped by ssid, ignoring the security type.
         Map<String, Network.Builder> networks = new ArrayMap<>();
-        for (PerBssid perBssid: mApForBssid.values()) {
+        for (int i = 0; i < mApForBssid.size(); i++) {
+            PerBssid perBssid = mApForBssid.valueAt(i);
             String key = perBssid.ssid;
             Network.Builder network = networks.get(key);
             if (network == null) {
@@ -110,10 +110,12 @@ import com.android.internal.annotations.GuardedBy;
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.util.AsyncChannel;
 import com.android.net.module.util.Inet4AddressUtils;
+import com.android.server.wifi.hotspot2.AnqpCacheStore;
 import com.android.server.wifi.hotspot2.PasspointManager;
 import com.android.server.wifi.hotspot2.PasspointProvider;
 import com.android.server.wifi.proto.nano.WifiMetricsProto.UserActionEvent;
 import com.android.server.wifi.util.ApConfigUtil;
+import com.android.server.wifi.util.Environment;
 import com.android.server.wifi.util.ExternalCallbackTracker;
 import com.android.server.wifi.util.RssiUtil;
 import com.android.server.wifi.util.ScanResultUtil;
@@ -122,6 +124,7 @@ import com.android.server.wifi.util.WifiPermissionsUtil;
 import com.android.wifi.resources.R;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileDescriptor;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
@@ -289,6 +292,8 @@ public class WifiServiceImpl extends BaseWifiService {
     private final WifiApConfigStore mWifiApConfigStore;
     private final WifiThreadRunner mWifiThreadRunner;
     private final MemoryStoreImpl mMemoryStoreImpl;
+    // Only set when the scorecard is persisted to a local file instead of IpMemoryStore.
+    @Nullable private final FileMemoryStore mFileMemoryStore;
     private final WifiScoreCard mWifiScoreCard;
 
     public WifiServiceImpl(Context context, WifiInjector wifiInjector, AsyncChannel asyncChannel) {
@@ -329,6 +334,7 @@ public class WifiServiceImpl extends BaseWifiService {
         mWifiScoreCard = mWifiInjector.getWifiScoreCard();
         mMemoryStoreImpl = new MemoryStoreImpl(mContext, mWifiInjector,
                 mWifiScoreCard,  mWifiInjector.getWifiHealthMonitor());
+        mFileMemoryStore = mWifiInjector.getFileMemoryStore();
     }
 
     /**
@@ -440,7 +446,17 @@ public class WifiServiceImpl extends BaseWifiService {
                 intentFilter.addAction(TelephonyManager.ACTION_EMERGENCY_CALL_STATE_CHANGED);
             }
             mContext.registerReceiver(mReceiver, intentFilter);
-            mMemoryStoreImpl.start();
+            if (mFileMemoryStore != null) {
+                mFileMemoryStore.start();
+            } else {
+                mMemoryStoreImpl.start();
+            }
+            if (mContext.getResources().getBoolean(
+                    R.bool.config_wifiPasspointAnqpCachePersistenceEnabled)) {
+                mPasspointManager.enableAnqpCachePersistence(
+                        new File(Environment.getWifiSharedDirectory(),
+                                AnqpCacheStore.STORE_FILE_NAME));
+            }
             mPasspointManager.initializeProvisioner(
                     mWifiInjector.getPasspointProvisionerHandlerThread().getLooper());
             mClientModeImpl.handleBootCompleted();
@@ -580,6 +596,10 @@ public class WifiServiceImpl extends BaseWifiService {
             // before memory store write triggered by mMemoryStoreImpl.stop().
             mWifiScoreCard.resetConnectionState();
             mMemoryStoreImpl.stop();
+            if (mFileMemoryStore != null) {
+                mFileMemoryStore.stop();
+            }
+            mPasspointManager.saveAnqpCache();
         });
     }
 
@@ -3459,6 +3479,8 @@ public class WifiServiceImpl extends BaseWifiService {
             removePasspointConfigurationInternal(null, config.getUniqueId());
         }
         mWifiThreadRunner.post(() -> {
+            // Delete the saved ANQP cache first, so that the flush has nothing left to save.
+            mPasspointManager.deleteSavedAnqpCache();
             mPasspointManager.clearAnqpRequestsAndFlushCache();
             mWifiConfigManager.clearUserTemporarilyDisabledList();
             mWifiConfigManager.removeAllEphemeralOrPasspointConfiguredNetworks();
@@ -16,6 +16,7 @@
 package com.android.server.wifi;
 
 import android.annotation.NonNull;
+import android.annotation.Nullable;
 import android.hardware.wifi.V1_0.IWifiApIface;
 import android.hardware.wifi.V1_0.IWifiChip;
 import android.hardware.wifi.V1_0.IWifiChipEventCallback;
@@ -65,7 +66,6 @@ import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.util.HexDump;
 import com.android.internal.util.Preconditions;
 import com.android.server.wifi.HalDeviceManager.InterfaceDestroyedListener;
-import com.android.server.wifi.WifiLinkLayerStats.ChannelStats;
 import com.android.server.wifi.util.ArrayUtils;
 import com.android.server.wifi.util.BitMask;
 import com.android.server.wifi.util.NativeUtil;
@@ -931,13 +931,26 @@ public class WifiVendorHal {
      * @return the statistics, or null if unable to do so
      */
     public WifiLinkLayerStats getWifiLinkLayerStats(@NonNull String ifaceName) {
+        return getWifiLinkLayerStats(ifaceName, null);
+    }
+
+    /**
+     * Get the link layer statistics, refilling the given object instead of allocating a new one
+     *
+     * @param ifaceName Name of the interface.
+     * @param reuse stats object to overwrite, or null to allocate a new one
+     * @return the statistics, or null if unable to do so
+     */
+    public WifiLinkLayerStats getWifiLinkLayerStats(@NonNull String ifaceName,
+            @Nullable WifiLinkLayerStats reuse) {
         if (getWifiStaIfaceForV1_3Mockable(ifaceName) != null) {
-            return getWifiLinkLayerStats_1_3_Internal(ifaceName);
+            return getWifiLinkLayerStats_1_3_Internal(ifaceName, reuse);
         }
-        return getWifiLinkLayerStats_internal(ifaceName);
+        return getWifiLinkLayerStats_internal(ifaceName, reuse);
     }
 
-    private WifiLinkLayerStats getWifiLinkLayerStats_internal(@NonNull String ifaceName) {
+    private WifiLinkLayerStats getWifiLinkLayerStats_internal(@NonNull String ifaceName,
+            @Nullable WifiLinkLayerStats reuse) {
         class AnswerBox {
             public StaLinkLayerStats value = null;
         }
@@ -955,11 +968,12 @@ public class WifiVendorHal {
                 return null;
             }
         }
-        WifiLinkLayerStats stats = frameworkFromHalLinkLayerStats(answer.value);
+        WifiLinkLayerStats stats = frameworkFromHalLinkLayerStats(answer.value, reuse);
         return stats;
     }
 
-    private WifiLinkLayerStats getWifiLinkLayerStats_1_3_Internal(@NonNull String ifaceName) {
+    private WifiLinkLayerStats getWifiLinkLayerStats_1_3_Internal(@NonNull String ifaceName,
+            @Nullable WifiLinkLayerStats reuse) {
         class AnswerBox {
             public android.hardware.wifi.V1_3.StaLinkLayerStats value = null;
         }
@@ -978,7 +992,7 @@ public class WifiVendorHal {
                 return null;
             }
         }
-        WifiLinkLayerStats stats = frameworkFromHalLinkLayerStats_1_3(answer.value);
+        WifiLinkLayerStats stats = frameworkFromHalLinkLayerStats_1_3(answer.value, reuse);
         return stats;
     }
 
@@ -988,8 +1002,18 @@ public class WifiVendorHal {
      */
     @VisibleForTesting
     static WifiLinkLayerStats frameworkFromHalLinkLayerStats(StaLinkLayerStats stats) {
+        return frameworkFromHalLinkLayerStats(stats, null);
+    }
+
+    /**
+     * Makes the framework version of link layer stats from the hal version, in the given
+     * object if it is not null.
+     */
+    @VisibleForTesting
+    static WifiLinkLayerStats frameworkFromHalLinkLayerStats(StaLinkLayerStats stats,
+            @Nullable WifiLinkLayerStats reuse) {
         if (stats == null) return null;
-        WifiLinkLayerStats out = new WifiLinkLayerStats();
+        WifiLinkLayerStats out = obtainLinkLayerStats(reuse);
         setIfaceStats(out, stats.iface);
         setRadioStats(out, stats.radios);
         setTimeStamp(out, stats.timeStampInMs);
@@ -1003,8 +1027,19 @@ public class WifiVendorHal {
     @VisibleForTesting
     static WifiLinkLayerStats frameworkFromHalLinkLayerStats_1_3(
             android.hardware.wifi.V1_3.StaLinkLayerStats stats) {
+        return frameworkFromHalLinkLayerStats_1_3(stats, null);
+    }
+
+    /**
+     * Makes the framework version of link layer stats from the hal version, in the given
+     * object if it is not null.
+     */
+    @VisibleForTesting
+    static WifiLinkLayerStats frameworkFromHalLinkLayerStats_1_3(
+            android.hardware.wifi.V1_3.StaLinkLayerStats stats,
+            @Nullable WifiLinkLayerStats reuse) {
         if (stats == null) return null;
-        WifiLinkLayerStats out = new WifiLinkLayerStats();
+        WifiLinkLayerStats out = obtainLinkLayerStats(reuse);
         setIfaceStats(out, stats.iface);
         setRadioStats_1_3(out, stats.radios);
         setTimeStamp(out, stats.timeStampInMs);
@@ -1012,6 +1047,12 @@ public class WifiVendorHal {
         return out;
     }
 
+    private static WifiLinkLayerStats obtainLinkLayerStats(@Nullable WifiLinkLayerStats reuse) {
+        if (reuse == null) return new WifiLinkLayerStats();
+        reuse.clear();
+        return reuse;
+    }
+
     private static void setIfaceStats(WifiLinkLayerStats stats, StaLinkLayerIfaceStats iface) {
         if (iface == null) return;
         stats.beacon_rx = iface.beaconRx;
@@ -1047,9 +1088,10 @@ public class WifiVendorHal {
             StaLinkLayerRadioStats radioStats = radios.get(0);
             stats.on_time = radioStats.onTimeInMs;
             stats.tx_time = radioStats.txTimeInMs;
-            stats.tx_time_per_level = new int[radioStats.txTimeInMsPerLevel.size()];
-            for (int i = 0; i < stats.tx_time_per_level.length; i++) {
-                stats.tx_time_per_level[i] = radioStats.txTimeInMsPerLevel.get(i);
+            int[] txTimePerLevel =
+                    stats.obtainTxTimePerLevel(radioStats.txTimeInMsPerLevel.size());
+            for (int i = 0; i < txTimePerLevel.length; i++) {
+                txTimePerLevel[i] = radioStats.txTimeInMsPerLevel.get(i);
             }
             stats.rx_time = radioStats.rxTimeInMs;
             stats.on_time_scan = radioStats.onTimeInMsForScan;
@@ -1064,9 +1106,10 @@ public class WifiVendorHal {
             android.hardware.wifi.V1_3.StaLinkLayerRadioStats radioStats = radios.get(0);
             stats.on_time = radioStats.V1_0.onTimeInMs;
             stats.tx_time = radioStats.V1_0.txTimeInMs;
-            stats.tx_time_per_level = new int[radioStats.V1_0.txTimeInMsPerLevel.size()];
-            for (int i = 0; i < stats.tx_time_per_level.length; i++) {
-                stats.tx_time_per_level[i] = radioStats.V1_0.txTimeInMsPerLevel.get(i);
+            int[] txTimePerLevel =
+                    stats.obtainTxTimePerLevel(radioStats.V1_0.txTimeInMsPerLevel.size());
+            for (int i = 0; i < txTimePerLevel.length; i++) {
+                txTimePerLevel[i] = radioStats.V1_0.txTimeInMsPerLevel.get(i);
             }
             stats.rx_time = radioStats.V1_0.rxTimeInMs;
             stats.on_time_scan = radioStats.V1_0.onTimeInMsForScan;
@@ -1079,11 +1122,8 @@ public class WifiVendorHal {
             for (int i = 0; i < radioStats.channelStats.size(); i++) {
                 android.hardware.wifi.V1_3.WifiChannelStats channelStats =
                         radioStats.channelStats.get(i);
-                ChannelStats channelStatsEntry = new ChannelStats();
-                channelStatsEntry.frequency = channelStats.channel.centerFreq;
-                channelStatsEntry.radioOnTimeMs = channelStats.onTimeInMs;
-                channelStatsEntry.ccaBusyTimeMs = channelStats.ccaBusyTimeInMs;
-                stats.channelStatsMap.put(channelStats.channel.centerFreq, channelStatsEntry);
+                stats.addChannelStats(channelStats.channel.centerFreq,
+                        channelStats.onTimeInMs, channelStats.ccaBusyTimeInMs);
             }
         }
     }
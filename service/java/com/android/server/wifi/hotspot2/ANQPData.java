@@ -40,12 +40,20 @@ public class ANQPData {
     private final long mExpiryTime;
 
     public ANQPData(Clock clock, Map<Constants.ANQPElementType, ANQPElement> anqpElements) {
+        this(clock, anqpElements, clock.getElapsedSinceBootMillis() + DATA_LIFETIME_MILLISECONDS);
+    }
+
+    /**
+     * @param expiryTime The time at which the entry expires, in milliseconds since boot
+     */
+    public ANQPData(Clock clock, Map<Constants.ANQPElementType, ANQPElement> anqpElements,
+            long expiryTime) {
         mClock = clock;
         mANQPElements = new HashMap<>();
         if (anqpElements != null) {
             mANQPElements.putAll(anqpElements);
         }
-        mExpiryTime = mClock.getElapsedSinceBootMillis() + DATA_LIFETIME_MILLISECONDS;
+        mExpiryTime = expiryTime;
     }
 
     /**
@@ -67,6 +75,13 @@ public class ANQPData {
         return mExpiryTime <= at;
     }
 
+    /**
+     * Return the time at which this entry expires, in milliseconds since boot.
+     */
+    public long getExpiryTimeMillis() {
+        return mExpiryTime;
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
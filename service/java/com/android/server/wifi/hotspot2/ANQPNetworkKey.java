@@ -41,6 +41,22 @@ public class ANQPNetworkKey {
         mAnqpDomainID = anqpDomainID;
     }
 
+    public String getSsid() {
+        return mSSID;
+    }
+
+    public long getBssid() {
+        return mBSSID;
+    }
+
+    public long getHessid() {
+        return mHESSID;
+    }
+
+    public int getAnqpDomainId() {
+        return mAnqpDomainID;
+    }
+
     /**
      * Build an ANQP network key suitable for the granularity of the key space as follows:
      *
@@ -33,18 +33,29 @@ import java.util.Map;
  * Class for managing sending of ANQP requests.  This manager will ignore ANQP requests for a
  * period of time (hold off time) to a specified AP if the previous request to that AP goes
  * unanswered or failed.  The hold off time will increase exponentially until the max is reached.
+ *
+ * A request is considered in flight until it completes or its hold off time expires.  Requests
+ * are also ignored while another AP with the same {@link ANQPNetworkKey}, and thus the same
+ * ANQP information, has a request in flight, or while {@link #MAX_IN_FLIGHT_QUERIES} requests
+ * are in flight.
  */
 public class ANQPRequestManager {
     private static final String TAG = "ANQPRequestManager";
 
     private final PasspointEventHandler mPasspointHandler;
     private final Clock mClock;
+    private boolean mVerboseLoggingEnabled = false;
 
     /**
      * List of pending ANQP request associated with an AP (BSSID).
      */
     private final Map<Long, ANQPNetworkKey> mPendingQueries;
 
+    /**
+     * BSSID of the AP with the latest pending request for each ANQP network key.
+     */
+    private final Map<ANQPNetworkKey, Long> mPendingBssidForKey;
+
     /**
      * List of hold off time information associated with APs specified by their BSSID.
      * Used to determine when an ANQP request can be send to the corresponding AP after the
@@ -52,6 +63,11 @@ public class ANQPRequestManager {
      */
     private final Map<Long, HoldOffInfo> mHoldOffInfo;
 
+    /**
+     * Number of ANQP requests sent, for debugging.
+     */
+    private long mNumRequestsSent;
+
     /**
      * Minimum number of milliseconds to wait for before attempting ANQP queries to the same AP
      * after previous request goes unanswered or failed.
@@ -68,6 +84,12 @@ public class ANQPRequestManager {
     @VisibleForTesting
     public static final int MAX_HOLDOFF_COUNT = 6;
 
+    /**
+     * Max number of ANQP requests in flight.
+     */
+    @VisibleForTesting
+    public static final int MAX_IN_FLIGHT_QUERIES = 8;
+
     private static final List<Constants.ANQPElementType> R1_ANQP_BASE_SET = Arrays.asList(
             Constants.ANQPElementType.ANQPVenueName,
             Constants.ANQPElementType.ANQPIPAddrAvailability,
@@ -100,6 +122,7 @@ public class ANQPRequestManager {
         mPasspointHandler = handler;
         mClock = clock;
         mPendingQueries = new HashMap<>();
+        mPendingBssidForKey = new HashMap<>();
         mHoldOffInfo = new HashMap<>();
     }
 
@@ -124,6 +147,24 @@ public class ANQPRequestManager {
             return false;
         }
 
+        // The ANQP information of this AP is already on its way from another AP.
+        Long pendingBssid = mPendingBssidForKey.get(anqpNetworkKey);
+        if (pendingBssid != null && pendingBssid != bssid && isInFlight(pendingBssid)) {
+            if (mVerboseLoggingEnabled) {
+                Log.d(TAG, "ANQP request for " + anqpNetworkKey + " already in flight to "
+                        + Utils.macToString(pendingBssid));
+            }
+            return false;
+        }
+
+        if (getNumInFlightQueries() >= MAX_IN_FLIGHT_QUERIES) {
+            if (mVerboseLoggingEnabled) {
+                Log.d(TAG, "Too many ANQP requests in flight, not sending to "
+                        + Utils.macToString(bssid));
+            }
+            return false;
+        }
+
         // No need to hold off future requests for send failures.
         if (!mPasspointHandler.requestANQP(bssid, getRequestElementIDs(rcOIs, hsReleaseVer))) {
             return false;
@@ -133,10 +174,46 @@ public class ANQPRequestManager {
         // the given AP.
         updateHoldOffInfo(bssid);
 
+        removePendingQuery(bssid);
         mPendingQueries.put(bssid, anqpNetworkKey);
+        mPendingBssidForKey.put(anqpNetworkKey, bssid);
+        mNumRequestsSent++;
         return true;
     }
 
+    private ANQPNetworkKey removePendingQuery(long bssid) {
+        ANQPNetworkKey anqpNetworkKey = mPendingQueries.remove(bssid);
+        if (anqpNetworkKey != null) {
+            Long pendingBssid = mPendingBssidForKey.get(anqpNetworkKey);
+            if (pendingBssid != null && pendingBssid == bssid) {
+                mPendingBssidForKey.remove(anqpNetworkKey);
+            }
+        }
+        return anqpNetworkKey;
+    }
+
+    /**
+     * Check if a request to the specified AP is in flight, i.e. pending and still within its
+     * hold off time.  A request left unanswered past its hold off time is considered lost.
+     */
+    private boolean isInFlight(long bssid) {
+        if (!mPendingQueries.containsKey(bssid)) {
+            return false;
+        }
+        HoldOffInfo info = mHoldOffInfo.get(bssid);
+        return info != null && info.holdOffExpirationTime > mClock.getElapsedSinceBootMillis();
+    }
+
+    private int getNumInFlightQueries() {
+        int numInFlightQueries = 0;
+        for (long bssid : mPendingQueries.keySet()) {
+            if (isInFlight(bssid)) {
+                numInFlightQueries++;
+            }
+        }
+        return numInFlightQueries;
+    }
+
     /**
      * Notification of the completion of an ANQP request.
      *
@@ -149,7 +226,15 @@ public class ANQPRequestManager {
             // Query succeeded.  No need to hold off request to the given AP.
             mHoldOffInfo.remove(bssid);
         }
-        return mPendingQueries.remove(bssid);
+        return removePendingQuery(bssid);
+    }
+
+    /**
+     * Enable verbose logging
+     * @param verbose more than 0 enables verbose logging
+     */
+    public void enableVerboseLogging(int verbose) {
+        mVerboseLoggingEnabled = verbose > 0;
     }
 
     /**
@@ -224,6 +309,8 @@ public class ANQPRequestManager {
      */
     public void dump(PrintWriter pw) {
         pw.println("ANQPRequestManager - Begin ---");
+        pw.println("Requests sent: " + mNumRequestsSent + ", in flight: "
+                + getNumInFlightQueries());
         for (Map.Entry<Long, HoldOffInfo> holdOffInfo : mHoldOffInfo.entrySet()) {
             long bssid = holdOffInfo.getKey();
             pw.println("For BBSID: " + Utils.macToString(bssid));
@@ -240,6 +327,7 @@ public class ANQPRequestManager {
      */
     public void clear() {
         mPendingQueries.clear();
+        mPendingBssidForKey.clear();
         mHoldOffInfo.clear();
     }
 }
@@ -16,34 +16,144 @@
 
 package com.android.server.wifi.hotspot2;
 
+import android.util.ArraySet;
+
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.server.wifi.Clock;
 import com.android.server.wifi.hotspot2.anqp.ANQPElement;
 import com.android.server.wifi.hotspot2.anqp.Constants;
+import com.android.server.wifi.hotspot2.anqp.RawByteElement;
 
 import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Cache for storing ANQP data.  This is simply a data cache, all the logic related to
  * ANQP data query will be handled elsewhere (e.g. the consumer of the cache).
+ *
+ * The cache is bounded both in number of entries and in (estimated) bytes, and evicts the least
+ * recently used entries to stay within the bounds. Entries are also hashed into a timing wheel
+ * by expiry time, so that a sweep only visits the wheel slots that elapsed since the previous
+ * sweep instead of every entry.
+ *
+ * When an {@link AnqpCacheStore} is set, the cache is loaded from it on first use, and saved to
+ * it when entries were added, by the sweeps at most once per save interval (as the whole cache is
+ * written each time) and whenever the cache is flushed.
  */
 public class AnqpCache {
     @VisibleForTesting
     public static final long CACHE_SWEEP_INTERVAL_MILLISECONDS = 60000L;
+    @VisibleForTesting
+    public static final long MIN_SAVE_INTERVAL_MILLISECONDS = 15 * 60000L;
+    @VisibleForTesting
+    public static final int DEFAULT_MAX_ENTRIES = 500;
+    @VisibleForTesting
+    public static final int DEFAULT_MAX_BYTES = 512 * 1024;
+
+    // Rough per entry cost of the key, the ANQPData and the maps holding them.
+    private static final int ENTRY_OVERHEAD_BYTES = 200;
+    private static final int ELEMENT_OVERHEAD_BYTES = 40;
+    // Each wheel slot spans one sweep interval, and the wheel spans more than an entry lifetime.
+    private static final int NUM_WHEEL_SLOTS =
+            (int) (ANQPData.DATA_LIFETIME_MILLISECONDS / CACHE_SWEEP_INTERVAL_MILLISECONDS) + 2;
+
+    private static class Entry {
+        final ANQPNetworkKey mKey;
+        final ANQPData mData;
+        final int mSizeBytes;
+
+        Entry(ANQPNetworkKey key, ANQPData data, int sizeBytes) {
+            mKey = key;
+            mData = data;
+            mSizeBytes = sizeBytes;
+        }
+    }
 
     private long mLastSweep;
     private Clock mClock;
 
-    private final Map<ANQPNetworkKey, ANQPData> mANQPCache;
+    private final int mMaxEntries;
+    private final int mMaxBytes;
+    // Iterates from the least to the most recently used entry.
+    private final LinkedHashMap<ANQPNetworkKey, Entry> mANQPCache;
+    private final List<Set<Entry>> mExpiryWheel;
+    // Wheel tick of the oldest slot which may still hold entries to expire.
+    private long mNextTick;
+    private int mSizeBytes;
+
+    private AnqpCacheStore mStore;
+    private boolean mStoreLoaded = true;
+    private boolean mStoreDirty;
+    private long mLastSave;
+
+    private long mHits;
+    private long mMisses;
+    private long mEvictions;
+    private long mExpirations;
 
     public AnqpCache(Clock clock) {
+        this(clock, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+    }
+
+    @VisibleForTesting
+    public AnqpCache(Clock clock, int maxEntries, int maxBytes) {
         mClock = clock;
-        mANQPCache = new HashMap<>();
+        mMaxEntries = maxEntries;
+        mMaxBytes = maxBytes;
+        mANQPCache = new LinkedHashMap<>(16, 0.75f, true);
+        mExpiryWheel = new ArrayList<>(NUM_WHEEL_SLOTS);
+        for (int i = 0; i < NUM_WHEEL_SLOTS; i++) {
+            mExpiryWheel.add(new ArraySet<>());
+        }
         mLastSweep = mClock.getElapsedSinceBootMillis();
+        mNextTick = toTick(mLastSweep);
+    }
+
+    private static long toTick(long timeMillis) {
+        return timeMillis / CACHE_SWEEP_INTERVAL_MILLISECONDS;
+    }
+
+    private Set<Entry> getWheelSlot(long tick) {
+        return mExpiryWheel.get((int) (tick % NUM_WHEEL_SLOTS));
+    }
+
+    /**
+     * Persist the cache to the given store. The saved entries are loaded on first use.
+     */
+    public void setStore(AnqpCacheStore store) {
+        mStore = store;
+        mStoreLoaded = false;
+        mStoreDirty = false;
+        mLastSave = mClock.getElapsedSinceBootMillis();
+    }
+
+    private void loadFromStoreIfNeeded() {
+        if (mStore == null || mStoreLoaded) return;
+        mStoreLoaded = true;
+        for (Map.Entry<ANQPNetworkKey, ANQPData> entry : mStore.read(mClock).entrySet()) {
+            if (!mANQPCache.containsKey(entry.getKey())) {
+                putEntry(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Save the cache to the store, if any, when entries were added since it was last saved.
+     */
+    public void save() {
+        if (mStore == null || !mStoreDirty) return;
+        Map<ANQPNetworkKey, ANQPData> entries = new LinkedHashMap<>();
+        for (Map.Entry<ANQPNetworkKey, Entry> entry : mANQPCache.entrySet()) {
+            entries.put(entry.getKey(), entry.getValue().mData);
+        }
+        mStore.write(entries, mClock);
+        mStoreDirty = false;
+        mLastSave = mClock.getElapsedSinceBootMillis();
     }
 
     /**
@@ -54,8 +164,65 @@ public class AnqpCache {
      */
     public void addEntry(ANQPNetworkKey key,
             Map<Constants.ANQPElementType, ANQPElement> anqpElements) {
-        ANQPData data = new ANQPData(mClock, anqpElements);
-        mANQPCache.put(key, data);
+        loadFromStoreIfNeeded();
+        putEntry(key, new ANQPData(mClock, anqpElements));
+        mStoreDirty = mStore != null;
+    }
+
+    private void putEntry(ANQPNetworkKey key, ANQPData data) {
+        removeEntry(key);
+        Entry entry = new Entry(key, data, estimateSizeBytes(data.getElements()));
+        mANQPCache.put(key, entry);
+        mSizeBytes += entry.mSizeBytes;
+        getWheelSlot(toTick(data.getExpiryTimeMillis())).add(entry);
+
+        // Evict the least recently used entries, but always keep the new one.
+        Iterator<Map.Entry<ANQPNetworkKey, Entry>> it = mANQPCache.entrySet().iterator();
+        while ((mANQPCache.size() > mMaxEntries || mSizeBytes > mMaxBytes)
+                && mANQPCache.size() > 1) {
+            Entry eldest = it.next().getValue();
+            it.remove();
+            forgetEntry(eldest);
+            mEvictions++;
+        }
+    }
+
+    private void removeEntry(ANQPNetworkKey key) {
+        Entry entry = mANQPCache.remove(key);
+        if (entry != null) {
+            forgetEntry(entry);
+        }
+    }
+
+    /**
+     * Updates the size and the expiry wheel for an entry removed from mANQPCache.
+     */
+    private void forgetEntry(Entry entry) {
+        mSizeBytes -= entry.mSizeBytes;
+        getWheelSlot(toTick(entry.mData.getExpiryTimeMillis())).remove(entry);
+    }
+
+    /**
+     * Returns a rough estimate of the memory used by an entry with the given ANQP elements.
+     */
+    private static int estimateSizeBytes(
+            Map<Constants.ANQPElementType, ANQPElement> anqpElements) {
+        int size = ENTRY_OVERHEAD_BYTES;
+        if (anqpElements == null) {
+            return size;
+        }
+        for (ANQPElement element : anqpElements.values()) {
+            size += ELEMENT_OVERHEAD_BYTES;
+            if (element.getRawPayloadLength() >= 0) {
+                size += element.getRawPayloadLength();
+            } else if (element instanceof RawByteElement) {
+                size += ((RawByteElement) element).getPayload().length;
+            } else {
+                // The string form lists all the parsed content of the element.
+                size += String.valueOf(element).length();
+            }
+        }
+        return size;
     }
 
     /**
@@ -65,7 +232,26 @@ public class AnqpCache {
      * @return {@link ANQPData}
      */
     public ANQPData getEntry(ANQPNetworkKey key) {
-        return mANQPCache.get(key);
+        loadFromStoreIfNeeded();
+        Entry entry = mANQPCache.get(key);
+        if (entry == null) {
+            mMisses++;
+            return null;
+        }
+        mHits++;
+        return entry.mData;
+    }
+
+    /**
+     * Check if there is ANQP data associated with the given AP, without counting it as a use of
+     * the data.
+     *
+     * @param key The key that's associated with the entry
+     * @return true if the cache has an entry for the key
+     */
+    public boolean hasEntry(ANQPNetworkKey key) {
+        loadFromStoreIfNeeded();
+        return mANQPCache.containsKey(key);
     }
 
     /**
@@ -77,35 +263,107 @@ public class AnqpCache {
         if (now < mLastSweep + CACHE_SWEEP_INTERVAL_MILLISECONDS) {
             return;
         }
+        loadFromStoreIfNeeded();
 
-        // Get all expired keys.
-        List<ANQPNetworkKey> expiredKeys = new ArrayList<>();
-        for (Map.Entry<ANQPNetworkKey, ANQPData> entry : mANQPCache.entrySet()) {
-            if (entry.getValue().expired(now)) {
-                expiredKeys.add(entry.getKey());
+        // Visit the slots of the ticks elapsed since the last sweep, at most once each. The
+        // slot of the current tick is visited again next time, as it may hold entries expiring
+        // later during the tick.
+        long nowTick = toTick(now);
+        long firstTick = Math.max(mNextTick, nowTick - NUM_WHEEL_SLOTS + 1);
+        for (long tick = firstTick; tick <= nowTick; tick++) {
+            Iterator<Entry> it = getWheelSlot(tick).iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (entry.mData.expired(now)) {
+                    it.remove();
+                    mANQPCache.remove(entry.mKey);
+                    mSizeBytes -= entry.mSizeBytes;
+                    mExpirations++;
+                }
             }
         }
-
-        // Remove all expired entries.
-        for (ANQPNetworkKey key : expiredKeys) {
-            mANQPCache.remove(key);
-        }
+        mNextTick = nowTick;
         mLastSweep = now;
+        if (now >= mLastSave + MIN_SAVE_INTERVAL_MILLISECONDS) {
+            save();
+        }
     }
 
     public void dump(PrintWriter out) {
+        loadFromStoreIfNeeded();
         out.println("Last sweep " + Utils.toHMS(mClock.getElapsedSinceBootMillis() - mLastSweep)
                 + " ago.");
-        for (Map.Entry<ANQPNetworkKey, ANQPData> entry : mANQPCache.entrySet()) {
-            out.println(entry.getKey() + ": " + entry.getValue());
+        out.println("Entries: " + mANQPCache.size() + "/" + mMaxEntries + ", estimated bytes: "
+                + mSizeBytes + "/" + mMaxBytes);
+        out.println("Hits: " + mHits + ", misses: " + mMisses + ", evictions: " + mEvictions
+                + ", expirations: " + mExpirations);
+        if (mStore != null) {
+            out.println("Saved to " + mStore + (mStoreDirty ? " (pending changes)" : ""));
+        }
+        for (Map.Entry<ANQPNetworkKey, Entry> entry : mANQPCache.entrySet()) {
+            out.println(entry.getKey() + ": " + entry.getValue().mData);
         }
     }
 
     /**
-     * Flush the ANQP cache
+     * Flush the ANQP cache. The entries stay in the store, if any, and are loaded again on the
+     * next use.
      */
     public void flush() {
+        save();
+        mStoreLoaded = mStore == null;
+        clear();
+    }
+
+    /**
+     * Flush the ANQP cache and delete the entries from the store, if any.
+     */
+    public void flushAndDeleteStore() {
+        if (mStore != null) {
+            mStore.delete();
+        }
+        mStoreLoaded = true;
+        mStoreDirty = false;
+        clear();
+    }
+
+    private void clear() {
         mANQPCache.clear();
+        for (Set<Entry> slot : mExpiryWheel) {
+            slot.clear();
+        }
+        mSizeBytes = 0;
         mLastSweep = mClock.getElapsedSinceBootMillis();
+        mNextTick = toTick(mLastSweep);
+    }
+
+    @VisibleForTesting
+    public int size() {
+        return mANQPCache.size();
+    }
+
+    @VisibleForTesting
+    public int getSizeBytes() {
+        return mSizeBytes;
+    }
+
+    @VisibleForTesting
+    public long getHitCount() {
+        return mHits;
+    }
+
+    @VisibleForTesting
+    public long getMissCount() {
+        return mMisses;
+    }
+
+    @VisibleForTesting
+    public long getEvictionCount() {
+        return mEvictions;
+    }
+
+    @VisibleForTesting
+    public long getExpirationCount() {
+        return mExpirations;
     }
 }
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.hotspot2;
+
+import android.annotation.NonNull;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import com.android.internal.util.Preconditions;
+import com.android.server.wifi.Clock;
+import com.android.server.wifi.hotspot2.anqp.ANQPElement;
+import com.android.server.wifi.hotspot2.anqp.ANQPParser;
+import com.android.server.wifi.hotspot2.anqp.Constants;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Saves the entries of an {@link AnqpCache} to a file, so that they survive wifi toggles and
+ * reboots.
+ *
+ * Each ANQP element is saved as the payload it was parsed from, and parsed again by
+ * {@link ANQPParser} when loaded. Entries with an element that was not parsed from a payload
+ * are not saved. The expiry time of an entry is saved as wall clock time, since the time since
+ * boot restarts on reboot.
+ */
+public class AnqpCacheStore {
+    private static final String TAG = "AnqpCacheStore";
+
+    /** Name of the store file in the wifi shared directory. */
+    public static final String STORE_FILE_NAME = "PasspointAnqpCache.bin";
+
+    private static final int MAGIC = 0x414e5131; // "ANQ1"
+    // The length of an ANQP element is a 2 octet field.
+    private static final int MAX_PAYLOAD_LENGTH = 0xffff;
+
+    @NonNull private final File mFile;
+
+    public AnqpCacheStore(@NonNull File file) {
+        mFile = Preconditions.checkNotNull(file);
+    }
+
+    /**
+     * Replace the content of the file with the given entries.
+     *
+     * @param entries The entries to save, in the order they are to be loaded
+     * @param clock The clock used for the expiry time of the entries
+     */
+    public void write(@NonNull Map<ANQPNetworkKey, ANQPData> entries, @NonNull Clock clock) {
+        long wallClockOffset = clock.getWallClockMillis() - clock.getElapsedSinceBootMillis();
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(byteStream);
+        try {
+            out.writeInt(MAGIC);
+            for (Map.Entry<ANQPNetworkKey, ANQPData> entry : entries.entrySet()) {
+                if (!canWrite(entry.getValue())) continue;
+                writeEntry(out, entry.getKey(), entry.getValue(), wallClockOffset);
+            }
+            out.flush();
+        } catch (IOException e) {
+            // Not expected when writing to memory.
+            Log.e(TAG, "Failed to serialize the ANQP cache", e);
+            return;
+        }
+
+        AtomicFile atomicFile = new AtomicFile(mFile);
+        FileOutputStream fileStream = null;
+        try {
+            fileStream = atomicFile.startWrite();
+            fileStream.write(byteStream.toByteArray());
+            atomicFile.finishWrite(fileStream);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write " + mFile, e);
+            if (fileStream != null) {
+                atomicFile.failWrite(fileStream);
+            }
+        }
+    }
+
+    private static boolean canWrite(ANQPData data) {
+        for (ANQPElement element : data.getElements().values()) {
+            int length = element.getRawPayloadLength();
+            if (length < 0 || length > MAX_PAYLOAD_LENGTH) return false;
+        }
+        return true;
+    }
+
+    private static void writeEntry(DataOutputStream out, ANQPNetworkKey key, ANQPData data,
+            long wallClockOffset) throws IOException {
+        out.writeBoolean(key.getSsid() != null);
+        if (key.getSsid() != null) {
+            out.writeUTF(key.getSsid());
+        }
+        out.writeLong(key.getBssid());
+        out.writeLong(key.getHessid());
+        out.writeInt(key.getAnqpDomainId());
+        out.writeLong(data.getExpiryTimeMillis() + wallClockOffset);
+        Map<Constants.ANQPElementType, ANQPElement> elements = data.getElements();
+        out.writeByte(elements.size());
+        for (Map.Entry<Constants.ANQPElementType, ANQPElement> element : elements.entrySet()) {
+            byte[] payload = element.getValue().getRawPayload();
+            out.writeUTF(element.getKey().name());
+            out.writeShort(payload.length);
+            out.write(payload);
+        }
+    }
+
+    /**
+     * Read the entries which have not expired yet.
+     *
+     * @param clock The clock used for the expiry time of the entries
+     * @return The entries, in the order they were saved
+     */
+    public @NonNull Map<ANQPNetworkKey, ANQPData> read(@NonNull Clock clock) {
+        Map<ANQPNetworkKey, ANQPData> entries = new LinkedHashMap<>();
+        byte[] bytes;
+        try {
+            bytes = new AtomicFile(mFile).readFully();
+        } catch (FileNotFoundException e) {
+            return entries;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read " + mFile, e);
+            return entries;
+        }
+
+        long now = clock.getElapsedSinceBootMillis();
+        long wallClockOffset = clock.getWallClockMillis() - now;
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        try {
+            if (in.readInt() != MAGIC) {
+                Log.e(TAG, "Unknown format of " + mFile + ", discarding it");
+                return entries;
+            }
+            while (in.available() > 0) {
+                ANQPNetworkKey key = new ANQPNetworkKey(in.readBoolean() ? in.readUTF() : null,
+                        in.readLong(), in.readLong(), in.readInt());
+                // Never extend the lifetime of an entry, even if the wall clock went back.
+                long expiryTime = Math.min(in.readLong() - wallClockOffset,
+                        now + ANQPData.DATA_LIFETIME_MILLISECONDS);
+                Map<Constants.ANQPElementType, ANQPElement> elements = new HashMap<>();
+                boolean valid = true;
+                int numElements = in.readUnsignedByte();
+                for (int i = 0; i < numElements; i++) {
+                    String typeName = in.readUTF();
+                    byte[] payload = new byte[in.readUnsignedShort()];
+                    in.readFully(payload);
+                    Constants.ANQPElementType infoID = parseElementType(typeName);
+                    ANQPElement element = infoID == null ? null : parseElement(infoID, payload);
+                    if (element == null) {
+                        valid = false;
+                    } else {
+                        elements.put(infoID, element);
+                    }
+                }
+                if (valid && expiryTime > now) {
+                    entries.put(key, new ANQPData(clock, elements, expiryTime));
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to parse " + mFile + ", discarding it", e);
+            entries.clear();
+        }
+        return entries;
+    }
+
+    private static Constants.ANQPElementType parseElementType(String typeName) {
+        try {
+            return Constants.ANQPElementType.valueOf(typeName);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Unknown saved ANQP element " + typeName);
+            return null;
+        }
+    }
+
+    /**
+     * Parse an element the same way as the supplicant callback does.
+     *
+     * @return The element, or null if the payload could not be parsed
+     */
+    private static ANQPElement parseElement(Constants.ANQPElementType infoID, byte[] payload) {
+        try {
+            return Constants.getANQPElementID(infoID) != null
+                    ? ANQPParser.parseElement(infoID, ByteBuffer.wrap(payload))
+                    : ANQPParser.parseHS20Element(infoID, ByteBuffer.wrap(payload));
+        } catch (IOException | BufferUnderflowException e) {
+            Log.w(TAG, "Failed to parse saved ANQP element " + infoID + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Delete the file.
+     */
+    public void delete() {
+        new AtomicFile(mFile).delete();
+    }
+
+    @Override
+    public String toString() {
+        return mFile.toString();
+    }
+}
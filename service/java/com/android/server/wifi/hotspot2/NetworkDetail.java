@@ -17,7 +17,6 @@ import java.nio.CharBuffer;
 import java.nio.charset.CharacterCodingException;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -89,7 +88,15 @@ public class NetworkDetail {
      */
     private final int mWifiMode;
     private final int mMaxRate;
-    private final int mMaxNumberSpatialStreams;
+
+    /*
+     * Max number of spatial streams, decoded from the HT/VHT/HE Capabilities elements of the
+     * first mNumParsedInfoElements elements on first use, since it is only needed for the few
+     * networks considered for connection. -1 until decoded.
+     */
+    private int mMaxNumberSpatialStreams = -1;
+    private final ScanResult.InformationElement[] mInfoElements;
+    private final int mNumParsedInfoElements;
 
     /*
      * From Interworking element:
@@ -157,13 +164,6 @@ public class NetworkDetail {
                 new InformationElementUtil.VhtOperation();
         InformationElementUtil.HeOperation heOperation = new InformationElementUtil.HeOperation();
 
-        InformationElementUtil.HtCapabilities htCapabilities =
-                new InformationElementUtil.HtCapabilities();
-        InformationElementUtil.VhtCapabilities vhtCapabilities =
-                new InformationElementUtil.VhtCapabilities();
-        InformationElementUtil.HeCapabilities heCapabilities =
-                new InformationElementUtil.HeCapabilities();
-
         InformationElementUtil.ExtendedCapabilities extendedCapabilities =
                 new InformationElementUtil.ExtendedCapabilities();
 
@@ -177,10 +177,10 @@ public class NetworkDetail {
 
         RuntimeException exception = null;
 
-        ArrayList<Integer> iesFound = new ArrayList<Integer>();
+        boolean foundErp = false;
+        int numParsedInfoElements = 0;
         try {
             for (ScanResult.InformationElement ie : infoElements) {
-                iesFound.add(ie.id);
                 switch (ie.id) {
                     case ScanResult.InformationElement.EID_SSID:
                         ssidOctets = ie.bytes;
@@ -194,12 +194,6 @@ public class NetworkDetail {
                     case ScanResult.InformationElement.EID_VHT_OPERATION:
                         vhtOperation.from(ie);
                         break;
-                    case ScanResult.InformationElement.EID_HT_CAPABILITIES:
-                        htCapabilities.from(ie);
-                        break;
-                    case ScanResult.InformationElement.EID_VHT_CAPABILITIES:
-                        vhtCapabilities.from(ie);
-                        break;
                     case ScanResult.InformationElement.EID_INTERWORKING:
                         interworking.from(ie);
                         break;
@@ -221,14 +215,14 @@ public class NetworkDetail {
                     case ScanResult.InformationElement.EID_EXTENDED_SUPPORTED_RATES:
                         extendedSupportedRates.from(ie);
                         break;
+                    case ScanResult.InformationElement.EID_ERP:
+                        foundErp = true;
+                        break;
                     case ScanResult.InformationElement.EID_EXTENSION_PRESENT:
                         switch(ie.idExt) {
                             case ScanResult.InformationElement.EID_EXT_HE_OPERATION:
                                 heOperation.from(ie);
                                 break;
-                            case ScanResult.InformationElement.EID_EXT_HE_CAPABILITIES:
-                                heCapabilities.from(ie);
-                                break;
                             default:
                                 break;
                         }
@@ -236,6 +230,7 @@ public class NetworkDetail {
                     default:
                         break;
                 }
+                numParsedInfoElements++;
             }
         }
         catch (IllegalArgumentException | BufferUnderflowException | ArrayIndexOutOfBoundsException e) {
@@ -254,13 +249,18 @@ public class NetworkDetail {
              * decode the SSID will be used as an indication that the whole frame is malformed and
              * an exception will be triggered.
              */
-            CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
-            try {
-                CharBuffer decoded = decoder.decode(ByteBuffer.wrap(ssidOctets));
-                ssid = decoded.toString();
-            }
-            catch (CharacterCodingException cce) {
-                ssid = null;
+            if (isAscii(ssidOctets)) {
+                // Most SSIDs are plain ASCII, which decodes the same with any of the charsets.
+                ssid = new String(ssidOctets, StandardCharsets.US_ASCII);
+            } else {
+                CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+                try {
+                    CharBuffer decoded = decoder.decode(ByteBuffer.wrap(ssidOctets));
+                    ssid = decoded.toString();
+                }
+                catch (CharacterCodingException cce) {
+                    ssid = null;
+                }
             }
 
             if (ssid == null) {
@@ -347,9 +347,8 @@ public class NetworkDetail {
             mDtimInterval = trafficIndicationMap.mDtimPeriod;
         }
 
-        mMaxNumberSpatialStreams = Math.max(heCapabilities.getMaxNumberSpatialStreams(),
-                Math.max(vhtCapabilities.getMaxNumberSpatialStreams(),
-                htCapabilities.getMaxNumberSpatialStreams()));
+        mInfoElements = infoElements;
+        mNumParsedInfoElements = numParsedInfoElements;
 
         int maxRateA = 0;
         int maxRateB = 0;
@@ -364,7 +363,7 @@ public class NetworkDetail {
             mMaxRate = maxRateA > maxRateB ? maxRateA : maxRateB;
             mWifiMode = InformationElementUtil.WifiMode.determineMode(mPrimaryFreq, mMaxRate,
                     heOperation.isPresent(), vhtOperation.isPresent(), htOperation.isPresent(),
-                    iesFound.contains(ScanResult.InformationElement.EID_ERP));
+                    foundErp);
         } else {
             mWifiMode = 0;
             mMaxRate = 0;
@@ -374,7 +373,7 @@ public class NetworkDetail {
                     + mPrimaryFreq + " Centerfreq0: " + mCenterfreq0 + " Centerfreq1: "
                     + mCenterfreq1 + (extendedCapabilities.is80211McRTTResponder()
                     ? " Support RTT responder" : " Do not support RTT responder")
-                    + " MaxNumberSpatialStreams: " + mMaxNumberSpatialStreams
+                    + " MaxNumberSpatialStreams: " + getMaxNumberSpatialStreams()
                     + " MboAssociationDisallowedReasonCode: "
                     + mMboAssociationDisallowedReasonCode);
             Log.v("WifiMode", mSSID
@@ -384,13 +383,21 @@ public class NetworkDetail {
                     + ", HE: " + String.valueOf(heOperation.isPresent())
                     + ", VHT: " + String.valueOf(vhtOperation.isPresent())
                     + ", HT: " + String.valueOf(htOperation.isPresent())
-                    + ", ERP: " + String.valueOf(
-                    iesFound.contains(ScanResult.InformationElement.EID_ERP))
+                    + ", ERP: " + String.valueOf(foundErp)
                     + ", SupportedRates: " + supportedRates.toString()
                     + " ExtendedSupportedRates: " + extendedSupportedRates.toString());
         }
     }
 
+    private static boolean isAscii(byte[] octets) {
+        for (byte octet : octets) {
+            if (octet < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private static ByteBuffer getAndAdvancePayload(ByteBuffer data, int plLength) {
         ByteBuffer payload = data.duplicate().order(data.order());
         payload.limit(payload.position() + plLength);
@@ -423,6 +430,8 @@ public class NetworkDetail {
         mWifiMode = base.mWifiMode;
         mMaxRate = base.mMaxRate;
         mMaxNumberSpatialStreams = base.mMaxNumberSpatialStreams;
+        mInfoElements = base.mInfoElements;
+        mNumParsedInfoElements = base.mNumParsedInfoElements;
         mMboSupported = base.mMboSupported;
         mMboCellularDataAware = base.mMboCellularDataAware;
         mOceSupported = base.mOceSupported;
@@ -539,6 +548,28 @@ public class NetworkDetail {
     }
 
     public int getMaxNumberSpatialStreams() {
+        if (mMaxNumberSpatialStreams < 0) {
+            InformationElementUtil.HtCapabilities htCapabilities =
+                    new InformationElementUtil.HtCapabilities();
+            InformationElementUtil.VhtCapabilities vhtCapabilities =
+                    new InformationElementUtil.VhtCapabilities();
+            InformationElementUtil.HeCapabilities heCapabilities =
+                    new InformationElementUtil.HeCapabilities();
+            for (int i = 0; i < mNumParsedInfoElements; i++) {
+                ScanResult.InformationElement ie = mInfoElements[i];
+                if (ie.id == ScanResult.InformationElement.EID_HT_CAPABILITIES) {
+                    htCapabilities.from(ie);
+                } else if (ie.id == ScanResult.InformationElement.EID_VHT_CAPABILITIES) {
+                    vhtCapabilities.from(ie);
+                } else if (ie.id == ScanResult.InformationElement.EID_EXTENSION_PRESENT
+                        && ie.idExt == ScanResult.InformationElement.EID_EXT_HE_CAPABILITIES) {
+                    heCapabilities.from(ie);
+                }
+            }
+            mMaxNumberSpatialStreams = Math.max(heCapabilities.getMaxNumberSpatialStreams(),
+                    Math.max(vhtCapabilities.getMaxNumberSpatialStreams(),
+                    htCapabilities.getMaxNumberSpatialStreams()));
+        }
         return mMaxNumberSpatialStreams;
     }
 
@@ -59,6 +59,7 @@ import com.android.server.wifi.proto.nano.WifiMetricsProto.UserActionEvent;
 import com.android.server.wifi.util.InformationElementUtil;
 import com.android.server.wifi.util.WifiPermissionsUtil;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.security.GeneralSecurityException;
@@ -115,6 +116,8 @@ public class PasspointManager {
     private final PasspointObjectFactory mObjectFactory;
 
     private final Map<String, PasspointProvider> mProviders;
+    // Index of mProviders for matching, built on demand. Reset whenever mProviders changes.
+    private PasspointMatchIndex mProviderMatchIndex;
     private final AnqpCache mAnqpCache;
     private final ANQPRequestManager mAnqpRequestManager;
     private final WifiConfigManager mWifiConfigManager;
@@ -188,6 +191,7 @@ public class PasspointManager {
         @Override
         public void setProviders(List<PasspointProvider> providers) {
             mProviders.clear();
+            mProviderMatchIndex = null;
             for (PasspointProvider provider : providers) {
                 provider.enableVerboseLogging(mVerboseLoggingEnabled ? 1 : 0);
                 mProviders.put(provider.getConfig().getUniqueId(), provider);
@@ -354,6 +358,7 @@ public class PasspointManager {
     public void enableVerboseLogging(int verbose) {
         mVerboseLoggingEnabled = (verbose > 0) ? true : false;
         mPasspointProvisioner.enableVerboseLogging(verbose);
+        mAnqpRequestManager.enableVerboseLogging(verbose);
         for (PasspointProvider provider : mProviders.values()) {
             provider.enableVerboseLogging(verbose);
         }
@@ -474,6 +479,7 @@ public class PasspointManager {
                     + " and unique ID: " + config.getUniqueId());
             old.uninstallCertsAndKeys();
             mProviders.remove(config.getUniqueId());
+            mProviderMatchIndex = null;
             // New profile changes the credential, remove the related WifiConfig.
             if (!old.equals(newProvider)) {
                 mWifiConfigManager.removePasspointConfiguredNetwork(
@@ -486,6 +492,7 @@ public class PasspointManager {
         }
         newProvider.enableVerboseLogging(mVerboseLoggingEnabled ? 1 : 0);
         mProviders.put(config.getUniqueId(), newProvider);
+        mProviderMatchIndex = null;
         mWifiConfigManager.saveToStore(true /* forceWrite */);
         if (!isFromSuggestion && newProvider.getPackageName() != null) {
             startTrackingAppOpsChange(newProvider.getPackageName(), uid);
@@ -524,6 +531,7 @@ public class PasspointManager {
                 provider.getWifiConfig().getKey());
         String uniqueId = provider.getConfig().getUniqueId();
         mProviders.remove(uniqueId);
+        mProviderMatchIndex = null;
         mWifiConfigManager.saveToStore(true /* forceWrite */);
 
         // Stop monitoring the package if there is no Passpoint profile installed by the package
@@ -790,6 +798,84 @@ public class PasspointManager {
         return new ArrayList<>();
     }
 
+    /**
+     * An AP to request the missing ANQP elements of a {@link ANQPNetworkKey} from.
+     */
+    private static class AnqpRequestCandidate {
+        public final ScanResult scanResult;
+        public final long bssid;
+        public final InformationElementUtil.RoamingConsortium roamingConsortium;
+        public final InformationElementUtil.Vsa vsa;
+        public boolean likelyMatch;
+
+        AnqpRequestCandidate(ScanResult scanResult, long bssid,
+                InformationElementUtil.RoamingConsortium roamingConsortium,
+                InformationElementUtil.Vsa vsa) {
+            this.scanResult = scanResult;
+            this.bssid = bssid;
+            this.roamingConsortium = roamingConsortium;
+            this.vsa = vsa;
+        }
+    }
+
+    /**
+     * Request the ANQP elements missing from the cache for the APs of a scan, with one request
+     * per {@link ANQPNetworkKey}, since all the APs with the same key have the same ANQP
+     * information. The strongest AP of each key is queried. The APs which advertise a roaming
+     * consortium OI of a provider are queried first, then the strongest ones, as
+     * {@link ANQPRequestManager} limits the number of requests in flight.
+     *
+     * @param scanResults The scan results of the APs
+     */
+    public void requestMissingAnqpElements(@NonNull List<ScanResult> scanResults) {
+        Map<ANQPNetworkKey, AnqpRequestCandidate> candidatesForKey = new HashMap<>();
+        for (ScanResult scanResult : scanResults) {
+            long bssid;
+            try {
+                bssid = Utils.parseMac(scanResult.BSSID);
+            } catch (IllegalArgumentException e) {
+                Log.e(TAG, "Invalid BSSID provided in the scan result: " + scanResult.BSSID);
+                continue;
+            }
+            InformationElementUtil.Vsa vsa = InformationElementUtil.getHS2VendorSpecificIE(
+                    scanResult.informationElements);
+            ANQPNetworkKey anqpKey = ANQPNetworkKey.buildKey(scanResult.SSID, bssid,
+                    scanResult.hessid, vsa.anqpDomainID);
+            if (mAnqpCache.hasEntry(anqpKey)) {
+                continue;
+            }
+            AnqpRequestCandidate candidate = candidatesForKey.get(anqpKey);
+            if (candidate == null || candidate.scanResult.level < scanResult.level) {
+                candidatesForKey.put(anqpKey, new AnqpRequestCandidate(scanResult, bssid,
+                        InformationElementUtil.getRoamingConsortiumIE(
+                                scanResult.informationElements), vsa));
+            }
+        }
+        if (candidatesForKey.isEmpty()) {
+            return;
+        }
+
+        PasspointMatchIndex matchIndex = getProviderMatchIndex();
+        List<Map.Entry<ANQPNetworkKey, AnqpRequestCandidate>> requests =
+                new ArrayList<>(candidatesForKey.entrySet());
+        for (Map.Entry<ANQPNetworkKey, AnqpRequestCandidate> request : requests) {
+            AnqpRequestCandidate candidate = request.getValue();
+            candidate.likelyMatch =
+                    matchIndex.hasRoamingConsortiumMatch(candidate.roamingConsortium);
+        }
+        requests.sort((a, b) -> {
+            if (a.getValue().likelyMatch != b.getValue().likelyMatch) {
+                return a.getValue().likelyMatch ? -1 : 1;
+            }
+            return Integer.compare(b.getValue().scanResult.level, a.getValue().scanResult.level);
+        });
+        for (Map.Entry<ANQPNetworkKey, AnqpRequestCandidate> request : requests) {
+            AnqpRequestCandidate candidate = request.getValue();
+            mAnqpRequestManager.requestANQPElements(candidate.bssid, request.getKey(),
+                    candidate.roamingConsortium.anqpOICount > 0, candidate.vsa.hsRelease);
+        }
+    }
+
     /**
      * Return a list of all providers that can provide service through the given AP.
      *
@@ -839,11 +925,16 @@ public class PasspointManager {
             return allMatches;
         }
         boolean anyProviderUpdated = false;
+        Set<PasspointProvider> candidates = getProviderMatchIndex().getCandidates(
+                anqpEntry.getElements(), roamingConsortium);
         for (Map.Entry<String, PasspointProvider> entry : mProviders.entrySet()) {
             PasspointProvider provider = entry.getValue();
             if (provider.tryUpdateCarrierId()) {
                 anyProviderUpdated = true;
             }
+            if (!candidates.contains(provider)) {
+                continue;
+            }
             if (mVerboseLoggingEnabled) {
                 Log.d(TAG, "Matching provider " + provider.getConfig().getHomeSp().getFqdn()
                         + " with "
@@ -874,6 +965,13 @@ public class PasspointManager {
         return allMatches;
     }
 
+    private @NonNull PasspointMatchIndex getProviderMatchIndex() {
+        if (mProviderMatchIndex == null) {
+            mProviderMatchIndex = mObjectFactory.makePasspointMatchIndex(mProviders.values());
+        }
+        return mProviderMatchIndex;
+    }
+
     /**
      * Add a legacy Passpoint configuration represented by a {@link WifiConfiguration} to the
      * current {@link PasspointManager}.
@@ -1234,6 +1332,7 @@ public class PasspointManager {
                 enterpriseConfig.getClientCertificateAlias(), null, false, false);
         provider.enableVerboseLogging(mVerboseLoggingEnabled ? 1 : 0);
         mProviders.put(passpointConfig.getUniqueId(), provider);
+        mProviderMatchIndex = null;
         return true;
     }
 
@@ -1314,6 +1413,28 @@ public class PasspointManager {
         mAnqpCache.flush();
     }
 
+    /**
+     * Save the ANQP cache to the given file, so that it survives wifi toggles and reboots. The
+     * saved entries are loaded on the first use of the cache.
+     */
+    public void enableAnqpCachePersistence(File file) {
+        mAnqpCache.setStore(mObjectFactory.makeAnqpCacheStore(file));
+    }
+
+    /**
+     * Save the pending changes of the ANQP cache, if it is persisted (e.g. before shutdown).
+     */
+    public void saveAnqpCache() {
+        mAnqpCache.save();
+    }
+
+    /**
+     * Flush the ANQP cache and delete its saved entries, if it is persisted (for factory reset).
+     */
+    public void deleteSavedAnqpCache() {
+        mAnqpCache.flushAndDeleteStore();
+    }
+
     /**
      * Verify that the given certificate is trusted by one of the pre-loaded public CAs in the
      * system key store.
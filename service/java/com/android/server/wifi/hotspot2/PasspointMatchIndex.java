@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.hotspot2;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.net.wifi.hotspot2.PasspointConfiguration;
+import android.net.wifi.hotspot2.pps.HomeSp;
+import android.text.TextUtils;
+import android.util.ArraySet;
+
+import com.android.server.wifi.hotspot2.anqp.ANQPElement;
+import com.android.server.wifi.hotspot2.anqp.Constants.ANQPElementType;
+import com.android.server.wifi.hotspot2.anqp.DomainNameElement;
+import com.android.server.wifi.hotspot2.anqp.NAIRealmData;
+import com.android.server.wifi.hotspot2.anqp.NAIRealmElement;
+import com.android.server.wifi.hotspot2.anqp.RoamingConsortiumElement;
+import com.android.server.wifi.util.InformationElementUtil.RoamingConsortium;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of the domain names, realms and roaming consortium OIs of a set of
+ * {@link PasspointProvider}s. It finds the providers that may match an AP in a single pass over
+ * the AP's ANQP elements, instead of running {@link PasspointProvider#match} for every provider.
+ *
+ * The index only narrows down the candidates: a provider which is not a candidate cannot match
+ * the AP, but the candidates still need to be matched with {@link PasspointProvider#match}.
+ * Providers with a SIM credential, whose 3GPP and IMSI based matching depends on the installed
+ * SIM cards, are always candidates.
+ *
+ * The index is immutable, and needs to be rebuilt when the set of providers changes.
+ */
+public class PasspointMatchIndex {
+    /**
+     * Label tree of domain names, like the one of {@link DomainMatcher}, holding the providers
+     * at the label ending their domain. Labels are ordered from the top-level domain.
+     */
+    private static class Label {
+        private final Map<String, Label> mSubDomains = new HashMap<>();
+        private final List<PasspointProvider> mProviders = new ArrayList<>();
+
+        void addDomain(@Nullable String domain, PasspointProvider provider) {
+            if (TextUtils.isEmpty(domain)) {
+                return;
+            }
+            Label label = this;
+            for (String labelName : Utils.splitDomain(domain)) {
+                Label subLabel = label.mSubDomains.get(labelName);
+                if (subLabel == null) {
+                    subLabel = new Label();
+                    label.mSubDomains.put(labelName, subLabel);
+                }
+                label = subLabel;
+            }
+            if (!label.mProviders.contains(provider)) {
+                label.mProviders.add(provider);
+            }
+        }
+
+        /**
+         * Adds the providers of all the domains which |domain| is the same as or a sub-domain of.
+         */
+        void collectProviders(@Nullable String domain, Set<PasspointProvider> providers) {
+            if (TextUtils.isEmpty(domain)) {
+                return;
+            }
+            Label label = this;
+            for (String labelName : Utils.splitDomain(domain)) {
+                label = label.mSubDomains.get(labelName);
+                if (label == null) {
+                    return;
+                }
+                providers.addAll(label.mProviders);
+            }
+        }
+    }
+
+    private final Label mDomains = new Label();
+    private final Label mRealms = new Label();
+    private final Map<Long, List<PasspointProvider>> mProvidersForOi = new HashMap<>();
+    private final List<PasspointProvider> mUnindexedProviders = new ArrayList<>();
+
+    /**
+     * @param providers the providers to index.
+     */
+    public PasspointMatchIndex(@NonNull Collection<PasspointProvider> providers) {
+        for (PasspointProvider provider : providers) {
+            PasspointConfiguration config = provider.getConfig();
+            if (config == null
+                    || config.getHomeSp() == null || config.getCredential() == null
+                    || config.getCredential().getSimCredential() != null) {
+                mUnindexedProviders.add(provider);
+                continue;
+            }
+            HomeSp homeSp = config.getHomeSp();
+            if (homeSp.getMatchAllOis() != null) {
+                // Matching all OIs also depends on the OIs the provider does not have.
+                mUnindexedProviders.add(provider);
+                continue;
+            }
+            mDomains.addDomain(homeSp.getFqdn(), provider);
+            if (homeSp.getOtherHomePartners() != null) {
+                for (String otherHomePartner : homeSp.getOtherHomePartners()) {
+                    mDomains.addDomain(otherHomePartner, provider);
+                }
+            }
+            mRealms.addDomain(config.getCredential().getRealm(), provider);
+            addOis(homeSp.getMatchAnyOis(), provider);
+            addOis(homeSp.getRoamingConsortiumOis(), provider);
+        }
+    }
+
+    private void addOis(@Nullable long[] ois, PasspointProvider provider) {
+        if (ois == null) {
+            return;
+        }
+        for (long oi : ois) {
+            List<PasspointProvider> providers = mProvidersForOi.get(oi);
+            if (providers == null) {
+                providers = new ArrayList<>(1);
+                mProvidersForOi.put(oi, providers);
+            }
+            if (!providers.contains(provider)) {
+                providers.add(provider);
+            }
+        }
+    }
+
+    private void collectOiProviders(long oi, Set<PasspointProvider> providers) {
+        List<PasspointProvider> oiProviders = mProvidersForOi.get(oi);
+        if (oiProviders != null) {
+            providers.addAll(oiProviders);
+        }
+    }
+
+    /**
+     * Returns true if the Roaming Consortium information element of an AP advertises an OI of
+     * one of the indexed providers, i.e. if the AP is likely to match a provider.
+     */
+    public boolean hasRoamingConsortiumMatch(@Nullable RoamingConsortium roamingConsortiumFromAp) {
+        long[] apOis = roamingConsortiumFromAp == null
+                ? null : roamingConsortiumFromAp.getRoamingConsortiums();
+        if (apOis == null) {
+            return false;
+        }
+        for (long oi : apOis) {
+            if (mProvidersForOi.containsKey(oi)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the providers which may match an AP.
+     *
+     * @param anqpElements the ANQP elements of the AP.
+     * @param roamingConsortiumFromAp the Roaming Consortium information element of the AP.
+     * @return a superset of the providers for which {@link PasspointProvider#match} returns a
+     *         home or roaming provider match.
+     */
+    public @NonNull Set<PasspointProvider> getCandidates(
+            @NonNull Map<ANQPElementType, ANQPElement> anqpElements,
+            @Nullable RoamingConsortium roamingConsortiumFromAp) {
+        Set<PasspointProvider> candidates = new ArraySet<>(mUnindexedProviders);
+
+        DomainNameElement domainNameElement =
+                (DomainNameElement) anqpElements.get(ANQPElementType.ANQPDomName);
+        if (domainNameElement != null) {
+            for (String domain : domainNameElement.getDomains()) {
+                mDomains.collectProviders(domain, candidates);
+            }
+        }
+
+        NAIRealmElement naiRealmElement =
+                (NAIRealmElement) anqpElements.get(ANQPElementType.ANQPNAIRealm);
+        if (naiRealmElement != null) {
+            for (NAIRealmData realmData : naiRealmElement.getRealmDataList()) {
+                for (String realm : realmData.getRealms()) {
+                    mRealms.collectProviders(realm, candidates);
+                }
+            }
+        }
+
+        if (!mProvidersForOi.isEmpty()) {
+            RoamingConsortiumElement roamingConsortiumElement = (RoamingConsortiumElement)
+                    anqpElements.get(ANQPElementType.ANQPRoamingConsortium);
+            if (roamingConsortiumElement != null) {
+                for (long oi : roamingConsortiumElement.getOIs()) {
+                    collectOiProviders(oi, candidates);
+                }
+            }
+            long[] apOis = roamingConsortiumFromAp == null
+                    ? null : roamingConsortiumFromAp.getRoamingConsortiums();
+            if (apOis != null) {
+                for (long oi : apOis) {
+                    collectOiProviders(oi, candidates);
+                }
+            }
+        }
+        return candidates;
+    }
+}
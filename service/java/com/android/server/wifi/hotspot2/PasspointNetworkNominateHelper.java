@@ -17,6 +17,7 @@
 package com.android.server.wifi.hotspot2;
 
 import android.annotation.NonNull;
+import android.net.wifi.ScanResult;
 import android.net.wifi.WifiConfiguration;
 import android.os.Process;
 import android.util.LocalLog;
@@ -46,6 +47,9 @@ public class PasspointNetworkNominateHelper {
     private final PasspointManager mPasspointManager;
     private final WifiConfigManager mWifiConfigManager;
     private final LocalLog mLocalLog;
+    // Scan details the missing ANQP elements were last requested for. The saved and the
+    // suggestion nominators both look for candidates in each scan.
+    private List<ScanDetail> mAnqpRequestedScanDetails = Collections.emptyList();
     /**
      * Contained information for a Passpoint network candidate.
      */
@@ -120,6 +124,22 @@ public class PasspointNetworkNominateHelper {
         return wm.getStatus() != HSWanMetricsElement.LINK_STATUS_UP || wm.isCapped();
     }
 
+    /**
+     * Check if the two lists hold the same scan details, in the same order.
+     */
+    private static boolean isSameScan(List<ScanDetail> scanDetails,
+            List<ScanDetail> otherScanDetails) {
+        if (scanDetails.size() != otherScanDetails.size()) {
+            return false;
+        }
+        for (int i = 0; i < scanDetails.size(); i++) {
+            if (scanDetails.get(i) != otherScanDetails.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Match available providers for each scan detail. Then for each available provider, find the
      * best scan detail for it.
@@ -132,6 +152,16 @@ public class PasspointNetworkNominateHelper {
         if (mPasspointManager.isProvidersListEmpty()) {
             return Collections.emptyList();
         }
+        // Request the missing ANQP elements for the whole scan at once, so that APs sharing
+        // their ANQP information are not all queried from the loop below.
+        if (!isSameScan(scanDetails, mAnqpRequestedScanDetails)) {
+            List<ScanResult> scanResults = new ArrayList<>();
+            for (ScanDetail scanDetail : scanDetails) {
+                scanResults.add(scanDetail.getScanResult());
+            }
+            mPasspointManager.requestMissingAnqpElements(scanResults);
+            mAnqpRequestedScanDetails = new ArrayList<>(scanDetails);
+        }
         List<Pair<ScanDetail, WifiConfiguration>> results = new ArrayList<>();
         Map<PasspointProvider, List<PasspointNetworkCandidate>> candidatesPerProvider =
                 new HashMap<>();
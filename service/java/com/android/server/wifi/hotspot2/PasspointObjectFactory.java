@@ -25,9 +25,11 @@ import com.android.server.wifi.WifiKeyStore;
 import com.android.server.wifi.WifiMetrics;
 import com.android.server.wifi.WifiNative;
 
+import java.io.File;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManagerFactory;
@@ -99,6 +101,16 @@ public class PasspointObjectFactory{
         return new AnqpCache(clock);
     }
 
+    /**
+     * Create an AnqpCacheStore instance.
+     *
+     * @param file The file to save the ANQP cache to
+     * @return {@link AnqpCacheStore}
+     */
+    public AnqpCacheStore makeAnqpCacheStore(File file) {
+        return new AnqpCacheStore(file);
+    }
+
     /**
      * Create an instance of {@link ANQPRequestManager}.
      *
@@ -110,6 +122,16 @@ public class PasspointObjectFactory{
         return new ANQPRequestManager(handler, clock);
     }
 
+    /**
+     * Create an instance of {@link PasspointMatchIndex}.
+     *
+     * @param providers The providers to index
+     * @return {@link PasspointMatchIndex}
+     */
+    public PasspointMatchIndex makePasspointMatchIndex(Collection<PasspointProvider> providers) {
+        return new PasspointMatchIndex(providers);
+    }
+
     /**
      * Create an instance of {@link PasspointProvisioner}.
      *
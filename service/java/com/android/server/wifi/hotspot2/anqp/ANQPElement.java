@@ -1,10 +1,14 @@
 package com.android.server.wifi.hotspot2.anqp;
 
+import java.nio.ByteBuffer;
+
 /**
  * Base class for an IEEE802.11u ANQP element.
  */
 public abstract class ANQPElement {
     private final Constants.ANQPElementType mID;
+    // Shares its content with the buffer the element was parsed from.
+    private ByteBuffer mRawPayload;
 
     protected ANQPElement(Constants.ANQPElementType id) {
         mID = id;
@@ -13,4 +17,30 @@ public abstract class ANQPElement {
     public Constants.ANQPElementType getID() {
         return mID;
     }
+
+    /**
+     * Return a copy of the payload this element was parsed from by {@link ANQPParser}, or null
+     * if the element was not parsed from a payload. Parsing the payload again gives an equal
+     * element.
+     */
+    public byte[] getRawPayload() {
+        if (mRawPayload == null) {
+            return null;
+        }
+        byte[] rawPayload = new byte[mRawPayload.remaining()];
+        mRawPayload.duplicate().get(rawPayload);
+        return rawPayload;
+    }
+
+    /**
+     * Return the length of the payload this element was parsed from, or -1 if the element was
+     * not parsed from a payload.
+     */
+    public int getRawPayloadLength() {
+        return mRawPayload == null ? -1 : mRawPayload.remaining();
+    }
+
+    void setRawPayload(ByteBuffer rawPayload) {
+        mRawPayload = rawPayload;
+    }
 }
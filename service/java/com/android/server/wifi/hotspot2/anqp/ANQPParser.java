@@ -26,6 +26,10 @@ import java.nio.ByteOrder;
 
 /**
  * Factory to build a collection of 802.11u ANQP elements from a byte buffer.
+ *
+ * The elements are decoded in place: the strings and blobs which are not needed right away, such
+ * as names, realms and icon data, are kept as slices of the buffer, and so is the raw payload of
+ * each element. The content of the buffer must not be modified once it has been parsed.
  */
 public class ANQPParser {
     /**
@@ -57,6 +61,14 @@ public class ANQPParser {
      */
     public static ANQPElement parseElement(Constants.ANQPElementType infoID, ByteBuffer payload)
             throws ProtocolException {
+        ByteBuffer rawPayload = payload.slice().asReadOnlyBuffer();
+        ANQPElement element = parseElementPayload(infoID, payload);
+        element.setRawPayload(rawPayload);
+        return element;
+    }
+
+    private static ANQPElement parseElementPayload(Constants.ANQPElementType infoID,
+            ByteBuffer payload) throws ProtocolException {
         switch (infoID) {
             case ANQPVenueName:
                 return VenueNameElement.parse(payload);
@@ -88,6 +100,14 @@ public class ANQPParser {
      */
     public static ANQPElement parseHS20Element(Constants.ANQPElementType infoID,
             ByteBuffer payload) throws ProtocolException {
+        ByteBuffer rawPayload = payload.slice().asReadOnlyBuffer();
+        ANQPElement element = parseHS20ElementPayload(infoID, payload);
+        element.setRawPayload(rawPayload);
+        return element;
+    }
+
+    private static ANQPElement parseHS20ElementPayload(Constants.ANQPElementType infoID,
+            ByteBuffer payload) throws ProtocolException {
         switch (infoID) {
             case HSFriendlyName:
                 return HSFriendlyNameElement.parse(payload);
@@ -97,6 +117,8 @@ public class ANQPParser {
                 return HSConnectionCapabilityElement.parse(payload);
             case HSOSUProviders:
                 return HSOsuProvidersElement.parse(payload);
+            case HSIconFile:
+                return HSIconFileElement.parse(payload);
             default:
                 throw new ProtocolException("Unknown element ID: " + infoID);
         }
@@ -130,6 +152,6 @@ public class ANQPParser {
             throw new ProtocolException("Unsupported subtype: " + subType);
         }
         payload.get();     // Skip the reserved byte
-        return parseHS20Element(hs20ID, payload);
+        return parseHS20ElementPayload(hs20ID, payload);
     }
 }
@@ -5,7 +5,6 @@ import com.android.internal.annotations.VisibleForTesting;
 import java.net.ProtocolException;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -54,7 +53,7 @@ public class HSFriendlyNameElement extends ANQPElement {
             I18Name name = I18Name.parse(payload);
             // Verify that the number of bytes for the operator name doesn't exceed the max
             // allowed.
-            int textBytes = name.getText().getBytes(StandardCharsets.UTF_8).length;
+            int textBytes = name.getTextLength();
             if (textBytes > MAXIMUM_OPERATOR_NAME_LENGTH) {
                 throw new ProtocolException("Operator Name exceeds the maximum allowed "
                         + textBytes);
@@ -27,7 +27,6 @@ import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
 import java.util.Objects;
 
 /**
@@ -53,10 +52,15 @@ public class HSIconFileElement extends ANQPElement {
 
     private final int mStatusCode;
     private final String mIconType;
-    private final byte[] mIconData;
+    // Shared with the payload the element was parsed from.
+    private final ByteBuffer mIconData;
 
     @VisibleForTesting
     public HSIconFileElement(int statusCode, String iconType, byte[] iconData) {
+        this(statusCode, iconType, iconData == null ? null : ByteBuffer.wrap(iconData));
+    }
+
+    private HSIconFileElement(int statusCode, String iconType, ByteBuffer iconData) {
         super(Constants.ANQPElementType.HSIconFile);
         mStatusCode = statusCode;
         mIconType = iconType;
@@ -78,7 +82,7 @@ public class HSIconFileElement extends ANQPElement {
         if (status != STATUS_CODE_SUCCESS) {
             // No more data if status code is not success.
             Log.e(TAG, "Icon file download failed: " + status);
-            return new HSIconFileElement(status, null, null);
+            return new HSIconFileElement(status, null, (ByteBuffer) null);
         }
 
         // Parse icon type.
@@ -88,8 +92,7 @@ public class HSIconFileElement extends ANQPElement {
         // Parse icon data.
         int iconDataLength =
                 (int) ByteBufferReader.readInteger(payload, ByteOrder.LITTLE_ENDIAN, 2) & 0xFFFF;
-        byte[] iconData = new byte[iconDataLength];
-        payload.get(iconData);
+        ByteBuffer iconData = ByteBufferReader.readSubBuffer(payload, iconDataLength);
 
         return new HSIconFileElement(status, iconType, iconData);
     }
@@ -105,12 +108,12 @@ public class HSIconFileElement extends ANQPElement {
         HSIconFileElement that = (HSIconFileElement) thatObject;
         return mStatusCode == that.mStatusCode
                 && TextUtils.equals(mIconType, that.mIconType)
-                && Arrays.equals(mIconData, that.mIconData);
+                && Objects.equals(mIconData, that.mIconData);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(mStatusCode, mIconType, Arrays.hashCode(mIconData));
+        return Objects.hash(mStatusCode, mIconType, mIconData);
     }
 
     @Override
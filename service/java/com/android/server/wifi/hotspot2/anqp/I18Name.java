@@ -35,6 +35,9 @@ import java.util.Locale;
  *
  * | Length | Language Code |   Name   |
  *      1           3         variable
+ *
+ * The name is decoded from the payload on first use, so that names which are never displayed
+ * are not turned into Strings.
  */
 public class I18Name {
     @VisibleForTesting
@@ -45,15 +48,24 @@ public class I18Name {
 
     private final String mLanguage;
     private final Locale mLocale;
-    private final String mText;
+    // The UTF-8 encoded name, shared with the payload, or null when constructed from a String.
+    private final ByteBuffer mTextBytes;
+    private String mText;
 
     @VisibleForTesting
     public I18Name(String language, Locale locale, String text) {
         mLanguage = language;
         mLocale = locale;
+        mTextBytes = null;
         mText = text;
     }
 
+    private I18Name(String language, Locale locale, ByteBuffer textBytes) {
+        mLanguage = language;
+        mLocale = locale;
+        mTextBytes = textBytes;
+    }
+
     /**
      * Parse a I18Name from the given buffer.
      *
@@ -81,10 +93,10 @@ public class I18Name {
         } catch (Exception e) {
             throw new ProtocolException("Invalid language: " + language);
         }
-        // Read the text string.
-        String text = ByteBufferReader.readString(payload, length - LANGUAGE_CODE_LENGTH,
-                StandardCharsets.UTF_8);
-        return new I18Name(language, locale, text);
+        // Keep the text string to decode it on first use.
+        ByteBuffer textBytes =
+                ByteBufferReader.readSubBuffer(payload, length - LANGUAGE_CODE_LENGTH);
+        return new I18Name(language, locale, textBytes);
     }
 
     public String getLanguage() {
@@ -96,7 +108,22 @@ public class I18Name {
     }
 
     public String getText() {
-        return mText;
+        String text = mText;
+        if (text == null) {
+            ByteBuffer textBytes = mTextBytes.duplicate();
+            text = ByteBufferReader.readString(
+                    textBytes, textBytes.remaining(), StandardCharsets.UTF_8);
+            mText = text;
+        }
+        return text;
+    }
+
+    /**
+     * Return the length of the name in octets, without decoding it.
+     */
+    int getTextLength() {
+        return mTextBytes != null
+                ? mTextBytes.remaining() : mText.getBytes(StandardCharsets.UTF_8).length;
     }
 
     @Override
@@ -110,18 +137,18 @@ public class I18Name {
 
         I18Name that = (I18Name) thatObject;
         return TextUtils.equals(mLanguage, that.mLanguage)
-                && TextUtils.equals(mText, that.mText);
+                && TextUtils.equals(getText(), that.getText());
     }
 
     @Override
     public int hashCode() {
         int result = mLanguage.hashCode();
-        result = 31 * result + mText.hashCode();
+        result = 31 * result + getText().hashCode();
         return result;
     }
 
     @Override
     public String toString() {
-        return mText + ':' + mLocale.getLanguage();
+        return getText() + ':' + mLocale.getLanguage();
     }
 }
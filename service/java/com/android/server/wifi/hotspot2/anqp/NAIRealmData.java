@@ -24,6 +24,7 @@ import java.net.ProtocolException;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -36,6 +37,9 @@ import java.util.List;
  * Format:
  * | Length | Encoding | NAIRealm Length | NAIRealm | EAPMethod Count | EAPMethod #1 (optional) |
  *     2         1               1         variable          1                  variable
+ *
+ * The NAI Realm string is decoded from the payload on first use, as most realms are only
+ * looked at when matching a provider against the AP.
  */
 public class NAIRealmData {
     /**
@@ -47,15 +51,28 @@ public class NAIRealmData {
     @VisibleForTesting
     public static final String NAI_REALM_STRING_SEPARATOR = ";";
 
-    private final List<String> mRealms;
+    // The encoded NAI Realm string, shared with the payload, or null when constructed from a
+    // list of realms.
+    private final ByteBuffer mRealmBytes;
+    private final Charset mRealmCharset;
+    private List<String> mRealms;
     private final List<EAPMethod> mEAPMethods;
 
     @VisibleForTesting
     public NAIRealmData(List<String> realms, List<EAPMethod> eapMethods) {
+        mRealmBytes = null;
+        mRealmCharset = null;
         mRealms = realms;
         mEAPMethods = eapMethods;
     }
 
+    private NAIRealmData(ByteBuffer realmBytes, Charset realmCharset,
+            List<EAPMethod> eapMethods) {
+        mRealmBytes = realmBytes;
+        mRealmCharset = realmCharset;
+        mEAPMethods = eapMethods;
+    }
+
     /**
      * Parse a NAIRealmData from the given buffer.
      *
@@ -75,10 +92,8 @@ public class NAIRealmData {
         // Read the encoding field.
         boolean utf8 = (payload.get() & NAI_ENCODING_UTF8_MASK) != 0;
 
-        // Read the realm string.
-        String realm = ByteBufferReader.readStringWithByteLength(
-                payload, utf8 ? StandardCharsets.UTF_8 : StandardCharsets.US_ASCII);
-        List<String> realmList = Arrays.asList(realm.split(NAI_REALM_STRING_SEPARATOR));
+        // Keep the realm string to decode it on first use.
+        ByteBuffer realmBytes = ByteBufferReader.readSubBuffer(payload, payload.get() & 0xFF);
 
         // Read the EAP methods.
         int methodCount = payload.get() & 0xFF;
@@ -87,11 +102,20 @@ public class NAIRealmData {
             eapMethodList.add(EAPMethod.parse(payload));
             methodCount--;
         }
-        return new NAIRealmData(realmList, eapMethodList);
+        return new NAIRealmData(realmBytes,
+                utf8 ? StandardCharsets.UTF_8 : StandardCharsets.US_ASCII, eapMethodList);
     }
 
     public List<String> getRealms() {
-        return Collections.unmodifiableList(mRealms);
+        List<String> realms = mRealms;
+        if (realms == null) {
+            ByteBuffer realmBytes = mRealmBytes.duplicate();
+            String realm = ByteBufferReader.readString(
+                    realmBytes, realmBytes.remaining(), mRealmCharset);
+            realms = Arrays.asList(realm.split(NAI_REALM_STRING_SEPARATOR));
+            mRealms = realms;
+        }
+        return Collections.unmodifiableList(realms);
     }
 
     public List<EAPMethod> getEAPMethods() {
@@ -107,16 +131,16 @@ public class NAIRealmData {
             return false;
         }
         NAIRealmData that = (NAIRealmData) thatObject;
-        return mRealms.equals(that.mRealms) && mEAPMethods.equals(that.mEAPMethods);
+        return getRealms().equals(that.getRealms()) && mEAPMethods.equals(that.mEAPMethods);
     }
 
     @Override
     public int hashCode() {
-        return mRealms.hashCode() * 31 + mEAPMethods.hashCode();
+        return getRealms().hashCode() * 31 + mEAPMethods.hashCode();
     }
 
     @Override
     public String toString() {
-        return "NAIRealmElement{mRealms=" + mRealms + " mEAPMethods=" + mEAPMethods + "}";
+        return "NAIRealmElement{mRealms=" + getRealms() + " mEAPMethods=" + mEAPMethods + "}";
     }
 }
@@ -114,7 +114,8 @@ public class OsuProviderInfo {
         // Parse friendly names.
         int friendlyNameLength =
                 (int) ByteBufferReader.readInteger(payload, ByteOrder.LITTLE_ENDIAN, 2) & 0xFFFF;
-        ByteBuffer friendlyNameBuffer = getSubBuffer(payload, friendlyNameLength);
+        ByteBuffer friendlyNameBuffer =
+                ByteBufferReader.readSubBuffer(payload, friendlyNameLength);
         List<I18Name> friendlyNameList = parseI18Names(friendlyNameBuffer);
 
         // Parse server URI.
@@ -132,7 +133,7 @@ public class OsuProviderInfo {
         // Parse list of icon info.
         int availableIconLength =
                 (int) ByteBufferReader.readInteger(payload, ByteOrder.LITTLE_ENDIAN, 2) & 0xFFFF;
-        ByteBuffer iconBuffer = getSubBuffer(payload, availableIconLength);
+        ByteBuffer iconBuffer = ByteBufferReader.readSubBuffer(payload, availableIconLength);
         List<IconInfo> iconInfoList = new ArrayList<>();
         while (iconBuffer.hasRemaining()) {
             iconInfoList.add(IconInfo.parse(iconBuffer));
@@ -144,7 +145,8 @@ public class OsuProviderInfo {
         // Parse service descriptions.
         int serviceDescriptionLength =
                 (int) ByteBufferReader.readInteger(payload, ByteOrder.LITTLE_ENDIAN, 2) & 0xFFFF;
-        ByteBuffer descriptionsBuffer = getSubBuffer(payload, serviceDescriptionLength);
+        ByteBuffer descriptionsBuffer =
+                ByteBufferReader.readSubBuffer(payload, serviceDescriptionLength);
         List<I18Name> serviceDescriptionList = parseI18Names(descriptionsBuffer);
 
         return new OsuProviderInfo(friendlyNameList, serverUri, methodList, iconInfoList, nai,
@@ -268,7 +270,7 @@ public class OsuProviderInfo {
             I18Name name = I18Name.parse(payload);
             // Verify that the number of bytes for the operator name doesn't exceed the max
             // allowed.
-            int textBytes = name.getText().getBytes(StandardCharsets.UTF_8).length;
+            int textBytes = name.getTextLength();
             if (textBytes > MAXIMUM_I18N_STRING_LENGTH) {
                 throw new ProtocolException("I18Name string exceeds the maximum allowed "
                         + textBytes);
@@ -278,31 +280,6 @@ public class OsuProviderInfo {
         return results;
     }
 
-    /**
-     * Creates a new byte buffer whose content is a shared subsequence of
-     * the given buffer's content.
-     *
-     * The sub buffer will starts from |payload|'s current position
-     * and ends at |payload|'s current position plus |length|.  The |payload|'s current
-     * position will advance pass |length| bytes.
-     *
-     * @param payload The original buffer
-     * @param length The length of the new buffer
-     * @return {@link ByteBuffer}
-     * @throws BufferUnderflowException
-     */
-    private static ByteBuffer getSubBuffer(ByteBuffer payload, int length) {
-        if (payload.remaining() < length) {
-            throw new BufferUnderflowException();
-        }
-        // Set the subBuffer's starting and ending position.
-        ByteBuffer subBuffer = payload.slice();
-        subBuffer.limit(length);
-        // Advance the original buffer's current position.
-        payload.position(payload.position() + length);
-        return subBuffer;
-    }
-
     /**
      * Return the appropriate I18 string value from the list of I18 string values.
      * The string matching the default locale will be returned if it is found, otherwise the
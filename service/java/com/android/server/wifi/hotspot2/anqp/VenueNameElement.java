@@ -21,7 +21,6 @@ import com.android.internal.annotations.VisibleForTesting;
 import java.net.ProtocolException;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -77,7 +76,7 @@ public class VenueNameElement extends ANQPElement {
         while (payload.hasRemaining()) {
             I18Name name = I18Name.parse(payload);
             // Verify that the number of octets for the venue name doesn't exceed the max allowed.
-            int textBytes = name.getText().getBytes(StandardCharsets.UTF_8).length;
+            int textBytes = name.getTextLength();
             if (textBytes > MAXIMUM_VENUE_NAME_LENGTH) {
                 throw new ProtocolException("Venue Name exceeds the maximum allowed " + textBytes);
             }
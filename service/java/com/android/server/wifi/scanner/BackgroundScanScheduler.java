@@ -52,6 +52,11 @@ import java.util.Set;
  * the last buckets (lower priority) are placed in the next best bucket until the number of buckets
  * is less than the number supported by the hardware.
  *
+ * <p>When the cost model is enabled, buckets are instead merged into a bucket with a shorter
+ * period, picking at each step the merge that adds the least radio time. The radio time of a
+ * schedule is estimated from the dwell time of each scanned channel, which is higher for channels
+ * that must be scanned passively (e.g. DFS channels).</p>
+ *
  * <p>Finally, the scheduler creates a WifiNative.ScanSettings from the list of buckets which may be
  * passed through the Wifi HAL.</p>
  *
@@ -84,6 +89,8 @@ public class BackgroundScanScheduler {
      */
     private static final int DEFAULT_REPORT_THRESHOLD_PERCENTAGE = 100;
 
+    private static final long MS_PER_HOUR = 60 * 60 * 1000;
+
     /**
      * List of predefined periods (in ms) that buckets can be scheduled at. Ordered by preference
      * if there are not enough buckets for all periods. All periods MUST be an integer multiple of
@@ -324,6 +331,7 @@ public class BackgroundScanScheduler {
     private int mMaxChannelsPerBucket = DEFAULT_MAX_CHANNELS_PER_BUCKET;
     private int mMaxBatch = DEFAULT_MAX_SCANS_TO_BATCH;
     private int mMaxApPerScan = DEFAULT_MAX_AP_PER_SCAN;
+    private boolean mCostModelEnabled = false;
 
     public int getMaxBuckets() {
         return mMaxBuckets;
@@ -359,6 +367,18 @@ public class BackgroundScanScheduler {
         mMaxApPerScan = maxApPerScan;
     }
 
+    public boolean isCostModelEnabled() {
+        return mCostModelEnabled;
+    }
+
+    /**
+     * Enables compacting the buckets based on the estimated radio time of the schedule instead of
+     * the predefined bucket preference order. Takes effect on the next schedule update.
+     */
+    public void setCostModelEnabled(boolean enabled) {
+        mCostModelEnabled = enabled;
+    }
+
     private final BucketList mBuckets = new BucketList();
     private final ChannelHelper mChannelHelper;
     private WifiNative.ScanSettings mSchedule;
@@ -380,7 +400,11 @@ public class BackgroundScanScheduler {
             addScanToBuckets(request);
         }
 
-        compactBuckets(getMaxBuckets());
+        if (mCostModelEnabled) {
+            compactBucketsByCost(getMaxBuckets());
+        } else {
+            compactBuckets(getMaxBuckets());
+        }
 
         List<Bucket> bucketList = optimizeBuckets();
 
@@ -417,6 +441,22 @@ public class BackgroundScanScheduler {
                 getScheduledBucket(settings));
     }
 
+    /**
+     * Estimates the time (in ms) per hour that the radio spends scanning channels to execute the
+     * given schedule. Exponential back off buckets are accounted for at their starting period.
+     */
+    public long estimateDwellTimePerHour(@NonNull WifiNative.ScanSettings schedule) {
+        Map<Integer, Integer> channelToPeriod = new HashMap<>();
+        for (int b = 0; b < schedule.num_buckets; b++) {
+            WifiNative.BucketSettings bucket = schedule.buckets[b];
+            ChannelCollection channelCollection = mChannelHelper.createChannelCollection();
+            channelCollection.addChannels(bucket);
+            addChannelPeriods(channelToPeriod, channelCollection.getAllChannels(),
+                    bucket.period_ms);
+        }
+        return estimateDwellTimePerHour(channelToPeriod);
+    }
+
     /**
      * Retrieves the max time period bucket idx at which this setting was scheduled
      */
@@ -547,6 +587,90 @@ public class BackgroundScanScheduler {
         }
     }
 
+    /**
+     * Reduce the number of required buckets by merging buckets into a bucket with a shorter
+     * period, so that all requests are still scanned at least as often as they were scheduled.
+     * Each step does the merge which results in the least estimated dwell time.
+     */
+    private void compactBucketsByCost(int maxBuckets) {
+        int maxRegularBuckets = maxBuckets;
+
+        // reserve one bucket for exponential back off scan if there is
+        // such request(s)
+        if (mBuckets.isActive(EXPONENTIAL_BACK_OFF_BUCKET_IDX)) {
+            maxRegularBuckets--;
+        }
+        while (mBuckets.getActiveRegularBucketCount() > maxRegularBuckets) {
+            int bestSourceIndex = -1;
+            int bestTargetIndex = -1;
+            long minDwellTime = Long.MAX_VALUE;
+            for (int source = NUM_OF_REGULAR_BUCKETS - 1; source >= 0; --source) {
+                if (!mBuckets.isActive(source)) continue;
+                for (int target = 0; target < NUM_OF_REGULAR_BUCKETS; ++target) {
+                    if (!mBuckets.isActive(target) || PREDEFINED_BUCKET_PERIODS[target]
+                            >= PREDEFINED_BUCKET_PERIODS[source]) {
+                        continue;
+                    }
+                    long dwellTime = estimateMergedDwellTimePerHour(source, target);
+                    if (dwellTime < minDwellTime) {
+                        minDwellTime = dwellTime;
+                        bestSourceIndex = source;
+                        bestTargetIndex = target;
+                    }
+                }
+            }
+            if (bestSourceIndex == -1) {
+                Log.wtf(TAG, "Could not find buckets to merge");
+                return;
+            }
+            Bucket targetBucket = mBuckets.get(bestTargetIndex);
+            for (ScanSettings scanRequest : mBuckets.get(bestSourceIndex).getSettingsList()) {
+                targetBucket.addSettings(scanRequest);
+            }
+            mBuckets.clear(bestSourceIndex);
+        }
+    }
+
+    /**
+     * Estimates the dwell time per hour of the active regular buckets if the bucket at
+     * |sourceIndex| was merged into the bucket at |targetIndex|.
+     */
+    private long estimateMergedDwellTimePerHour(int sourceIndex, int targetIndex) {
+        Map<Integer, Integer> channelToPeriod = new HashMap<>();
+        for (int i = 0; i < NUM_OF_REGULAR_BUCKETS; ++i) {
+            if (!mBuckets.isActive(i)) continue;
+            int period = PREDEFINED_BUCKET_PERIODS[i == sourceIndex ? targetIndex : i];
+            addChannelPeriods(channelToPeriod,
+                    mBuckets.get(i).getChannelCollection().getAllChannels(), period);
+        }
+        return estimateDwellTimePerHour(channelToPeriod);
+    }
+
+    /**
+     * Records the shortest period at which each of the channels is scanned. A channel scanned by
+     * several buckets is only scanned once when their scans coincide, which is always the case
+     * for the predefined periods since they are multiples of each other.
+     */
+    private static void addChannelPeriods(Map<Integer, Integer> channelToPeriod,
+            Set<Integer> channels, int period) {
+        for (Integer channel : channels) {
+            Integer currentPeriod = channelToPeriod.get(channel);
+            if (currentPeriod == null || period < currentPeriod) {
+                channelToPeriod.put(channel, period);
+            }
+        }
+    }
+
+    private long estimateDwellTimePerHour(Map<Integer, Integer> channelToPeriod) {
+        long dwellTime = 0;
+        for (Map.Entry<Integer, Integer> entry : channelToPeriod.entrySet()) {
+            if (entry.getValue() <= 0) continue;
+            dwellTime += mChannelHelper.estimateChannelDwellTime(entry.getKey()) * MS_PER_HOUR
+                    / entry.getValue();
+        }
+        return dwellTime;
+    }
+
     /**
      * Clone the provided scan settings fields to a new ScanSettings object.
      */
@@ -37,6 +37,16 @@ public abstract class ChannelHelper {
      * The estimated period spent scanning each channel. This is used for estimating scan duration.
      */
     public static final int SCAN_PERIOD_PER_CHANNEL_MS = 200;
+    /**
+     * The estimated time spent on a channel that can be scanned actively (by sending probe
+     * requests).
+     */
+    public static final int ACTIVE_CHANNEL_DWELL_TIME_MS = 40;
+    /**
+     * The estimated time spent on a channel that must be scanned passively (e.g. DFS channels),
+     * where the radio has to wait for a beacon.
+     */
+    public static final int PASSIVE_CHANNEL_DWELL_TIME_MS = 110;
 
     protected static final WifiScanner.ChannelSpec[] NO_CHANNELS = new WifiScanner.ChannelSpec[0];
 
@@ -77,6 +87,14 @@ public abstract class ChannelHelper {
      */
     public abstract int estimateScanDuration(WifiScanner.ScanSettings settings);
 
+    /**
+     * Estimates the time that the radio spends on the given channel each time it is scanned.
+     * This is used to compare the cost of different scan schedules.
+     */
+    public int estimateChannelDwellTime(int frequency) {
+        return SCAN_PERIOD_PER_CHANNEL_MS;
+    }
+
     /**
      * Update the channel information that this object has. The source of the update is
      * implementation dependent and may result in no change. Warning the behavior of a
@@ -137,6 +155,11 @@ public abstract class ChannelHelper {
          * an empty set if an entire Band if specified or if the list is empty.
          */
         public abstract Set<Integer> getChannelSet();
+        /**
+         * Gets all the channels covered by the collection, including those added as part of a
+         * band.
+         */
+        public abstract Set<Integer> getAllChannels();
 
         /**
          * Add all channels in the ScanSetting to the collection
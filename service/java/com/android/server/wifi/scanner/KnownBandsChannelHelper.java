@@ -157,6 +157,12 @@ public class KnownBandsChannelHelper extends ChannelHelper {
         }
     }
 
+    @Override
+    public int estimateChannelDwellTime(int frequency) {
+        return isDfsChannel(frequency) ? PASSIVE_CHANNEL_DWELL_TIME_MS
+                : ACTIVE_CHANNEL_DWELL_TIME_MS;
+    }
+
     private boolean isDfsChannel(int frequency) {
         for (WifiScanner.ChannelSpec dfsChannel :
                 mBandsToChannels[WIFI_BAND_INDEX_5_GHZ_DFS_ONLY]) {
@@ -376,6 +382,7 @@ public class KnownBandsChannelHelper extends ChannelHelper {
             }
         }
 
+        @Override
         public Set<Integer> getAllChannels() {
             return new ArraySet<Integer>(mChannels);
         }
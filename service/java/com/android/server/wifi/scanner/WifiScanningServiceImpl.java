@@ -70,6 +70,7 @@ import com.android.server.wifi.util.ScanResultUtil;
 import com.android.server.wifi.util.WifiHandler;
 import com.android.server.wifi.util.WifiPermissionsUtil;
 import com.android.server.wifi.util.WorkSourceUtil;
+import com.android.wifi.resources.R;
 
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
@@ -373,6 +374,7 @@ public class WifiScanningServiceImpl extends IWifiScanner.Stub {
     private static final int CMD_SCAN_FAILED                         = BASE + 10;
     private static final int CMD_PNO_NETWORK_FOUND                   = BASE + 11;
     private static final int CMD_PNO_SCAN_FAILED                     = BASE + 12;
+    private static final int CMD_START_PENDING_SINGLE_SCANS          = BASE + 13;
 
     private final Context mContext;
     private final Looper mLooper;
@@ -637,6 +639,10 @@ public class WifiScanningServiceImpl extends IWifiScanner.Stub {
         private WifiNative.ScanSettings mActiveScanSettings = null;
         private RequestList<ScanSettings> mActiveScans = new RequestList<>();
         private RequestList<ScanSettings> mPendingScans = new RequestList<>();
+        // Whether a scan of the pending requests is scheduled at the end of a coalescing window.
+        private boolean mPendingScansScheduled = false;
+        // Coalescing window for single scan requests, read from the overlay when the driver starts.
+        private int mCoalescingWindowMs = 0;
 
         // Scan results cached from the last full single scan request.
         private final List<ScanResult> mCachedScanResults = new ArrayList<>();
@@ -824,6 +830,8 @@ public class WifiScanningServiceImpl extends IWifiScanner.Stub {
                                     + " is null");
                             return HANDLED;
                         }
+                        mCoalescingWindowMs = mContext.getResources().getInteger(
+                                R.integer.config_wifiSingleScanCoalescingWindowMs);
                         transitionTo(mIdleState);
                         return HANDLED;
                     case WifiScanner.CMD_DISABLE:
@@ -877,6 +885,8 @@ public class WifiScanningServiceImpl extends IWifiScanner.Stub {
             public void exit() {
                 // clear scan results when scan mode is not active
                 mCachedScanResults.clear();
+                removeMessages(CMD_START_PENDING_SINGLE_SCANS);
+                mPendingScansScheduled = false;
 
                 mWifiMetrics.incrementScanReturnEntry(
                         WifiMetricsProto.WifiLog.SCAN_FAILURE_INTERRUPTED,
@@ -940,7 +950,7 @@ public class WifiScanningServiceImpl extends IWifiScanner.Stub {
                                 }
                             } else {
                                 mPendingScans.addRequest(ci, handler, workSource, scanSettings);
-                                tryToStartNewScan();
+                                scheduleNewScan();
                             }
                         } else {
                             logCallback("singleScanInvalidRequest",  ci, handler, "bad request");
@@ -952,6 +962,13 @@ public class WifiScanningServiceImpl extends IWifiScanner.Stub {
                     case WifiScanner.CMD_STOP_SINGLE_SCAN:
                         removeSingleScanRequest(ci, msg.arg2);
                         return HANDLED;
+                    case CMD_START_PENDING_SINGLE_SCANS:
+                        mPendingScansScheduled = false;
+                        // Requests received while scanning are started once the scan completes.
+                        if (getCurrentState() != mScanningState) {
+                            tryToStartNewScan();
+                        }
+                        return HANDLED;
                     default:
                         return NOT_HANDLED;
                 }
@@ -1169,6 +1186,20 @@ public class WifiScanningServiceImpl extends IWifiScanner.Stub {
             }
         }
 
+        /**
+         * Start a scan for the pending requests. If a coalescing window is configured, the scan is
+         * started at the end of the window instead, so that requests received in the meantime
+         * (e.g from apps and the connectivity manager) are merged into the same scan.
+         */
+        void scheduleNewScan() {
+            if (mCoalescingWindowMs <= 0) {
+                tryToStartNewScan();
+            } else if (!mPendingScansScheduled) {
+                mPendingScansScheduled = true;
+                sendMessageDelayed(CMD_START_PENDING_SINGLE_SCANS, mCoalescingWindowMs);
+            }
+        }
+
         void tryToStartNewScan() {
             if (mPendingScans.size() == 0) { // no pending requests
                 return;
@@ -1190,7 +1221,11 @@ public class WifiScanningServiceImpl extends IWifiScanner.Stub {
                 for (ScanSettings.HiddenNetwork srcNetwork : entry.settings.hiddenNetworks) {
                     WifiNative.HiddenNetwork hiddenNetwork = new WifiNative.HiddenNetwork();
                     hiddenNetwork.ssid = srcNetwork.ssid;
-                    hiddenNetworkList.add(hiddenNetwork);
+                    // Requests often share hidden networks (e.g saved networks), only scan for
+                    // them once.
+                    if (!hiddenNetworkList.contains(hiddenNetwork)) {
+                        hiddenNetworkList.add(hiddenNetwork);
+                    }
                 }
                 if ((entry.settings.reportEvents & WifiScanner.REPORT_EVENT_FULL_SCAN_RESULT)
                         != 0) {
@@ -1209,6 +1244,7 @@ public class WifiScanningServiceImpl extends IWifiScanner.Stub {
 
             settings.buckets = new WifiNative.BucketSettings[] {bucketSettings};
             if (mScannerImplsTracker.startSingleScan(settings)) {
+                mWifiMetrics.incrementOneshotScanStartedCount();
                 // store the active scan settings
                 mActiveScanSettings = settings;
                 // swap pending and active scan requests
@@ -1393,6 +1429,8 @@ public class WifiScanningServiceImpl extends IWifiScanner.Stub {
                         mChannelHelper = mScannerImpl.getChannelHelper();
 
                         mBackgroundScheduler = new BackgroundScanScheduler(mChannelHelper);
+                        mBackgroundScheduler.setCostModelEnabled(mContext.getResources()
+                                .getBoolean(R.bool.config_wifiBackgroundScanCostModelEnabled));
 
                         WifiNative.ScanCapabilities capabilities =
                                 new WifiNative.ScanCapabilities();
@@ -2534,6 +2572,9 @@ public class WifiScanningServiceImpl extends IWifiScanner.Stub {
                 pw.println("  base period: " + schedule.base_period_ms);
                 pw.println("  max ap per scan: " + schedule.max_ap_per_scan);
                 pw.println("  batched scans: " + schedule.report_threshold_num_scans);
+                pw.println("  estimated dwell time per hour: "
+                        + mBackgroundScheduler.estimateDwellTimePerHour(schedule) + "ms"
+                        + (mBackgroundScheduler.isCostModelEnabled() ? " (cost model)" : ""));
                 pw.println("  buckets:");
                 for (int b = 0; b < schedule.num_buckets; b++) {
                     WifiNative.BucketSettings bucket = schedule.buckets[b];
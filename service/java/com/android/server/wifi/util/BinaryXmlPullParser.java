@@ -0,0 +1,410 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.util;
+
+import static com.android.server.wifi.util.BinaryXmlSerializer.FORMAT_VERSION;
+import static com.android.server.wifi.util.BinaryXmlSerializer.INTERNED_STRING_NEW;
+import static com.android.server.wifi.util.BinaryXmlSerializer.MAGIC;
+import static com.android.server.wifi.util.BinaryXmlSerializer.MAX_INTERNED_STRINGS;
+import static com.android.server.wifi.util.BinaryXmlSerializer.TOKEN_END_DOCUMENT;
+import static com.android.server.wifi.util.BinaryXmlSerializer.TOKEN_END_TAG;
+import static com.android.server.wifi.util.BinaryXmlSerializer.TOKEN_START_TAG;
+import static com.android.server.wifi.util.BinaryXmlSerializer.TOKEN_TEXT;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link XmlPullParser} for the binary encoding written by {@link BinaryXmlSerializer}.
+ *
+ * Only the subset of the pull parser API used by the wifi stores is supported: namespaces,
+ * entities and position information are not available.
+ */
+public class BinaryXmlPullParser implements XmlPullParser {
+    private static final int HEADER_LENGTH = 5;
+    private static final int READ_CHUNK_SIZE = 4096;
+
+    private DataInputStream mIn;
+    private final List<String> mInternedStrings = new ArrayList<>();
+
+    private int mEventType = START_DOCUMENT;
+    private int mDepth = 0;
+    private String mName;
+    private String mText;
+    private int mAttributeCount = 0;
+    private String[] mAttributeNames = new String[8];
+    private String[] mAttributeValues = new String[8];
+
+    /**
+     * Check if the provided data starts with the binary encoding header.
+     *
+     * @param data raw data read from a store file.
+     * @return {@code true} if the data should be parsed with {@link BinaryXmlPullParser},
+     * {@code false} if it is text XML.
+     */
+    public static boolean isBinaryXml(byte[] data) {
+        if (data == null || data.length < HEADER_LENGTH) return false;
+        int magic = ((data[0] & 0xFF) << 24) | ((data[1] & 0xFF) << 16)
+                | ((data[2] & 0xFF) << 8) | (data[3] & 0xFF);
+        return magic == MAGIC;
+    }
+
+    @Override
+    public void setInput(InputStream is, String encoding) throws XmlPullParserException {
+        if (is == null) {
+            throw new IllegalArgumentException("Input stream cannot be null");
+        }
+        mIn = new DataInputStream(is);
+        mInternedStrings.clear();
+        mEventType = START_DOCUMENT;
+        mDepth = 0;
+        mName = null;
+        mText = null;
+        mAttributeCount = 0;
+        try {
+            if (mIn.readInt() != MAGIC) {
+                throw new XmlPullParserException("Missing binary XML header");
+            }
+            int version = mIn.readUnsignedByte();
+            if (version > FORMAT_VERSION) {
+                throw new XmlPullParserException("Unsupported binary XML version: " + version);
+            }
+        } catch (IOException e) {
+            throw new XmlPullParserException("Failed to read binary XML header", this, e);
+        }
+    }
+
+    @Override
+    public void setInput(Reader in) throws XmlPullParserException {
+        throw new UnsupportedOperationException("Binary encoding requires an InputStream");
+    }
+
+    @Override
+    public int next() throws XmlPullParserException, IOException {
+        if (mEventType == END_DOCUMENT) return END_DOCUMENT;
+        if (mEventType == END_TAG) {
+            mDepth--;
+        }
+        mName = null;
+        mText = null;
+        mAttributeCount = 0;
+
+        int token = mIn.read();
+        switch (token) {
+            case TOKEN_START_TAG:
+                mName = readInternedString();
+                readAttributes();
+                mDepth++;
+                mEventType = START_TAG;
+                break;
+            case TOKEN_END_TAG:
+                mName = readInternedString();
+                mEventType = END_TAG;
+                break;
+            case TOKEN_TEXT:
+                mText = readString();
+                mEventType = TEXT;
+                break;
+            case TOKEN_END_DOCUMENT:
+                mEventType = END_DOCUMENT;
+                break;
+            case -1:
+                throw new XmlPullParserException("Unexpected end of binary XML");
+            default:
+                throw new XmlPullParserException("Unknown binary XML token: " + token);
+        }
+        return mEventType;
+    }
+
+    @Override
+    public int nextToken() throws XmlPullParserException, IOException {
+        return next();
+    }
+
+    @Override
+    public int nextTag() throws XmlPullParserException, IOException {
+        int eventType = next();
+        if (eventType == TEXT && isWhitespace()) {
+            eventType = next();
+        }
+        if (eventType != START_TAG && eventType != END_TAG) {
+            throw new XmlPullParserException("Expected start or end tag", this, null);
+        }
+        return eventType;
+    }
+
+    @Override
+    public String nextText() throws XmlPullParserException, IOException {
+        if (mEventType != START_TAG) {
+            throw new XmlPullParserException("Parser must be on a start tag", this, null);
+        }
+        int eventType = next();
+        if (eventType == TEXT) {
+            String text = mText;
+            if (next() != END_TAG) {
+                throw new XmlPullParserException("Expected end tag after text", this, null);
+            }
+            return text;
+        } else if (eventType == END_TAG) {
+            return "";
+        }
+        throw new XmlPullParserException("Expected text or end tag", this, null);
+    }
+
+    @Override
+    public void require(int type, String namespace, String name)
+            throws XmlPullParserException {
+        if (type != mEventType || (name != null && !name.equals(mName))) {
+            throw new XmlPullParserException(
+                    "Expected " + TYPES[type] + " " + name + ", got " + getPositionDescription());
+        }
+    }
+
+    @Override
+    public int getEventType() {
+        return mEventType;
+    }
+
+    @Override
+    public int getDepth() {
+        return mDepth;
+    }
+
+    @Override
+    public String getName() {
+        return mName;
+    }
+
+    @Override
+    public String getText() {
+        return mText;
+    }
+
+    @Override
+    public char[] getTextCharacters(int[] holderForStartAndLength) {
+        if (mText == null) return null;
+        holderForStartAndLength[0] = 0;
+        holderForStartAndLength[1] = mText.length();
+        return mText.toCharArray();
+    }
+
+    @Override
+    public boolean isWhitespace() throws XmlPullParserException {
+        if (mEventType != TEXT) {
+            throw new XmlPullParserException("Not a text event", this, null);
+        }
+        return mText.trim().isEmpty();
+    }
+
+    @Override
+    public boolean isEmptyElementTag() {
+        return false;
+    }
+
+    @Override
+    public int getAttributeCount() {
+        return mEventType == START_TAG ? mAttributeCount : -1;
+    }
+
+    @Override
+    public String getAttributeName(int index) {
+        checkAttributeIndex(index);
+        return mAttributeNames[index];
+    }
+
+    @Override
+    public String getAttributeValue(int index) {
+        checkAttributeIndex(index);
+        return mAttributeValues[index];
+    }
+
+    @Override
+    public String getAttributeValue(String namespace, String name) {
+        for (int i = 0; i < mAttributeCount; i++) {
+            if (mAttributeNames[i].equals(name)) {
+                return mAttributeValues[i];
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String getAttributeNamespace(int index) {
+        checkAttributeIndex(index);
+        return NO_NAMESPACE;
+    }
+
+    @Override
+    public String getAttributePrefix(int index) {
+        checkAttributeIndex(index);
+        return null;
+    }
+
+    @Override
+    public String getAttributeType(int index) {
+        checkAttributeIndex(index);
+        return "CDATA";
+    }
+
+    @Override
+    public boolean isAttributeDefault(int index) {
+        checkAttributeIndex(index);
+        return false;
+    }
+
+    @Override
+    public String getNamespace() {
+        return NO_NAMESPACE;
+    }
+
+    @Override
+    public String getNamespace(String prefix) {
+        return null;
+    }
+
+    @Override
+    public String getPrefix() {
+        return null;
+    }
+
+    @Override
+    public int getNamespaceCount(int depth) {
+        return 0;
+    }
+
+    @Override
+    public String getNamespacePrefix(int pos) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String getNamespaceUri(int pos) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String getPositionDescription() {
+        return TYPES[mEventType] + (mName != null ? " " + mName : "") + " @depth " + mDepth;
+    }
+
+    @Override
+    public int getLineNumber() {
+        return -1;
+    }
+
+    @Override
+    public int getColumnNumber() {
+        return -1;
+    }
+
+    @Override
+    public String getInputEncoding() {
+        return null;
+    }
+
+    @Override
+    public void setFeature(String name, boolean state) throws XmlPullParserException {
+        if (state) {
+            throw new XmlPullParserException("Unsupported feature: " + name);
+        }
+    }
+
+    @Override
+    public boolean getFeature(String name) {
+        return false;
+    }
+
+    @Override
+    public void setProperty(String name, Object value) throws XmlPullParserException {
+        throw new XmlPullParserException("Unsupported property: " + name);
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        return null;
+    }
+
+    @Override
+    public void defineEntityReplacementText(String entityName, String replacementText) {
+        throw new UnsupportedOperationException();
+    }
+
+    private void readAttributes() throws IOException, XmlPullParserException {
+        int numAttributes = mIn.readUnsignedShort();
+        if (numAttributes > mAttributeNames.length) {
+            mAttributeNames = new String[numAttributes];
+            mAttributeValues = new String[numAttributes];
+        }
+        for (int i = 0; i < numAttributes; i++) {
+            mAttributeNames[i] = readInternedString();
+            mAttributeValues[i] = readString();
+        }
+        mAttributeCount = numAttributes;
+    }
+
+    private void checkAttributeIndex(int index) {
+        if (index < 0 || index >= mAttributeCount) {
+            throw new IndexOutOfBoundsException("Invalid attribute index: " + index);
+        }
+    }
+
+    private String readInternedString() throws IOException, XmlPullParserException {
+        int index = mIn.readUnsignedShort();
+        if (index == INTERNED_STRING_NEW) {
+            String string = mIn.readUTF();
+            if (mInternedStrings.size() < MAX_INTERNED_STRINGS) {
+                mInternedStrings.add(string);
+            }
+            return string;
+        }
+        if (index >= mInternedStrings.size()) {
+            throw new XmlPullParserException("Invalid interned string index: " + index);
+        }
+        return mInternedStrings.get(index);
+    }
+
+    private String readString() throws IOException, XmlPullParserException {
+        int length = mIn.readInt();
+        if (length < 0) {
+            throw new XmlPullParserException("Invalid string length: " + length);
+        }
+        // The length comes from the file, so only allocate as the bytes actually arrive: a
+        // corrupt length must fail the parse instead of exhausting the heap.
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.min(length, READ_CHUNK_SIZE));
+        byte[] chunk = new byte[Math.min(length, READ_CHUNK_SIZE)];
+        int remaining = length;
+        while (remaining > 0) {
+            int read = mIn.read(chunk, 0, Math.min(remaining, chunk.length));
+            if (read < 0) {
+                throw new XmlPullParserException("Truncated string, " + remaining + " of "
+                        + length + " bytes missing");
+            }
+            bytes.write(chunk, 0, read);
+            remaining -= read;
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
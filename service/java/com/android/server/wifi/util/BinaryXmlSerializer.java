@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.util;
+
+import org.xmlpull.v1.XmlSerializer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link XmlSerializer} which writes a compact, length-prefixed binary encoding of the XML event
+ * stream instead of text. Tag and attribute names are interned into a string table as they are
+ * first seen, so the repeated tags of a large config store are only written out once.
+ *
+ * The encoding is read back by {@link BinaryXmlPullParser}, so callers built on {@link XmlUtil}
+ * work unchanged with either format. Namespaces, comments and other XML constructs not used by
+ * the wifi stores are not supported.
+ *
+ * Layout:
+ * <pre>
+ *   int   MAGIC
+ *   byte  FORMAT_VERSION
+ *   { byte token, token payload }* TOKEN_END_DOCUMENT
+ * </pre>
+ */
+public class BinaryXmlSerializer implements XmlSerializer {
+    /** "WCSB" - marks the start of a binary encoded store. */
+    public static final int MAGIC = 0x57435342;
+    /** Current version of the binary encoding. */
+    public static final int FORMAT_VERSION = 1;
+
+    /** Followed by an interned tag name, an attribute count and the attributes. */
+    static final int TOKEN_START_TAG = 1;
+    /** Followed by an interned tag name. */
+    static final int TOKEN_END_TAG = 2;
+    /** Followed by a length-prefixed string. */
+    static final int TOKEN_TEXT = 3;
+    static final int TOKEN_END_DOCUMENT = 4;
+
+    /** Interned string index indicating that the string itself follows. */
+    static final int INTERNED_STRING_NEW = 0xFFFF;
+    /** Maximum number of entries in the interned string table. */
+    static final int MAX_INTERNED_STRINGS = INTERNED_STRING_NEW;
+
+    private DataOutputStream mOut;
+    private final Map<String, Integer> mInternedStrings = new HashMap<>();
+    private final List<String> mTagStack = new ArrayList<>();
+
+    private String mPendingTag;
+    private final List<String> mPendingAttributeNames = new ArrayList<>();
+    private final List<String> mPendingAttributeValues = new ArrayList<>();
+
+    @Override
+    public void setOutput(OutputStream os, String encoding) throws IOException {
+        if (os == null) {
+            throw new IllegalArgumentException("Output stream cannot be null");
+        }
+        mOut = new DataOutputStream(new BufferedOutputStream(os));
+        mInternedStrings.clear();
+        mTagStack.clear();
+        mPendingTag = null;
+        mPendingAttributeNames.clear();
+        mPendingAttributeValues.clear();
+    }
+
+    @Override
+    public void setOutput(Writer writer) throws IOException {
+        throw new UnsupportedOperationException("Binary encoding requires an OutputStream");
+    }
+
+    @Override
+    public void startDocument(String encoding, Boolean standalone) throws IOException {
+        mOut.writeInt(MAGIC);
+        mOut.writeByte(FORMAT_VERSION);
+    }
+
+    @Override
+    public void endDocument() throws IOException {
+        flushPendingStartTag();
+        mOut.writeByte(TOKEN_END_DOCUMENT);
+        mOut.flush();
+    }
+
+    @Override
+    public XmlSerializer startTag(String namespace, String name) throws IOException {
+        flushPendingStartTag();
+        mPendingTag = name;
+        mTagStack.add(name);
+        return this;
+    }
+
+    @Override
+    public XmlSerializer attribute(String namespace, String name, String value)
+            throws IOException {
+        if (mPendingTag == null) {
+            throw new IllegalStateException("Attribute " + name + " written outside start tag");
+        }
+        mPendingAttributeNames.add(name);
+        mPendingAttributeValues.add(value);
+        return this;
+    }
+
+    @Override
+    public XmlSerializer endTag(String namespace, String name) throws IOException {
+        flushPendingStartTag();
+        if (mTagStack.isEmpty() || !mTagStack.remove(mTagStack.size() - 1).equals(name)) {
+            throw new IllegalStateException("Mismatched end tag: " + name);
+        }
+        mOut.writeByte(TOKEN_END_TAG);
+        writeInternedString(name);
+        return this;
+    }
+
+    @Override
+    public XmlSerializer text(String text) throws IOException {
+        flushPendingStartTag();
+        // Text parsers never report empty text, so don't encode it either.
+        if (text == null || text.isEmpty()) return this;
+        mOut.writeByte(TOKEN_TEXT);
+        writeString(text);
+        return this;
+    }
+
+    @Override
+    public XmlSerializer text(char[] buf, int start, int len) throws IOException {
+        return text(new String(buf, start, len));
+    }
+
+    @Override
+    public void cdsect(String text) throws IOException {
+        text(text);
+    }
+
+    @Override
+    public void ignorableWhitespace(String text) throws IOException {
+        // Formatting is meaningless in the binary encoding.
+    }
+
+    @Override
+    public void comment(String text) throws IOException {
+        // Comments are dropped.
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushPendingStartTag();
+        mOut.flush();
+    }
+
+    @Override
+    public int getDepth() {
+        return mTagStack.size();
+    }
+
+    @Override
+    public String getName() {
+        return mTagStack.isEmpty() ? null : mTagStack.get(mTagStack.size() - 1);
+    }
+
+    @Override
+    public String getNamespace() {
+        return null;
+    }
+
+    @Override
+    public void setFeature(String name, boolean state) {
+        // Formatting features (e.g indentation) are meaningless in the binary encoding.
+    }
+
+    @Override
+    public boolean getFeature(String name) {
+        return false;
+    }
+
+    @Override
+    public void setProperty(String name, Object value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        return null;
+    }
+
+    @Override
+    public void setPrefix(String prefix, String namespace) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String getPrefix(String namespace, boolean generatePrefix) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void entityRef(String text) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void processingInstruction(String text) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void docdecl(String text) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * The attributes of a start tag are only known once the next event is written, so the tag is
+     * held back until then.
+     */
+    private void flushPendingStartTag() throws IOException {
+        if (mPendingTag == null) return;
+        int numAttributes = mPendingAttributeNames.size();
+        mOut.writeByte(TOKEN_START_TAG);
+        writeInternedString(mPendingTag);
+        mOut.writeShort(numAttributes);
+        for (int i = 0; i < numAttributes; i++) {
+            writeInternedString(mPendingAttributeNames.get(i));
+            writeString(mPendingAttributeValues.get(i));
+        }
+        mPendingTag = null;
+        mPendingAttributeNames.clear();
+        mPendingAttributeValues.clear();
+    }
+
+    private void writeInternedString(String string) throws IOException {
+        Integer index = mInternedStrings.get(string);
+        if (index != null) {
+            mOut.writeShort(index);
+            return;
+        }
+        mOut.writeShort(INTERNED_STRING_NEW);
+        mOut.writeUTF(string);
+        if (mInternedStrings.size() < MAX_INTERNED_STRINGS) {
+            mInternedStrings.put(string, mInternedStrings.size());
+        }
+    }
+
+    private void writeString(String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        mOut.writeInt(bytes.length);
+        mOut.write(bytes);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.util;
+
+import android.annotation.Nullable;
+import android.net.MacAddress;
+
+/**
+ * Helpers for the packed representation of a BSSID.
+ *
+ * A BSSID is packed into the low 48 bits of a long, most significant octet first, so it can be
+ * used as a primitive key (see {@link LongHashMap}) without allocating. Any negative value is
+ * never a valid packed BSSID, {@link #INVALID} is used to signal a missing or malformed BSSID.
+ */
+public class BssidUtil {
+    private BssidUtil() { /* not constructable */ }
+
+    /** Value returned for a missing or malformed BSSID. */
+    public static final long INVALID = -1L;
+
+    private static final int MAC_STRING_LENGTH = 17;
+    private static final int MAC_BYTE_LENGTH = 6;
+
+    /**
+     * Parse a BSSID of the form "xx:xx:xx:xx:xx:xx" (case insensitive, each octet may be one or
+     * two hex digits as accepted by {@link MacAddress#fromString(String)}) without allocating.
+     *
+     * @return the packed BSSID or {@link #INVALID} if the string is not a valid BSSID.
+     */
+    public static long parse(@Nullable String bssid) {
+        if (bssid == null || bssid.length() > MAC_STRING_LENGTH) return INVALID;
+        long packed = 0;
+        int octets = 0;
+        int digits = 0;
+        int octet = 0;
+        for (int i = 0; i <= bssid.length(); i++) {
+            char c = i < bssid.length() ? bssid.charAt(i) : ':';
+            if (c == ':') {
+                if (digits == 0 || ++octets > MAC_BYTE_LENGTH) return INVALID;
+                packed = (packed << 8) | octet;
+                digits = 0;
+                octet = 0;
+                continue;
+            }
+            int nibble = Character.digit(c, 16);
+            if (nibble < 0 || ++digits > 2) return INVALID;
+            octet = (octet << 4) | nibble;
+        }
+        return octets == MAC_BYTE_LENGTH ? packed : INVALID;
+    }
+
+    /**
+     * Pack the provided MacAddress.
+     *
+     * @return the packed BSSID or {@link #INVALID} if |mac| is null.
+     */
+    public static long fromMacAddress(@Nullable MacAddress mac) {
+        if (mac == null) return INVALID;
+        byte[] bytes = mac.toByteArray();
+        long packed = 0;
+        for (int i = 0; i < MAC_BYTE_LENGTH; i++) {
+            packed = (packed << 8) | (bytes[i] & 0xff);
+        }
+        return packed;
+    }
+
+    /**
+     * Convert a packed BSSID back to the "xx:xx:xx:xx:xx:xx" lower case form.
+     */
+    public static String toString(long bssid) {
+        char[] chars = new char[MAC_STRING_LENGTH];
+        for (int i = 0; i < MAC_BYTE_LENGTH; i++) {
+            int octet = (int) (bssid >>> ((MAC_BYTE_LENGTH - 1 - i) * 8)) & 0xff;
+            chars[i * 3] = Character.forDigit(octet >>> 4, 16);
+            chars[i * 3 + 1] = Character.forDigit(octet & 0xf, 16);
+            if (i < MAC_BYTE_LENGTH - 1) chars[i * 3 + 2] = ':';
+        }
+        return new String(chars);
+    }
+}
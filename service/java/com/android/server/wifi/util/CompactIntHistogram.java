@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.util;
+
+import java.util.Iterator;
+
+/**
+ * A histogram with one bucket per int value in [min, max), one bucket for the values below min
+ * and one for the values at or above max. These are the buckets of an {@link IntHistogram}
+ * whose boundaries are min, min + 1, ..., max.
+ *
+ * Only the non-empty buckets are kept, each packed with its count into one long of an exactly
+ * sized array. A histogram with a handful of non-empty buckets thus takes well under a hundred
+ * bytes, whereas an {@link IntHistogram} holds its own copy of all the bucket boundaries on top
+ * of a {@link android.util.SparseIntArray}. Counts are ints as in {@link IntHistogram}, but
+ * saturate at {@link #MAX_COUNT} instead of overflowing.
+ *
+ * Not thread safe.
+ */
+public class CompactIntHistogram implements Iterable<IntHistogram.Bucket> {
+    /** Counts of a bucket saturate at this value. */
+    public static final int MAX_COUNT = Integer.MAX_VALUE;
+
+    private static final int INDEX_BITS = 8;
+    private static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+    private static final long[] EMPTY = new long[0];
+
+    private final int mMin;
+    private final int mMax;
+    // Non-empty buckets sorted by bucket index, each stored as (count << INDEX_BITS) | index.
+    // Index 0 is the bucket below mMin, and index mMax - mMin + 1 the one at or above mMax.
+    private long[] mEntries = EMPTY;
+
+    /**
+     * @param min lowest value with a bucket of its own.
+     * @param max start of the last bucket; there may be at most 254 values in [min, max).
+     */
+    public CompactIntHistogram(int min, int max) {
+        if (min >= max || (long) max - min + 1 > INDEX_MASK) {
+            throw new IllegalArgumentException("Invalid range [" + min + ", " + max + "]");
+        }
+        mMin = min;
+        mMax = max;
+    }
+
+    /**
+     * Resets this histogram to the initial state.
+     */
+    public void clear() {
+        mEntries = EMPTY;
+    }
+
+    /**
+     * Returns the number of non-empty buckets.
+     */
+    public int numNonEmptyBuckets() {
+        return mEntries.length;
+    }
+
+    /**
+     * Gets the nth non-empty bucket, where 0 <= n < {@link #numNonEmptyBuckets()}
+     */
+    public IntHistogram.Bucket getBucketByIndex(int n) {
+        int bucketIndex = (int) (mEntries[n] & INDEX_MASK);
+        int count = (int) (mEntries[n] >>> INDEX_BITS);
+        if (bucketIndex == 0) {
+            return new IntHistogram.Bucket(Integer.MIN_VALUE, mMin, count);
+        }
+        int start = mMin + bucketIndex - 1;
+        int end = start == mMax ? Integer.MAX_VALUE : start + 1;
+        return new IntHistogram.Bucket(start, end, count);
+    }
+
+    /**
+     * Increments the count of the bucket that this value falls into by 1.
+     */
+    public void increment(int value) {
+        add(value, 1);
+    }
+
+    /**
+     * Increments the count of the bucket that this value falls into by <code>count</code>.
+     */
+    public void add(int value, int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Negative count " + count);
+        }
+        if (count == 0) return;
+        int bucketIndex = getBucketIndex(value);
+        int n = indexOf(bucketIndex);
+        if (n < 0) {
+            n = ~n;
+            long[] entries = new long[mEntries.length + 1];
+            System.arraycopy(mEntries, 0, entries, 0, n);
+            System.arraycopy(mEntries, n, entries, n + 1, mEntries.length - n);
+            entries[n] = bucketIndex;
+            mEntries = entries;
+        }
+        long newCount = Math.min((mEntries[n] >>> INDEX_BITS) + count, MAX_COUNT);
+        mEntries[n] = (newCount << INDEX_BITS) | bucketIndex;
+    }
+
+    private int getBucketIndex(int value) {
+        if (value < mMin) return 0;
+        if (value >= mMax) return mMax - mMin + 1;
+        return value - mMin + 1;
+    }
+
+    /**
+     * Returns the position of the bucket in mEntries, or the one's complement of the position
+     * where it should be inserted.
+     */
+    private int indexOf(int bucketIndex) {
+        int lo = 0;
+        int hi = mEntries.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int midIndex = (int) (mEntries[mid] & INDEX_MASK);
+            if (midIndex < bucketIndex) {
+                lo = mid + 1;
+            } else if (midIndex > bucketIndex) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return ~lo;
+    }
+
+    /**
+     * Returns a human-readable string representation of the contents of this histogram, in the
+     * same format as {@link IntHistogram#toString()}.
+     */
+    @Override
+    public String toString() {
+        if (mEntries.length == 0) {
+            return "{}";
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append('{');
+        for (int n = 0; n < mEntries.length; n++) {
+            if (n > 0) {
+                sb.append(", ");
+            }
+            IntHistogram.Bucket bucket = getBucketByIndex(n);
+            sb.append('[');
+            if (bucket.start == Integer.MIN_VALUE) {
+                sb.append("Integer.MIN_VALUE");
+            } else {
+                sb.append(bucket.start);
+            }
+            sb.append(',');
+            if (bucket.end == Integer.MAX_VALUE) {
+                sb.append("Integer.MAX_VALUE]");
+            } else {
+                sb.append(bucket.end).append(')');
+            }
+            sb.append('=').append(bucket.count);
+        }
+        sb.append('}');
+        return sb.toString();
+    }
+
+    /**
+     * Iterates over the non-empty buckets, by increasing value.
+     */
+    @Override
+    public Iterator<IntHistogram.Bucket> iterator() {
+        return new Iterator<IntHistogram.Bucket>() {
+            private int mIndex = 0;
+
+            @Override
+            public boolean hasNext() {
+                return mIndex < mEntries.length;
+            }
+
+            @Override
+            public IntHistogram.Bucket next() {
+                return getBucketByIndex(mIndex++);
+            }
+        };
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.util;
+
+import android.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * Map from primitive long keys to objects, using open addressing.
+ *
+ * Unlike {@link android.util.LongSparseArray}, lookups are O(1) and unlike a
+ * {@code HashMap<Long, V>} no boxing or per-entry allocation happens on get/put/remove.
+ * Entries are stored densely so they can be iterated by index with {@link #keyAt(int)} and
+ * {@link #valueAt(int)}, like {@link android.util.ArrayMap}. Removing an entry moves the last
+ * entry into its slot, so iterate from the end when removing while iterating.
+ *
+ * Not thread safe.
+ *
+ * @param <V> type of the values.
+ */
+public class LongHashMap<V> {
+    private static final int DEFAULT_CAPACITY = 8;
+    private static final int EMPTY = -1;
+
+    // Dense storage of the entries.
+    private long[] mKeys;
+    private Object[] mValues;
+    private int mSize;
+    // Open addressing table (linear probing) holding the dense index of each entry, or EMPTY.
+    private int[] mTable;
+
+    public LongHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of entries that can be held without resizing.
+     */
+    public LongHashMap(int capacity) {
+        capacity = Math.max(capacity, 1);
+        mKeys = new long[capacity];
+        mValues = new Object[capacity];
+        mTable = new int[tableSizeFor(capacity)];
+        Arrays.fill(mTable, EMPTY);
+    }
+
+    // Keep the table at most half full.
+    private static int tableSizeFor(int capacity) {
+        return Integer.highestOneBit(Math.max(capacity, 2) * 2 - 1) << 1;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int findSlot(long key) {
+        int mask = mTable.length - 1;
+        int slot = hash(key) & mask;
+        while (true) {
+            int index = mTable[slot];
+            if (index == EMPTY || mKeys[index] == key) return slot;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Number of entries in the map.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return true if there are no entries in the map.
+     */
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * @return true if there is an entry for |key|.
+     */
+    public boolean containsKey(long key) {
+        return mTable[findSlot(key)] != EMPTY;
+    }
+
+    /**
+     * @return the value mapped to |key|, or null if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    public @Nullable V get(long key) {
+        int index = mTable[findSlot(key)];
+        return index == EMPTY ? null : (V) mValues[index];
+    }
+
+    /**
+     * Map |key| to |value|.
+     *
+     * @return the previous value mapped to |key|, or null if there was none.
+     */
+    @SuppressWarnings("unchecked")
+    public @Nullable V put(long key, V value) {
+        int slot = findSlot(key);
+        int index = mTable[slot];
+        if (index != EMPTY) {
+            V old = (V) mValues[index];
+            mValues[index] = value;
+            return old;
+        }
+        if (mSize == mKeys.length) {
+            grow();
+            slot = findSlot(key);
+        }
+        mKeys[mSize] = key;
+        mValues[mSize] = value;
+        mTable[slot] = mSize;
+        mSize++;
+        return null;
+    }
+
+    /**
+     * Remove the entry for |key|.
+     *
+     * @return the removed value, or null if there was none.
+     */
+    public @Nullable V remove(long key) {
+        int slot = findSlot(key);
+        int index = mTable[slot];
+        if (index == EMPTY) return null;
+        return removeEntry(slot, index);
+    }
+
+    /**
+     * Remove the entry at the dense |index|. The last entry is moved into |index|.
+     *
+     * @return the removed value.
+     */
+    public V removeAt(int index) {
+        checkIndex(index);
+        return removeEntry(findSlot(mKeys[index]), index);
+    }
+
+    /**
+     * Remove all the entries whose value satisfies |filter|.
+     *
+     * @return true if any entry was removed.
+     */
+    @SuppressWarnings("unchecked")
+    public boolean removeIf(Predicate<? super V> filter) {
+        boolean removed = false;
+        for (int i = mSize - 1; i >= 0; i--) {
+            if (filter.test((V) mValues[i])) {
+                removeAt(i);
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Remove all the entries.
+     */
+    public void clear() {
+        Arrays.fill(mValues, 0, mSize, null);
+        Arrays.fill(mTable, EMPTY);
+        mSize = 0;
+    }
+
+    /**
+     * @return the key of the entry at the dense |index|, 0 <= index < {@link #size()}.
+     */
+    public long keyAt(int index) {
+        checkIndex(index);
+        return mKeys[index];
+    }
+
+    /**
+     * @return the value of the entry at the dense |index|, 0 <= index < {@link #size()}.
+     */
+    @SuppressWarnings("unchecked")
+    public V valueAt(int index) {
+        checkIndex(index);
+        return (V) mValues[index];
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private V removeEntry(int slot, int index) {
+        V old = (V) mValues[index];
+        deleteSlot(slot);
+        int last = mSize - 1;
+        if (index != last) {
+            // Move the last entry into the hole to keep the storage dense.
+            mTable[findSlot(mKeys[last])] = index;
+            mKeys[index] = mKeys[last];
+            mValues[index] = mValues[last];
+        }
+        mValues[last] = null;
+        mSize--;
+        return old;
+    }
+
+    // Backward shift deletion, so that no tombstones are needed.
+    private void deleteSlot(int slot) {
+        int mask = mTable.length - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (mTable[next] != EMPTY) {
+            int home = hash(mKeys[mTable[next]]) & mask;
+            // Move the entry if its home slot is not in the cyclic range (hole, next].
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                mTable[hole] = mTable[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        mTable[hole] = EMPTY;
+    }
+
+    private void grow() {
+        int capacity = mKeys.length * 2;
+        mKeys = Arrays.copyOf(mKeys, capacity);
+        mValues = Arrays.copyOf(mValues, capacity);
+        mTable = new int[tableSizeFor(capacity)];
+        Arrays.fill(mTable, EMPTY);
+        for (int i = 0; i < mSize; i++) {
+            mTable[findSlot(mKeys[i])] = i;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < mSize; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(mKeys[i]).append('=').append(mValues[i]);
+        }
+        return sb.append('}').toString();
+    }
+}
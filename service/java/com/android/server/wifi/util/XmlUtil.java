@@ -1123,10 +1123,12 @@ public class XmlUtil {
          */
         private static void writePasswordToXml(
                 XmlSerializer out, String password,
-                @Nullable WifiConfigStoreEncryptionUtil encryptionUtil)
+                @Nullable WifiConfigStoreEncryptionUtil encryptionUtil,
+                @Nullable EncryptedData encryptedPassword)
                 throws XmlPullParserException, IOException {
-            EncryptedData encryptedData = null;
-            if (encryptionUtil != null) {
+            // Password that was never decrypted, write it back as is.
+            EncryptedData encryptedData = encryptedPassword;
+            if (encryptedData == null && encryptionUtil != null) {
                 if (password != null) {
                     encryptedData = encryptionUtil.encrypt(password.getBytes());
                     if (encryptedData == null) {
@@ -1155,13 +1157,30 @@ public class XmlUtil {
         public static void writeToXml(XmlSerializer out, WifiEnterpriseConfig enterpriseConfig,
                 @Nullable WifiConfigStoreEncryptionUtil encryptionUtil)
                 throws XmlPullParserException, IOException {
+            writeToXml(out, enterpriseConfig, encryptionUtil, null);
+        }
+
+        /**
+         * Write the WifiEnterpriseConfig data elements from the provided config to the XML
+         * stream.
+         *
+         * @param out XmlSerializer instance pointing to the XML stream.
+         * @param enterpriseConfig WifiEnterpriseConfig object to be serialized.
+         * @param encryptionUtil Instance of {@link EncryptedDataXmlUtil}.
+         * @param encryptedPassword Encrypted password which was not decrypted on parsing, written
+         *                          instead of the password of |enterpriseConfig| if not null.
+         */
+        public static void writeToXml(XmlSerializer out, WifiEnterpriseConfig enterpriseConfig,
+                @Nullable WifiConfigStoreEncryptionUtil encryptionUtil,
+                @Nullable EncryptedData encryptedPassword)
+                throws XmlPullParserException, IOException {
             XmlUtil.writeNextValue(out, XML_TAG_IDENTITY,
                     enterpriseConfig.getFieldValue(WifiEnterpriseConfig.IDENTITY_KEY));
             XmlUtil.writeNextValue(out, XML_TAG_ANON_IDENTITY,
                     enterpriseConfig.getFieldValue(WifiEnterpriseConfig.ANON_IDENTITY_KEY));
             writePasswordToXml(
                     out, enterpriseConfig.getFieldValue(WifiEnterpriseConfig.PASSWORD_KEY),
-                    encryptionUtil);
+                    encryptionUtil, encryptedPassword);
             XmlUtil.writeNextValue(out, XML_TAG_CLIENT_CERT,
                     enterpriseConfig.getFieldValue(WifiEnterpriseConfig.CLIENT_CERT_KEY));
             XmlUtil.writeNextValue(out, XML_TAG_CA_CERT,
@@ -1202,6 +1221,31 @@ public class XmlUtil {
                 boolean shouldExpectEncryptedCredentials,
                 @Nullable WifiConfigStoreEncryptionUtil encryptionUtil)
                 throws XmlPullParserException, IOException {
+            return parseFromXml(in, outerTagDepth, shouldExpectEncryptedCredentials,
+                    encryptionUtil, null);
+        }
+
+        /**
+         * Parses the data elements from the provided XML stream to a WifiEnterpriseConfig object.
+         *
+         * Decryption of the password needs a round trip to keystore, so it can be deferred by
+         * providing |encryptedPassword|. The encrypted password is then returned in it and the
+         * password of the returned WifiEnterpriseConfig object is left unset.
+         *
+         * @param in XmlPullParser instance pointing to the XML stream.
+         * @param outerTagDepth depth of the outer tag in the XML document.
+         * @param shouldExpectEncryptedCredentials Whether to expect encrypted credentials or not.
+         * @param encryptionUtil Instance of {@link EncryptedDataXmlUtil}.
+         * @param encryptedPassword An array of one EncryptedData, used to return the encrypted
+         *                          password instead of decrypting it. May be null to decrypt the
+         *                          password right away.
+         * @return WifiEnterpriseConfig object if parsing is successful, null otherwise.
+         */
+        public static WifiEnterpriseConfig parseFromXml(XmlPullParser in, int outerTagDepth,
+                boolean shouldExpectEncryptedCredentials,
+                @Nullable WifiConfigStoreEncryptionUtil encryptionUtil,
+                @Nullable EncryptedData[] encryptedPassword)
+                throws XmlPullParserException, IOException {
             WifiEnterpriseConfig enterpriseConfig = new WifiEnterpriseConfig();
 
             // Loop through and parse out all the elements from the stream within this section.
@@ -1304,6 +1348,10 @@ public class XmlUtil {
                             }
                             EncryptedData encryptedData =
                                     EncryptedDataXmlUtil.parseFromXml(in, outerTagDepth + 1);
+                            if (encryptedPassword != null) {
+                                encryptedPassword[0] = encryptedData;
+                                break;
+                            }
                             byte[] passwordBytes = encryptionUtil.decrypt(encryptedData);
                             if (passwordBytes == null) {
                                 Log.wtf(TAG, "Decryption of password failed");
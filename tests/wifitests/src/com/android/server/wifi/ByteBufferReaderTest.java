@@ -17,7 +17,9 @@
 package com.android.server.wifi;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import androidx.test.filters.SmallTest;
 
@@ -167,4 +169,77 @@ public class ByteBufferReaderTest extends WifiBaseTest {
                 ByteBufferReader.readStringWithByteLength(buffer, StandardCharsets.US_ASCII);
         assertEquals(expectedValue, actualValue);
     }
+
+    /**
+     * Verify that the expected string value is returned when reading a string from a read-only
+     * buffer and from a buffer with an offset in its backing array.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void readStringWithoutAccessibleArray() throws Exception {
+        String expectedValue = "Hello World";
+        byte[] bytes = ("xx" + expectedValue).getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer readOnlyBuffer = ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+        readOnlyBuffer.position(2);
+        assertEquals(expectedValue, ByteBufferReader.readString(
+                readOnlyBuffer, expectedValue.length(), StandardCharsets.US_ASCII));
+        assertFalse(readOnlyBuffer.hasRemaining());
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.position(1);
+        ByteBuffer slice = buffer.slice();
+        slice.get();
+        assertEquals(expectedValue, ByteBufferReader.readString(
+                slice, expectedValue.length(), StandardCharsets.US_ASCII));
+        assertFalse(slice.hasRemaining());
+    }
+
+    /**
+     * Verify that BufferUnderflowException will be thrown when reading a string longer than the
+     * data in the buffer, without moving the position of the buffer.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void readStringWithBufferUnderflow() throws Exception {
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[10]);
+        try {
+            ByteBufferReader.readString(buffer, 11, StandardCharsets.US_ASCII);
+            fail("Expected BufferUnderflowException");
+        } catch (BufferUnderflowException e) {
+            assertEquals(0, buffer.position());
+        }
+    }
+
+    /**
+     * Verify that a sub-buffer shares the content of the buffer it is read from, and that the
+     * position of the buffer is moved past it.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void readSubBuffer() throws Exception {
+        byte[] bytes = new byte[] {0, 1, 2, 3, 4};
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.get();
+        ByteBuffer subBuffer = ByteBufferReader.readSubBuffer(buffer, 3);
+        assertEquals(4, buffer.position());
+        assertEquals(3, subBuffer.remaining());
+        assertEquals(1, subBuffer.get(0));
+
+        bytes[3] = 42;
+        assertEquals(42, subBuffer.get(2));
+    }
+
+    /**
+     * Verify that BufferUnderflowException will be thrown when reading a sub-buffer longer than
+     * the data in the buffer.
+     *
+     * @throws Exception
+     */
+    @Test(expected = BufferUnderflowException.class)
+    public void readSubBufferWithBufferUnderflow() throws Exception {
+        ByteBufferReader.readSubBuffer(ByteBuffer.wrap(new byte[10]), 11);
+    }
 }
@@ -2741,6 +2741,7 @@ public class ClientModeImplTest extends WifiBaseTest {
         WifiNl80211Manager.SignalPollResult signalPollResult =
                 new WifiNl80211Manager.SignalPollResult(-42, 65, 54, sFreq);
         when(mWifiNative.getWifiLinkLayerStats(any())).thenReturn(llStats);
+        when(mWifiNative.getWifiLinkLayerStats(any(), any())).thenReturn(llStats);
         when(mWifiNative.signalPoll(any())).thenReturn(signalPollResult);
         when(mClock.getWallClockMillis()).thenReturn(startMillis + 0);
         mCmi.enableRssiPolling(true);
@@ -3147,6 +3148,7 @@ public class ClientModeImplTest extends WifiBaseTest {
         WifiNl80211Manager.SignalPollResult signalPollResult =
                 new WifiNl80211Manager.SignalPollResult(TEST_RSSI, 65, 54, sFreq);
         when(mWifiNative.getWifiLinkLayerStats(any())).thenReturn(llStats);
+        when(mWifiNative.getWifiLinkLayerStats(any(), any())).thenReturn(llStats);
         when(mWifiNative.signalPoll(any())).thenReturn(signalPollResult);
 
         connect();
@@ -3567,6 +3569,7 @@ public class ClientModeImplTest extends WifiBaseTest {
         WifiNl80211Manager.SignalPollResult signalPollResult =
                 new WifiNl80211Manager.SignalPollResult(RSSI_THRESHOLD_BREACH_MIN, 65, 54, sFreq);
         when(mWifiNative.getWifiLinkLayerStats(any())).thenReturn(llStats);
+        when(mWifiNative.getWifiLinkLayerStats(any(), any())).thenReturn(llStats);
         when(mWifiNative.signalPoll(any())).thenReturn(signalPollResult);
 
         // Simulate the first connection.
@@ -3809,10 +3812,12 @@ public class ClientModeImplTest extends WifiBaseTest {
 
         WifiLinkLayerStats oldLLStats = new WifiLinkLayerStats();
         when(mWifiNative.getWifiLinkLayerStats(any())).thenReturn(oldLLStats);
+        when(mWifiNative.getWifiLinkLayerStats(any(), any())).thenReturn(oldLLStats);
         mCmi.sendMessage(ClientModeImpl.CMD_RSSI_POLL, 1);
         mLooper.dispatchAll();
         WifiLinkLayerStats newLLStats = new WifiLinkLayerStats();
         when(mWifiNative.getWifiLinkLayerStats(any())).thenReturn(newLLStats);
+        when(mWifiNative.getWifiLinkLayerStats(any(), any())).thenReturn(newLLStats);
         mCmi.sendMessage(ClientModeImpl.CMD_RSSI_POLL, 1);
         mLooper.dispatchAll();
         verify(mWifiDataStall).checkDataStallAndThroughputSufficiency(
@@ -3832,6 +3837,7 @@ public class ClientModeImplTest extends WifiBaseTest {
 
         WifiLinkLayerStats stats = new WifiLinkLayerStats();
         when(mWifiNative.getWifiLinkLayerStats(any())).thenReturn(stats);
+        when(mWifiNative.getWifiLinkLayerStats(any(), any())).thenReturn(stats);
         when(mWifiDataStall.checkDataStallAndThroughputSufficiency(any(), any(), any()))
                 .thenReturn(WifiIsUnusableEvent.TYPE_UNKNOWN);
         mCmi.sendMessage(ClientModeImpl.CMD_RSSI_POLL, 1);
@@ -352,4 +352,45 @@ public class ConfigurationMapTest extends WifiBaseTest {
         mConfigs.put(config);
         assertNull(mConfigs.getByScanResultForCurrentUser(scanResult));
     }
+
+    /**
+     * Verifies that overwriting a network removes the config key and scan result entries of the
+     * network it replaces.
+     */
+    @Test
+    public void testPutOverwriteRemovesStaleIndexEntries() {
+        WifiConfiguration openNetwork = WifiConfigurationTestUtil.createOpenNetwork();
+        ScanResult openScanResult = createScanResultForNetwork(openNetwork);
+        openNetwork.networkId = 5;
+        mConfigs.put(openNetwork);
+
+        WifiConfiguration pskNetwork = WifiConfigurationTestUtil.createPskNetwork();
+        ScanResult pskScanResult = createScanResultForNetwork(pskNetwork);
+        pskNetwork.networkId = openNetwork.networkId;
+        assertEquals(openNetwork, mConfigs.put(pskNetwork));
+
+        assertNull(mConfigs.getByConfigKeyForCurrentUser(openNetwork.getKey()));
+        assertNull(mConfigs.getByScanResultForCurrentUser(openScanResult));
+        assertEquals(pskNetwork, mConfigs.getByConfigKeyForCurrentUser(pskNetwork.getKey()));
+        assertEquals(pskNetwork, mConfigs.getByScanResultForCurrentUser(pskScanResult));
+    }
+
+    /**
+     * Verifies that a network modified in place after being added is still fully removed.
+     */
+    @Test
+    public void testRemoveNetworkModifiedInPlace() {
+        WifiConfiguration config = WifiConfigurationTestUtil.createOpenNetwork();
+        ScanResult scanResult = createScanResultForNetwork(config);
+        config.networkId = 5;
+        mConfigs.put(config);
+        String configKey = config.getKey();
+
+        config.allowedKeyManagement.clear();
+        config.allowedKeyManagement.set(WifiConfiguration.KeyMgmt.WPA_PSK);
+        assertEquals(config, mConfigs.remove(config.networkId));
+
+        assertNull(mConfigs.getByConfigKeyForCurrentUser(configKey));
+        assertNull(mConfigs.getByScanResultForCurrentUser(scanResult));
+    }
 }
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import android.os.Handler;
+import android.os.test.TestLooper;
+
+import androidx.test.filters.SmallTest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Unit tests for {@link com.android.server.wifi.FileMemoryStore}.
+ */
+@SmallTest
+public class FileMemoryStoreTest extends WifiBaseTest {
+    private static final String DATA_NAME = "test";
+    private static final String KEY_1 = "W1234";
+    private static final String KEY_2 = "W5678";
+    private static final String CLUSTER = "G1";
+    private static final int NUM_BSSIDS = 100;
+
+    @Mock WifiScoreCard mWifiScoreCard;
+    @Mock WifiHealthMonitor mWifiHealthMonitor;
+    private TestLooper mLooper;
+    private WifiThreadRunner mWifiThreadRunner;
+    private File mFile;
+    private FileMemoryStore mFileMemoryStore;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        mLooper = new TestLooper();
+        mWifiThreadRunner = new WifiThreadRunner(new Handler(mLooper.getLooper()));
+        mFile = File.createTempFile("FileMemoryStoreTest", null);
+        mFileMemoryStore = createAndStartStore();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mFile.delete();
+    }
+
+    private FileMemoryStore createAndStartStore() {
+        FileMemoryStore fileMemoryStore = new FileMemoryStore(mFile, mWifiThreadRunner,
+                mWifiScoreCard, mWifiHealthMonitor);
+        fileMemoryStore.start();
+        return fileMemoryStore;
+    }
+
+    private static byte[] readBlob(FileMemoryStore fileMemoryStore, String key) {
+        byte[][] result = new byte[1][];
+        WifiScoreCard.BlobListener blobListener = mock(WifiScoreCard.BlobListener.class);
+        doAnswer(invocation -> result[0] = invocation.getArgument(0))
+                .when(blobListener).onBlobRetrieved(any());
+        fileMemoryStore.read(key, DATA_NAME, blobListener);
+        verify(blobListener).onBlobRetrieved(any());
+        return result[0];
+    }
+
+    /**
+     * Test start installs itself.
+     */
+    @Test
+    public void testStartInstallsItself() throws Exception {
+        verify(mWifiScoreCard).installMemoryStore(eq(mFileMemoryStore));
+        verify(mWifiHealthMonitor).installMemoryStoreSetUpDetectionAlarm(eq(mFileMemoryStore));
+    }
+
+    /**
+     * Test that stop does pending writes and appends them to the file.
+     */
+    @Test
+    public void testStopWritesToFile() throws Exception {
+        doAnswer(invocation -> {
+            mFileMemoryStore.write(KEY_1, DATA_NAME, new byte[] {1, 2, 3});
+            return 1;
+        }).when(mWifiScoreCard).doWrites();
+        mFileMemoryStore.stop();
+        assertEquals(1, mFileMemoryStore.getNumAppends());
+        assertArrayEquals(new byte[] {1, 2, 3}, readBlob(createAndStartStore(), KEY_1));
+    }
+
+    /**
+     * Test that writes are readable before and after they are appended to the file in a single
+     * batch, and after the file is reloaded.
+     */
+    @Test
+    public void testWritesAreBatched() throws Exception {
+        assertNull(readBlob(mFileMemoryStore, KEY_1));
+        mFileMemoryStore.write(KEY_1, DATA_NAME, new byte[] {1});
+        mFileMemoryStore.write(KEY_2, DATA_NAME, new byte[] {2});
+        mFileMemoryStore.write(KEY_1, DATA_NAME, new byte[] {1, 1});
+        assertArrayEquals(new byte[] {1, 1}, readBlob(mFileMemoryStore, KEY_1));
+        assertEquals(0, mFileMemoryStore.getNumAppends());
+
+        mLooper.dispatchAll();
+        assertEquals(1, mFileMemoryStore.getNumAppends());
+        assertArrayEquals(new byte[] {1, 1}, readBlob(mFileMemoryStore, KEY_1));
+        assertArrayEquals(new byte[] {2}, readBlob(mFileMemoryStore, KEY_2));
+
+        FileMemoryStore reloaded = createAndStartStore();
+        assertArrayEquals(new byte[] {1, 1}, readBlob(reloaded, KEY_1));
+        assertArrayEquals(new byte[] {2}, readBlob(reloaded, KEY_2));
+    }
+
+    /**
+     * Test that removing a cluster removes the values of all its keys, including from the file.
+     */
+    @Test
+    public void testRemoveCluster() throws Exception {
+        mFileMemoryStore.setCluster(KEY_1, CLUSTER);
+        mFileMemoryStore.write(KEY_1, DATA_NAME, new byte[] {1});
+        mFileMemoryStore.setCluster(KEY_2, CLUSTER);
+        mFileMemoryStore.write(KEY_2, DATA_NAME, new byte[] {2});
+        mLooper.dispatchAll();
+        assertArrayEquals(new byte[] {2}, readBlob(createAndStartStore(), KEY_2));
+
+        mFileMemoryStore.removeCluster(CLUSTER);
+        assertNull(readBlob(mFileMemoryStore, KEY_1));
+        mLooper.dispatchAll();
+        FileMemoryStore reloaded = createAndStartStore();
+        assertNull(readBlob(reloaded, KEY_1));
+        assertNull(readBlob(reloaded, KEY_2));
+    }
+
+    /**
+     * Test that a batch of reads is answered for every key, including the ones not in the store.
+     */
+    @Test
+    public void testReadAll() throws Exception {
+        mFileMemoryStore.write(KEY_1, DATA_NAME, new byte[] {1});
+        mLooper.dispatchAll();
+        mFileMemoryStore.write(KEY_2, DATA_NAME, new byte[] {2});
+
+        Map<String, byte[]> results = new HashMap<>();
+        Map<String, WifiScoreCard.BlobListener> blobListeners = new HashMap<>();
+        for (String key : new String[] {KEY_1, KEY_2, "W0000"}) {
+            blobListeners.put(key, value -> results.put(key, value));
+        }
+        mFileMemoryStore.readAll(DATA_NAME, blobListeners);
+        assertEquals(3, results.size());
+        assertArrayEquals(new byte[] {1}, results.get(KEY_1));
+        assertArrayEquals(new byte[] {2}, results.get(KEY_2));
+        assertNull(results.get("W0000"));
+    }
+
+    /**
+     * Test that a torn append at the end of the file is discarded when it is loaded.
+     */
+    @Test
+    public void testTornAppendIsDiscarded() throws Exception {
+        mFileMemoryStore.write(KEY_1, DATA_NAME, new byte[] {1});
+        mLooper.dispatchAll();
+        long fileLength = mFile.length();
+        try (FileOutputStream out = new FileOutputStream(mFile, true)) {
+            out.write(new byte[] {0, 0, 0, 100, 1, 2});
+        }
+
+        FileMemoryStore reloaded = createAndStartStore();
+        assertEquals(fileLength, mFile.length());
+        assertArrayEquals(new byte[] {1}, readBlob(reloaded, KEY_1));
+        reloaded.write(KEY_2, DATA_NAME, new byte[] {2});
+        mLooper.dispatchAll();
+        assertArrayEquals(new byte[] {2}, readBlob(createAndStartStore(), KEY_2));
+    }
+
+    /**
+     * Test that a record with a corrupted length larger than the file is discarded when the file
+     * is loaded, instead of being allocated.
+     */
+    @Test
+    public void testCorruptedRecordLengthIsDiscarded() throws Exception {
+        mFileMemoryStore.write(KEY_1, DATA_NAME, new byte[] {1});
+        mLooper.dispatchAll();
+        long fileLength = mFile.length();
+        try (FileOutputStream out = new FileOutputStream(mFile, true)) {
+            out.write(new byte[] {0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0, 0, 0, 0, 1, 2});
+        }
+
+        FileMemoryStore reloaded = createAndStartStore();
+        assertEquals(fileLength, mFile.length());
+        assertArrayEquals(new byte[] {1}, readBlob(reloaded, KEY_1));
+    }
+
+    /**
+     * Test that the file is compacted once most of it is stale.
+     */
+    @Test
+    public void testCompaction() throws Exception {
+        byte[] value = new byte[1024];
+        mFileMemoryStore.write(KEY_2, DATA_NAME, new byte[] {2});
+        for (int i = 0; i < 2 * FileMemoryStore.COMPACTION_MIN_SIZE_BYTES / value.length; i++) {
+            value[0] = (byte) i;
+            mFileMemoryStore.write(KEY_1, DATA_NAME, value);
+            mLooper.dispatchAll();
+        }
+        assertTrue(mFile.length() <= FileMemoryStore.COMPACTION_MIN_SIZE_BYTES);
+        assertEquals(mFile.length(), mFileMemoryStore.getFileLength());
+        assertArrayEquals(value, readBlob(mFileMemoryStore, KEY_1));
+
+        FileMemoryStore reloaded = createAndStartStore();
+        assertArrayEquals(value, readBlob(reloaded, KEY_1));
+        assertArrayEquals(new byte[] {2}, readBlob(reloaded, KEY_2));
+    }
+
+    /**
+     * Test that the values written during one wifi thread task are appended to the file at once,
+     * while flushing after every write appends them one at a time.
+     */
+    @Test
+    public void testPerKeyAndBatchedWrites() throws Exception {
+        byte[] value = new byte[200];
+        for (int i = 0; i < NUM_BSSIDS; i++) {
+            mFileMemoryStore.write("W" + i, DATA_NAME, value);
+            mFileMemoryStore.flush();
+        }
+        assertEquals(NUM_BSSIDS, mFileMemoryStore.getNumAppends());
+
+        mFile.delete();
+        FileMemoryStore batched = createAndStartStore();
+        for (int i = 0; i < NUM_BSSIDS; i++) {
+            batched.write("W" + i, DATA_NAME, value);
+        }
+        mLooper.dispatchAll();
+        assertEquals(1, batched.getNumAppends());
+
+        FileMemoryStore reloaded = createAndStartStore();
+        for (int i = 0; i < NUM_BSSIDS; i++) {
+            assertArrayEquals(value, readBlob(reloaded, "W" + i));
+        }
+    }
+}
@@ -129,6 +129,30 @@ public class MemoryStoreImplTest extends WifiBaseTest {
         verify(mBlobListener).onBlobRetrieved(mBytesCaptor.capture());
         assertArrayEquals(myBlob, mBytesCaptor.getValue());
     }
+
+    /**
+     * A failed ip memory store read should still complete the WifiScoreCard read, with no data.
+     */
+    @Test
+    public void wifiScoreCardReadFailureShouldCallBackWithNull() throws Exception {
+        final String myL2Key = "L2Key:failure";
+        final android.net.ipmemorystore.Status statusFailure =
+                new android.net.ipmemorystore.Status(
+                        android.net.ipmemorystore.Status.ERROR_GENERIC);
+
+        when(mWifiInjector.getIpMemoryStore()).thenReturn(mIpMemoryStore);
+        mMemoryStoreImpl.start();
+        mMemoryStoreImpl.read(myL2Key, DATA_NAME, mBlobListener);
+        verify(mIpMemoryStore).retrieveBlob(
+                eq(myL2Key),
+                eq(MemoryStoreImpl.WIFI_FRAMEWORK_IP_MEMORY_STORE_CLIENT_ID),
+                eq(DATA_NAME),
+                mOnBlobRetrievedListenerCaptor.capture());
+        mOnBlobRetrievedListenerCaptor.getValue()
+                .onBlobRetrieved(statusFailure, myL2Key, DATA_NAME, null);
+        verify(mBlobListener).onBlobRetrieved(null);
+    }
+
     final ArgumentCaptor<android.net.ipmemorystore.OnBlobRetrievedListener>
             mOnBlobRetrievedListenerCaptor =
             ArgumentCaptor.forClass(android.net.ipmemorystore.OnBlobRetrievedListener.class);
@@ -31,6 +31,7 @@ import android.util.Xml;
 import androidx.test.filters.SmallTest;
 
 import com.android.internal.util.FastXmlSerializer;
+import com.android.server.wifi.util.EncryptedData;
 import com.android.server.wifi.util.ScanResultUtil;
 import com.android.server.wifi.util.WifiConfigStoreEncryptionUtil;
 import com.android.server.wifi.util.XmlUtilTest;
@@ -60,6 +61,7 @@ public class NetworkListStoreDataTest extends WifiBaseTest {
     private static final String TEST_SSID = "WifiConfigStoreDataSSID_";
     private static final String TEST_CONNECT_CHOICE = "XmlUtilConnectChoice";
     private static final long TEST_CONNECT_CHOICE_TIMESTAMP = 0x4566;
+    private static final String TEST_EAP_PASSWORD = "TestEapPassword";
     private static final String TEST_CREATOR_NAME = "CreatorName";
     private static final MacAddress TEST_RANDOMIZED_MAC =
             MacAddress.fromString("da:a1:19:c4:26:fa");
@@ -333,10 +335,14 @@ public class NetworkListStoreDataTest extends WifiBaseTest {
      * @throws Exception
      */
     private byte[] serializeData() throws Exception {
+        return serializeData(mock(WifiConfigStoreEncryptionUtil.class));
+    }
+
+    private byte[] serializeData(WifiConfigStoreEncryptionUtil encryptionUtil) throws Exception {
         final XmlSerializer out = new FastXmlSerializer();
         final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
         out.setOutput(outputStream, StandardCharsets.UTF_8.name());
-        mNetworkListSharedStoreData.serializeData(out, mock(WifiConfigStoreEncryptionUtil.class));
+        mNetworkListSharedStoreData.serializeData(out, encryptionUtil);
         out.flush();
         return outputStream.toByteArray();
     }
@@ -349,12 +355,16 @@ public class NetworkListStoreDataTest extends WifiBaseTest {
      * @throws Exception
      */
     private List<WifiConfiguration> deserializeData(byte[] data) throws Exception {
+        return deserializeData(data, mock(WifiConfigStoreEncryptionUtil.class));
+    }
+
+    private List<WifiConfiguration> deserializeData(byte[] data,
+            WifiConfigStoreEncryptionUtil encryptionUtil) throws Exception {
         final XmlPullParser in = Xml.newPullParser();
         final ByteArrayInputStream inputStream = new ByteArrayInputStream(data);
         in.setInput(inputStream, StandardCharsets.UTF_8.name());
         mNetworkListSharedStoreData.deserializeData(in, in.getDepth(),
-                WifiConfigStore.ENCRYPT_CREDENTIALS_CONFIG_STORE_DATA_VERSION,
-                mock(WifiConfigStoreEncryptionUtil.class));
+                WifiConfigStore.ENCRYPT_CREDENTIALS_CONFIG_STORE_DATA_VERSION, encryptionUtil);
         return mNetworkListSharedStoreData.getConfigurations();
     }
 
@@ -806,4 +816,66 @@ public class NetworkListStoreDataTest extends WifiBaseTest {
         WifiConfigurationTestUtil.assertConfigurationEqualForConfigStore(
                 pskNetwork, deserializedPskNetwork);
     }
+
+    /**
+     * Verify that the decryption of an enterprise password is deferred until
+     * {@link NetworkListStoreData#decryptPassword(WifiConfiguration)} is invoked, and that a
+     * password which was never decrypted is written back without being encrypted again.
+     */
+    @Test
+    public void deferEnterprisePasswordDecryption() throws Exception {
+        WifiConfigStoreEncryptionUtil encryptionUtil = mock(WifiConfigStoreEncryptionUtil.class);
+        EncryptedData encryptedData = new EncryptedData(new byte[] {0x01}, new byte[] {0x02});
+        when(encryptionUtil.encrypt(TEST_EAP_PASSWORD.getBytes())).thenReturn(encryptedData);
+        when(encryptionUtil.decrypt(encryptedData)).thenReturn(TEST_EAP_PASSWORD.getBytes());
+
+        WifiConfiguration eapNetwork = WifiConfigurationTestUtil.createEapNetwork();
+        eapNetwork.creatorName = TEST_CREATOR_NAME;
+        eapNetwork.enterpriseConfig.setPassword(TEST_EAP_PASSWORD);
+        mNetworkListSharedStoreData.setConfigurations(Collections.singletonList(eapNetwork));
+        byte[] data = serializeData(encryptionUtil);
+
+        mNetworkListSharedStoreData.setDeferPasswordDecryption(true);
+        List<WifiConfiguration> deserializedNetworks = deserializeData(data, encryptionUtil);
+        assertEquals(1, deserializedNetworks.size());
+        WifiConfiguration deserializedNetwork = deserializedNetworks.get(0);
+        assertTrue(mNetworkListSharedStoreData.hasEncryptedPassword(deserializedNetwork));
+        assertEquals("", deserializedNetwork.enterpriseConfig.getFieldValue(
+                WifiEnterpriseConfig.PASSWORD_KEY));
+        verify(encryptionUtil, never()).decrypt(any());
+
+        // Write back without decrypting, the same encrypted data should be written out.
+        assertArrayEquals(data, serializeData(encryptionUtil));
+        verify(encryptionUtil, times(1)).encrypt(any());
+
+        mNetworkListSharedStoreData.decryptPassword(deserializedNetwork);
+        assertFalse(mNetworkListSharedStoreData.hasEncryptedPassword(deserializedNetwork));
+        assertEquals(TEST_EAP_PASSWORD, deserializedNetwork.enterpriseConfig.getFieldValue(
+                WifiEnterpriseConfig.PASSWORD_KEY));
+        verify(encryptionUtil).decrypt(encryptedData);
+    }
+
+    /**
+     * Verify that the enterprise password is decrypted when parsing if deferral is not enabled.
+     */
+    @Test
+    public void decryptEnterprisePasswordOnParsingByDefault() throws Exception {
+        WifiConfigStoreEncryptionUtil encryptionUtil = mock(WifiConfigStoreEncryptionUtil.class);
+        EncryptedData encryptedData = new EncryptedData(new byte[] {0x01}, new byte[] {0x02});
+        when(encryptionUtil.encrypt(TEST_EAP_PASSWORD.getBytes())).thenReturn(encryptedData);
+        when(encryptionUtil.decrypt(encryptedData)).thenReturn(TEST_EAP_PASSWORD.getBytes());
+
+        WifiConfiguration eapNetwork = WifiConfigurationTestUtil.createEapNetwork();
+        eapNetwork.creatorName = TEST_CREATOR_NAME;
+        eapNetwork.enterpriseConfig.setPassword(TEST_EAP_PASSWORD);
+        mNetworkListSharedStoreData.setConfigurations(Collections.singletonList(eapNetwork));
+        byte[] data = serializeData(encryptionUtil);
+
+        List<WifiConfiguration> deserializedNetworks = deserializeData(data, encryptionUtil);
+        assertEquals(1, deserializedNetworks.size());
+        WifiConfiguration deserializedNetwork = deserializedNetworks.get(0);
+        assertFalse(mNetworkListSharedStoreData.hasEncryptedPassword(deserializedNetwork));
+        assertEquals(TEST_EAP_PASSWORD, deserializedNetwork.enterpriseConfig.getFieldValue(
+                WifiEnterpriseConfig.PASSWORD_KEY));
+    }
 }
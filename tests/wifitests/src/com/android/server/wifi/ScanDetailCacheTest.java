@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import static org.junit.Assert.*;
+
+import android.net.wifi.WifiConfiguration;
+import android.net.wifi.WifiSsid;
+
+import androidx.test.filters.SmallTest;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unit tests for {@link com.android.server.wifi.ScanDetailCache}.
+ */
+@SmallTest
+public class ScanDetailCacheTest extends WifiBaseTest {
+    private static final int TEST_MAX_SIZE = 8;
+    private static final int TEST_TRIM_SIZE = 4;
+    private static final String TEST_SSID = "\"TestSsid\"";
+
+    private ScanDetailCache mScanDetailCache;
+
+    @Before
+    public void setUp() throws Exception {
+        mScanDetailCache = new ScanDetailCache(
+                WifiConfigurationTestUtil.createOpenNetwork(TEST_SSID),
+                TEST_MAX_SIZE, TEST_TRIM_SIZE);
+    }
+
+    private static String bssid(int i) {
+        return String.format("02:00:00:00:%02x:%02x", (i >> 8) & 0xff, i & 0xff);
+    }
+
+    private static ScanDetail createScanDetail(int i, long seen) {
+        return new ScanDetail(WifiSsid.createFromAsciiEncoded("TestSsid"), bssid(i),
+                "[ESS]", -60, 2412, 0, seen);
+    }
+
+    /**
+     * Verify that the oldest entries are evicted once the cache reaches its max size.
+     */
+    @Test
+    public void testTrimEvictsOldestEntries() {
+        for (int i = 0; i < TEST_MAX_SIZE; i++) {
+            mScanDetailCache.put(createScanDetail(i, 1000 + i));
+        }
+        assertEquals(TEST_MAX_SIZE, mScanDetailCache.size());
+
+        mScanDetailCache.put(createScanDetail(TEST_MAX_SIZE, 1000 + TEST_MAX_SIZE));
+        assertEquals(TEST_TRIM_SIZE + 1, mScanDetailCache.size());
+        for (int i = 0; i < TEST_MAX_SIZE - TEST_TRIM_SIZE; i++) {
+            assertNull(mScanDetailCache.getScanDetail(bssid(i)));
+        }
+        for (int i = TEST_MAX_SIZE - TEST_TRIM_SIZE; i <= TEST_MAX_SIZE; i++) {
+            assertNotNull(mScanDetailCache.getScanDetail(bssid(i)));
+        }
+    }
+
+    /**
+     * Verify that entries are returned most recently seen first, even if they were added out of
+     * order.
+     */
+    @Test
+    public void testValuesInRecencyOrder() {
+        mScanDetailCache.put(createScanDetail(0, 1000));
+        mScanDetailCache.put(createScanDetail(1, 3000));
+        mScanDetailCache.put(createScanDetail(2, 2000));
+
+        List<String> expected = Arrays.asList(bssid(1), bssid(2), bssid(0));
+        assertEquals(expected, new ArrayList<>(mScanDetailCache.keySet()));
+        List<String> actual = new ArrayList<>();
+        for (ScanDetail scanDetail : mScanDetailCache.values()) {
+            actual.add(scanDetail.getBSSIDString());
+        }
+        assertEquals(expected, actual);
+    }
+
+    /**
+     * Verify that putting an existing BSSID replaces the entry and moves it to the most recent
+     * end without triggering a trim.
+     */
+    @Test
+    public void testPutExistingBssidReplacesEntry() {
+        for (int i = 0; i < TEST_MAX_SIZE; i++) {
+            mScanDetailCache.put(createScanDetail(i, 1000 + i));
+        }
+        ScanDetail updated = createScanDetail(0, 5000);
+        mScanDetailCache.put(updated);
+
+        assertEquals(TEST_MAX_SIZE, mScanDetailCache.size());
+        assertSame(updated, mScanDetailCache.getScanDetail(bssid(0)));
+        assertEquals(bssid(0), mScanDetailCache.keySet().iterator().next());
+    }
+
+    /**
+     * Verify that BSSID lookups and removal are case insensitive and ignore invalid BSSIDs.
+     */
+    @Test
+    public void testGetAndRemove() {
+        ScanDetail scanDetail = new ScanDetail(WifiSsid.createFromAsciiEncoded("TestSsid"),
+                "aa:bb:cc:dd:ee:ff", "[ESS]", -60, 2412, 0, 1000);
+        mScanDetailCache.put(scanDetail);
+
+        assertSame(scanDetail, mScanDetailCache.getScanDetail("AA:BB:CC:DD:EE:FF"));
+        assertSame(scanDetail.getScanResult(),
+                mScanDetailCache.getScanResult("aa:bb:cc:dd:ee:ff"));
+        assertNull(mScanDetailCache.getScanDetail("any"));
+        assertNull(mScanDetailCache.getScanDetail(null));
+
+        mScanDetailCache.remove("AA:BB:CC:DD:EE:FF");
+        assertTrue(mScanDetailCache.isEmpty());
+        assertTrue(mScanDetailCache.values().isEmpty());
+    }
+
+    /**
+     * Verify that the cache stays bounded and ordered when a large number of BSSIDs are added.
+     */
+    @Test
+    public void testManyScanDetailsStayBounded() {
+        final int count = 10000;
+        for (int i = 0; i < count; i++) {
+            mScanDetailCache.put(createScanDetail(i, i));
+            assertTrue(mScanDetailCache.size() <= TEST_MAX_SIZE);
+        }
+        long lastSeen = Long.MAX_VALUE;
+        for (ScanDetail scanDetail : mScanDetailCache.values()) {
+            assertTrue(scanDetail.getSeen() <= lastSeen);
+            lastSeen = scanDetail.getSeen();
+        }
+        assertNotNull(mScanDetailCache.getScanDetail(bssid(count - 1)));
+    }
+}
@@ -373,4 +373,41 @@ public class ThroughputPredictorTest extends WifiBaseTest {
         assertEquals(2881, mThroughputPredictor.predictRxThroughput(mConnectionCap,
                 -10, 5180, INVALID));
     }
+
+    /**
+     * Verify that the lookup tables give exactly the same throughput as the calculation,
+     * over all the combinations of standard, channel width, Nss, RSSI and utilization.
+     */
+    @Test
+    public void verifyLookupTablesMatchCalculation() {
+        ThroughputPredictor calculator = new ThroughputPredictor(mContext);
+        calculator.setLookupTablesEnabled(false);
+        int[] wifiStandards = {ScanResult.WIFI_STANDARD_UNKNOWN, ScanResult.WIFI_STANDARD_LEGACY,
+                ScanResult.WIFI_STANDARD_11N, ScanResult.WIFI_STANDARD_11AC,
+                ScanResult.WIFI_STANDARD_11AX};
+        int[] channelWidths = {ScanResult.CHANNEL_WIDTH_20MHZ, ScanResult.CHANNEL_WIDTH_40MHZ,
+                ScanResult.CHANNEL_WIDTH_80MHZ, ScanResult.CHANNEL_WIDTH_160MHZ,
+                ScanResult.CHANNEL_WIDTH_80MHZ_PLUS_MHZ};
+        for (int wifiStandard : wifiStandards) {
+            for (int channelWidth : channelWidths) {
+                for (int nss = 0; nss <= 9; nss++) {
+                    mConnectionCap.wifiStandard = wifiStandard;
+                    mConnectionCap.channelBandwidth = channelWidth;
+                    mConnectionCap.maxNumberTxSpatialStreams = nss;
+                    for (int rssi = -130; rssi <= 10; rssi++) {
+                        for (int utilization = INVALID;
+                                utilization <= MAX_CHANNEL_UTILIZATION; utilization += 4) {
+                            assertEquals("standard " + wifiStandard + " width " + channelWidth
+                                    + " nss " + nss + " rssi " + rssi
+                                    + " utilization " + utilization,
+                                    calculator.predictTxThroughput(mConnectionCap, rssi, 5180,
+                                            utilization),
+                                    mThroughputPredictor.predictTxThroughput(mConnectionCap,
+                                            rssi, 5180, utilization));
+                        }
+                    }
+                }
+            }
+        }
+    }
 }
@@ -29,6 +29,7 @@ import android.net.wifi.WifiConfiguration;
 
 import androidx.test.filters.SmallTest;
 
+import com.android.server.wifi.proto.WifiScoreCardProto;
 import com.android.wifi.resources.R;
 
 import org.junit.Before;
@@ -36,6 +37,8 @@ import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.util.List;
+
 /**
  * Unit tests for {@link com.android.server.wifi.WifiCandidates}.
  */
@@ -122,6 +125,36 @@ public class WifiCandidatesTest extends WifiBaseTest {
         assertEquals(1, mWifiCandidates.getCandidates().size());
     }
 
+    /**
+     * Test that a snapshot captures the scorecard statistics when it is taken.
+     */
+    @Test
+    public void testGetCandidatesSnapshot() {
+        WifiScoreCard.PerSignal perSignal = mock(WifiScoreCard.PerSignal.class);
+        WifiScoreCardProto.Signal signal = WifiScoreCardProto.Signal.newBuilder().build();
+        doReturn(perSignal).when(mPerBssid).lookupSignal(any(), anyInt());
+        doReturn(signal).when(perSignal).toSignal();
+        assertTrue(mWifiCandidates.add(mScanDetail1, mConfig1, 2, 0.0, false, 100));
+
+        List<WifiCandidates.Candidate> snapshot = mWifiCandidates.getCandidatesSnapshot();
+        verify(mPerBssid).lookupSignal(eq(WifiScoreCardProto.Event.SIGNAL_POLL), anyInt());
+
+        assertEquals(1, snapshot.size());
+        WifiCandidates.Candidate candidate = mWifiCandidates.getCandidates().get(0);
+        WifiCandidates.Candidate copy = snapshot.get(0);
+        assertEquals(candidate.getKey(), copy.getKey());
+        assertEquals(candidate.getScanRssi(), copy.getScanRssi());
+        assertEquals(candidate.getPredictedThroughputMbps(),
+                copy.getPredictedThroughputMbps());
+        assertEquals(candidate.toString(), copy.toString());
+        assertSame(signal, copy.getEventStatistics(WifiScoreCardProto.Event.SIGNAL_POLL));
+
+        // Reading the snapshot must not go back to the scorecard
+        verify(perSignal).toSignal();
+        verifyNoMoreInteractions(perSignal);
+        verify(mPerBssid, times(1)).lookupSignal(any(), anyInt());
+    }
+
     /**
      * Make sure we catch SSID mismatch due to quoting error
      */
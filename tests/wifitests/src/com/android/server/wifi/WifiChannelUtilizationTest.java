@@ -169,6 +169,31 @@ public class WifiChannelUtilizationTest extends WifiBaseTest {
                 mWifiChannelUtilization.getUtilizationRatio(freq));
     }
 
+    @Test
+    public void verifyTwoReadChanStatsReusingLinkLayerStats() throws Exception {
+        WifiLinkLayerStats llstats = new WifiLinkLayerStats();
+        int freq = 5180;
+        int radioOnTimeMs1 = RADIO_ON_TIME_DIFF_MIN_MS;
+        int ccaBusyTimeMs1 = 20;
+        llstats.addChannelStats(freq, radioOnTimeMs1, ccaBusyTimeMs1);
+        long currentTimeStamp = 1 + DEFAULT_CACHE_UPDATE_INTERVAL_MIN_MS;
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(currentTimeStamp);
+        mWifiChannelUtilization.refreshChannelStatsAndChannelUtilization(llstats, freq);
+
+        // The caller refills the same object for the next reading
+        int radioOnTimeMs2 = RADIO_ON_TIME_DIFF_MIN_MS * 2 + 1;
+        int ccaBusyTimeMs2 = 30;
+        llstats.clear();
+        llstats.addChannelStats(freq, radioOnTimeMs2, ccaBusyTimeMs2);
+        currentTimeStamp = 1 + DEFAULT_CACHE_UPDATE_INTERVAL_MIN_MS * 2;
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(currentTimeStamp);
+        mWifiChannelUtilization.refreshChannelStatsAndChannelUtilization(llstats, freq);
+
+        assertEquals((ccaBusyTimeMs2 - ccaBusyTimeMs1) * MAX_CHANNEL_UTILIZATION
+                / (radioOnTimeMs2 - radioOnTimeMs1),
+                mWifiChannelUtilization.getUtilizationRatio(freq));
+    }
+
     @Test
     public void verifyTwoReadChanStatsWithSmallTimeGap() throws Exception {
         WifiLinkLayerStats llstats1 = new WifiLinkLayerStats();
@@ -337,6 +337,28 @@ public class WifiConfigManagerTest extends WifiBaseTest {
         assertEquals(WifiConfiguration.Status.DISABLED, retrievedNetworks.get(0).status);
     }
 
+    /**
+     * Verifies that {@link WifiConfigManager#getConfiguredNetworksView()} returns the internal
+     * network objects without copying them, in a list which cannot be modified.
+     */
+    @Test
+    public void testGetConfiguredNetworksViewDoesNotCopy() {
+        WifiConfiguration openNetwork = WifiConfigurationTestUtil.createOpenNetwork();
+        NetworkUpdateResult result = verifyAddNetworkToWifiConfigManager(openNetwork);
+
+        List<WifiConfiguration> view = mWifiConfigManager.getConfiguredNetworksView();
+        assertEquals(1, view.size());
+        assertEquals(result.getNetworkId(), view.get(0).networkId);
+        // Same object is returned on every call.
+        assertSame(view.get(0), mWifiConfigManager.getConfiguredNetworksView().get(0));
+        try {
+            view.add(openNetwork);
+            fail("View should not be modifiable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
     /**
      * Verifies the addition of a WAPI-PSK network using
      * {@link WifiConfigManager#addOrUpdateNetwork(WifiConfiguration, int)}
@@ -4566,6 +4588,30 @@ public class WifiConfigManagerTest extends WifiBaseTest {
                 retrievedPeapNetwork.enterpriseConfig.getAnonymousIdentity());
     }
 
+    /**
+     * Verifies that an enterprise password whose decryption was deferred by the store data is
+     * masked when returning the network, and only decrypted when the password is requested.
+     */
+    @Test
+    public void testDeferredEnterprisePasswordDecryptedOnlyWhenNeeded() {
+        WifiConfiguration eapNetwork = WifiConfigurationTestUtil.createEapNetwork();
+        List<WifiConfiguration> sharedNetworks = new ArrayList<>();
+        sharedNetworks.add(eapNetwork);
+        setupStoreDataForRead(sharedNetworks, new ArrayList<>());
+        when(mNetworkListSharedStoreData.hasEncryptedPassword(any())).thenReturn(true);
+        assertTrue(mWifiConfigManager.loadFromStore());
+
+        WifiConfiguration retrievedNetwork =
+                mWifiConfigManager.getConfiguredNetwork(eapNetwork.networkId);
+        assertEquals(WifiConfigManager.PASSWORD_MASK,
+                retrievedNetwork.enterpriseConfig.getPassword());
+        verify(mNetworkListSharedStoreData, never()).decryptPassword(any());
+
+        mWifiConfigManager.getConfiguredNetworkWithPassword(eapNetwork.networkId);
+        verify(mNetworkListSharedStoreData).decryptPassword(any());
+        verify(mNetworkListUserStoreData).decryptPassword(any());
+    }
+
     /**
      * Verifies the deletion of ephemeral network using
      * {@link WifiConfigManager#userTemporarilyDisabledNetwork(String)}.
@@ -37,6 +37,7 @@ import com.android.dx.mockito.inline.extended.ExtendedMockito;
 import com.android.server.wifi.WifiConfigStore.StoreData;
 import com.android.server.wifi.WifiConfigStore.StoreFile;
 import com.android.server.wifi.util.ArrayUtils;
+import com.android.server.wifi.util.BinaryXmlPullParser;
 import com.android.server.wifi.util.EncryptedData;
 import com.android.server.wifi.util.WifiConfigStoreEncryptionUtil;
 import com.android.server.wifi.util.XmlUtil;
@@ -588,6 +589,75 @@ public class WifiConfigStoreTest extends WifiBaseTest {
         assertEquals(xmlString, new String(mUserStore.getStoreBytes()));
     }
 
+    /**
+     * Tests the read API behaviour after a write to the store files using the binary format.
+     * Expected behaviour: The store files should be binary encoded and the read should return
+     * the same data that was last written.
+     */
+    @Test
+    public void testReadAfterWriteBinaryFormat() throws Exception {
+        mWifiConfigStore.setBinaryFormatEnabled(true);
+        mWifiConfigStore.registerStoreData(mSharedStoreData);
+        mWifiConfigStore.registerStoreData(mUserStoreData);
+        mWifiConfigStore.switchUserStoresAndRead(mUserStores);
+
+        mUserStoreData.setData(TEST_USER_DATA);
+        mSharedStoreData.setData(TEST_SHARE_DATA);
+        mWifiConfigStore.write(true);
+        assertTrue(BinaryXmlPullParser.isBinaryXml(mUserStore.getStoreBytes()));
+        assertTrue(BinaryXmlPullParser.isBinaryXml(mSharedStore.getStoreBytes()));
+
+        mWifiConfigStore.read();
+        assertEquals(TEST_USER_DATA, mUserStoreData.getData());
+        assertEquals(TEST_SHARE_DATA, mSharedStoreData.getData());
+    }
+
+    /**
+     * Verify that a XML store file is still read when the binary format is enabled, that it is
+     * converted to the binary format on the next write and that switching back to XML produces
+     * the original XML data.
+     */
+    @Test
+    public void testMigrateWifiConfigStoreDataBetweenXmlAndBinaryFormat() throws Exception {
+        NetworkListStoreData networkList = new NetworkListUserStoreData(mContext);
+        mWifiConfigStore.registerStoreData(networkList);
+        WifiConfiguration openNetwork = WifiConfigurationTestUtil.createOpenNetwork();
+        openNetwork.creatorName = TEST_CREATOR_NAME;
+        openNetwork.setIpConfiguration(
+                WifiConfigurationTestUtil.createDHCPIpConfigurationWithNoProxy());
+        openNetwork.setRandomizedMacAddress(TEST_RANDOMIZED_MAC);
+        List<WifiConfiguration> userConfigs = new ArrayList<>();
+        userConfigs.add(openNetwork);
+
+        String xmlString = String.format(TEST_DATA_XML_STRING_FORMAT,
+                openNetwork.getKey().replaceAll("\"", "&quot;"),
+                openNetwork.SSID.replaceAll("\"", "&quot;"),
+                openNetwork.shared, openNetwork.creatorUid, openNetwork.creatorName,
+                openNetwork.getRandomizedMacAddress());
+        mUserStore.storeRawDataToWrite(xmlString.getBytes(StandardCharsets.UTF_8));
+
+        // Read the XML store file with the binary format enabled.
+        mWifiConfigStore.setBinaryFormatEnabled(true);
+        mWifiConfigStore.switchUserStoresAndRead(mUserStores);
+        WifiConfigurationTestUtil.assertConfigurationsEqualForConfigStore(
+                userConfigs, networkList.getConfigurations());
+
+        // The next write converts the file to the binary format.
+        mWifiConfigStore.write(true);
+        byte[] binaryBytes = mUserStore.getStoreBytes();
+        assertTrue(BinaryXmlPullParser.isBinaryXml(binaryBytes));
+        assertTrue(binaryBytes.length < xmlString.length());
+
+        mWifiConfigStore.read();
+        WifiConfigurationTestUtil.assertConfigurationsEqualForConfigStore(
+                userConfigs, networkList.getConfigurations());
+
+        // Switching back to XML writes out the original XML.
+        mWifiConfigStore.setBinaryFormatEnabled(false);
+        mWifiConfigStore.write(true);
+        assertEquals(xmlString, new String(mUserStore.getStoreBytes()));
+    }
+
     /**
      * Verify that a store file contained WiFi configuration store data (network list and
      * deleted ephemeral SSID list) using the predefined test XML data is read and parsed
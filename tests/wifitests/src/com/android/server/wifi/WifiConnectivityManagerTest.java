@@ -441,6 +441,89 @@ public class WifiConnectivityManagerTest extends WifiBaseTest {
                 CANDIDATE_NETWORK_ID, Process.WIFI_UID, CANDIDATE_BSSID);
     }
 
+    /**
+     * Verify that the candidates of the latest network selection are re-scored once the scorecard
+     * entries which were still being loaded during it are loaded, if it picked no network, and
+     * that the re-evaluation is done only once and not recorded again in the metrics.
+     */
+    @Test
+    public void reevaluateCandidatesWhenScoreCardPrefetchCompletes() {
+        ArgumentCaptor<Runnable> listenerCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(mWifiNS).setScoreCardPrefetchListener(listenerCaptor.capture());
+        when(mWifiNS.isScoreCardPrefetchPending()).thenReturn(true);
+        when(mWifiNS.selectNetwork(any())).thenReturn(null);
+        mWifiConnectivityManager.handleScreenStateChanged(true);
+        mWifiConnectivityManager.handleConnectionStateChanged(
+                WifiConnectivityManager.WIFI_STATE_DISCONNECTED);
+        verify(mClientModeImpl, never()).startConnectToNetwork(anyInt(), anyInt(), any());
+        clearInvocations(mWifiNS, mWifiMetrics);
+
+        WifiConfiguration candidate = mWifiConfigManager.getConfiguredNetwork(
+                CANDIDATE_NETWORK_ID);
+        when(mWifiNS.selectNetwork(mCandidateList, false)).thenReturn(candidate);
+        when(mWifiNS.isScoreCardPrefetchPending()).thenReturn(false);
+        listenerCaptor.getValue().run();
+        mLooper.dispatchAll();
+        verify(mWifiNS).selectNetwork(mCandidateList, false);
+        verify(mWifiNS, never()).getCandidatesFromScan(any(), any(), any(), anyBoolean(),
+                anyBoolean(), anyBoolean());
+        verify(mWifiMetrics, never()).countScanResults(any());
+        verify(mClientModeImpl).startConnectToNetwork(
+                CANDIDATE_NETWORK_ID, Process.WIFI_UID, CANDIDATE_BSSID);
+
+        // Nothing left to re-evaluate.
+        listenerCaptor.getValue().run();
+        mLooper.dispatchAll();
+        verify(mWifiNS).selectNetwork(mCandidateList, false);
+        verify(mClientModeImpl).startConnectToNetwork(anyInt(), anyInt(), any());
+    }
+
+    /**
+     * Verify that the candidates of the latest network selection are not re-scored once the
+     * scorecard entries are loaded if that selection already started a connection, so that no
+     * second connection attempt is made.
+     */
+    @Test
+    public void noReevaluationWhenScoreCardPrefetchCompletesAfterConnectionAttempt() {
+        ArgumentCaptor<Runnable> listenerCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(mWifiNS).setScoreCardPrefetchListener(listenerCaptor.capture());
+        when(mWifiNS.isScoreCardPrefetchPending()).thenReturn(true);
+        mWifiConnectivityManager.handleScreenStateChanged(true);
+        mWifiConnectivityManager.handleConnectionStateChanged(
+                WifiConnectivityManager.WIFI_STATE_DISCONNECTED);
+        verify(mClientModeImpl).startConnectToNetwork(
+                CANDIDATE_NETWORK_ID, Process.WIFI_UID, CANDIDATE_BSSID);
+        clearInvocations(mWifiNS);
+
+        when(mWifiNS.isScoreCardPrefetchPending()).thenReturn(false);
+        listenerCaptor.getValue().run();
+        mLooper.dispatchAll();
+        verify(mWifiNS, never()).selectNetwork(any(), anyBoolean());
+        verify(mClientModeImpl).startConnectToNetwork(anyInt(), anyInt(), any());
+    }
+
+    /**
+     * Verify that the candidates of the latest network selection are not re-scored once the
+     * scorecard entries are loaded if a connection attempt is in progress.
+     */
+    @Test
+    public void noReevaluationWhenScoreCardPrefetchCompletesDuringConnectionAttempt() {
+        ArgumentCaptor<Runnable> listenerCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(mWifiNS).setScoreCardPrefetchListener(listenerCaptor.capture());
+        when(mWifiNS.isScoreCardPrefetchPending()).thenReturn(true);
+        when(mWifiNS.selectNetwork(any())).thenReturn(null);
+        mWifiConnectivityManager.handleScreenStateChanged(true);
+        mWifiConnectivityManager.handleConnectionStateChanged(
+                WifiConnectivityManager.WIFI_STATE_DISCONNECTED);
+        clearInvocations(mWifiNS);
+
+        when(mClientModeImpl.isSupplicantTransientState()).thenReturn(true);
+        listenerCaptor.getValue().run();
+        mLooper.dispatchAll();
+        verify(mWifiNS, never()).selectNetwork(any(), anyBoolean());
+        verify(mClientModeImpl, never()).startConnectToNetwork(anyInt(), anyInt(), any());
+    }
+
     /**
      *  Wifi enters connected state while screen is on.
      *
@@ -3152,6 +3235,31 @@ public class WifiConnectivityManagerTest extends WifiBaseTest {
                 .fetchChannelSetForPartialScan(3, CHANNEL_CACHE_AGE_MINS));
     }
 
+    /**
+     * Verify that the channels predicted from the connection history are used for partial scans
+     * when enabled, and that the recently seen channels are used for networks without enough
+     * history.
+     */
+    @Test
+    public void testFetchChannelSetForPartialScanUsesPredictedChannels() {
+        mResources.setInteger(
+                R.integer.config_wifiPartialScanChannelPredictionConfidencePercent, 90);
+        mWifiConnectivityManager = createConnectivityManager();
+        WifiConfiguration configuration1 = WifiConfigurationTestUtil.createOpenNetwork();
+        WifiConfiguration configuration2 = WifiConfigurationTestUtil.createOpenNetwork();
+        when(mWifiConfigManager.getSavedNetworks(anyInt()))
+                .thenReturn(Arrays.asList(configuration1, configuration2));
+        List<List<Integer>> freqs = linkScoreCardFreqsToNetwork(configuration1, configuration2);
+        when(mWifiScoreCard.lookupNetwork(configuration1.SSID)
+                .getPredictedFrequencies(eq(0.9), anyLong()))
+                .thenReturn(Arrays.asList(TEST_FREQUENCY_1));
+
+        Set<Integer> expected = new HashSet<>(freqs.get(1));
+        expected.add(TEST_FREQUENCY_1);
+        assertEquals(expected, mWifiConnectivityManager
+                .fetchChannelSetForPartialScan(0, CHANNEL_CACHE_AGE_MINS));
+    }
+
     /**
      * Verifies the creation of channel list using
      * {@link WifiConnectivityManager#fetchChannelSetForNetworkForPartialScan(int)}.
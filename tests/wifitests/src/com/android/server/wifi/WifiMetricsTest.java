@@ -3433,6 +3433,28 @@ public class WifiMetricsTest extends WifiBaseTest {
         assertWifiLinkLayerUsageHasDiff(stat1, stat3);
     }
 
+    /**
+     * Verify that link layer usage is counted correctly when the caller refills the same
+     * WifiLinkLayerStats object for every sample.
+     * @throws Exception
+     */
+    @Test
+    public void testWifiLinkLayerUsageStatsReusedObject() throws Exception {
+        WifiLinkLayerStats stat1 = nextRandomStats(new WifiLinkLayerStats());
+        WifiLinkLayerStats stat2 = nextRandomStats(stat1);
+        WifiLinkLayerStats stat3 = nextRandomStats(stat2);
+        WifiLinkLayerStats reused = new WifiLinkLayerStats();
+        reused.copyFrom(stat1);
+        mWifiMetrics.incrementWifiLinkLayerUsageStats(reused);
+        reused.copyFrom(stat2);
+        mWifiMetrics.incrementWifiLinkLayerUsageStats(reused);
+        reused.copyFrom(stat3);
+        mWifiMetrics.incrementWifiLinkLayerUsageStats(reused);
+        dumpProtoAndDeserialize();
+
+        assertWifiLinkLayerUsageHasDiff(stat1, stat3);
+    }
+
     /**
      * Verify that null input is handled and wifi link layer usage stats are not incremented.
      * @throws Exception
@@ -19,6 +19,7 @@ package com.android.server.wifi;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
@@ -44,11 +45,14 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
  * Unit tests for {@link com.android.server.wifi.WifiMonitor}.
  */
 @SmallTest
 public class WifiMonitorTest extends WifiBaseTest {
+    private static final int NUM_CONCURRENT_EVENTS = 100;
     private static final String WLAN_IFACE_NAME = "wlan0";
     private static final String SECOND_WLAN_IFACE_NAME = "wlan1";
     private static final String[] GSM_AUTH_DATA = { "45adbc", "fead45", "0x3452"};
@@ -587,6 +591,77 @@ public class WifiMonitorTest extends WifiBaseTest {
         verify(mHandlerSpy, times(1)).handleMessage(messageCaptor.capture());
     }
 
+    /**
+     * Registering a handler twice delivers each event to it only once.
+     */
+    @Test
+    public void testRegisterHandlerTwice() {
+        mWifiMonitor.registerHandler(
+                WLAN_IFACE_NAME, WifiMonitor.SCAN_RESULTS_EVENT, mHandlerSpy);
+        mWifiMonitor.registerHandler(
+                WLAN_IFACE_NAME, WifiMonitor.SCAN_RESULTS_EVENT, mHandlerSpy);
+        mWifiMonitor.broadcastScanResultEvent(WLAN_IFACE_NAME);
+        mLooper.dispatchAll();
+
+        verify(mHandlerSpy, times(1)).handleMessage(any(Message.class));
+    }
+
+    /**
+     * Broadcasts events on STA, P2P and AP interfaces from one thread each while a handler is
+     * registered and deregistered in a loop on another thread, and checks that every event
+     * reaches the handler registered for its interface.
+     */
+    @Test
+    public void testConcurrentDispatch() throws Exception {
+        final String[] ifaces = {WLAN_IFACE_NAME, "p2p0", "wlan2"};
+        final int[] counts = new int[ifaces.length];
+        for (int i = 0; i < ifaces.length; i++) {
+            final int index = i;
+            mWifiMonitor.setMonitoring(ifaces[i], true);
+            mWifiMonitor.registerHandler(ifaces[i], WifiMonitor.SCAN_RESULTS_EVENT,
+                    new Handler(mLooper.getLooper()) {
+                        @Override
+                        public void handleMessage(Message msg) {
+                            counts[index]++;
+                        }
+                    });
+        }
+        final Handler churnHandler = new Handler(mLooper.getLooper());
+        final AtomicBoolean done = new AtomicBoolean();
+        Thread churnThread = new Thread(() -> {
+            while (!done.get()) {
+                mWifiMonitor.registerHandler(
+                        WLAN_IFACE_NAME, WifiMonitor.SCAN_RESULTS_EVENT, churnHandler);
+                mWifiMonitor.deregisterHandler(
+                        WLAN_IFACE_NAME, WifiMonitor.SCAN_RESULTS_EVENT, churnHandler);
+            }
+        });
+        Thread[] callbackThreads = new Thread[ifaces.length];
+        for (int i = 0; i < ifaces.length; i++) {
+            final String iface = ifaces[i];
+            callbackThreads[i] = new Thread(() -> {
+                for (int j = 0; j < NUM_CONCURRENT_EVENTS; j++) {
+                    mWifiMonitor.broadcastScanResultEvent(iface);
+                }
+            });
+        }
+
+        churnThread.start();
+        for (Thread thread : callbackThreads) {
+            thread.start();
+        }
+        for (Thread thread : callbackThreads) {
+            thread.join();
+        }
+        done.set(true);
+        churnThread.join();
+
+        mLooper.dispatchAll();
+        for (int count : counts) {
+            assertEquals(NUM_CONCURRENT_EVENTS, count);
+        }
+    }
+
     /**
      * Broadcast Bss transition request frame handling event test.
      */
@@ -34,7 +34,9 @@ import android.net.wifi.SupplicantState;
 import android.net.wifi.WifiConfiguration;
 import android.net.wifi.WifiConfiguration.NetworkSelectionStatus;
 import android.net.wifi.WifiInfo;
+import android.os.Handler;
 import android.os.SystemClock;
+import android.os.test.TestLooper;
 import android.util.LocalLog;
 
 import androidx.test.filters.SmallTest;
@@ -371,6 +373,53 @@ public class WifiNetworkSelectorTest extends WifiBaseTest {
         assertTrue(mWifiNetworkSelector.getConnectableScanDetails().isEmpty());
     }
 
+    /**
+     * Verify that the scorecard entries of the filtered scan results are prefetched before the
+     * candidates are built when enabled, without waiting for the reads, and that the number of
+     * candidates is reported.
+     */
+    @Test
+    public void verifyScoreCardPrefetch() {
+        String[] ssids = {"\"test1\"", "\"test2\""};
+        String[] bssids = {"6c:f3:7f:ae:8c:f3", "6c:f3:7f:ae:8c:f4"};
+        int[] freqs = {2437, 5180};
+        String[] caps = {"[WPA2-PSK][ESS]", "[WPA2-EAP-CCMP][ESS]"};
+        int[] levels = {mThresholdMinimumRssi2G + RSSI_BUMP, mThresholdMinimumRssi5G + RSSI_BUMP};
+        int[] securities = {SECURITY_PSK, SECURITY_EAP};
+
+        ScanDetailsAndWifiConfigs scanDetailsAndConfigs =
+                WifiNetworkSelectorTestUtil.setupScanDetailsAndConfigStore(ssids, bssids,
+                    freqs, caps, levels, securities, mWifiConfigManager, mClock);
+        List<ScanDetail> scanDetails = scanDetailsAndConfigs.getScanDetails();
+        Runnable prefetchListener = mock(Runnable.class);
+        mWifiNetworkSelector.setScoreCardPrefetchListener(prefetchListener);
+
+        // Disabled by default.
+        mWifiNetworkSelector.getCandidatesFromScan(
+                scanDetails, new HashSet<>(), mWifiInfo, false, true, false);
+        verify(mWifiScoreCard, never()).prefetch(any(), any());
+        assertFalse(mWifiNetworkSelector.isScoreCardPrefetchPending());
+
+        // The candidates are scored while the reads are pending.
+        doReturn(true).when(mResource).getBoolean(R.bool.config_wifiScoreCardPrefetchEnabled);
+        WifiScoreCard.Prefetch prefetch = new WifiScoreCard.Prefetch(1, null);
+        prefetch.onReadsIssued();
+        when(mWifiScoreCard.prefetch(any(), any())).thenReturn(prefetch);
+        List<WifiCandidates.Candidate> candidates = mWifiNetworkSelector.getCandidatesFromScan(
+                scanDetails, new HashSet<>(), mWifiInfo, false, true, false);
+        ArgumentCaptor<List<ScanDetail>> captor = ArgumentCaptor.forClass(List.class);
+        verify(mWifiScoreCard).prefetch(captor.capture(), eq(prefetchListener));
+        assertEquals(scanDetails.size(), captor.getValue().size());
+        assertTrue(mWifiNetworkSelector.isScoreCardPrefetchPending());
+        verify(mWifiMetrics, times(2)).addNetworkSelectionCandidates(candidates.size(), 0);
+
+        // Nothing pending once all the entries are loaded.
+        prefetch.onReadDone();
+        mWifiNetworkSelector.getCandidatesFromScan(
+                scanDetails, new HashSet<>(), mWifiInfo, false, true, false);
+        assertFalse(mWifiNetworkSelector.isScoreCardPrefetchPending());
+    }
+
     /**
      * No network selection if WiFi is connected and it is too short
      * from last network selection. Instead, update scanDetailCache.
@@ -595,7 +644,8 @@ public class WifiNetworkSelectorTest extends WifiBaseTest {
         WifiConfiguration candidate = mWifiNetworkSelector.selectNetwork(candidates);
         verify(mWifiMetrics).incrementNetworkSelectionFilteredBssidCount(0);
 
-        verify(mWifiConfigManager).getConfiguredNetworks();
+        verify(mWifiConfigManager).getConfiguredNetworksView();
+        verify(mWifiConfigManager, never()).getConfiguredNetworks();
         verify(mWifiConfigManager, times(savedConfigs.length)).tryEnableNetwork(anyInt());
         verify(mWifiConfigManager, times(savedConfigs.length))
                 .clearNetworkCandidateScanResult(anyInt());
@@ -1425,6 +1475,58 @@ public class WifiNetworkSelectorTest extends WifiBaseTest {
         verify(mWifiMetrics, atLeastOnce()).setNetworkSelectorExperimentId(eq(expid));
     }
 
+    /**
+     * Tests that with an experiment handler, the non-active scorers are evaluated off the
+     * selection path and their metrics are recorded once the handler runs.
+     */
+    @Test
+    public void testCandidateScorerMetrics_experimentHandler() {
+        TestLooper experimentLooper = new TestLooper();
+        mWifiNetworkSelector.setExperimentHandler(new Handler(experimentLooper.getLooper()));
+        mWifiNetworkSelector.registerCandidateScorer(mCompatibilityScorer);
+        mWifiNetworkSelector.registerCandidateScorer(NULL_SCORER);
+
+        // add a second NetworkNominator that returns the second network in the scan list
+        mWifiNetworkSelector.registerNetworkNominator(
+                new DummyNetworkNominator(1, DUMMY_NOMINATOR_ID_2));
+
+        int compatibilityExpId = experimentIdFromIdentifier(mCompatibilityScorer.getIdentifier());
+        mScoringParams.update("expid=" + compatibilityExpId);
+
+        // The selection itself only depends on the active scorer
+        testNoActiveStream();
+        verify(mWifiMetrics, never()).logNetworkSelectionDecision(
+                anyInt(), anyInt(), anyBoolean(), anyInt());
+
+        experimentLooper.dispatchAll();
+
+        int nullScorerId = experimentIdFromIdentifier(NULL_SCORER.getIdentifier());
+        verify(mWifiMetrics, times(2)).logNetworkSelectionDecision(nullScorerId,
+                compatibilityExpId, false, 2);
+    }
+
+    /**
+     * Tests that re-selecting among candidates whose selection was already recorded does not
+     * record the experiment scorer metrics again.
+     */
+    @Test
+    public void testCandidateScorerMetrics_reselectionNotRecorded() {
+        mWifiNetworkSelector.registerCandidateScorer(mCompatibilityScorer);
+        mWifiNetworkSelector.registerCandidateScorer(NULL_SCORER);
+
+        int compatibilityExpId = experimentIdFromIdentifier(mCompatibilityScorer.getIdentifier());
+        mScoringParams.update("expid=" + compatibilityExpId);
+
+        List<WifiCandidates.Candidate> candidates = mWifiNetworkSelector.getCandidatesFromScan(
+                setUpTwoNetworks(-35, -40),
+                EMPTY_BLACKLIST, mWifiInfo, false, true, true);
+        WifiConfiguration candidate = mWifiNetworkSelector.selectNetwork(candidates, false);
+
+        assertNotNull(candidate);
+        verify(mWifiMetrics, never()).logNetworkSelectionDecision(
+                anyInt(), anyInt(), anyBoolean(), anyInt());
+    }
+
     /**
      * Tests that metrics are recorded for two scorers.
      */
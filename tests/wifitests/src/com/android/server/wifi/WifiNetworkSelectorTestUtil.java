@@ -41,6 +41,8 @@ import com.android.server.wifi.util.NativeUtil;
 import com.android.server.wifi.util.ScanResultUtil;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -334,6 +336,12 @@ public class WifiNetworkSelectorTestUtil {
                         return savedNetworks;
                     }
                 });
+        when(wifiConfigManager.getConfiguredNetworksView())
+                .then(new AnswerWithArguments() {
+                    public List<WifiConfiguration> answer() {
+                        return Collections.unmodifiableList(Arrays.asList(configs));
+                    }
+                });
         when(wifiConfigManager.clearNetworkCandidateScanResult(anyInt()))
                 .then(new AnswerWithArguments() {
                     public boolean answer(int netId) {
@@ -57,6 +57,7 @@ import com.android.server.wifi.proto.WifiScoreCardProto.Network;
 import com.android.server.wifi.proto.WifiScoreCardProto.NetworkList;
 import com.android.server.wifi.proto.WifiScoreCardProto.NetworkStats;
 import com.android.server.wifi.proto.WifiScoreCardProto.Signal;
+import com.android.server.wifi.util.CompactIntHistogram;
 import com.android.server.wifi.util.IntHistogram;
 
 import org.junit.Before;
@@ -67,6 +68,7 @@ import org.mockito.MockitoAnnotations;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Unit tests for {@link com.android.server.wifi.WifiScoreCard}.
@@ -511,7 +513,7 @@ public class WifiScoreCardTest extends WifiBaseTest {
     private static final int[] HISTOGRAM_RSSI = {-80, -79, -78};
     private static final int[] HISTOGRAM_COUNT = {3, 1, 4};
 
-    private void checkHistogramExample(String diag, IntHistogram rssiHistogram) {
+    private void checkHistogramExample(String diag, CompactIntHistogram rssiHistogram) {
         int i = 0;
         for (IntHistogram.Bucket bucket : rssiHistogram) {
             if (bucket.count != 0) {
@@ -721,6 +723,123 @@ public class WifiScoreCardTest extends WifiBaseTest {
                 .rssi.historicalVariance, TOL);
     }
 
+    /**
+     * Prefetch issues one batched read for the scanned BSSIDs which are not in memory
+     */
+    @Test
+    public void testPrefetchBatchesReads() {
+        final ArrayList<Map<String, WifiScoreCard.BlobListener>> batches = new ArrayList<>();
+        mWifiScoreCard.installMemoryStore(new WifiScoreCard.MemoryStore() {
+            @Override
+            public void read(String key, String name, WifiScoreCard.BlobListener listener) {
+                mKeys.add(key);
+                mBlobListeners.add(listener);
+            }
+            @Override
+            public void readAll(String name, Map<String, WifiScoreCard.BlobListener> listeners) {
+                assertEquals(WifiScoreCard.PER_BSSID_DATA_NAME, name);
+                batches.add(listeners);
+            }
+            @Override
+            public void write(String key, String name, byte[] value) {
+                // ignore for now
+            }
+            @Override
+            public void setCluster(String key, String cluster) {
+                // ignore for now
+            }
+            @Override
+            public void removeCluster(String cluster) {
+                // ignore for now
+            }
+        });
+        List<ScanDetail> scanDetails = Arrays.asList(
+                new ScanDetail(TEST_SSID_1, TEST_BSSID_1.toString(), "", -50, 2412, 0, 0),
+                new ScanDetail(TEST_SSID_1, TEST_BSSID_2.toString(), "", -60, 5180, 0, 0));
+
+        Runnable listener = mock(Runnable.class);
+        WifiScoreCard.Prefetch prefetch = mWifiScoreCard.prefetch(scanDetails, listener);
+        assertEquals(1, batches.size());
+        assertEquals(2, batches.get(0).size());
+        assertEquals(2, prefetch.getPendingReadCount());
+
+        // Looking up a prefetched BSSID does not issue another read
+        WifiScoreCard.PerBssid perBssid =
+                mWifiScoreCard.lookupBssid(mWifiInfo.getSSID(), TEST_BSSID_1.toString());
+        assertTrue(perBssid.isReadPending());
+        assertTrue(mKeys.isEmpty());
+
+        // Simulate the asynchronous completion of the read requests
+        for (WifiScoreCard.BlobListener listener : batches.get(0).values()) {
+            listener.onBlobRetrieved(null);
+        }
+        assertEquals(0, prefetch.getPendingReadCount());
+        verify(listener).run();
+        assertFalse(perBssid.isReadPending());
+
+        // Nothing left to read
+        assertEquals(0, mWifiScoreCard.prefetch(scanDetails, listener).getPendingReadCount());
+        assertEquals(1, batches.size());
+        assertTrue(mKeys.isEmpty());
+        verify(listener).run();
+    }
+
+    /**
+     * Prefetch does not call the listener when the reads complete before it returns
+     */
+    @Test
+    public void testPrefetchWithSynchronousReads() {
+        mWifiScoreCard.installMemoryStore(new WifiScoreCard.MemoryStore() {
+            @Override
+            public void read(String key, String name, WifiScoreCard.BlobListener listener) {
+                listener.onBlobRetrieved(null);
+            }
+            @Override
+            public void write(String key, String name, byte[] value) {
+                // ignore for now
+            }
+            @Override
+            public void setCluster(String key, String cluster) {
+                // ignore for now
+            }
+            @Override
+            public void removeCluster(String cluster) {
+                // ignore for now
+            }
+        });
+        List<ScanDetail> scanDetails = Arrays.asList(
+                new ScanDetail(TEST_SSID_1, TEST_BSSID_1.toString(), "", -50, 2412, 0, 0));
+        Runnable listener = mock(Runnable.class);
+
+        assertEquals(0, mWifiScoreCard.prefetch(scanDetails, listener).getPendingReadCount());
+        verify(listener, never()).run();
+    }
+
+    /**
+     * Checks that a BSSID with a typical signal history serializes back to exactly what was
+     * loaded.
+     */
+    @Test
+    public void testPerBssidWithSignalHistoryRoundTrip() {
+        mWifiScoreCard.noteNetworkAgentCreated(mWifiInfo, TEST_NETWORK_AGENT_ID);
+        millisecondsPass(100);
+        mWifiInfo.setLinkSpeed(433);
+        for (int frequency : new int[] {2437, 5180}) {
+            mWifiInfo.setFrequency(frequency);
+            for (int i = 0; i < 200; i++) {
+                mWifiInfo.setRssi(-75 + i % 20);
+                mWifiScoreCard.noteSignalPoll(mWifiInfo);
+            }
+        }
+        mWifiScoreCard.noteIpConfiguration(mWifiInfo);
+        mWifiScoreCard.resetConnectionState();
+        AccessPoint ap = mWifiScoreCard.fetchByBssid(TEST_BSSID_1).toAccessPoint();
+
+        WifiScoreCard.PerBssid perBssid =
+                mWifiScoreCard.perBssidFromAccessPoint(mWifiInfo.getSSID(), ap);
+        assertEquals(ap, perBssid.toAccessPoint());
+    }
+
     /**
      * Write test
      */
@@ -1391,4 +1510,105 @@ public class WifiScoreCardTest extends WifiBaseTest {
         assertEquals(1, perNetwork.getFrequencies(900L).size());
         assertEquals(2432, (int) perNetwork.getFrequencies(Long.MAX_VALUE).get(0));
     }
+
+    // 2020-01-01 12:00 UTC
+    private static final long TEST_WALL_CLOCK_MILLIS = 1577880000000L;
+    private static final long TWELVE_HOURS_MILLIS = 12 * 60 * 60 * 1000L;
+
+    /**
+     * Verify that connections are recorded on IP configuration and that no channels are
+     * predicted until there are enough of them.
+     */
+    @Test
+    public void testPredictedFrequenciesRequireConnectionHistory() {
+        when(mClock.getWallClockMillis()).thenReturn(TEST_WALL_CLOCK_MILLIS);
+        mWifiInfo.setFrequency(5180);
+        PerNetwork perNetwork = mWifiScoreCard.lookupNetwork(mWifiInfo.getSSID());
+        for (int i = 0; i < WifiScoreCard.MIN_CONNECTIONS_FOR_CHANNEL_PREDICTION; i++) {
+            assertNull(perNetwork.getPredictedFrequencies(0.9, TEST_WALL_CLOCK_MILLIS));
+            mWifiScoreCard.noteIpConfiguration(mWifiInfo);
+        }
+        assertEquals(Arrays.asList(5180),
+                perNetwork.getPredictedFrequencies(0.9, TEST_WALL_CLOCK_MILLIS));
+    }
+
+    /**
+     * Verify that the predicted channels are the smallest set covering the requested share of
+     * the past connections, with the last connected channel first and connections made at the
+     * same time of day weighing more.
+     */
+    @Test
+    public void testPredictedFrequencies() {
+        PerNetwork perNetwork = mWifiScoreCard.lookupNetwork(mWifiInfo.getSSID());
+        long day = TEST_WALL_CLOCK_MILLIS;
+        long night = TEST_WALL_CLOCK_MILLIS + TWELVE_HOURS_MILLIS;
+        for (int i = 0; i < 6; i++) {
+            perNetwork.addConnectionFrequency(5180, day);
+        }
+        for (int i = 0; i < 3; i++) {
+            perNetwork.addConnectionFrequency(2412, night);
+        }
+        perNetwork.addConnectionFrequency(5745, day);
+
+        // Last connection first, then the most common ones at this time of day.
+        assertEquals(Arrays.asList(5745), perNetwork.getPredictedFrequencies(0.1, day));
+        assertEquals(Arrays.asList(5745, 5180), perNetwork.getPredictedFrequencies(0.8, day));
+        assertEquals(Arrays.asList(5745, 2412, 5180),
+                perNetwork.getPredictedFrequencies(0.8, night));
+        assertEquals(Arrays.asList(5745, 5180, 2412),
+                perNetwork.getPredictedFrequencies(1.0, day));
+    }
+
+    /**
+     * Verify that the connection history is saved to and restored from the memory store.
+     */
+    @Test
+    public void testConnectionFrequenciesPersisted() {
+        PerNetwork perNetwork = mWifiScoreCard.lookupNetwork(mWifiInfo.getSSID());
+        for (int i = 0; i < WifiScoreCard.MIN_CONNECTIONS_FOR_CHANNEL_PREDICTION; i++) {
+            perNetwork.addConnectionFrequency(2412, TEST_WALL_CLOCK_MILLIS);
+        }
+        perNetwork.addConnectionFrequency(5180, TEST_WALL_CLOCK_MILLIS + TWELVE_HOURS_MILLIS);
+        List<Integer> expected = perNetwork.getPredictedFrequencies(1.0, TEST_WALL_CLOCK_MILLIS);
+
+        NetworkStats networkStats = perNetwork.toNetworkStats();
+        assertEquals(5180, networkStats.getLastConnectedFrequency());
+        assertEquals(2, networkStats.getConnectionFrequenciesCount());
+        PerNetwork restored =
+                mWifiScoreCard.perNetworkFromNetworkStats(mWifiInfo.getSSID(), networkStats);
+        assertEquals(expected, restored.getPredictedFrequencies(1.0, TEST_WALL_CLOCK_MILLIS));
+    }
+
+    /**
+     * Replay a connection trace where the network is mostly found on one channel during the day
+     * and another one at night, and verify the hit rate and number of predicted channels.
+     */
+    @Test
+    public void testPredictedFrequenciesReplayConnectionTrace() {
+        PerNetwork perNetwork = mWifiScoreCard.lookupNetwork(mWifiInfo.getSSID());
+        int numPredictions = 0;
+        int numHits = 0;
+        int numChannels = 0;
+        for (int i = 0; i < 200; i++) {
+            boolean isDay = (i % 2) == 0;
+            long time = TEST_WALL_CLOCK_MILLIS + (isDay ? 0 : TWELVE_HOURS_MILLIS);
+            int frequency;
+            if (i % 10 == 9) {
+                frequency = 5745;
+            } else {
+                frequency = isDay ? 5180 : 2412;
+            }
+            List<Integer> predicted = perNetwork.getPredictedFrequencies(0.8, time);
+            if (predicted != null) {
+                numPredictions++;
+                numChannels += predicted.size();
+                if (predicted.contains(frequency)) numHits++;
+            }
+            perNetwork.addConnectionFrequency(frequency, time);
+        }
+        // 10% of the connections are on a channel which is too rare to be predicted.
+        assertTrue(numHits >= 0.85 * numPredictions);
+        // Fewer channels than the 3 used by the network, on average.
+        assertTrue(numChannels < 2.5 * numPredictions);
+    }
 }
@@ -4220,7 +4220,9 @@ public class WifiServiceImplTest extends WifiBaseTest {
                 network.networkId, Binder.getCallingUid(), TEST_PACKAGE_NAME);
         verify(mPasspointManager).removeProvider(anyInt(), anyBoolean(), eq(config.getUniqueId()),
                 isNull());
-        verify(mPasspointManager).clearAnqpRequestsAndFlushCache();
+        InOrder inOrder = inOrder(mPasspointManager);
+        inOrder.verify(mPasspointManager).deleteSavedAnqpCache();
+        inOrder.verify(mPasspointManager).clearAnqpRequestsAndFlushCache();
         verify(mWifiConfigManager).clearUserTemporarilyDisabledList();
         verify(mWifiConfigManager).removeAllEphemeralOrPasspointConfiguredNetworks();
         verify(mClientModeImpl).clearNetworkRequestUserApprovedAccessPoints();
@@ -22,6 +22,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyBoolean;
@@ -1018,6 +1019,73 @@ public class WifiVendorHalTest extends WifiBaseTest {
         assertEquals(WifiLinkLayerStats.V1_3, converted.version);
     }
 
+    /**
+     * Test that refilling the same link layer stats object 10k times keeps reusing its storage,
+     * so that the periodic poll does not allocate any framework objects in steady state.
+     */
+    @Test
+    public void testLinkLayerStatsRefillInPlace_1_3() throws Exception {
+        Random r = new Random(1775968256);
+        android.hardware.wifi.V1_3.StaLinkLayerStats stats =
+                new android.hardware.wifi.V1_3.StaLinkLayerStats();
+        randomizeRadioStats_1_3(r, stats.radios);
+        WifiLinkLayerStats reuse = new WifiLinkLayerStats();
+        WifiLinkLayerStats converted =
+                WifiVendorHal.frameworkFromHalLinkLayerStats_1_3(stats, reuse);
+        assertSame(reuse, converted);
+        int[] txTimePerLevel = converted.tx_time_per_level;
+        List<ChannelStats> channelStats = new ArrayList<>();
+        for (int i = 0; i < converted.channelStatsMap.size(); i++) {
+            channelStats.add(converted.channelStatsMap.valueAt(i));
+        }
+
+        for (int poll = 0; poll < 10000; poll++) {
+            randomizePacketStats(r, stats.iface.wmeBePktStats);
+            android.hardware.wifi.V1_3.StaLinkLayerRadioStats radio = stats.radios.get(0);
+            radio.V1_0.onTimeInMs += 3000;
+            for (WifiChannelStats channel : radio.channelStats) {
+                channel.onTimeInMs += 3000;
+                channel.ccaBusyTimeInMs += r.nextInt(3000);
+            }
+            stats.timeStampInMs += 3000;
+
+            converted = WifiVendorHal.frameworkFromHalLinkLayerStats_1_3(stats, reuse);
+
+            assertSame(reuse, converted);
+            assertSame(txTimePerLevel, converted.tx_time_per_level);
+            assertEquals(channelStats.size(), converted.channelStatsMap.size());
+            for (int i = 0; i < converted.channelStatsMap.size(); i++) {
+                assertSame(channelStats.get(i), converted.channelStatsMap.valueAt(i));
+            }
+        }
+        verifyIFaceStats(stats.iface, converted);
+        verifyRadioStats_1_3(stats.radios, converted);
+        assertEquals(stats.timeStampInMs, converted.timeStampInMs);
+    }
+
+    /**
+     * Test that refilling a V1_3 object with V1_0 stats resets the fields missing from V1_0.
+     */
+    @Test
+    public void testLinkLayerStatsRefillClearsStaleFields() throws Exception {
+        Random r = new Random(1775968256);
+        android.hardware.wifi.V1_3.StaLinkLayerStats stats13 =
+                new android.hardware.wifi.V1_3.StaLinkLayerStats();
+        randomizeRadioStats_1_3(r, stats13.radios);
+        WifiLinkLayerStats reuse =
+                WifiVendorHal.frameworkFromHalLinkLayerStats_1_3(stats13, null);
+
+        StaLinkLayerStats stats = new StaLinkLayerStats();
+        randomizeRadioStats(r, stats.radios);
+        WifiLinkLayerStats converted = WifiVendorHal.frameworkFromHalLinkLayerStats(stats, reuse);
+
+        assertSame(reuse, converted);
+        verifyRadioStats(stats.radios, converted);
+        assertEquals(-1, converted.on_time_nan_scan);
+        assertEquals(0, converted.channelStatsMap.size());
+        assertEquals(WifiLinkLayerStats.V1_0, converted.version);
+    }
+
     private void verifyIFaceStats(StaLinkLayerIfaceStats iface,
             WifiLinkLayerStats wifiLinkLayerStats) {
         assertEquals(iface.beaconRx, wifiLinkLayerStats.beacon_rx);
@@ -21,6 +21,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.anyLong;
 import static org.mockito.Mockito.anyObject;
+import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.verify;
@@ -37,8 +38,11 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Unit tests for {@link com.android.server.wifi.hotspot2.ANQPRequestManager}.
@@ -361,4 +365,110 @@ public class ANQPRequestManagerTest extends WifiBaseTest {
         assertTrue(mManager.requestANQPElements(TEST_BSSID, TEST_ANQP_KEY, true,
                 NetworkDetail.HSRelease.R3));
     }
+
+    /**
+     * Verify that no request is sent to an AP while a request to another AP with the same ANQP
+     * network key is in flight, i.e. until it completes or its hold off time is up.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void requestANQPElementsWithSameKeyInFlight() throws Exception {
+        long otherBssid = TEST_BSSID + 1;
+        ANQPNetworkKey essKey = new ANQPNetworkKey("TestSSID", 0, 0, 1);
+        when(mHandler.requestANQP(anyLong(), anyObject())).thenReturn(true);
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(0L);
+        assertTrue(mManager.requestANQPElements(TEST_BSSID, essKey, false,
+                NetworkDetail.HSRelease.R1));
+        assertFalse(mManager.requestANQPElements(otherBssid, essKey, false,
+                NetworkDetail.HSRelease.R1));
+        verify(mHandler, never()).requestANQP(eq(otherBssid), anyObject());
+
+        // The first request is considered lost once its hold off time is up.
+        when(mClock.getElapsedSinceBootMillis())
+                .thenReturn((long) ANQPRequestManager.BASE_HOLDOFF_TIME_MILLISECONDS);
+        assertTrue(mManager.requestANQPElements(otherBssid, essKey, false,
+                NetworkDetail.HSRelease.R1));
+
+        // A completed request does not hold off the other APs.
+        assertEquals(essKey, mManager.onRequestCompleted(otherBssid, true));
+        assertTrue(mManager.requestANQPElements(otherBssid + 1, essKey, false,
+                NetworkDetail.HSRelease.R1));
+    }
+
+    /**
+     * Verify that no more than {@link ANQPRequestManager#MAX_IN_FLIGHT_QUERIES} requests are in
+     * flight.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void requestANQPElementsWithTooManyInFlight() throws Exception {
+        when(mHandler.requestANQP(anyLong(), anyObject())).thenReturn(true);
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(0L);
+        for (int i = 0; i < ANQPRequestManager.MAX_IN_FLIGHT_QUERIES; i++) {
+            assertTrue(mManager.requestANQPElements(TEST_BSSID + i,
+                    new ANQPNetworkKey("TestSSID", TEST_BSSID + i, 0, 0), false,
+                    NetworkDetail.HSRelease.R1));
+        }
+        long bssid = TEST_BSSID + ANQPRequestManager.MAX_IN_FLIGHT_QUERIES;
+        ANQPNetworkKey anqpKey = new ANQPNetworkKey("TestSSID", bssid, 0, 0);
+        assertFalse(mManager.requestANQPElements(bssid, anqpKey, false,
+                NetworkDetail.HSRelease.R1));
+
+        mManager.onRequestCompleted(TEST_BSSID, false);
+        assertTrue(mManager.requestANQPElements(bssid, anqpKey, false,
+                NetworkDetail.HSRelease.R1));
+    }
+
+    /**
+     * Simulate the scans of a dense venue with 3 ESSs of 40 APs sharing their ANQP domain, and
+     * 10 APs without ANQP domain. Each scan requests the ANQP elements of every AP missing from
+     * the cache, and the requests in flight complete before the next scan. Verify that only one
+     * request is sent per ANQP network key, and that the requests are capped per scan.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void denseVenueRequestsPerScan() throws Exception {
+        List<Long> bssids = new ArrayList<>();
+        List<ANQPNetworkKey> anqpKeys = new ArrayList<>();
+        for (int ess = 0; ess < 3; ess++) {
+            for (int i = 0; i < 40; i++) {
+                long bssid = 0x100000L * (ess + 1) + i;
+                bssids.add(bssid);
+                anqpKeys.add(ANQPNetworkKey.buildKey("Venue" + ess, bssid, 0, 1));
+            }
+        }
+        for (int i = 0; i < 10; i++) {
+            long bssid = 0x900000L + i;
+            bssids.add(bssid);
+            anqpKeys.add(ANQPNetworkKey.buildKey("Cafe" + i, bssid, 0, 0));
+        }
+        when(mHandler.requestANQP(anyLong(), anyObject())).thenReturn(true);
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(0L);
+
+        Set<ANQPNetworkKey> cachedKeys = new HashSet<>();
+        Set<Long> inFlightBssids = new HashSet<>();
+        List<Integer> requestsPerScan = new ArrayList<>();
+        while (cachedKeys.size() < 13) {
+            int numRequests = 0;
+            for (int i = 0; i < bssids.size(); i++) {
+                if (!cachedKeys.contains(anqpKeys.get(i)) && mManager.requestANQPElements(
+                        bssids.get(i), anqpKeys.get(i), false, NetworkDetail.HSRelease.R1)) {
+                    inFlightBssids.add(bssids.get(i));
+                    numRequests++;
+                }
+            }
+            assertTrue(numRequests <= ANQPRequestManager.MAX_IN_FLIGHT_QUERIES);
+            requestsPerScan.add(numRequests);
+            for (long bssid : inFlightBssids) {
+                cachedKeys.add(mManager.onRequestCompleted(bssid, true));
+            }
+            inFlightBssids.clear();
+        }
+
+        assertEquals(Arrays.asList(ANQPRequestManager.MAX_IN_FLIGHT_QUERIES,
+                13 - ANQPRequestManager.MAX_IN_FLIGHT_QUERIES), requestsPerScan);
+    }
 }
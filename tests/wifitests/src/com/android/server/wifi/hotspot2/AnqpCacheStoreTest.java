@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.hotspot2;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.wifi.Clock;
+import com.android.server.wifi.WifiBaseTest;
+import com.android.server.wifi.hotspot2.anqp.ANQPElement;
+import com.android.server.wifi.hotspot2.anqp.ANQPParser;
+import com.android.server.wifi.hotspot2.anqp.Constants;
+import com.android.server.wifi.hotspot2.anqp.DomainNameElement;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Unit tests for {@link com.android.server.wifi.hotspot2.AnqpCacheStore}.
+ */
+@SmallTest
+public class AnqpCacheStoreTest extends WifiBaseTest {
+    private static final ANQPNetworkKey BSSID_KEY =
+            ANQPNetworkKey.buildKey("ssid", 0x1234L, 0L, 0);
+    private static final ANQPNetworkKey HESSID_KEY =
+            ANQPNetworkKey.buildKey("ssid", 0x1234L, 0x5678L, 1);
+    private static final long WALL_CLOCK_MILLIS = 1_600_000_000_000L;
+
+    @Mock Clock mClock;
+    private File mFile;
+    private AnqpCacheStore mStore;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        setTime(1000L, WALL_CLOCK_MILLIS);
+        mFile = File.createTempFile("AnqpCacheStoreTest", null);
+        mStore = new AnqpCacheStore(mFile);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mFile.delete();
+    }
+
+    private void setTime(long elapsedSinceBootMillis, long wallClockMillis) {
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(elapsedSinceBootMillis);
+        when(mClock.getWallClockMillis()).thenReturn(wallClockMillis);
+    }
+
+    /**
+     * Create the ANQP elements of an AP, parsed from their payloads.
+     */
+    private static Map<Constants.ANQPElementType, ANQPElement> parseElements(String domain)
+            throws Exception {
+        byte[] domainBytes = domain.getBytes(StandardCharsets.ISO_8859_1);
+        ByteBuffer domainPayload = ByteBuffer.allocate(domainBytes.length + 1);
+        domainPayload.put((byte) domainBytes.length).put(domainBytes).flip();
+        ByteBuffer oiPayload = ByteBuffer.wrap(new byte[] {3, 0x50, 0x6f, (byte) 0x9a});
+
+        Map<Constants.ANQPElementType, ANQPElement> elements = new HashMap<>();
+        elements.put(Constants.ANQPElementType.ANQPDomName, ANQPParser.parseElement(
+                Constants.ANQPElementType.ANQPDomName, domainPayload));
+        elements.put(Constants.ANQPElementType.ANQPRoamingConsortium, ANQPParser.parseElement(
+                Constants.ANQPElementType.ANQPRoamingConsortium, oiPayload));
+        return elements;
+    }
+
+    private Map<ANQPNetworkKey, ANQPData> writeTestEntries() throws Exception {
+        Map<ANQPNetworkKey, ANQPData> entries = new LinkedHashMap<>();
+        entries.put(BSSID_KEY, new ANQPData(mClock, parseElements("example.com")));
+        entries.put(HESSID_KEY, new ANQPData(mClock, parseElements("example.org")));
+        mStore.write(entries, mClock);
+        return entries;
+    }
+
+    /**
+     * Verify that the written entries are read back in order after a reboot, with their
+     * remaining lifetime.
+     */
+    @Test
+    public void writeAndReadAfterReboot() throws Exception {
+        Map<ANQPNetworkKey, ANQPData> entries = writeTestEntries();
+
+        // Reboot a minute later.
+        setTime(500L, WALL_CLOCK_MILLIS + 60000L);
+        Map<ANQPNetworkKey, ANQPData> readEntries = mStore.read(mClock);
+
+        assertEquals(Arrays.asList(BSSID_KEY, HESSID_KEY),
+                Arrays.asList(readEntries.keySet().toArray()));
+        for (ANQPNetworkKey key : entries.keySet()) {
+            ANQPData data = readEntries.get(key);
+            assertEquals(entries.get(key).getElements(), data.getElements());
+            assertEquals(500L + ANQPData.DATA_LIFETIME_MILLISECONDS - 60000L,
+                    data.getExpiryTimeMillis());
+        }
+    }
+
+    /**
+     * Verify that entries which expired while the device was off are not read.
+     */
+    @Test
+    public void expiredEntriesAreNotRead() throws Exception {
+        writeTestEntries();
+        setTime(500L, WALL_CLOCK_MILLIS + ANQPData.DATA_LIFETIME_MILLISECONDS);
+        assertTrue(mStore.read(mClock).isEmpty());
+    }
+
+    /**
+     * Verify that the lifetime of an entry is not extended when the wall clock goes back.
+     */
+    @Test
+    public void lifetimeIsNotExtendedWhenWallClockGoesBack() throws Exception {
+        writeTestEntries();
+        setTime(500L, WALL_CLOCK_MILLIS - ANQPData.DATA_LIFETIME_MILLISECONDS);
+        assertEquals(500L + ANQPData.DATA_LIFETIME_MILLISECONDS,
+                mStore.read(mClock).get(BSSID_KEY).getExpiryTimeMillis());
+    }
+
+    /**
+     * Verify that entries with elements which were not parsed from a payload are not written.
+     */
+    @Test
+    public void entriesWithoutRawPayloadAreNotWritten() throws Exception {
+        Map<ANQPNetworkKey, ANQPData> entries = new LinkedHashMap<>();
+        Map<Constants.ANQPElementType, ANQPElement> elements = new HashMap<>();
+        elements.put(Constants.ANQPElementType.ANQPDomName,
+                new DomainNameElement(Arrays.asList("example.com")));
+        entries.put(BSSID_KEY, new ANQPData(mClock, elements));
+        entries.put(HESSID_KEY, new ANQPData(mClock, parseElements("example.org")));
+        mStore.write(entries, mClock);
+
+        Map<ANQPNetworkKey, ANQPData> readEntries = mStore.read(mClock);
+        assertEquals(1, readEntries.size());
+        assertNotNull(readEntries.get(HESSID_KEY));
+    }
+
+    /**
+     * Verify that a file of an unknown format or a truncated file is discarded.
+     */
+    @Test
+    public void corruptFileIsDiscarded() throws Exception {
+        try (FileOutputStream out = new FileOutputStream(mFile)) {
+            out.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+        }
+        assertTrue(mStore.read(mClock).isEmpty());
+
+        writeTestEntries();
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            file.setLength(file.length() - 1);
+        }
+        assertTrue(mStore.read(mClock).isEmpty());
+    }
+
+    /**
+     * Verify that nothing is read from a missing or deleted file.
+     */
+    @Test
+    public void readDeletedFile() throws Exception {
+        writeTestEntries();
+        mStore.delete();
+        assertFalse(mFile.exists());
+        assertTrue(mStore.read(mClock).isEmpty());
+    }
+}
@@ -16,6 +16,8 @@
 
 package com.android.server.wifi.hotspot2;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -28,11 +30,24 @@ import com.android.server.wifi.Clock;
 import com.android.server.wifi.WifiBaseTest;
 import com.android.server.wifi.hotspot2.ANQPData;
 import com.android.server.wifi.hotspot2.AnqpCache;
+import com.android.server.wifi.hotspot2.anqp.ANQPElement;
+import com.android.server.wifi.hotspot2.anqp.ANQPParser;
+import com.android.server.wifi.hotspot2.anqp.Constants;
+import com.android.server.wifi.hotspot2.anqp.RawByteElement;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 
+import java.io.File;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
 /**
  * Unit tests for {@link com.android.server.wifi.hotspot2.AnqpCache}.
  *
@@ -42,9 +57,12 @@ import org.mockito.Mock;
 @SmallTest
 public class AnqpCacheTest extends WifiBaseTest {
     private static final ANQPNetworkKey ENTRY_KEY = new ANQPNetworkKey("test", 0L, 0L, 1);
+    private static final int NUM_COMMUTE_HOTSPOTS = 5000;
+    private static final int NUM_VENUE_HOTSPOTS = 200;
 
     @Mock Clock mClock;
     AnqpCache mCache;
+    File mStoreFile;
 
     /**
      * Sets up test.
@@ -57,6 +75,13 @@ public class AnqpCacheTest extends WifiBaseTest {
         mCache = new AnqpCache(mClock);
     }
 
+    @After
+    public void tearDown() throws Exception {
+        if (mStoreFile != null) {
+            mStoreFile.delete();
+        }
+    }
+
     /**
      * Verify expectation for addEntry and getEntry.
      *
@@ -112,4 +137,251 @@ public class AnqpCacheTest extends WifiBaseTest {
         mCache.flush();
         assertNull(mCache.getEntry(ENTRY_KEY));
     }
+
+    private static ANQPNetworkKey makeKey(int i) {
+        return new ANQPNetworkKey("hotspot" + i, i, 0L, 1);
+    }
+
+    private static Map<Constants.ANQPElementType, ANQPElement> makeElements(int payloadSize) {
+        Map<Constants.ANQPElementType, ANQPElement> elements = new HashMap<>();
+        elements.put(Constants.ANQPElementType.ANQPVenueName,
+                new RawByteElement(Constants.ANQPElementType.ANQPVenueName,
+                        new byte[payloadSize]));
+        return elements;
+    }
+
+    /**
+     * Verify that the least recently used entry is evicted when the cache is full.
+     */
+    @Test
+    public void evictLeastRecentlyUsedEntry() throws Exception {
+        mCache = new AnqpCache(mClock, 2, AnqpCache.DEFAULT_MAX_BYTES);
+        mCache.addEntry(makeKey(0), null);
+        mCache.addEntry(makeKey(1), null);
+        assertNotNull(mCache.getEntry(makeKey(0)));
+        mCache.addEntry(makeKey(2), null);
+
+        assertNotNull(mCache.getEntry(makeKey(0)));
+        assertNull(mCache.getEntry(makeKey(1)));
+        assertNotNull(mCache.getEntry(makeKey(2)));
+        assertEquals(2, mCache.size());
+        assertEquals(1, mCache.getEvictionCount());
+        assertEquals(3, mCache.getHitCount());
+        assertEquals(1, mCache.getMissCount());
+    }
+
+    /**
+     * Verify that entries are evicted to stay within the byte bound, but that the newest entry
+     * is kept even if it is over the bound by itself.
+     */
+    @Test
+    public void evictEntriesOverByteBound() throws Exception {
+        mCache = new AnqpCache(mClock, AnqpCache.DEFAULT_MAX_ENTRIES, 3000);
+        mCache.addEntry(makeKey(0), makeElements(1000));
+        mCache.addEntry(makeKey(1), makeElements(1000));
+        assertEquals(2, mCache.size());
+        mCache.addEntry(makeKey(2), makeElements(1000));
+        assertEquals(2, mCache.size());
+        assertNull(mCache.getEntry(makeKey(0)));
+        assertTrue(mCache.getSizeBytes() <= 3000);
+
+        mCache.addEntry(makeKey(3), makeElements(5000));
+        assertEquals(1, mCache.size());
+        assertNotNull(mCache.getEntry(makeKey(3)));
+        assertEquals(3, mCache.getEvictionCount());
+    }
+
+    /**
+     * Verify that replacing an entry does not leave its old expiry behind, and that the
+     * replacement expires on its own schedule.
+     */
+    @Test
+    public void replaceEntryResetsExpiry() throws Exception {
+        mCache.addEntry(ENTRY_KEY, makeElements(1000));
+        when(mClock.getElapsedSinceBootMillis())
+                .thenReturn(ANQPData.DATA_LIFETIME_MILLISECONDS / 2);
+        mCache.addEntry(ENTRY_KEY, null);
+        assertEquals(1, mCache.size());
+
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(ANQPData.DATA_LIFETIME_MILLISECONDS);
+        mCache.sweep();
+        assertNotNull(mCache.getEntry(ENTRY_KEY));
+
+        when(mClock.getElapsedSinceBootMillis())
+                .thenReturn(ANQPData.DATA_LIFETIME_MILLISECONDS * 3 / 2);
+        mCache.sweep();
+        assertNull(mCache.getEntry(ENTRY_KEY));
+        assertEquals(0, mCache.getSizeBytes());
+        assertEquals(1, mCache.getExpirationCount());
+    }
+
+    /**
+     * Verify that the counters are dumped.
+     */
+    @Test
+    public void dumpCounters() throws Exception {
+        mCache.addEntry(ENTRY_KEY, null);
+        mCache.getEntry(ENTRY_KEY);
+        StringWriter sw = new StringWriter();
+        mCache.dump(new PrintWriter(sw));
+        assertTrue(sw.toString().contains("Hits: 1, misses: 0, evictions: 0, expirations: 0"));
+    }
+
+    /**
+     * Simulate a commute through 5k hotspots, alternating between dense stations where a new
+     * hotspot is seen every second and walks where one is seen every 20 seconds. Verify that
+     * the cache stays within its bounds, that recently seen hotspots are still cached, and that
+     * the sweeps leave no expired entry behind.
+     */
+    @Test
+    public void commuteThroughHotspots() throws Exception {
+        mCache = new AnqpCache(mClock);
+        Random random = new Random(1234);
+        long now = 0;
+        for (int i = 0; i < NUM_COMMUTE_HOTSPOTS; i++) {
+            now += (i / 1000) % 2 == 0 ? 1000L : 20000L;
+            when(mClock.getElapsedSinceBootMillis()).thenReturn(now);
+            mCache.sweep();
+
+            assertNull(mCache.getEntry(makeKey(i)));
+            mCache.addEntry(makeKey(i), makeElements(200 + random.nextInt(1000)));
+            if (i >= 10) {
+                // Hotspots seen a few moments ago come back into view.
+                assertNotNull(mCache.getEntry(makeKey(i - 10)));
+            }
+            assertTrue(mCache.size() <= AnqpCache.DEFAULT_MAX_ENTRIES);
+            assertTrue(mCache.getSizeBytes() <= AnqpCache.DEFAULT_MAX_BYTES);
+        }
+
+        assertEquals(NUM_COMMUTE_HOTSPOTS, mCache.getMissCount());
+        assertEquals(NUM_COMMUTE_HOTSPOTS - 10, mCache.getHitCount());
+        assertTrue(mCache.getEvictionCount() > 0);
+        assertTrue(mCache.getExpirationCount() > 0);
+        assertEquals(NUM_COMMUTE_HOTSPOTS,
+                mCache.size() + mCache.getEvictionCount() + mCache.getExpirationCount());
+
+        // Past one sweep interval, every entry seen more than a lifetime ago is gone.
+        now += AnqpCache.CACHE_SWEEP_INTERVAL_MILLISECONDS;
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(now);
+        mCache.sweep();
+        for (int i = 0; i < NUM_COMMUTE_HOTSPOTS; i++) {
+            ANQPData data = mCache.getEntry(makeKey(i));
+            assertTrue(data == null || !data.expired(now));
+        }
+
+        mCache.flush();
+        assertEquals(0, mCache.size());
+        assertEquals(0, mCache.getSizeBytes());
+    }
+
+    private static Map<Constants.ANQPElementType, ANQPElement> parseElements(int i)
+            throws Exception {
+        Map<Constants.ANQPElementType, ANQPElement> elements = new HashMap<>();
+        elements.put(Constants.ANQPElementType.ANQPRoamingConsortium, ANQPParser.parseElement(
+                Constants.ANQPElementType.ANQPRoamingConsortium,
+                ByteBuffer.wrap(new byte[] {3, 0x50, (byte) (i >> 8), (byte) i})));
+        return elements;
+    }
+
+    private void setStore() throws Exception {
+        mStoreFile = File.createTempFile("AnqpCacheTest", null);
+        mStoreFile.delete();
+        mCache.setStore(new AnqpCacheStore(mStoreFile));
+    }
+
+    /**
+     * Verify that with a store, the entries flushed when wifi is turned off are loaded again on
+     * the next use of the cache.
+     */
+    @Test
+    public void flushedEntriesAreLoadedFromStore() throws Exception {
+        setStore();
+        mCache.addEntry(ENTRY_KEY, parseElements(1));
+        mCache.flush();
+        assertEquals(0, mCache.size());
+        assertTrue(mStoreFile.exists());
+
+        ANQPData data = mCache.getEntry(ENTRY_KEY);
+        assertNotNull(data);
+        assertEquals(parseElements(1), data.getElements());
+        assertEquals(1, mCache.size());
+    }
+
+    /**
+     * Verify that the added entries are saved by the sweep once the save interval elapsed, so
+     * that a new cache (e.g. after a reboot) loads them.
+     */
+    @Test
+    public void sweepSavesAddedEntries() throws Exception {
+        setStore();
+        mCache.addEntry(ENTRY_KEY, parseElements(1));
+        assertFalse(mStoreFile.exists());
+        when(mClock.getElapsedSinceBootMillis())
+                .thenReturn(AnqpCache.CACHE_SWEEP_INTERVAL_MILLISECONDS);
+        mCache.sweep();
+        assertFalse(mStoreFile.exists());
+        when(mClock.getElapsedSinceBootMillis())
+                .thenReturn(AnqpCache.MIN_SAVE_INTERVAL_MILLISECONDS);
+        mCache.sweep();
+        assertTrue(mStoreFile.exists());
+
+        AnqpCache newCache = new AnqpCache(mClock);
+        newCache.setStore(new AnqpCacheStore(mStoreFile));
+        assertNotNull(newCache.getEntry(ENTRY_KEY));
+    }
+
+    /**
+     * Verify that flushAndDeleteStore drops the entries of the store as well.
+     */
+    @Test
+    public void flushAndDeleteStore() throws Exception {
+        setStore();
+        mCache.addEntry(ENTRY_KEY, parseElements(1));
+        mCache.flush();
+        mCache.flushAndDeleteStore();
+        assertFalse(mStoreFile.exists());
+        assertNull(mCache.getEntry(ENTRY_KEY));
+    }
+
+    /**
+     * Verify that flushing the cache after deleting the store, as on factory reset, does not
+     * write the deleted entries again.
+     */
+    @Test
+    public void flushAfterDeleteStoreDoesNotSave() throws Exception {
+        setStore();
+        mCache.addEntry(ENTRY_KEY, parseElements(1));
+        mCache.flushAndDeleteStore();
+        mCache.flush();
+        assertFalse(mStoreFile.exists());
+        assertNull(mCache.getEntry(ENTRY_KEY));
+    }
+
+    /**
+     * Simulate a wifi toggle at a venue with 200 Passpoint APs, with and without persistence.
+     * Every AP missing from the cache after the toggle needs an ANQP query, with its hold-off,
+     * before it can be a Passpoint candidate. Verify that with persistence, none of them does.
+     */
+    @Test
+    public void passpointCandidatesAfterToggle() throws Exception {
+        for (boolean persisted : new boolean[] {false, true}) {
+            mCache = new AnqpCache(mClock);
+            if (persisted) {
+                setStore();
+            }
+            for (int i = 0; i < NUM_VENUE_HOTSPOTS; i++) {
+                mCache.addEntry(makeKey(i), parseElements(i));
+            }
+            mCache.flush();
+
+            int numQueriesNeeded = 0;
+            for (int i = 0; i < NUM_VENUE_HOTSPOTS; i++) {
+                if (mCache.getEntry(makeKey(i)) == null) {
+                    numQueriesNeeded++;
+                }
+            }
+
+            assertEquals(persisted ? 0 : NUM_VENUE_HOTSPOTS, numQueriesNeeded);
+        }
+    }
 }
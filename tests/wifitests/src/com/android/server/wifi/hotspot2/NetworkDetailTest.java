@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.hotspot2;
+
+import static org.junit.Assert.*;
+
+import android.net.wifi.ScanResult.InformationElement;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.wifi.WifiBaseTest;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Unit tests for {@link com.android.server.wifi.hotspot2.NetworkDetail}.
+ */
+@SmallTest
+public class NetworkDetailTest extends WifiBaseTest {
+    private static final String TEST_BSSID = "02:11:22:33:44:55";
+    private static final int TEST_FREQ = 5180;
+
+    private static InformationElement createIe(int id, byte[] bytes) {
+        InformationElement ie = new InformationElement();
+        ie.id = id;
+        ie.bytes = bytes;
+        return ie;
+    }
+
+    private static InformationElement createSsidIe(String ssid) {
+        return createIe(InformationElement.EID_SSID, ssid.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** HT Capabilities element advertising 2 spatial streams. */
+    private static InformationElement createHtCapabilitiesIe() {
+        byte[] bytes = new byte[26];
+        bytes[3] = (byte) 0xff;
+        bytes[4] = (byte) 0xff;
+        return createIe(InformationElement.EID_HT_CAPABILITIES, bytes);
+    }
+
+    /** VHT Capabilities element advertising 3 spatial streams. */
+    private static InformationElement createVhtCapabilitiesIe() {
+        byte[] bytes = new byte[12];
+        // Rx MCS map: streams 1-3 supported, streams 4-8 unsupported.
+        bytes[4] = (byte) 0xc0;
+        bytes[5] = (byte) 0xff;
+        return createIe(InformationElement.EID_VHT_CAPABILITIES, bytes);
+    }
+
+    /**
+     * Verify that the max number of spatial streams is decoded from the capabilities elements.
+     */
+    @Test
+    public void testMaxNumberSpatialStreams() {
+        InformationElement[] ies = new InformationElement[] {
+                createSsidIe("TestSsid"), createHtCapabilitiesIe(), createVhtCapabilitiesIe()};
+        NetworkDetail networkDetail = new NetworkDetail(TEST_BSSID, ies, null, TEST_FREQ);
+        assertEquals(3, networkDetail.getMaxNumberSpatialStreams());
+        // Also carried over when completed with ANQP elements.
+        assertEquals(3, networkDetail.complete(null).getMaxNumberSpatialStreams());
+    }
+
+    /**
+     * Verify that a single spatial stream is assumed without any capabilities element.
+     */
+    @Test
+    public void testMaxNumberSpatialStreamsWithoutCapabilities() {
+        InformationElement[] ies = new InformationElement[] {createSsidIe("TestSsid")};
+        NetworkDetail networkDetail = new NetworkDetail(TEST_BSSID, ies, null, TEST_FREQ);
+        assertEquals(1, networkDetail.getMaxNumberSpatialStreams());
+    }
+
+    /**
+     * Verify that elements following a malformed element are ignored for the max number of
+     * spatial streams, as they are for the other fields.
+     */
+    @Test
+    public void testMaxNumberSpatialStreamsIgnoresElementsAfterMalformedElement() {
+        InformationElement[] ies = new InformationElement[] {
+                createSsidIe("TestSsid"), createHtCapabilitiesIe(),
+                // BSS Load element must be 5 bytes long.
+                createIe(InformationElement.EID_BSS_LOAD, new byte[1]),
+                createVhtCapabilitiesIe()};
+        NetworkDetail networkDetail = new NetworkDetail(TEST_BSSID, ies, null, TEST_FREQ);
+        assertEquals(2, networkDetail.getMaxNumberSpatialStreams());
+    }
+
+    /**
+     * Verify that ASCII and UTF-8 SSIDs are decoded.
+     */
+    @Test
+    public void testSsidDecoding() {
+        NetworkDetail networkDetail = new NetworkDetail(TEST_BSSID,
+                new InformationElement[] {createSsidIe("TestSsid")}, null, TEST_FREQ);
+        assertEquals("TestSsid", networkDetail.getSSID());
+        assertFalse(networkDetail.isHiddenBeaconFrame());
+
+        networkDetail = new NetworkDetail(TEST_BSSID,
+                new InformationElement[] {createSsidIe("Caf\u00e9 \u7f51\u7edc")}, null, TEST_FREQ);
+        assertEquals("Caf\u00e9 \u7f51\u7edc", networkDetail.getSSID());
+
+        // Invalid UTF-8 falls back to ISO-8859-1.
+        byte[] latin1Ssid = new byte[] {'C', 'a', 'f', (byte) 0xe9};
+        networkDetail = new NetworkDetail(TEST_BSSID,
+                new InformationElement[] {createIe(InformationElement.EID_SSID, latin1Ssid)},
+                null, TEST_FREQ);
+        assertEquals("Caf\u00e9", networkDetail.getSSID());
+    }
+}
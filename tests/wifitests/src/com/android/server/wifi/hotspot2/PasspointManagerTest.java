@@ -38,10 +38,12 @@ import static org.mockito.Mockito.anyInt;
 import static org.mockito.Mockito.anyLong;
 import static org.mockito.Mockito.anyMap;
 import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.same;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -107,15 +109,18 @@ import com.android.server.wifi.util.WifiPermissionsUtil;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoSession;
 
+import java.io.File;
 import java.nio.charset.StandardCharsets;
 import java.security.KeyStore;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -156,6 +161,7 @@ public class PasspointManagerTest extends WifiBaseTest {
             TEST_MCC_MNC.substring(3), TEST_MCC_MNC.substring(0, 3));
 
     private static final long TEST_HESSID = 0x5678L;
+    private static final long TEST_OI = 0x1234L;
     private static final int TEST_ANQP_DOMAIN_ID = 0;
     private static final int TEST_ANQP_DOMAIN_ID2 = 1;
     private static final ANQPNetworkKey TEST_ANQP_KEY = ANQPNetworkKey.buildKey(
@@ -214,6 +220,14 @@ public class PasspointManagerTest extends WifiBaseTest {
         when(mObjectFactory.makeOsuServerConnection())
                 .thenReturn(mOsuServerConnection);
         when(mObjectFactory.makeWfaKeyStore()).thenReturn(mWfaKeyStore);
+        // The test providers are mocks matching any ANQP elements, keep all of them candidates.
+        when(mObjectFactory.makePasspointMatchIndex(any())).thenAnswer(invocation -> {
+            Set<PasspointProvider> providers = new HashSet<>(
+                    invocation.<Collection<PasspointProvider>>getArgument(0));
+            PasspointMatchIndex matchIndex = mock(PasspointMatchIndex.class);
+            when(matchIndex.getCandidates(any(), any())).thenReturn(providers);
+            return matchIndex;
+        });
         when(mWfaKeyStore.get()).thenReturn(mKeyStore);
         when(mObjectFactory.makePasspointProvisioner(any(Context.class), any(WifiNative.class),
                 any(PasspointManager.class), any(WifiMetrics.class)))
@@ -997,6 +1011,85 @@ public class PasspointManagerTest extends WifiBaseTest {
         }
     }
 
+    private ScanResult createTestScanResult(String ssid, String bssid, int level,
+            InformationElementUtil.Vsa vsa, RoamingConsortium roamingConsortium) {
+        ScanResult scanResult = new ScanResult();
+        scanResult.SSID = ssid;
+        scanResult.BSSID = bssid;
+        scanResult.level = level;
+        scanResult.flags = ScanResult.FLAG_PASSPOINT_NETWORK;
+        scanResult.informationElements = new ScanResult.InformationElement[] {
+                new ScanResult.InformationElement()};
+        when(InformationElementUtil.getHS2VendorSpecificIE(same(scanResult.informationElements)))
+                .thenReturn(vsa);
+        when(InformationElementUtil.getRoamingConsortiumIE(same(scanResult.informationElements)))
+                .thenReturn(roamingConsortium);
+        return scanResult;
+    }
+
+    /**
+     * Verify that the missing ANQP elements of a scan are requested once per ANQP network key,
+     * from its strongest AP, starting with the APs advertising an OI of a provider.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void requestMissingAnqpElementsOncePerNetworkKey() throws Exception {
+        // static mocking
+        MockitoSession session =
+                com.android.dx.mockito.inline.extended.ExtendedMockito.mockitoSession().mockStatic(
+                        InformationElementUtil.class).startMocking();
+        try {
+            PasspointProvider provider =
+                    addTestProvider(TEST_FQDN, TEST_FRIENDLY_NAME, TEST_PACKAGE, false, null);
+            provider.getConfig().getHomeSp().setRoamingConsortiumOis(new long[] {TEST_OI});
+            when(mObjectFactory.makePasspointMatchIndex(any())).thenAnswer(
+                    invocation -> new PasspointMatchIndex(invocation.getArgument(0)));
+
+            InformationElementUtil.Vsa essVsa = new InformationElementUtil.Vsa();
+            essVsa.hsRelease = NetworkDetail.HSRelease.R2;
+            essVsa.anqpDomainID = 1;
+            InformationElementUtil.Vsa vsa = new InformationElementUtil.Vsa();
+            vsa.hsRelease = NetworkDetail.HSRelease.R1;
+            RoamingConsortium noOi = mock(RoamingConsortium.class);
+            RoamingConsortium providerOi = mock(RoamingConsortium.class);
+            providerOi.anqpOICount = 1;
+            when(providerOi.getRoamingConsortiums()).thenReturn(new long[] {TEST_OI});
+
+            ScanResult weakEssAp =
+                    createTestScanResult("Venue", "11:22:33:44:55:01", -70, essVsa, noOi);
+            ScanResult strongEssAp =
+                    createTestScanResult("Venue", "11:22:33:44:55:02", -50, essVsa, noOi);
+            ScanResult strongAp =
+                    createTestScanResult("Cafe", "11:22:33:44:55:03", -40, vsa, noOi);
+            ScanResult providerAp =
+                    createTestScanResult("Roaming", "11:22:33:44:55:04", -80, vsa, providerOi);
+            ScanResult cachedAp =
+                    createTestScanResult("Cached", "11:22:33:44:55:05", -30, vsa, noOi);
+            ANQPNetworkKey essKey = ANQPNetworkKey.buildKey("Venue", 0x112233445502L, 0, 1);
+            ANQPNetworkKey strongKey = ANQPNetworkKey.buildKey("Cafe", 0x112233445503L, 0, 0);
+            ANQPNetworkKey providerKey =
+                    ANQPNetworkKey.buildKey("Roaming", 0x112233445504L, 0, 0);
+            when(mAnqpCache.hasEntry(ANQPNetworkKey.buildKey("Cached", 0x112233445505L, 0, 0)))
+                    .thenReturn(true);
+
+            mManager.requestMissingAnqpElements(
+                    Arrays.asList(weakEssAp, strongEssAp, strongAp, providerAp, cachedAp));
+
+            InOrder inOrder = inOrder(mAnqpRequestManager);
+            inOrder.verify(mAnqpRequestManager).requestANQPElements(0x112233445504L, providerKey,
+                    true, NetworkDetail.HSRelease.R1);
+            inOrder.verify(mAnqpRequestManager).requestANQPElements(0x112233445503L, strongKey,
+                    false, NetworkDetail.HSRelease.R1);
+            inOrder.verify(mAnqpRequestManager).requestANQPElements(0x112233445502L, essKey,
+                    false, NetworkDetail.HSRelease.R2);
+            verify(mAnqpRequestManager, times(3)).requestANQPElements(anyLong(),
+                    any(ANQPNetworkKey.class), anyBoolean(), any(NetworkDetail.HSRelease.class));
+        } finally {
+            session.finishMocking();
+        }
+    }
+
     /**
      * Verify that the expected provider will be returned when a HomeProvider is matched.
      *
@@ -1108,6 +1201,26 @@ public class PasspointManagerTest extends WifiBaseTest {
         verify(mAnqpCache).sweep();
     }
 
+    /**
+     * Verify that the ANQP cache is given a store when persistence is enabled, and that it is
+     * saved and deleted through the manager.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void persistAnqpCache() throws Exception {
+        File file = new File("anqp");
+        AnqpCacheStore store = new AnqpCacheStore(file);
+        when(mObjectFactory.makeAnqpCacheStore(file)).thenReturn(store);
+        mManager.enableAnqpCachePersistence(file);
+        verify(mAnqpCache).setStore(store);
+
+        mManager.saveAnqpCache();
+        verify(mAnqpCache).save();
+        mManager.deleteSavedAnqpCache();
+        verify(mAnqpCache).flushAndDeleteStore();
+    }
+
     /**
      * Verify that an empty map will be returned if ANQP elements are not cached for the given AP.
      *
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.hotspot2;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import android.net.wifi.EAPConstants;
+import android.net.wifi.hotspot2.PasspointConfiguration;
+import android.net.wifi.hotspot2.pps.Credential;
+import android.net.wifi.hotspot2.pps.HomeSp;
+import android.util.ArraySet;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.wifi.WifiBaseTest;
+import com.android.server.wifi.WifiCarrierInfoManager;
+import com.android.server.wifi.WifiKeyStore;
+import com.android.server.wifi.hotspot2.anqp.ANQPElement;
+import com.android.server.wifi.hotspot2.anqp.Constants.ANQPElementType;
+import com.android.server.wifi.hotspot2.anqp.DomainNameElement;
+import com.android.server.wifi.hotspot2.anqp.NAIRealmData;
+import com.android.server.wifi.hotspot2.anqp.NAIRealmElement;
+import com.android.server.wifi.hotspot2.anqp.RoamingConsortiumElement;
+import com.android.server.wifi.hotspot2.anqp.eap.EAPMethod;
+import com.android.server.wifi.util.InformationElementUtil.RoamingConsortium;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Unit tests for {@link com.android.server.wifi.hotspot2.PasspointMatchIndex}.
+ */
+@SmallTest
+public class PasspointMatchIndexTest extends WifiBaseTest {
+    private static final String TEST_FQDN = "example.com";
+    private static final String TEST_REALM = "realm.example.net";
+    private static final long TEST_OI = 0x1234L;
+    private static final int NUM_TEST_PROVIDERS = 100;
+    private static final int NUM_TEST_ANQP_ENTRIES = 500;
+
+    @Mock WifiKeyStore mKeyStore;
+    @Mock WifiCarrierInfoManager mWifiCarrierInfoManager;
+    @Mock RoamingConsortium mRoamingConsortium;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(mRoamingConsortium.getRoamingConsortiums()).thenReturn(null);
+    }
+
+    private static PasspointConfiguration createConfig(int id, String fqdn, String realm,
+            long[] ois, String[] otherHomePartners) {
+        PasspointConfiguration config = new PasspointConfiguration();
+        HomeSp homeSp = new HomeSp();
+        homeSp.setFqdn(fqdn);
+        homeSp.setFriendlyName("Provider " + id);
+        homeSp.setRoamingConsortiumOis(ois);
+        homeSp.setOtherHomePartners(otherHomePartners);
+        config.setHomeSp(homeSp);
+        Credential credential = new Credential();
+        credential.setRealm(realm);
+        Credential.UserCredential userCredential = new Credential.UserCredential();
+        userCredential.setEapType(EAPConstants.EAP_TTLS);
+        userCredential.setNonEapInnerMethod(Credential.UserCredential.AUTH_METHOD_MSCHAPV2);
+        userCredential.setUsername("username");
+        userCredential.setPassword("cGFzc3dvcmQ=");
+        credential.setUserCredential(userCredential);
+        config.setCredential(credential);
+        return config;
+    }
+
+    private PasspointProvider createProvider(int id, PasspointConfiguration config) {
+        return new PasspointProvider(config, mKeyStore, mWifiCarrierInfoManager, id, 1000,
+                "com.android.test", false);
+    }
+
+    private PasspointProvider createProvider(int id, String fqdn, String realm, long[] ois,
+            String[] otherHomePartners) {
+        return createProvider(id, createConfig(id, fqdn, realm, ois, otherHomePartners));
+    }
+
+    private PasspointProvider createProvider(String fqdn, String realm, long[] ois) {
+        return createProvider(0, fqdn, realm, ois, null);
+    }
+
+    private static Map<ANQPElementType, ANQPElement> createAnqpElements(String domain,
+            String realm, Long oi) {
+        Map<ANQPElementType, ANQPElement> elements = new HashMap<>();
+        if (domain != null) {
+            elements.put(ANQPElementType.ANQPDomName,
+                    new DomainNameElement(Arrays.asList(domain)));
+        }
+        if (realm != null) {
+            NAIRealmData realmData = new NAIRealmData(Arrays.asList(realm),
+                    new ArrayList<EAPMethod>());
+            elements.put(ANQPElementType.ANQPNAIRealm,
+                    new NAIRealmElement(Arrays.asList(realmData)));
+        }
+        if (oi != null) {
+            elements.put(ANQPElementType.ANQPRoamingConsortium,
+                    new RoamingConsortiumElement(Arrays.asList(oi)));
+        }
+        return elements;
+    }
+
+    private Set<PasspointProvider> getCandidates(PasspointProvider provider,
+            Map<ANQPElementType, ANQPElement> elements) {
+        return new PasspointMatchIndex(Arrays.asList(provider))
+                .getCandidates(elements, mRoamingConsortium);
+    }
+
+    /**
+     * Verify that a provider is a candidate for the APs advertising its FQDN, its other home
+     * partners or one of their sub-domains, ignoring the case.
+     */
+    @Test
+    public void testDomainNameCandidates() {
+        PasspointProvider provider = createProvider(0, TEST_FQDN, null, null,
+                new String[] {"partner.org"});
+        assertTrue(getCandidates(provider, createAnqpElements(TEST_FQDN, null, null))
+                .contains(provider));
+        assertTrue(getCandidates(provider, createAnqpElements("Hotspot.Example.COM", null, null))
+                .contains(provider));
+        assertTrue(getCandidates(provider, createAnqpElements("a.partner.org", null, null))
+                .contains(provider));
+        assertTrue(getCandidates(provider, createAnqpElements("ample.com", null, null))
+                .isEmpty());
+        assertTrue(getCandidates(provider, createAnqpElements("com", null, null)).isEmpty());
+        assertTrue(getCandidates(provider, createAnqpElements("", null, null)).isEmpty());
+    }
+
+    /**
+     * Verify that a provider is a candidate for the APs advertising its realm.
+     */
+    @Test
+    public void testRealmCandidates() {
+        PasspointProvider provider = createProvider("other.com", TEST_REALM, null);
+        assertTrue(getCandidates(provider, createAnqpElements(null, TEST_REALM, null))
+                .contains(provider));
+        assertTrue(getCandidates(provider, createAnqpElements(null, "example.net", null))
+                .isEmpty());
+    }
+
+    /**
+     * Verify that a provider is a candidate for the APs advertising one of its OIs, either in
+     * the ANQP element or in the information element.
+     */
+    @Test
+    public void testRoamingConsortiumCandidates() {
+        PasspointProvider provider = createProvider("other.com", null, new long[] {TEST_OI});
+        assertTrue(getCandidates(provider, createAnqpElements(null, null, TEST_OI))
+                .contains(provider));
+        assertTrue(getCandidates(provider, createAnqpElements(null, null, TEST_OI + 1))
+                .isEmpty());
+
+        when(mRoamingConsortium.getRoamingConsortiums()).thenReturn(new long[] {TEST_OI});
+        assertTrue(getCandidates(provider, createAnqpElements(null, null, null))
+                .contains(provider));
+        assertTrue(new PasspointMatchIndex(Arrays.asList(provider))
+                .getCandidates(createAnqpElements(null, null, null), null).isEmpty());
+    }
+
+    /**
+     * Verify that providers with a SIM credential, with OIs which all need to match or which
+     * are not indexable are always candidates.
+     */
+    @Test
+    public void testUnindexedProvidersAreAlwaysCandidates() {
+        PasspointConfiguration simConfig = createConfig(0, "sim.com", null, null, null);
+        Credential.SimCredential simCredential = new Credential.SimCredential();
+        simCredential.setImsi("123456*");
+        simCredential.setEapType(EAPConstants.EAP_SIM);
+        simConfig.getCredential().setUserCredential(null);
+        simConfig.getCredential().setSimCredential(simCredential);
+        PasspointProvider simProvider = createProvider(0, simConfig);
+        PasspointConfiguration matchAllConfig = createConfig(1, "all.com", null, null, null);
+        matchAllConfig.getHomeSp().setMatchAllOis(new long[] {TEST_OI});
+        PasspointProvider matchAllProvider = createProvider(1, matchAllConfig);
+        PasspointProvider mockProvider = mock(PasspointProvider.class);
+
+        Set<PasspointProvider> candidates = new PasspointMatchIndex(
+                Arrays.asList(simProvider, matchAllProvider, mockProvider))
+                .getCandidates(Collections.emptyMap(), mRoamingConsortium);
+        assertEquals(3, candidates.size());
+    }
+
+    /**
+     * Verify that matching 500 ANQP entries against 100 providers gives the same results with
+     * and without the index.
+     */
+    @Test
+    public void matchWithIndexSameAsMatchWithoutIndex() {
+        List<PasspointProvider> providers = new ArrayList<>();
+        for (int i = 0; i < NUM_TEST_PROVIDERS; i++) {
+            providers.add(createProvider(i, "provider" + i + ".com", "realm" + i + ".net",
+                    new long[] {0x500000L + i},
+                    i % 2 == 0 ? new String[] {"partner" + i + ".org"} : null));
+        }
+        List<Map<ANQPElementType, ANQPElement>> anqpEntries = new ArrayList<>();
+        for (int j = 0; j < NUM_TEST_ANQP_ENTRIES; j++) {
+            anqpEntries.add(createAnqpElements(
+                    "hotspot" + j + ".provider" + (j % 150) + ".com",
+                    "realm" + (j * 7 % 300) + ".net",
+                    0x500000L + (j * 13 % 400)));
+        }
+
+        List<Set<PasspointProvider>> expectedMatches = new ArrayList<>();
+        for (Map<ANQPElementType, ANQPElement> anqpElements : anqpEntries) {
+            Set<PasspointProvider> matches = new ArraySet<>();
+            for (PasspointProvider provider : providers) {
+                if (provider.match(anqpElements, mRoamingConsortium) != PasspointMatch.None) {
+                    matches.add(provider);
+                }
+            }
+            expectedMatches.add(matches);
+        }
+
+        List<Set<PasspointProvider>> indexedMatches = new ArrayList<>();
+        PasspointMatchIndex index = new PasspointMatchIndex(providers);
+        for (Map<ANQPElementType, ANQPElement> anqpElements : anqpEntries) {
+            Set<PasspointProvider> matches = new ArraySet<>();
+            for (PasspointProvider provider : index.getCandidates(anqpElements,
+                    mRoamingConsortium)) {
+                if (provider.match(anqpElements, mRoamingConsortium) != PasspointMatch.None) {
+                    matches.add(provider);
+                }
+            }
+            indexedMatches.add(matches);
+        }
+
+        assertEquals(expectedMatches, indexedMatches);
+    }
+}
@@ -177,6 +177,28 @@ public class PasspointNetworkNominateHelperTest {
         List<Pair<ScanDetail, WifiConfiguration>> candidates = mNominateHelper
                 .getPasspointNetworkCandidates(scanDetails, false);
         assertTrue(candidates.isEmpty());
+        // Verify that the missing ANQP elements are requested for the whole scan.
+        verify(mPasspointManager).requestMissingAnqpElements(Arrays.asList(
+                scanDetails.get(0).getScanResult(), scanDetails.get(1).getScanResult()));
+    }
+
+    /**
+     * Verify that the missing ANQP elements are requested once per scan, even though the saved
+     * and the suggestion nominators both evaluate it.
+     */
+    @Test
+    public void requestMissingAnqpElementsOncePerScan() {
+        List<ScanDetail> scanDetails = Arrays.asList(generateScanDetail(TEST_SSID1, TEST_BSSID1),
+                generateScanDetail(TEST_SSID2, TEST_BSSID2));
+        when(mPasspointManager.matchProvider(any(ScanResult.class))).thenReturn(null);
+        mNominateHelper.getPasspointNetworkCandidates(new ArrayList<>(scanDetails), false);
+        mNominateHelper.getPasspointNetworkCandidates(new ArrayList<>(scanDetails), true);
+        verify(mPasspointManager).requestMissingAnqpElements(any());
+
+        List<ScanDetail> nextScanDetails = Arrays.asList(
+                generateScanDetail(TEST_SSID1, TEST_BSSID1));
+        mNominateHelper.getPasspointNetworkCandidates(nextScanDetails, false);
+        verify(mPasspointManager, times(2)).requestMissingAnqpElements(any());
     }
 
     /**
@@ -16,6 +16,7 @@
 
 package com.android.server.wifi.hotspot2.anqp;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 import android.net.wifi.WifiSsid;
@@ -34,8 +35,10 @@ import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 /**
  * Unit tests for {@link com.android.server.wifi.hotspot2.anqp.ANQPParser}.
@@ -235,6 +238,25 @@ public class ANQPParserTest extends WifiBaseTest {
         return out.toByteArray();
     }
 
+    /**
+     * Helper function for generating payload for a Hotspot 2.0 Icon File ANQP element.
+     *
+     * @param iconType Type of the icon
+     * @param iconData Icon data
+     * @return byte[]
+     */
+    private static byte[] getHSIconFilePayload(String iconType, byte[] iconData)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write((byte) HSIconFileElement.STATUS_CODE_SUCCESS);
+        out.write((byte) iconType.length());
+        out.write(iconType.getBytes(StandardCharsets.US_ASCII));
+        out.write((byte) (iconData.length & 0xFF));
+        out.write((byte) ((iconData.length >> 8) & 0xFF));
+        out.write(iconData);
+        return out.toByteArray();
+    }
+
     /**
      * Helper function for generating payload for a list of I18Name.
      *
@@ -248,7 +270,7 @@ public class ANQPParserTest extends WifiBaseTest {
         ByteArrayOutputStream stream = new ByteArrayOutputStream();
         for (int i = 0; i < language.length; i++) {
             byte[] textBytes = text[i].getBytes(StandardCharsets.UTF_8);
-            int length = I18Name.LANGUAGE_CODE_LENGTH + text[i].length();
+            int length = I18Name.LANGUAGE_CODE_LENGTH + textBytes.length;
             stream.write((byte) length);
             stream.write(language[i].getBytes(StandardCharsets.US_ASCII));
             // Add padding for two-character language code.
@@ -504,4 +526,122 @@ public class ANQPParserTest extends WifiBaseTest {
         assertEquals(expected,
                 ANQPParser.parseHS20Element(Constants.ANQPElementType.HSOSUProviders, buffer));
     }
+
+    /**
+     * Verify that the parsed elements keep the payload they were parsed from, including the
+     * vendor specific header of a Hotspot 2.0 element parsed from a Vendor Specific element,
+     * and that parsing the payload again gives an equal element.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void parsedElementsKeepRawPayload() throws Exception {
+        byte[] domainNameBytes = getDomainNamePayload(new String[] {"test.com"});
+        ANQPElement domainName = ANQPParser.parseElement(
+                Constants.ANQPElementType.ANQPDomName, ByteBuffer.wrap(domainNameBytes));
+        assertArrayEquals(domainNameBytes, domainName.getRawPayload());
+        assertEquals(domainName, ANQPParser.parseElement(Constants.ANQPElementType.ANQPDomName,
+                ByteBuffer.wrap(domainName.getRawPayload())));
+
+        byte[] data = getVendorSpecificPayload(
+                ANQPParser.VENDOR_SPECIFIC_HS20_OI, ANQPParser.VENDOR_SPECIFIC_HS20_TYPE,
+                Constants.HS_FRIENDLY_NAME,
+                getHSFriendlyNamePayload(new String[] {"en"}, new String[] {"test"}));
+        ANQPElement friendlyName = ANQPParser.parseElement(
+                Constants.ANQPElementType.ANQPVendorSpec, ByteBuffer.wrap(data));
+        assertArrayEquals(data, friendlyName.getRawPayload());
+
+        assertEquals(null, new DomainNameElement(new ArrayList<>()).getRawPayload());
+    }
+
+    /**
+     * Verify that an expected HSIconFileElement is returned when parsing a buffer that contained
+     * a Hotspot 2.0 Icon File ANQP element, directly or in a vendor specific element.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void parseHSIconFileElement() throws Exception {
+        byte[] iconData = new byte[] {1, 2, 3, 4};
+        byte[] data = getHSIconFilePayload("png", iconData);
+        HSIconFileElement expected =
+                new HSIconFileElement(HSIconFileElement.STATUS_CODE_SUCCESS, "png", iconData);
+
+        assertEquals(expected, ANQPParser.parseHS20Element(
+                Constants.ANQPElementType.HSIconFile, ByteBuffer.wrap(data)));
+        assertEquals(expected, ANQPParser.parseElement(Constants.ANQPElementType.ANQPVendorSpec,
+                ByteBuffer.wrap(getVendorSpecificPayload(ANQPParser.VENDOR_SPECIFIC_HS20_OI,
+                        ANQPParser.VENDOR_SPECIFIC_HS20_TYPE, Constants.HS_ICON_FILE, data))));
+    }
+
+    /**
+     * Parse the elements of an ANQP response from a venue with several languages, realms and
+     * OSU providers, and an icon file. Verify that the elements are parsed as expected.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void parseAnqpResponseWithSeveralLanguages() throws Exception {
+        String[] languages = new String[] {"en", "fr", "de", "zh"};
+        String[] venueNames = new String[] {"Airport", "A\u00e9roport", "Flughafen",
+                "\u673a\u573a"};
+        String[] operatorNames = new String[] {"Operator", "Op\u00e9rateur", "Betreiber",
+                "\u8fd0\u8425\u5546"};
+        byte[][] realmData = new byte[16][];
+        Arrays.fill(realmData, NAIRealmDataTestUtil.TEST_REAML_WITH_UTF8_DATA_BYTES);
+        byte[] iconData = new byte[8192];
+        for (int i = 0; i < iconData.length; i++) {
+            iconData[i] = (byte) i;
+        }
+        byte[] osuSsidBytes = "OSU".getBytes(StandardCharsets.UTF_8);
+
+        Map<Constants.ANQPElementType, byte[]> response = new HashMap<>();
+        response.put(Constants.ANQPElementType.ANQPVenueName,
+                getVenueNamePayload(languages, venueNames));
+        response.put(Constants.ANQPElementType.ANQPNAIRealm, getNAIRealmPayload(realmData));
+        response.put(Constants.ANQPElementType.ANQPDomName, getDomainNamePayload(
+                new String[] {"airport.example.com", "example.net", "example.org"}));
+        response.put(Constants.ANQPElementType.HSFriendlyName,
+                getHSFriendlyNamePayload(languages, operatorNames));
+        response.put(Constants.ANQPElementType.HSOSUProviders,
+                getHSOsuProvidersPayload(osuSsidBytes));
+        response.put(Constants.ANQPElementType.HSIconFile,
+                getHSIconFilePayload("png", iconData));
+
+        List<I18Name> operatorNameList = new ArrayList<>();
+        for (int i = 0; i < languages.length; i++) {
+            operatorNameList.add(new I18Name(languages[i], Locale.forLanguageTag(languages[i]),
+                    operatorNames[i]));
+        }
+        NAIRealmData[] realmDataList = new NAIRealmData[realmData.length];
+        Arrays.fill(realmDataList, NAIRealmDataTestUtil.TEST_REALM_DATA);
+        Map<Constants.ANQPElementType, ANQPElement> expected = new HashMap<>();
+        expected.put(Constants.ANQPElementType.ANQPNAIRealm,
+                new NAIRealmElement(Arrays.asList(realmDataList)));
+        expected.put(Constants.ANQPElementType.HSFriendlyName,
+                new HSFriendlyNameElement(operatorNameList));
+        expected.put(Constants.ANQPElementType.HSOSUProviders, new HSOsuProvidersElement(
+                WifiSsid.createFromByteArray(osuSsidBytes),
+                Arrays.asList(OsuProviderInfoTestUtil.TEST_OSU_PROVIDER_INFO)));
+        expected.put(Constants.ANQPElementType.HSIconFile,
+                new HSIconFileElement(HSIconFileElement.STATUS_CODE_SUCCESS, "png", iconData));
+
+        Map<Constants.ANQPElementType, ANQPElement> elements = parseAnqpResponse(response);
+        assertEquals(response.keySet(), elements.keySet());
+        for (Map.Entry<Constants.ANQPElementType, ANQPElement> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), elements.get(entry.getKey()));
+        }
+    }
+
+    private static Map<Constants.ANQPElementType, ANQPElement> parseAnqpResponse(
+            Map<Constants.ANQPElementType, byte[]> response) throws Exception {
+        Map<Constants.ANQPElementType, ANQPElement> elements = new HashMap<>();
+        for (Map.Entry<Constants.ANQPElementType, byte[]> entry : response.entrySet()) {
+            ByteBuffer payload = ByteBuffer.wrap(entry.getValue());
+            elements.put(entry.getKey(), Constants.getANQPElementID(entry.getKey()) != null
+                    ? ANQPParser.parseElement(entry.getKey(), payload)
+                    : ANQPParser.parseHS20Element(entry.getKey(), payload));
+        }
+        return elements;
+    }
 }
@@ -344,6 +344,82 @@ public class BackgroundScanSchedulerTest extends WifiBaseTest {
         }
     }
 
+    /**
+     * Verify the dwell time estimate of a schedule, where DFS channels are scanned passively.
+     */
+    @Test
+    public void estimateDwellTimePerHour() {
+        ArrayList<ScanSettings> requests = new ArrayList<>();
+        requests.add(createRequest(channelsToSpec(2400, 5600), 30000, 0, 20,
+                WifiScanner.REPORT_EVENT_AFTER_EACH_SCAN));
+
+        mScheduler.updateSchedule(requests);
+
+        // 120 scans per hour of one active and one passive channel.
+        assertEquals(120 * (ChannelHelper.ACTIVE_CHANNEL_DWELL_TIME_MS
+                        + ChannelHelper.PASSIVE_CHANNEL_DWELL_TIME_MS),
+                mScheduler.estimateDwellTimePerHour(mScheduler.getSchedule()));
+    }
+
+    /**
+     * Verify that with the cost model the buckets which don't fit are merged where they add the
+     * least dwell time. Here the 120s DFS request is merged into the 10s bucket which already
+     * scans the same channels, instead of merging the 60s request into the 30s bucket.
+     */
+    @Test
+    public void costModelScheduleExceedsNumberOfAvailableBuckets() {
+        ArrayList<ScanSettings> requests = new ArrayList<>();
+        requests.add(createRequest(channelsToSpec(2400), 30 * 1000, 0, 20,
+                WifiScanner.REPORT_EVENT_AFTER_EACH_SCAN));
+        requests.add(createRequest(channelsToSpec(2450), 60 * 1000, 0, 20,
+                WifiScanner.REPORT_EVENT_AFTER_EACH_SCAN));
+        requests.add(createRequest(channelsToSpec(5600, 5650, 5660), 10 * 1000, 0, 20,
+                WifiScanner.REPORT_EVENT_AFTER_EACH_SCAN));
+        requests.add(createRequest(channelsToSpec(5600, 5650, 5660), 120 * 1000, 0, 20,
+                WifiScanner.REPORT_EVENT_AFTER_EACH_SCAN));
+        mScheduler.setMaxBuckets(3);
+
+        mScheduler.updateSchedule(requests);
+        long defaultDwellTime = mScheduler.estimateDwellTimePerHour(mScheduler.getSchedule());
+
+        mScheduler.setCostModelEnabled(true);
+        mScheduler.updateSchedule(requests);
+        WifiNative.ScanSettings schedule = mScheduler.getSchedule();
+
+        assertEquals("base_period_ms", 10000, schedule.base_period_ms);
+        assertBuckets(schedule, 3);
+        for (ScanSettings request : requests) {
+            assertChannelsScannedWithinPeriod(schedule, request);
+        }
+        assertTrue(mScheduler.estimateDwellTimePerHour(schedule) < defaultDwellTime);
+    }
+
+    /**
+     * Verify that with the cost model a request is never moved to a bucket with a longer period
+     * when there are not enough buckets.
+     */
+    @Test
+    public void costModelScheduleDoesNotIncreasePeriod() {
+        ArrayList<ScanSettings> requests = new ArrayList<>();
+        requests.add(createRequest(channelsToSpec(2400), 30 * 1000, 0, 20,
+                WifiScanner.REPORT_EVENT_AFTER_EACH_SCAN));
+        requests.add(createRequest(channelsToSpec(5600, 5650), 10 * 1000, 0, 20,
+                WifiScanner.REPORT_EVENT_AFTER_EACH_SCAN));
+        requests.add(createRequest(channelsToSpec(5660), 120 * 1000, 0, 20,
+                WifiScanner.REPORT_EVENT_AFTER_EACH_SCAN));
+
+        mScheduler.setMaxBuckets(2);
+        mScheduler.setCostModelEnabled(true);
+        mScheduler.updateSchedule(requests);
+        WifiNative.ScanSettings schedule = mScheduler.getSchedule();
+
+        assertEquals("base_period_ms", 10000, schedule.base_period_ms);
+        assertBuckets(schedule, 2);
+        for (ScanSettings request : requests) {
+            assertChannelsScannedWithinPeriod(schedule, request);
+        }
+    }
+
     @Test
     public void optimalScheduleExceedsMaxChannelsOnSingleBand() {
         ArrayList<ScanSettings> requests = new ArrayList<>();
@@ -714,6 +790,27 @@ public class BackgroundScanSchedulerTest extends WifiBaseTest {
         }
     }
 
+    /**
+     * Asserts that all the channels of the request are scanned by a bucket with a period no
+     * longer than the period of the bucket the request would get without any bucket limit.
+     */
+    private void assertChannelsScannedWithinPeriod(WifiNative.ScanSettings schedule,
+            ScanSettings settings) {
+        int expectedPeriod = computeExpectedPeriod(settings.periodInMs);
+        for (int channel : getAllChannels(settings)) {
+            boolean scanned = false;
+            for (int b = 0; b < schedule.num_buckets; b++) {
+                if (schedule.buckets[b].period_ms <= expectedPeriod
+                        && getAllChannels(schedule.buckets[b]).contains(channel)) {
+                    scanned = true;
+                    break;
+                }
+            }
+            assertTrue("channel " + channel + " not scanned every " + expectedPeriod + "ms",
+                    scanned);
+        }
+    }
+
     private void assertSettingsSatisfied(WifiNative.ScanSettings schedule,
             ScanSettings settings, boolean bucketsLimited, boolean exactPeriod) {
         assertTrue("bssids per scan: " + schedule.max_ap_per_scan + " /<= "
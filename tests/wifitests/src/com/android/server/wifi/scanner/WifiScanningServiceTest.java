@@ -94,6 +94,7 @@ import com.android.server.wifi.proto.nano.WifiMetricsProto;
 import com.android.server.wifi.rtt.RttMetrics;
 import com.android.server.wifi.util.WifiAsyncChannel;
 import com.android.server.wifi.util.WifiPermissionsUtil;
+import com.android.wifi.resources.R;
 
 import org.junit.After;
 import org.junit.Before;
@@ -147,6 +148,7 @@ public class WifiScanningServiceTest extends WifiBaseTest {
     TestLooper mLooper;
     WifiScanningServiceImpl mWifiScanningServiceImpl;
     @Mock WifiP2pMetrics mWifiP2pMetrics;
+    MockResources mResources;
 
     @Before
     public void setUp() throws Exception {
@@ -155,7 +157,8 @@ public class WifiScanningServiceTest extends WifiBaseTest {
         mAlarmManager = new TestAlarmManager();
         when(mContext.getSystemService(Context.ALARM_SERVICE))
                 .thenReturn(mAlarmManager.getAlarmManager());
-        when(mContext.getResources()).thenReturn(new MockResources());
+        mResources = new MockResources();
+        when(mContext.getResources()).thenReturn(mResources);
         when(mWifiInjector.getWifiPermissionsUtil())
                 .thenReturn(mWifiPermissionsUtil);
 
@@ -1511,6 +1514,74 @@ public class WifiScanningServiceTest extends WifiBaseTest {
                 "results=" + results3.getRawScanResults().length);
     }
 
+    /**
+     * Send two single scan requests within the coalescing window. Verify that a single scan is
+     * started at the end of the window with the merged channels and hidden networks, and that
+     * both requests receive the results.
+     */
+    @Test
+    public void sendSingleScanRequestsWithinCoalescingWindowAreMerged() throws RemoteException {
+        mResources.setInteger(R.integer.config_wifiSingleScanCoalescingWindowMs, 100);
+        WifiScanner.ScanSettings requestSettings1 = createRequest(channelsToSpec(2412), 0,
+                0, 20, WifiScanner.REPORT_EVENT_AFTER_EACH_SCAN);
+        requestSettings1.hiddenNetworks.add(new WifiScanner.ScanSettings.HiddenNetwork("ssid"));
+        int requestId1 = 12;
+        ScanResults results1 = ScanResults.create(0, WifiScanner.WIFI_BAND_UNSPECIFIED, 2412);
+
+        WifiScanner.ScanSettings requestSettings2 = createRequest(channelsToSpec(5160), 0,
+                0, 20, WifiScanner.REPORT_EVENT_AFTER_EACH_SCAN);
+        requestSettings2.hiddenNetworks.add(new WifiScanner.ScanSettings.HiddenNetwork("ssid"));
+        int requestId2 = 13;
+        ScanResults results2 = ScanResults.create(0, WifiScanner.WIFI_BAND_UNSPECIFIED, 5160);
+
+        WifiNative.ScanSettings nativeSettings1and2 = createSingleScanNativeSettingsForChannels(
+                WifiScanner.SCAN_TYPE_LOW_LATENCY, WifiScanner.REPORT_EVENT_AFTER_EACH_SCAN,
+                channelsToSpec(2412, 5160));
+        ScanResults results1and2 =
+                ScanResults.merge(WifiScanner.WIFI_BAND_UNSPECIFIED, results1, results2);
+
+        startServiceAndLoadDriver();
+        mWifiScanningServiceImpl.setWifiHandlerLogForTest(mLog);
+
+        when(mWifiScannerImpl0.startSingleScan(any(WifiNative.ScanSettings.class),
+                any(WifiNative.ScanEventHandler.class))).thenReturn(true);
+
+        Handler handler = mock(Handler.class);
+        BidirectionalAsyncChannel controlChannel = connectChannel(handler);
+        InOrder handlerOrder = inOrder(handler);
+        InOrder nativeOrder = inOrder(mWifiScannerImpl0);
+
+        sendSingleScanRequest(controlChannel, requestId1, requestSettings1, null);
+        mLooper.dispatchAll();
+        verifySuccessfulResponse(handlerOrder, handler, requestId1);
+        sendSingleScanRequest(controlChannel, requestId2, requestSettings2, null);
+        mLooper.dispatchAll();
+        verifySuccessfulResponse(handlerOrder, handler, requestId2);
+        verify(mWifiScannerImpl0, never()).startSingleScan(any(), any());
+
+        // The scan starts once the coalescing window expires.
+        mLooper.moveTimeForward(100);
+        mLooper.dispatchAll();
+        WifiNative.ScanEventHandler eventHandler = verifyStartSingleScan(nativeOrder,
+                nativeSettings1and2);
+        // The hidden network shared by both requests is only scanned for once.
+        ArgumentCaptor<WifiNative.ScanSettings> scanSettingsCaptor =
+                ArgumentCaptor.forClass(WifiNative.ScanSettings.class);
+        verify(mWifiScannerImpl0).startSingleScan(scanSettingsCaptor.capture(), any());
+        assertEquals(1, scanSettingsCaptor.getValue().hiddenNetworks.length);
+        assertEquals("ssid", scanSettingsCaptor.getValue().hiddenNetworks[0].ssid);
+
+        when(mWifiScannerImpl0.getLatestSingleScanResults())
+                .thenReturn(results1and2.getScanData());
+        eventHandler.onScanStatus(WifiNative.WIFI_SCAN_RESULTS_AVAILABLE);
+        mLooper.dispatchAll();
+
+        verifyMultipleSingleScanResults(handlerOrder, handler, requestId1, results1, requestId2,
+                results2);
+        assertEquals(2, mWifiMetrics.getOneshotScanCount());
+        assertEquals(1, mWifiMetrics.getOneshotScanStartedCount());
+    }
+
     /**
      * Send a single scan request and then a second one satisfied by the first before the first
      * completes. Verify that only one scan is scheduled.
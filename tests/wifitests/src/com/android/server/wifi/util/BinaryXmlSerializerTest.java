@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.util;
+
+import static org.junit.Assert.*;
+
+import android.net.wifi.WifiConfiguration;
+import android.util.Pair;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.internal.util.FastXmlSerializer;
+import com.android.server.wifi.WifiBaseTest;
+import com.android.server.wifi.WifiConfigurationTestUtil;
+import com.android.server.wifi.util.XmlUtil.WifiConfigurationXmlUtil;
+
+import org.junit.Test;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlSerializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unit tests for {@link BinaryXmlSerializer} & {@link BinaryXmlPullParser}.
+ */
+@SmallTest
+public class BinaryXmlSerializerTest extends WifiBaseTest {
+    private static final String XML_TAG_DOCUMENT_HEADER = "TestDocument";
+    private static final String XML_TAG_SECTION = "TestSection";
+    private static final int NUM_TEST_NETWORKS = 100;
+
+    /**
+     * Verify that values written with {@link XmlUtil} are read back unchanged.
+     */
+    @Test
+    public void testValuesRoundTrip() throws Exception {
+        Map<String, Object> values = new HashMap<>();
+        values.put("Int", 5);
+        values.put("Long", Long.MAX_VALUE);
+        values.put("Boolean", true);
+        values.put("String", "\"WifiSsid\" <&> \u00e9");
+        values.put("EmptyString", "");
+        values.put("Null", null);
+        values.put("ByteArray", new byte[] {0x01, 0x02, (byte) 0xff});
+        values.put("IntArray", new int[] {1, 2, 3});
+        values.put("StringArray", new String[] {"a", "b"});
+        Map<String, String> map = new HashMap<>();
+        map.put("key", "value");
+        values.put("Map", map);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        XmlSerializer out = new BinaryXmlSerializer();
+        out.setOutput(outputStream, StandardCharsets.UTF_8.name());
+        XmlUtil.writeDocumentStart(out, XML_TAG_DOCUMENT_HEADER);
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            XmlUtil.writeNextValue(out, entry.getKey(), entry.getValue());
+        }
+        XmlUtil.writeDocumentEnd(out, XML_TAG_DOCUMENT_HEADER);
+        byte[] data = outputStream.toByteArray();
+        assertTrue(BinaryXmlPullParser.isBinaryXml(data));
+
+        XmlPullParser in = createParser(data);
+        XmlUtil.gotoDocumentStart(in, XML_TAG_DOCUMENT_HEADER);
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            Object value = XmlUtil.readNextValueWithName(in, entry.getKey());
+            if (entry.getValue() instanceof byte[]) {
+                assertArrayEquals((byte[]) entry.getValue(), (byte[]) value);
+            } else if (entry.getValue() instanceof int[]) {
+                assertArrayEquals((int[]) entry.getValue(), (int[]) value);
+            } else if (entry.getValue() instanceof String[]) {
+                assertArrayEquals((String[]) entry.getValue(), (String[]) value);
+            } else {
+                assertEquals(entry.getValue(), value);
+            }
+        }
+    }
+
+    /**
+     * Verify that a list of networks serialized in the binary format is parsed back to the same
+     * networks and is smaller than the XML encoding of the same list.
+     */
+    @Test
+    public void testNetworkListRoundTripIsSmallerThanXml() throws Exception {
+        List<WifiConfiguration> configs = new ArrayList<>();
+        for (int i = 0; i < NUM_TEST_NETWORKS; i++) {
+            configs.add(i % 2 == 0 ? WifiConfigurationTestUtil.createPskNetwork()
+                    : WifiConfigurationTestUtil.createOpenNetwork());
+        }
+
+        byte[] binaryData = serializeNetworks(new BinaryXmlSerializer(), configs);
+        byte[] xmlData = serializeNetworks(new FastXmlSerializer(), configs);
+        assertTrue(BinaryXmlPullParser.isBinaryXml(binaryData));
+        assertFalse(BinaryXmlPullParser.isBinaryXml(xmlData));
+        assertTrue(binaryData.length < xmlData.length);
+
+        XmlPullParser in = createParser(binaryData);
+        XmlUtil.gotoDocumentStart(in, XML_TAG_DOCUMENT_HEADER);
+        int outerTagDepth = in.getDepth();
+        List<WifiConfiguration> parsedConfigs = new ArrayList<>();
+        while (XmlUtil.gotoNextSectionWithNameOrEnd(in, XML_TAG_SECTION, outerTagDepth)) {
+            Pair<String, WifiConfiguration> parsedConfig =
+                    WifiConfigurationXmlUtil.parseFromXml(in, in.getDepth(), false, null);
+            parsedConfigs.add(parsedConfig.second);
+        }
+        WifiConfigurationTestUtil.assertConfigurationsEqualForConfigStore(configs, parsedConfigs);
+    }
+
+    /**
+     * Verify that a stream with a corrupted token is rejected.
+     */
+    @Test(expected = XmlPullParserException.class)
+    public void testCorruptedDataThrowsException() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        XmlSerializer out = new BinaryXmlSerializer();
+        out.setOutput(outputStream, StandardCharsets.UTF_8.name());
+        XmlUtil.writeDocumentStart(out, XML_TAG_DOCUMENT_HEADER);
+        XmlUtil.writeDocumentEnd(out, XML_TAG_DOCUMENT_HEADER);
+        byte[] data = outputStream.toByteArray();
+        // Overwrite the first token after the header.
+        data[5] = 0x7f;
+
+        XmlUtil.gotoDocumentStart(createParser(data), XML_TAG_DOCUMENT_HEADER);
+    }
+
+    /**
+     * Verify that a string length larger than the data left is rejected without allocating it.
+     */
+    @Test(expected = XmlPullParserException.class)
+    public void testCorruptedStringLengthThrowsException() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(outputStream);
+        out.writeInt(BinaryXmlSerializer.MAGIC);
+        out.writeByte(BinaryXmlSerializer.FORMAT_VERSION);
+        out.writeByte(BinaryXmlSerializer.TOKEN_TEXT);
+        out.writeInt(Integer.MAX_VALUE);
+        out.write("text".getBytes(StandardCharsets.UTF_8));
+
+        createParser(outputStream.toByteArray()).next();
+    }
+
+    /**
+     * Verify that text XML is not detected as binary.
+     */
+    @Test
+    public void testIsBinaryXml() {
+        assertFalse(BinaryXmlPullParser.isBinaryXml(null));
+        assertFalse(BinaryXmlPullParser.isBinaryXml(new byte[0]));
+        assertFalse(BinaryXmlPullParser.isBinaryXml(
+                "<?xml version='1.0' encoding='utf-8' standalone='yes' ?>"
+                        .getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static XmlPullParser createParser(byte[] data) throws XmlPullParserException {
+        XmlPullParser in = new BinaryXmlPullParser();
+        in.setInput(new ByteArrayInputStream(data), StandardCharsets.UTF_8.name());
+        return in;
+    }
+
+    private static byte[] serializeNetworks(XmlSerializer out, List<WifiConfiguration> configs)
+            throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        out.setOutput(outputStream, StandardCharsets.UTF_8.name());
+        XmlUtil.writeDocumentStart(out, XML_TAG_DOCUMENT_HEADER);
+        for (WifiConfiguration config : configs) {
+            XmlUtil.writeNextSectionStart(out, XML_TAG_SECTION);
+            WifiConfigurationXmlUtil.writeToXmlForConfigStore(out, config, null);
+            XmlUtil.writeNextSectionEnd(out, XML_TAG_SECTION);
+        }
+        XmlUtil.writeDocumentEnd(out, XML_TAG_DOCUMENT_HEADER);
+        return outputStream.toByteArray();
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.util;
+
+import static org.junit.Assert.*;
+
+import android.net.MacAddress;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.wifi.WifiBaseTest;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link com.android.server.wifi.util.BssidUtil}.
+ */
+@SmallTest
+public class BssidUtilTest extends WifiBaseTest {
+    /**
+     * Verify parsing of valid BSSIDs.
+     */
+    @Test
+    public void testParseValid() {
+        assertEquals(0xaabbccddeeffL, BssidUtil.parse("aa:bb:cc:dd:ee:ff"));
+        assertEquals(0xaabbccddeeffL, BssidUtil.parse("AA:BB:CC:DD:EE:FF"));
+        assertEquals(0x010203040506L, BssidUtil.parse("1:2:3:4:5:6"));
+        assertEquals(0L, BssidUtil.parse("00:00:00:00:00:00"));
+    }
+
+    /**
+     * Verify that malformed BSSIDs are rejected.
+     */
+    @Test
+    public void testParseInvalid() {
+        assertEquals(BssidUtil.INVALID, BssidUtil.parse(null));
+        assertEquals(BssidUtil.INVALID, BssidUtil.parse(""));
+        assertEquals(BssidUtil.INVALID, BssidUtil.parse("any"));
+        assertEquals(BssidUtil.INVALID, BssidUtil.parse("aa:bb:cc:dd:ee"));
+        assertEquals(BssidUtil.INVALID, BssidUtil.parse("aa:bb:cc:dd:ee:ff:00"));
+        assertEquals(BssidUtil.INVALID, BssidUtil.parse("aa:bb:cc:dd:ee:fg"));
+        assertEquals(BssidUtil.INVALID, BssidUtil.parse("aa::cc:dd:ee:ff"));
+        assertEquals(BssidUtil.INVALID, BssidUtil.parse("aabbccddeeff"));
+    }
+
+    /**
+     * Verify the conversion from MacAddress and back to a string.
+     */
+    @Test
+    public void testMacAddressAndToString() {
+        MacAddress mac = MacAddress.fromString("0a:1b:2c:3d:4e:5f");
+        long packed = BssidUtil.fromMacAddress(mac);
+        assertEquals(BssidUtil.parse(mac.toString()), packed);
+        assertEquals("0a:1b:2c:3d:4e:5f", BssidUtil.toString(packed));
+        assertEquals(BssidUtil.INVALID, BssidUtil.fromMacAddress(null));
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.util;
+
+import static org.junit.Assert.*;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.wifi.WifiBaseTest;
+
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * Unit tests for {@link com.android.server.wifi.util.CompactIntHistogram}.
+ */
+@SmallTest
+public class CompactIntHistogramTest extends WifiBaseTest {
+    private static final int MIN = -100;
+    private static final int MAX = -20;
+
+    private static int[] intsInRange(int min, int max) {
+        int[] a = new int[max - min + 1];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = min + i;
+        }
+        return a;
+    }
+
+    /**
+     * Verify that the buckets, their order and the string representation are the same as those
+     * of an IntHistogram with unit width buckets.
+     */
+    @Test
+    public void testSameBucketsAsIntHistogram() {
+        CompactIntHistogram compact = new CompactIntHistogram(MIN, MAX);
+        IntHistogram reference = new IntHistogram(intsInRange(MIN, MAX));
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            int value = MIN - 10 + random.nextInt(MAX - MIN + 20);
+            int count = random.nextInt(3) + 1;
+            compact.add(value, count);
+            reference.add(value, count);
+        }
+        compact.add(Integer.MIN_VALUE, 1);
+        reference.add(Integer.MIN_VALUE, 1);
+        compact.add(Integer.MAX_VALUE, 1);
+        reference.add(Integer.MAX_VALUE, 1);
+
+        assertEquals(reference.numNonEmptyBuckets(), compact.numNonEmptyBuckets());
+        Iterator<IntHistogram.Bucket> expected = reference.iterator();
+        for (IntHistogram.Bucket bucket : compact) {
+            IntHistogram.Bucket expectedBucket = expected.next();
+            assertEquals(expectedBucket.start, bucket.start);
+            assertEquals(expectedBucket.end, bucket.end);
+            assertEquals(expectedBucket.count, bucket.count);
+        }
+        assertFalse(expected.hasNext());
+        assertEquals(reference.toString(), compact.toString());
+    }
+
+    /**
+     * Verify that only the non-empty buckets are kept, and that clear empties the histogram.
+     */
+    @Test
+    public void testOnlyNonEmptyBucketsAreKept() {
+        CompactIntHistogram histogram = new CompactIntHistogram(MIN, MAX);
+        assertEquals("{}", histogram.toString());
+        histogram.add(-50, 0);
+        assertEquals(0, histogram.numNonEmptyBuckets());
+        histogram.increment(-50);
+        histogram.increment(-70);
+        histogram.increment(-50);
+        assertEquals(2, histogram.numNonEmptyBuckets());
+        assertEquals(-70, histogram.getBucketByIndex(0).start);
+        assertEquals(1, histogram.getBucketByIndex(0).count);
+        assertEquals(-50, histogram.getBucketByIndex(1).start);
+        assertEquals(2, histogram.getBucketByIndex(1).count);
+        histogram.clear();
+        assertEquals(0, histogram.numNonEmptyBuckets());
+    }
+
+    /**
+     * Verify that counts have the full width of the IntHistogram counts, and saturate instead
+     * of overflowing.
+     */
+    @Test
+    public void testCountSaturates() {
+        CompactIntHistogram histogram = new CompactIntHistogram(MIN, MAX);
+        histogram.add(-60, 1 << 24);
+        histogram.increment(-60);
+        assertEquals((1 << 24) + 1, histogram.getBucketByIndex(1).count);
+        histogram.add(-60, CompactIntHistogram.MAX_COUNT - (1 << 24) - 2);
+        histogram.add(-60, 2);
+        histogram.add(-60, Integer.MAX_VALUE);
+        histogram.increment(-61);
+        assertEquals(Integer.MAX_VALUE, CompactIntHistogram.MAX_COUNT);
+        assertEquals(CompactIntHistogram.MAX_COUNT, histogram.getBucketByIndex(1).count);
+        assertEquals(-60, histogram.getBucketByIndex(1).start);
+        assertEquals(1, histogram.getBucketByIndex(0).count);
+    }
+
+    /**
+     * Verify that an empty range is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyRangeIsRejected() {
+        new CompactIntHistogram(0, 0);
+    }
+
+    /**
+     * Verify that a range with more buckets than can be packed is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testLargeRangeIsRejected() {
+        new CompactIntHistogram(0, 255);
+    }
+
+    /**
+     * Verify that negative counts are rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeCountIsRejected() {
+        new CompactIntHistogram(MIN, MAX).add(-50, -1);
+    }
+}
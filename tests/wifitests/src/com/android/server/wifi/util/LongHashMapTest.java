@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.util;
+
+import static org.junit.Assert.*;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.wifi.WifiBaseTest;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Unit tests for {@link com.android.server.wifi.util.LongHashMap}.
+ */
+@SmallTest
+public class LongHashMapTest extends WifiBaseTest {
+    private LongHashMap<String> mMap;
+
+    @Before
+    public void setUp() {
+        mMap = new LongHashMap<>(2);
+    }
+
+    /**
+     * Verify basic put, get and remove operations, including growing past the initial capacity.
+     */
+    @Test
+    public void testPutGetRemove() {
+        assertTrue(mMap.isEmpty());
+        for (long i = 0; i < 100; i++) {
+            assertNull(mMap.put(i << 8, "v" + i));
+        }
+        assertEquals(100, mMap.size());
+        for (long i = 0; i < 100; i++) {
+            assertEquals("v" + i, mMap.get(i << 8));
+            assertTrue(mMap.containsKey(i << 8));
+        }
+        assertEquals("v5", mMap.put(5 << 8, "new"));
+        assertEquals("new", mMap.get(5 << 8));
+        assertEquals("new", mMap.remove(5 << 8));
+        assertNull(mMap.get(5 << 8));
+        assertNull(mMap.remove(5 << 8));
+        assertEquals(99, mMap.size());
+
+        mMap.clear();
+        assertTrue(mMap.isEmpty());
+        assertNull(mMap.get(0));
+    }
+
+    /**
+     * Verify that iteration by index visits every entry once, and removing while iterating from
+     * the end is safe.
+     */
+    @Test
+    public void testIterateAndRemoveAt() {
+        for (long i = 0; i < 20; i++) {
+            mMap.put(i, Long.toString(i));
+        }
+        for (int i = mMap.size() - 1; i >= 0; i--) {
+            if (mMap.keyAt(i) % 2 == 0) {
+                assertEquals(Long.toString(mMap.keyAt(i)), mMap.removeAt(i));
+            }
+        }
+        assertEquals(10, mMap.size());
+        for (int i = 0; i < mMap.size(); i++) {
+            assertEquals(1, mMap.keyAt(i) % 2);
+            assertEquals(Long.toString(mMap.keyAt(i)), mMap.valueAt(i));
+        }
+    }
+
+    /**
+     * Verify removeIf only removes the matching values.
+     */
+    @Test
+    public void testRemoveIf() {
+        for (long i = 0; i < 10; i++) {
+            mMap.put(i, i < 5 ? "low" : "high");
+        }
+        assertTrue(mMap.removeIf(v -> v.equals("low")));
+        assertFalse(mMap.removeIf(v -> v.equals("low")));
+        assertEquals(5, mMap.size());
+        assertNull(mMap.get(0));
+        assertEquals("high", mMap.get(9));
+    }
+
+    /**
+     * Verify that a random sequence of operations matches a HashMap.
+     */
+    @Test
+    public void testRandomOperationsMatchHashMap() {
+        Random random = new Random(42);
+        Map<Long, String> expected = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            long key = random.nextInt(300);
+            switch (random.nextInt(3)) {
+                case 0:
+                    assertEquals(expected.put(key, "v" + i), mMap.put(key, "v" + i));
+                    break;
+                case 1:
+                    assertEquals(expected.remove(key), mMap.remove(key));
+                    break;
+                default:
+                    assertEquals(expected.get(key), mMap.get(key));
+                    break;
+            }
+            assertEquals(expected.size(), mMap.size());
+        }
+        for (int i = 0; i < mMap.size(); i++) {
+            assertEquals(expected.get(mMap.keyAt(i)), mMap.valueAt(i));
+        }
+    }
+}